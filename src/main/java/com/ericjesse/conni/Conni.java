@@ -1,21 +1,425 @@
 package com.ericjesse.conni;
 
+import com.ericjesse.conni.alerts.AlertEngine;
+import com.ericjesse.conni.alerts.FileAlertSink;
+import com.ericjesse.conni.alerts.LogAlertSink;
+import com.ericjesse.conni.alerts.WebhookAlertSink;
+import com.ericjesse.conni.cluster.GossipMembership;
+import com.ericjesse.conni.cluster.TargetSharding;
+import com.ericjesse.conni.config.InvalidConfigurationException;
+import com.ericjesse.conni.config.TargetConfigurationDiff;
+import com.ericjesse.conni.config.TargetConfigurationWatcher;
+import com.ericjesse.conni.history.ResultCollector;
+import com.ericjesse.conni.history.ResultForwarder;
+import com.ericjesse.conni.history.TimeSeriesStore;
 import com.ericjesse.conni.http.HttpClient;
 import com.ericjesse.conni.http.InvalidRequestException;
+import com.ericjesse.conni.http.QuorumConfirmation;
+import com.ericjesse.conni.processors.LatencyBaselines;
+import com.ericjesse.conni.processors.SeasonalLatencyDetector;
 import com.ericjesse.conni.processors.TrayIconUpdater;
+import com.ericjesse.conni.tasks.AdHocCheckQueue;
+import com.ericjesse.conni.tasks.BatchCheck;
+import com.ericjesse.conni.tasks.CheckEngine;
 import com.ericjesse.conni.tasks.CheckTask;
+import com.ericjesse.conni.tasks.HostRateLimiter;
+import com.ericjesse.conni.tasks.NetworkWatcher;
+import com.ericjesse.conni.web.CheckApi;
+import com.ericjesse.conni.web.ClusterApi;
+import com.ericjesse.conni.web.CollectorApi;
+import com.ericjesse.conni.web.RateLimitApi;
+import com.ericjesse.conni.web.ReportApi;
+import com.ericjesse.conni.web.WebServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Created by eric on 01/06/2017.
  */
 public class Conni {
 
-    public static void main(final String[] args) throws InvalidRequestException, IOException {
+    private static final Logger LOG = LoggerFactory.getLogger(Conni.class);
 
-        HttpClient httpClient = new HttpClient();
-        httpClient.addObserver(new TrayIconUpdater());
-        new CheckTask(httpClient).run();
+    // Baselines of the latencies of the targets, kept between two executions.
+    private static final Path BASELINES_FILE =
+            Paths.get(System.getProperty("user.home"), ".conni", "latency-baselines.bin");
+
+    // History of the checks of the targets, one file per target.
+    private static final Path HISTORY_DIRECTORY = Paths.get(System.getProperty("user.home"), ".conni", "history");
+
+    private static final Path ALERTS_FILE = Paths.get(System.getProperty("user.home"), ".conni", "alerts.log");
+
+    // URL of a webhook receiving the alerts, for example a local service forwarding them.
+    private static final String ALERTS_WEBHOOK_PROPERTY = "conni.alerts.webhook";
+
+    // Longest delay of a check, in milliseconds, to coalesce the checks of the targets and save the battery.
+    private static final String LOW_POWER_SLACK_PROPERTY = "conni.low-power.slack";
+
+    // Comma-separated URLs of independent endpoints confirming the failures of the default service, not confirmed if
+    // not set.
+    private static final String QUORUM_REFERENCES_PROPERTY = "conni.quorum.references";
+
+    // Number of references which have to fail to confirm a failure of the default service, the majority if not set.
+    private static final String QUORUM_PROPERTY = "conni.quorum";
+
+    // Time given to the references to answer.
+    private static final long QUORUM_DEADLINE_IN_MS = 2_000;
+
+    // Port of the web server of the reports on the loopback address, disabled if not set.
+    private static final String WEB_PORT_PROPERTY = "conni.web.port";
+
+    // Highest number of checks per second sent to the same host, without limit if not set.
+    private static final String RATE_PER_HOST_PROPERTY = "conni.rate.per-host";
+
+    // Address host:port of this agent in a cluster, where the other agents reach it, without cluster if not set.
+    private static final String CLUSTER_ADDRESS_PROPERTY = "conni.cluster.address";
+
+    // Comma-separated addresses of agents of the cluster to join.
+    private static final String CLUSTER_PEERS_PROPERTY = "conni.cluster.peers";
+
+    // Threads of the server of the cluster, which only answers the gossip.
+    private static final int CLUSTER_WORKERS = 2;
+
+    // Base URL of the collector receiving the results of the checks, not sent if not set.
+    private static final String COLLECTOR_URL_PROPERTY = "conni.collector.url";
+
+    // First argument checking the targets of a file once.
+    private static final String BATCH_COMMAND = "check";
+
+    // First argument running the collector of the results of the agents.
+    private static final String COLLECT_COMMAND = "collect";
+
+    private static final String COLLECT_USAGE = "Usage: collect <host:port>";
+
+    /**
+     * Without argument, the default ping service is checked, and its failures are confirmed by the reference endpoints
+     * listed by the system property {@code conni.quorum.references} if any, {@code conni.quorum} of them having to fail
+     * (the majority by default). With the path of a target configuration file, all its targets are checked and the
+     * file is watched to apply its changes without restart.
+     * <p>
+     * The alerts are logged and appended to {@code ~/.conni/alerts.log}, and posted to the webhook set by the system
+     * property {@code conni.alerts.webhook} if any. The system property {@code conni.low-power.slack} enables the
+     * low-power profile of the targets of a configuration file, and {@code conni.rate.per-host} limits the rate of
+     * their checks sent to the same host. The history of the checks is kept in {@code ~/.conni/history}, and served
+     * to the local reports on the port set by the system property {@code conni.web.port} if any, with the ad-hoc
+     * checks.
+     * <p>
+     * With the system property {@code conni.cluster.address}, the agent joins the cluster of the agents listed by
+     * {@code conni.cluster.peers} and only checks its share of the targets of the configuration file. With the system
+     * property {@code conni.collector.url}, the results of the checks are also sent to this collector.
+     * <p>
+     * With the arguments {@code check <file>}, the targets of the file are checked once, without the tray icon and the
+     * history, and Conni exits with the code given by {@link BatchCheck}. With the arguments
+     * {@code collect <host:port>}, Conni only collects the results sent by the agents into its history, served with the
+     * reports on this address.
+     */
+    public static void main(final String[] args)
+            throws InvalidRequestException, IOException, InvalidConfigurationException {
+
+        if (args.length > 0 && BATCH_COMMAND.equals(args[0])) {
+            System.exit(BatchCheck.run(Arrays.copyOfRange(args, 1, args.length), System.out, System.err));
+        }
+        if (args.length > 0 && COLLECT_COMMAND.equals(args[0])) {
+            final InetSocketAddress address;
+            try {
+                if (args.length != 2) {
+                    throw new IllegalArgumentException("The address to collect on is expected");
+                }
+                address = parseAddress(args[1]);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.err.println(COLLECT_USAGE);
+                System.exit(BatchCheck.EXIT_INVALID);
+                return;
+            }
+            collect(address);
+            return;
+        }
+
+        final LatencyBaselines baselines = loadBaselines();
+        final TimeSeriesStore history = openHistory();
+        final WebServer webServer = startWebServer(history);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            close(webServer);
+            saveBaselines(baselines);
+            close(history);
+        }, "conni-shutdown"));
+        final AlertEngine alerts = createAlertEngine();
+        final ResultForwarder forwarder = startForwarder();
+
+        if (args.length > 0) {
+            final long coalescingSlackInMs = Long.getLong(LOW_POWER_SLACK_PROPERTY, 0);
+            final CheckEngine engine = new CheckEngine(coalescingSlackInMs);
+            final HostRateLimiter rateLimiter = createRateLimiter();
+            if (rateLimiter != null) {
+                engine.setRateLimiter(rateLimiter);
+                if (webServer != null) {
+                    new RateLimitApi(rateLimiter).registerOn(webServer);
+                }
+            }
+            final TrayIconUpdater trayIconUpdater = new TrayIconUpdater(baselines);
+            engine.addObserverFactory(target -> trayIconUpdater.observerFor(target.getId()));
+            // The outages of the groups of targets are shown as the root cause of their failures.
+            alerts.addSink(trayIconUpdater);
+            engine.addObserverFactory(
+                    target -> new SeasonalLatencyDetector(baselines.seasonalForTarget(target.getId())));
+            engine.addObserverFactory(alerts::observerFor);
+            engine.addObserverFactory(target -> history.observerFor(target.getId()));
+            if (forwarder != null) {
+                engine.addObserverFactory(target -> forwarder.observerFor(target.getId()));
+            }
+            final Consumer<TargetConfigurationDiff> applier = diff -> {
+                engine.apply(diff);
+                diff.getRemoved().forEach(target -> {
+                    alerts.remove(target.getId());
+                    trayIconUpdater.remove(target.getId());
+                    baselines.remove(target.getId());
+                });
+            };
+            final TargetSharding sharding = startCluster(applier);
+            final TargetConfigurationWatcher watcher = new TargetConfigurationWatcher(Paths.get(args[0]),
+                    sharding == null ? applier : sharding::apply);
+            watcher.reload();
+            // With the low-power profile, the watcher wakes the computer up no more often than the checks.
+            new NetworkWatcher(change -> engine.checkAllNow(),
+                    Math.max(NetworkWatcher.POLL_PERIOD_IN_MS, coalescingSlackInMs)).start();
+            watcher.run();
+        } else {
+            HttpClient httpClient = new HttpClient();
+            httpClient.setQuorumConfirmation(createQuorumConfirmation());
+            httpClient.addObserver(new TrayIconUpdater(baselines).observerFor(HttpClient.DEFAULT_SERVICE_URL));
+            httpClient.addObserver(
+                    new SeasonalLatencyDetector(baselines.seasonalForTarget(HttpClient.DEFAULT_SERVICE_URL)));
+            httpClient.addObserver(alerts.observerFor(HttpClient.DEFAULT_SERVICE_URL));
+            httpClient.addObserver(history.observerFor(HttpClient.DEFAULT_SERVICE_URL));
+            if (forwarder != null) {
+                httpClient.addObserver(forwarder.observerFor(HttpClient.DEFAULT_SERVICE_URL));
+            }
+            final CheckTask task = new CheckTask(httpClient);
+            new NetworkWatcher(change -> task.checkNow()).start();
+            task.run();
+        }
+    }
+
+    /**
+     * Join the cluster if its address is set, so only the targets owned by this agent are checked.
+     *
+     * @return the sharding of the targets, {@code null} without cluster.
+     */
+    private static TargetSharding startCluster(final Consumer<TargetConfigurationDiff> applier) {
+        final String address = System.getProperty(CLUSTER_ADDRESS_PROPERTY);
+        if (address == null || address.isEmpty()) {
+            return null;
+        }
+        final WebServer server;
+        try {
+            server = new WebServer(parseAddress(address), CLUSTER_WORKERS);
+        } catch (IllegalArgumentException e) {
+            LOG.error("The cluster address " + address + " is not valid, all the targets are checked: "
+                    + e.getMessage(), e);
+            return null;
+        }
+        final List<String> peers = new ArrayList<>();
+        for (String peer : System.getProperty(CLUSTER_PEERS_PROPERTY, "").split(",")) {
+            if (!peer.trim().isEmpty()) {
+                peers.add(peer.trim());
+            }
+        }
+        final GossipMembership membership =
+                new GossipMembership(address, peers, GossipMembership.DEFAULT_INTERVAL_IN_MS);
+        final TargetSharding sharding = new TargetSharding(address, applier);
+        new ClusterApi(membership, sharding).registerOn(server);
+        try {
+            server.start();
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.error("The cluster server cannot start on " + address + ", all the targets are checked: "
+                    + e.getMessage(), e);
+            return null;
+        }
+        membership.addListener(sharding::setMembers);
+        membership.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            membership.close();
+            close(server);
+        }, "conni-cluster-shutdown"));
+        return sharding;
+    }
+
+    /**
+     * Collect the results of the agents into the history until Conni is stopped.
+     */
+    private static void collect(final InetSocketAddress address) throws IOException {
+        final TimeSeriesStore history = openHistory();
+        final WebServer server = new WebServer(address, WebServer.DEFAULT_WORKERS);
+        new ReportApi(history).registerOn(server);
+        new CollectorApi(new ResultCollector(history)).registerOn(server);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            close(server);
+            close(history);
+        }, "conni-shutdown"));
+        server.start();
+        LOG.info("Collecting the results of the agents on {}", address);
+        try {
+            // The threads of the server are daemons.
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ResultForwarder startForwarder() {
+        final String url = System.getProperty(COLLECTOR_URL_PROPERTY);
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        String agentId = System.getProperty(CLUSTER_ADDRESS_PROPERTY);
+        if (agentId == null || agentId.isEmpty()) {
+            try {
+                agentId = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                LOG.error("The host name is unknown, the results are sent as localhost: " + e.getMessage(), e);
+                agentId = "localhost";
+            }
+        }
+        final ResultForwarder forwarder = new ResultForwarder(url, agentId);
+        forwarder.start();
+        return forwarder;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the address is not {@code host:port}.
+     */
+    private static InetSocketAddress parseAddress(final String address) {
+        final int separator = address.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("The address " + address + " has no port");
+        }
+        final int port;
+        try {
+            port = Integer.parseInt(address.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The port of the address " + address + " is not valid", e);
+        }
+        return new InetSocketAddress(address.substring(0, separator), port);
+    }
+
+    private static AlertEngine createAlertEngine() {
+        final AlertEngine alerts = new AlertEngine();
+        alerts.addSink(new LogAlertSink());
+        alerts.addSink(new FileAlertSink(ALERTS_FILE));
+        final String webhook = System.getProperty(ALERTS_WEBHOOK_PROPERTY);
+        if (webhook != null && !webhook.isEmpty()) {
+            alerts.addSink(new WebhookAlertSink(webhook));
+        }
+        return alerts;
+    }
+
+    /**
+     * The references confirming the failures of the default service, which alone is not enough to tell that the
+     * connection is down.
+     *
+     * @return the confirmation, {@code null} if the references are not set or not valid.
+     */
+    private static QuorumConfirmation createQuorumConfirmation() {
+        final List<String> referenceUrls = new ArrayList<>();
+        for (String referenceUrl : System.getProperty(QUORUM_REFERENCES_PROPERTY, "").split(",")) {
+            if (!referenceUrl.isEmpty()) {
+                referenceUrls.add(referenceUrl);
+            }
+        }
+        if (referenceUrls.isEmpty()) {
+            return null;
+        }
+        try {
+            final int quorum = Integer.getInteger(QUORUM_PROPERTY, referenceUrls.size() / 2 + 1);
+            return new QuorumConfirmation(referenceUrls, quorum, QUORUM_DEADLINE_IN_MS);
+        } catch (IllegalArgumentException e) {
+            LOG.error("The references are not valid, the failures are not confirmed: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static HostRateLimiter createRateLimiter() {
+        final String rate = System.getProperty(RATE_PER_HOST_PROPERTY);
+        if (rate == null || rate.isEmpty()) {
+            return null;
+        }
+        try {
+            final double ratePerSecond = Double.parseDouble(rate);
+            // A host idle for a second receives the checks of a second at once.
+            return new HostRateLimiter(ratePerSecond, Math.max(1, (int) ratePerSecond));
+        } catch (IllegalArgumentException e) {
+            LOG.error("The rate " + rate + " is not valid, the checks are not limited: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static LatencyBaselines loadBaselines() {
+        try {
+            return LatencyBaselines.load(BASELINES_FILE);
+        } catch (IOException e) {
+            LOG.error("The latency baselines cannot be loaded, they start empty: " + e.getMessage(), e);
+            return new LatencyBaselines();
+        }
+    }
+
+    private static TimeSeriesStore openHistory() {
+        TimeSeriesStore history;
+        try {
+            history = new TimeSeriesStore(HISTORY_DIRECTORY);
+        } catch (IOException e) {
+            LOG.error("The history cannot be loaded, it is kept in memory only: " + e.getMessage(), e);
+            history = new TimeSeriesStore();
+        }
+        history.start();
+        return history;
+    }
+
+    private static WebServer startWebServer(final TimeSeriesStore history) {
+        final Integer port = Integer.getInteger(WEB_PORT_PROPERTY);
+        if (port == null) {
+            return null;
+        }
+        final WebServer server = new WebServer(port);
+        new ReportApi(history).registerOn(server);
+        new CheckApi(new AdHocCheckQueue()).registerOn(server);
+        try {
+            server.start();
+        } catch (IOException e) {
+            LOG.error("The web server cannot start on the port " + port + ": " + e.getMessage(), e);
+            return null;
+        }
+        return server;
+    }
+
+    private static void close(final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    private static void saveBaselines(final LatencyBaselines baselines) {
+        try {
+            baselines.save(BASELINES_FILE);
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+        }
     }
 }
@@ -0,0 +1,69 @@
+package com.ericjesse.conni.alerts;
+
+import java.time.Instant;
+
+/**
+ * Notification of a change of the alert of a target.
+ */
+public final class Alert {
+
+    private final String targetId;
+
+    private final AlertKind kind;
+
+    private final AlertState state;
+
+    private final Instant instant;
+
+    private final String cause;
+
+    public Alert(final String targetId, final AlertKind kind, final AlertState state, final Instant instant,
+            final String cause) {
+        this.targetId = targetId;
+        this.kind = kind;
+        this.state = state;
+        this.instant = instant;
+        this.cause = cause;
+    }
+
+    /**
+     * The target, or the group {@code tag=value} of the {@link AlertKind#OUTAGE}s.
+     */
+    public String getTargetId() {
+        return targetId;
+    }
+
+    public AlertKind getKind() {
+        return kind;
+    }
+
+    /**
+     * State of the target when the alert was raised.
+     */
+    public AlertState getState() {
+        return state;
+    }
+
+    public Instant getInstant() {
+        return instant;
+    }
+
+    /**
+     * Description of the last outcome of the target.
+     */
+    public String getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Alert{");
+        sb.append("targetId='").append(targetId).append('\'');
+        sb.append(", kind=").append(kind);
+        sb.append(", state=").append(state);
+        sb.append(", instant=").append(instant);
+        sb.append(", cause='").append(cause).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
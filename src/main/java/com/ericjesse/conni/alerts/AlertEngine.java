@@ -0,0 +1,210 @@
+package com.ericjesse.conni.alerts;
+
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * AlertEngine turns the outcomes of the checks into alerts delivered to {@link AlertSink}s.
+ * <p>
+ * Each target has its own state machine, fed by an observer of its {@link com.ericjesse.conni.http.HttpClient}
+ * (see {@link #observerFor(Target)}): a target is {@link AlertState#DOWN} after
+ * {@link #DEFAULT_FAILURES_BEFORE_DOWN} failures in a row and {@link AlertState#UP} again after
+ * {@link #DEFAULT_SUCCESSES_BEFORE_UP} successes in a row. A target whose last {@link #DEFAULT_FLAP_WINDOW} checks
+ * change too often is flapping: its changes are not notified until it is stable again.
+ * <p>
+ * The targets sharing a tag form a group, correlated by an {@link OutageCorrelator}: when all the targets of a group
+ * fail, like all the targets behind the same ISP, a single {@link AlertKind#OUTAGE} is notified instead of one alert
+ * per target.
+ * <p>
+ * An outcome costs a few operations on the state of its target and of its groups, whatever the number of targets.
+ * The alerts are rare and delivered by a dedicated thread, so a slow sink does not delay the checks.
+ */
+public class AlertEngine implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AlertEngine.class);
+
+    public static final int DEFAULT_FAILURES_BEFORE_DOWN = 3;
+
+    public static final int DEFAULT_SUCCESSES_BEFORE_UP = 2;
+
+    public static final int DEFAULT_FLAP_WINDOW = 32;
+
+    // Hysteresis: a flapping target has to be clearly more stable to be notified again.
+    private static final double FLAP_START_RATIO = 0.3;
+
+    private static final double FLAP_STOP_RATIO = 0.15;
+
+    private final ConcurrentMap<String, TargetAlerts> targets = new ConcurrentHashMap<>();
+
+    private final OutageCorrelator correlator = new OutageCorrelator();
+
+    private final Map<String, OutageCorrelator.Member> members = new HashMap<>();
+
+    private final List<AlertSink> sinks = new CopyOnWriteArrayList<>();
+
+    private final Executor dispatcher;
+
+    private final Clock clock;
+
+    public AlertEngine() {
+        this(Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "conni-alerts");
+            thread.setDaemon(true);
+            return thread;
+        }), Clock.systemUTC());
+    }
+
+    // Visible for tests.
+    AlertEngine(final Executor dispatcher, final Clock clock) {
+        this.dispatcher = dispatcher;
+        this.clock = clock;
+    }
+
+    public void addSink(final AlertSink sink) {
+        if (sink != null) {
+            sinks.add(sink);
+        }
+    }
+
+    /**
+     * Observer feeding the state machine of a target and the groups of its tags, to add to the client checking it.
+     * A target already known keeps its state, its groups are replaced.
+     */
+    public ResponseObserver observerFor(final Target target) {
+        return observerFor(target.getId(), target.getTags());
+    }
+
+    /**
+     * Observer feeding the state machine of a target without tag, to add to the client checking it.
+     */
+    public ResponseObserver observerFor(final String targetId) {
+        return observerFor(targetId, Collections.emptyMap());
+    }
+
+    private synchronized ResponseObserver observerFor(final String targetId, final Map<String, String> tags) {
+        final TargetAlerts alerts = targets.computeIfAbsent(targetId, id -> new TargetAlerts(id,
+                DEFAULT_FAILURES_BEFORE_DOWN, DEFAULT_SUCCESSES_BEFORE_UP, DEFAULT_FLAP_WINDOW, FLAP_START_RATIO,
+                FLAP_STOP_RATIO));
+        final OutageCorrelator.Member previous = members.remove(targetId);
+        if (previous != null) {
+            correlator.remove(previous, clock.instant(), this::notify);
+        }
+        final OutageCorrelator.Member member = correlator.add(tags, clock.instant(), this::notify);
+        members.put(targetId, member);
+        return new AlertObserver(alerts, member);
+    }
+
+    /**
+     * State of a target, {@link AlertState#UP} for an unknown target.
+     */
+    public AlertState getState(final String targetId) {
+        final TargetAlerts alerts = targets.get(targetId);
+        return alerts == null ? AlertState.UP : alerts.getState();
+    }
+
+    public boolean isFlapping(final String targetId) {
+        final TargetAlerts alerts = targets.get(targetId);
+        return alerts != null && alerts.isFlapping();
+    }
+
+    /**
+     * The groups whose targets all fail, as {@code tag=value}.
+     */
+    public List<String> getOutages() {
+        return correlator.getOutages();
+    }
+
+    /**
+     * Forget the state of a target that is not checked anymore.
+     */
+    public synchronized void remove(final String targetId) {
+        targets.remove(targetId);
+        final OutageCorrelator.Member member = members.remove(targetId);
+        if (member != null) {
+            correlator.remove(member, clock.instant(), this::notify);
+        }
+    }
+
+    private void notify(final Alert alert) {
+        try {
+            dispatcher.execute(() -> deliver(alert));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("The alert {} is not delivered, the engine is closed", alert);
+        }
+    }
+
+    private void deliver(final Alert alert) {
+        for (AlertSink sink : sinks) {
+            try {
+                sink.send(alert);
+            } catch (IOException | RuntimeException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (dispatcher instanceof ExecutorService) {
+            ((ExecutorService) dispatcher).shutdown();
+        }
+    }
+
+    private final class AlertObserver implements ResponseObserver {
+
+        private final TargetAlerts alerts;
+
+        private final OutageCorrelator.Member member;
+
+        private AlertObserver(final TargetAlerts alerts, final OutageCorrelator.Member member) {
+            this.alerts = alerts;
+            this.member = member;
+        }
+
+        @Override
+        public ConniError processError(final ConniError error) {
+            record(true, error.getClass().getSimpleName());
+            return error;
+        }
+
+        @Override
+        public HttpResponse processResponse(final HttpResponse response) {
+            // The same rule as the period of the checks: a status outside 2xx and 3xx is a failure.
+            final boolean failure = response.getStatusCode() < 200 || response.getStatusCode() >= 400;
+            record(failure, "HTTP " + response.getStatusCode() + " " + response.getReasonPhrase());
+            return response;
+        }
+
+        private void record(final boolean failure, final String cause) {
+            final Instant instant = clock.instant();
+            // The groups first, so the first failure of an outage is already suppressed.
+            final boolean suppressed = correlator.record(member, failure, instant, AlertEngine.this::notify);
+            alerts.record(failure, cause, instant, suppressed, AlertEngine.this::notify);
+        }
+
+        @Override
+        public int getOrder() {
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.ericjesse.conni.alerts;
+
+/**
+ * Kind of the notifications sent to the {@link AlertSink}s.
+ */
+public enum AlertKind {
+
+    /**
+     * The target is down.
+     */
+    DOWN,
+
+    /**
+     * The target is up again after a {@link #DOWN}.
+     */
+    UP,
+
+    /**
+     * The target goes up and down too often to notify each change, the changes are not notified until it is stable.
+     */
+    FLAPPING,
+
+    /**
+     * The target does not flap anymore.
+     */
+    STABLE,
+
+    /**
+     * All the targets of a group fail, the group is the root cause of their failures and their own alerts are
+     * suppressed. The target of the alert is the group, as {@code tag=value}.
+     */
+    OUTAGE,
+
+    /**
+     * A target of a group in {@link #OUTAGE} succeeds again, the alerts of the others are not suppressed anymore.
+     */
+    OUTAGE_OVER
+}
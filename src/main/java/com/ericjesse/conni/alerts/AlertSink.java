@@ -0,0 +1,12 @@
+package com.ericjesse.conni.alerts;
+
+import java.io.IOException;
+
+/**
+ * Destination of the alerts. The alerts are delivered one at a time, outside of the threads of the checks, so a
+ * sink can block.
+ */
+public interface AlertSink {
+
+    void send(Alert alert) throws IOException;
+}
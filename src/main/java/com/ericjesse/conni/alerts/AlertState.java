@@ -0,0 +1,18 @@
+package com.ericjesse.conni.alerts;
+
+/**
+ * State of the alert of a target.
+ * <p>
+ * A failure moves an up target to {@link #SUSPECT}; it is {@link #DOWN} only after several failures in a row. A
+ * success moves a down target to {@link #RECOVERING}; it is {@link #UP} again only after several successes in a row.
+ */
+public enum AlertState {
+
+    UP,
+
+    SUSPECT,
+
+    DOWN,
+
+    RECOVERING
+}
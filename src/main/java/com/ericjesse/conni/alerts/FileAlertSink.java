@@ -0,0 +1,35 @@
+package com.ericjesse.conni.alerts;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+/**
+ * Sink appending the alerts to a file, one tab-separated line per alert: instant, target, kind, state and cause.
+ */
+public class FileAlertSink implements AlertSink {
+
+    private final Path file;
+
+    public FileAlertSink(final Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void send(final Alert alert) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, Collections.singletonList(format(alert)), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // Visible for tests.
+    static String format(final Alert alert) {
+        return String.join("\t", alert.getInstant().toString(), alert.getTargetId(), alert.getKind().name(),
+                alert.getState().name(), String.valueOf(alert.getCause()).replaceAll("\\s", " "));
+    }
+}
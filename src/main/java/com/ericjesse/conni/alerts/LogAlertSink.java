@@ -0,0 +1,21 @@
+package com.ericjesse.conni.alerts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sink writing the alerts to the log, as warnings when a target goes down or flaps.
+ */
+public class LogAlertSink implements AlertSink {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogAlertSink.class);
+
+    @Override
+    public void send(final Alert alert) {
+        if (alert.getKind() == AlertKind.DOWN || alert.getKind() == AlertKind.FLAPPING) {
+            LOG.warn("The target {} is {}: {}", alert.getTargetId(), alert.getKind(), alert.getCause());
+        } else {
+            LOG.info("The target {} is {}: {}", alert.getTargetId(), alert.getKind(), alert.getCause());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.ericjesse.conni.alerts;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * OutageCorrelator tells a whole group of targets failing, like all the targets behind the same ISP, from one
+ * target failing.
+ * <p>
+ * Each tag {@code name=value} of the targets is a group. The last outcome of each target is one bit of a bit set and
+ * each group counts its members and its failing members, so an outcome only updates the groups of its target when
+ * it differs from the previous one. A group of at least {@link #MIN_GROUP_SIZE} targets whose last outcomes all
+ * failed is an outage: it is notified once as the root cause, and the alerts of its members are suppressed until
+ * one of them succeeds again.
+ */
+final class OutageCorrelator {
+
+    static final int MIN_GROUP_SIZE = 2;
+
+    private static final Group[] NO_GROUP = new Group[0];
+
+    private final Map<String, Group> groups = new HashMap<>();
+
+    private final BitSet failing = new BitSet();
+
+    // Bits of the removed targets, reused by the next ones.
+    private final Deque<Integer> freeBits = new ArrayDeque<>();
+
+    private int nextBit;
+
+    /**
+     * Add a target to the groups of its tags, the outages of these groups are over as the target is not failing.
+     *
+     * @return the member representing the target in its groups.
+     */
+    synchronized Member add(final Map<String, String> tags, final Instant instant, final Consumer<Alert> notifier) {
+        final Group[] memberGroups = tags.isEmpty() ? NO_GROUP : new Group[tags.size()];
+        int i = 0;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            final Group group = groups.computeIfAbsent(tag.getKey() + "=" + tag.getValue(), Group::new);
+            group.members++;
+            update(group, instant, notifier);
+            memberGroups[i++] = group;
+        }
+        final Integer freeBit = freeBits.poll();
+        return new Member(freeBit == null ? nextBit++ : freeBit, memberGroups);
+    }
+
+    /**
+     * Remove a target from its groups, their outages are updated.
+     */
+    synchronized void remove(final Member member, final Instant instant, final Consumer<Alert> notifier) {
+        if (member.groups == null) {
+            return;
+        }
+        final boolean wasFailing = failing.get(member.bit);
+        for (Group group : member.groups) {
+            group.members--;
+            if (wasFailing) {
+                group.failing--;
+            }
+            if (group.members == 0) {
+                groups.remove(group.key);
+            }
+            update(group, instant, notifier);
+        }
+        failing.clear(member.bit);
+        freeBits.push(member.bit);
+        // A check still running for the removed target is ignored.
+        member.groups = null;
+    }
+
+    /**
+     * Record the outcome of a check of a target and notify the outages starting or ending.
+     *
+     * @return whether one of the groups of the target is an outage, so its own alerts are suppressed.
+     */
+    synchronized boolean record(final Member member, final boolean failure, final Instant instant,
+            final Consumer<Alert> notifier) {
+        if (member.groups == null) {
+            return false;
+        }
+        if (failing.get(member.bit) != failure) {
+            failing.set(member.bit, failure);
+            for (Group group : member.groups) {
+                group.failing += failure ? 1 : -1;
+                update(group, instant, notifier);
+            }
+        }
+        for (Group group : member.groups) {
+            if (group.outage) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The groups in outage, as {@code name=value}.
+     */
+    synchronized List<String> getOutages() {
+        final List<String> outages = new ArrayList<>();
+        groups.values().stream().filter(group -> group.outage).forEach(group -> outages.add(group.key));
+        return outages;
+    }
+
+    private static void update(final Group group, final Instant instant, final Consumer<Alert> notifier) {
+        final boolean outage = group.members >= MIN_GROUP_SIZE && group.failing == group.members;
+        if (outage != group.outage) {
+            group.outage = outage;
+            notifier.accept(outage ?
+                    new Alert(group.key, AlertKind.OUTAGE, AlertState.DOWN, instant,
+                            "All the " + group.members + " targets tagged " + group.key + " fail") :
+                    new Alert(group.key, AlertKind.OUTAGE_OVER, AlertState.UP, instant,
+                            group.failing + " of the " + group.members + " targets tagged " + group.key + " fail"));
+        }
+    }
+
+    /**
+     * A target in its groups.
+     */
+    static final class Member {
+
+        private final int bit;
+
+        // Guarded by the correlator, null once removed.
+        private Group[] groups;
+
+        private Member(final int bit, final Group[] groups) {
+            this.bit = bit;
+            this.groups = groups;
+        }
+    }
+
+    private static final class Group {
+
+        private final String key;
+
+        private int members;
+
+        private int failing;
+
+        private boolean outage;
+
+        private Group(final String key) {
+            this.key = key;
+        }
+    }
+}
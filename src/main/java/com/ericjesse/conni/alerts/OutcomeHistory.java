@@ -0,0 +1,47 @@
+package com.ericjesse.conni.alerts;
+
+/**
+ * The last outcomes of a target, one bit per check, to tell how often it changes between success and failure.
+ */
+final class OutcomeHistory {
+
+    static final int MAX_SIZE = Long.SIZE;
+
+    private final int size;
+
+    // The last outcome is the lowest bit, a failure is 1.
+    private long outcomes;
+
+    private int count;
+
+    OutcomeHistory(final int size) {
+        if (size < 2 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("The history keeps between 2 and " + MAX_SIZE + " outcomes");
+        }
+        this.size = size;
+    }
+
+    void add(final boolean failure) {
+        outcomes = (outcomes << 1) | (failure ? 1 : 0);
+        if (count < size) {
+            count++;
+        }
+    }
+
+    boolean isFull() {
+        return count == size;
+    }
+
+    /**
+     * Ratio of the consecutive outcomes that differ, between 0 for a stable target and 1 when each check has the
+     * opposite result of the previous one.
+     */
+    double changeRatio() {
+        if (count < 2) {
+            return 0;
+        }
+        // Each bit compared with the previous outcome, on the count - 1 lowest bits.
+        final long changes = (outcomes ^ (outcomes >>> 1)) & (-1L >>> (Long.SIZE - count + 1));
+        return Long.bitCount(changes) / (double) (count - 1);
+    }
+}
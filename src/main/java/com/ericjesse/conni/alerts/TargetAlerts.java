@@ -0,0 +1,120 @@
+package com.ericjesse.conni.alerts;
+
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * State machine of the alert of a target, updated in constant time by each outcome.
+ */
+final class TargetAlerts {
+
+    private final String targetId;
+
+    private final int failuresBeforeDown;
+
+    private final int successesBeforeUp;
+
+    private final double flapStartRatio;
+
+    private final double flapStopRatio;
+
+    private final OutcomeHistory history;
+
+    private AlertState state = AlertState.UP;
+
+    // Number of identical outcomes in a row.
+    private int streak;
+
+    private boolean flapping;
+
+    // Deduplication: only a change of the notified state is sent.
+    private boolean notifiedDown;
+
+    TargetAlerts(final String targetId, final int failuresBeforeDown, final int successesBeforeUp,
+            final int flapWindow, final double flapStartRatio, final double flapStopRatio) {
+        this.targetId = targetId;
+        this.failuresBeforeDown = failuresBeforeDown;
+        this.successesBeforeUp = successesBeforeUp;
+        this.flapStartRatio = flapStartRatio;
+        this.flapStopRatio = flapStopRatio;
+        this.history = new OutcomeHistory(flapWindow);
+    }
+
+    synchronized AlertState getState() {
+        return state;
+    }
+
+    synchronized boolean isFlapping() {
+        return flapping;
+    }
+
+    /**
+     * Apply the outcome of a check and send the resulting alerts, if any.
+     *
+     * @param suppressed whether a group of the target is in outage: the state is updated but not notified, it will
+     *                   be if it still differs from the last state notified once the outage is over.
+     */
+    synchronized void record(final boolean failure, final String cause, final Instant instant,
+            final boolean suppressed, final Consumer<Alert> notifier) {
+        history.add(failure);
+        transition(failure);
+        if (suppressed) {
+            return;
+        }
+
+        final double changeRatio = history.changeRatio();
+        if (!flapping && history.isFull() && changeRatio >= flapStartRatio) {
+            flapping = true;
+            notifier.accept(new Alert(targetId, AlertKind.FLAPPING, state, instant, cause));
+        } else if (flapping && changeRatio <= flapStopRatio) {
+            flapping = false;
+            notifier.accept(new Alert(targetId, AlertKind.STABLE, state, instant, cause));
+        }
+        if (flapping) {
+            return;
+        }
+        // A target recovering or suspect keeps the last state notified, until it is clearly up or down.
+        if (!notifiedDown && state == AlertState.DOWN) {
+            notifiedDown = true;
+            notifier.accept(new Alert(targetId, AlertKind.DOWN, state, instant, cause));
+        } else if (notifiedDown && state == AlertState.UP) {
+            notifiedDown = false;
+            notifier.accept(new Alert(targetId, AlertKind.UP, state, instant, cause));
+        }
+    }
+
+    private void transition(final boolean failure) {
+        switch (state) {
+            case UP:
+                if (failure) {
+                    streak = 1;
+                    state = streak >= failuresBeforeDown ? AlertState.DOWN : AlertState.SUSPECT;
+                }
+                break;
+            case SUSPECT:
+                if (failure) {
+                    streak++;
+                    state = streak >= failuresBeforeDown ? AlertState.DOWN : AlertState.SUSPECT;
+                } else {
+                    state = AlertState.UP;
+                }
+                break;
+            case DOWN:
+                if (!failure) {
+                    streak = 1;
+                    state = streak >= successesBeforeUp ? AlertState.UP : AlertState.RECOVERING;
+                }
+                break;
+            case RECOVERING:
+                if (failure) {
+                    state = AlertState.DOWN;
+                } else {
+                    streak++;
+                    state = streak >= successesBeforeUp ? AlertState.UP : AlertState.RECOVERING;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown state " + state);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.ericjesse.conni.alerts;
+
+import com.ericjesse.conni.json.JsonStrings;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sink posting each alert as a JSON object to a webhook, typically a local service forwarding the notifications.
+ */
+public class WebhookAlertSink implements AlertSink {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final int TIMEOUT_IN_MS = 5_000;
+
+    private final String url;
+
+    private final OkHttpClient client;
+
+    public WebhookAlertSink(final String url) {
+        this.url = url;
+        this.client = new OkHttpClient.Builder()
+                .connectTimeout(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public void send(final Alert alert) throws IOException {
+        final Request request = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(JSON, toJson(alert)))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("The webhook " + url + " rejected the alert: " + response.code());
+            }
+        }
+    }
+
+    // Visible for tests.
+    static String toJson(final Alert alert) {
+        return "{\"target\":" + JsonStrings.quote(alert.getTargetId())
+                + ",\"kind\":" + JsonStrings.quote(alert.getKind().name())
+                + ",\"state\":" + JsonStrings.quote(alert.getState().name())
+                + ",\"instant\":" + JsonStrings.quote(alert.getInstant().toString())
+                + ",\"cause\":" + JsonStrings.quote(alert.getCause()) + "}";
+    }
+}
@@ -0,0 +1,372 @@
+package com.ericjesse.conni.cluster;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * GossipMembership keeps the list of the agents of a cluster up to date without any central registry.
+ * <p>
+ * Each agent is known by its address {@code host:port} and has a heartbeat, a counter it increments at each round.
+ * At each round, an agent sends its table of the members to one of them chosen at random, or to one of the static
+ * peers while it knows none, and merges the table it gets back: the entry with the highest heartbeat wins. The news
+ * reach all the agents in a number of rounds growing with the logarithm of their number.
+ * <p>
+ * A member whose heartbeat did not move for the failure timeout is considered down. A member which stops sends a last
+ * round telling it left, so the others do not wait for the timeout. The heartbeat of an agent starts from the wall
+ * clock, so an agent restarted with the same address is newer than the entries left by its previous run. The members
+ * down or left are removed from the table once they have been silent for {@link #REMOVAL_ROUNDS} rounds, and their
+ * old entries still gossiped by the other agents are ignored for as long: only a newer heartbeat brings them back.
+ * <p>
+ * The listeners receive the members up, this agent included, each time they change.
+ */
+public class GossipMembership implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GossipMembership.class);
+
+    public static final String GOSSIP_PATH = "/api/cluster/gossip";
+
+    public static final long DEFAULT_INTERVAL_IN_MS = 1_000;
+
+    private static final MediaType TEXT = MediaType.parse("text/plain; charset=utf-8");
+
+    // Rounds without news after which a member is considered down.
+    private static final int FAILURE_ROUNDS = 5;
+
+    /**
+     * Rounds without news after which a member down or left is removed from the table.
+     */
+    public static final int REMOVAL_ROUNDS = 60;
+
+    /**
+     * States of a member.
+     */
+    public enum State {
+        UP, DOWN, LEFT
+    }
+
+    private final String self;
+
+    private final List<String> peers;
+
+    private final long intervalInMs;
+
+    private final long failureTimeoutInNs;
+
+    private final long removalTimeoutInNs;
+
+    private final LongSupplier nanoClock;
+
+    private final OkHttpClient client;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "conni-gossip");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Consumer<Set<String>>> listeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by this.
+    private final Map<String, Member> members = new HashMap<>();
+
+    // The last entries of the members removed, updated at the time of the removal. Guarded by this.
+    private final Map<String, Member> removed = new HashMap<>();
+
+    // The members up given to the listeners the last time. Guarded by this.
+    private Set<String> notified = Collections.emptySet();
+
+    /**
+     * @param self         the address of this agent, as the other agents reach it.
+     * @param peers        the addresses of the agents to contact while no other member is known.
+     * @param intervalInMs the time between two rounds.
+     */
+    public GossipMembership(final String self, final List<String> peers, final long intervalInMs) {
+        this(self, peers, intervalInMs, System::nanoTime);
+    }
+
+    // Visible for tests.
+    GossipMembership(final String self, final List<String> peers, final long intervalInMs,
+            final LongSupplier nanoClock) {
+        this.self = self;
+        this.peers = new ArrayList<>(peers);
+        this.peers.remove(self);
+        this.intervalInMs = intervalInMs;
+        this.failureTimeoutInNs = TimeUnit.MILLISECONDS.toNanos(FAILURE_ROUNDS * intervalInMs);
+        this.removalTimeoutInNs = TimeUnit.MILLISECONDS.toNanos(REMOVAL_ROUNDS * intervalInMs);
+        this.nanoClock = nanoClock;
+        this.client = new OkHttpClient.Builder()
+                .connectTimeout(intervalInMs, TimeUnit.MILLISECONDS)
+                .readTimeout(intervalInMs, TimeUnit.MILLISECONDS)
+                .build();
+        members.put(self, new Member(System.currentTimeMillis(), false, nanoClock.getAsLong()));
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    /**
+     * Add a listener of the members up, called at once with the current ones.
+     */
+    public void addListener(final Consumer<Set<String>> listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+            listener.accept(getUpMembers());
+        }
+    }
+
+    /**
+     * Start the rounds of gossip.
+     */
+    public void start() {
+        synchronized (this) {
+            notified = getUpMembers();
+        }
+        scheduler.scheduleWithFixedDelay(this::round, 0, intervalInMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void round() {
+        try {
+            final String peer;
+            final String table;
+            synchronized (this) {
+                members.get(self).heartbeat++;
+                expire();
+                peer = pickPeer();
+                table = encode();
+            }
+            if (peer != null) {
+                exchange(peer, table);
+            }
+            notifyIfChanged();
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A member up or down chosen at random, so the members down are tried again, or a static peer if none.
+     */
+    private String pickPeer() {
+        final List<String> candidates = new ArrayList<>();
+        members.forEach((id, member) -> {
+            if (!id.equals(self) && !member.left) {
+                candidates.add(id);
+            }
+        });
+        if (candidates.isEmpty()) {
+            candidates.addAll(peers);
+        }
+        return candidates.isEmpty() ? null : candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+
+    private void exchange(final String peer, final String table) {
+        final Request request = new Request.Builder()
+                .url("http://" + peer + GOSSIP_PATH)
+                .post(RequestBody.create(TEXT, table))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (response.isSuccessful()) {
+                merge(response.body().string());
+            } else {
+                LOG.debug("The agent {} rejected the gossip: {}", peer, response.code());
+            }
+        } catch (IOException e) {
+            LOG.debug("The agent {} cannot be reached: {}", peer, e.getMessage());
+        }
+    }
+
+    /**
+     * Merge the table of another agent and answer the table of this one, see {@link #GOSSIP_PATH}.
+     *
+     * @throws IllegalArgumentException if the table is not valid.
+     */
+    public String receive(final String table) {
+        merge(table);
+        notifyIfChanged();
+        synchronized (this) {
+            return encode();
+        }
+    }
+
+    /**
+     * Merge a table of members, one per line: {@code <address> <heartbeat> up|left}. Nothing is merged if a line is
+     * not valid.
+     */
+    private void merge(final String table) {
+        final List<String> ids = new ArrayList<>();
+        final List<Member> entries = new ArrayList<>();
+        for (String line : table.split("\n")) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            final String[] fields = line.trim().split(" ");
+            if (fields.length != 3 || !"up".equals(fields[2]) && !"left".equals(fields[2])) {
+                throw new IllegalArgumentException("The member " + line + " is not valid");
+            }
+            ids.add(fields[0]);
+            entries.add(new Member(Long.parseLong(fields[1]), "left".equals(fields[2]), 0));
+        }
+        final long nowInNs = nanoClock.getAsLong();
+        synchronized (this) {
+            for (int i = 0; i < ids.size(); i++) {
+                final String id = ids.get(i);
+                final long heartbeat = entries.get(i).heartbeat;
+                final boolean left = entries.get(i).left;
+                final Member member = members.get(id);
+                if (id.equals(self)) {
+                    // This agent is the only one to tell about itself, it moves past an entry of a previous run.
+                    if (heartbeat > member.heartbeat) {
+                        member.heartbeat = heartbeat + 1;
+                    }
+                } else if (member == null) {
+                    final Member last = removed.get(id);
+                    if (last == null || heartbeat > last.heartbeat) {
+                        removed.remove(id);
+                        members.put(id, new Member(heartbeat, left, nowInNs));
+                    }
+                } else if (heartbeat > member.heartbeat) {
+                    member.heartbeat = heartbeat;
+                    member.left = left;
+                    member.updatedAtInNs = nowInNs;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the members without news for {@link #REMOVAL_ROUNDS} rounds, so they are not gossiped forever, and forget
+     * the ones removed as long ago.
+     */
+    // Visible for tests.
+    synchronized void expire() {
+        final long nowInNs = nanoClock.getAsLong();
+        removed.values().removeIf(member -> nowInNs - member.updatedAtInNs >= removalTimeoutInNs);
+        final Iterator<Map.Entry<String, Member>> entries = members.entrySet().iterator();
+        while (entries.hasNext()) {
+            final Map.Entry<String, Member> entry = entries.next();
+            final Member member = entry.getValue();
+            if (!entry.getKey().equals(self) && nowInNs - member.updatedAtInNs >= removalTimeoutInNs) {
+                entries.remove();
+                removed.put(entry.getKey(), new Member(member.heartbeat, member.left, nowInNs));
+            }
+        }
+    }
+
+    private String encode() {
+        final StringBuilder sb = new StringBuilder();
+        members.forEach((id, member) -> sb.append(id).append(' ').append(member.heartbeat)
+                .append(member.left ? " left\n" : " up\n"));
+        return sb.toString();
+    }
+
+    private void notifyIfChanged() {
+        // The listeners get the changes one at a time and in order, whatever the thread noticing them.
+        synchronized (listeners) {
+            final Set<String> up;
+            synchronized (this) {
+                up = getUpMembers();
+                if (up.equals(notified)) {
+                    return;
+                }
+                LOG.info("The members of the cluster changed from {} to {}", notified, up);
+                notified = up;
+            }
+            listeners.forEach(listener -> listener.accept(up));
+        }
+    }
+
+    /**
+     * The members up, this agent included, sorted.
+     */
+    public synchronized Set<String> getUpMembers() {
+        final long nowInNs = nanoClock.getAsLong();
+        final Set<String> up = new TreeSet<>();
+        members.forEach((id, member) -> {
+            if (stateOf(id, member, nowInNs) == State.UP) {
+                up.add(id);
+            }
+        });
+        return Collections.unmodifiableSet(up);
+    }
+
+    /**
+     * The state of all the known members, sorted by address.
+     */
+    public synchronized Map<String, State> getMembers() {
+        final long nowInNs = nanoClock.getAsLong();
+        final Map<String, State> states = new TreeMap<>();
+        members.forEach((id, member) -> states.put(id, stateOf(id, member, nowInNs)));
+        return Collections.unmodifiableMap(states);
+    }
+
+    private State stateOf(final String id, final Member member, final long nowInNs) {
+        if (member.left) {
+            return State.LEFT;
+        }
+        return id.equals(self) || nowInNs - member.updatedAtInNs < failureTimeoutInNs ? State.UP : State.DOWN;
+    }
+
+    /**
+     * Stop the rounds and tell the members up that this agent left.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        final Set<String> targets = new LinkedHashSet<>();
+        final String table;
+        synchronized (this) {
+            final Member member = members.get(self);
+            member.heartbeat++;
+            member.left = true;
+            targets.addAll(getUpMembers());
+            table = encode();
+        }
+        targets.remove(self);
+        targets.forEach(peer -> exchange(peer, table));
+    }
+
+    /**
+     * Entry of the table of the members.
+     */
+    private static final class Member {
+
+        private long heartbeat;
+
+        private boolean left;
+
+        // Local time of the last increase of the heartbeat.
+        private long updatedAtInNs;
+
+        private Member(final long heartbeat, final boolean left, final long updatedAtInNs) {
+            this.heartbeat = heartbeat;
+            this.left = left;
+            this.updatedAtInNs = updatedAtInNs;
+        }
+    }
+}
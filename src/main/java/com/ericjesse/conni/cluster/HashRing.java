@@ -0,0 +1,111 @@
+package com.ericjesse.conni.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Consistent hashing of the targets over the agents of a cluster.
+ * <p>
+ * Each agent is placed at many points of a ring of 64-bit hashes, its virtual nodes, and a target belongs to the
+ * agent of the first point following the hash of its id. When an agent joins or leaves, only the targets of the ranges
+ * it takes or gives back change of owner, about one target out of the number of agents, and the virtual nodes spread
+ * these ranges evenly over the other agents.
+ * <p>
+ * The ring is immutable, a new one is built when the members change. The points are kept in a sorted array, so finding
+ * the owner of a target is a binary search without allocation.
+ */
+public final class HashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final List<String> members;
+
+    // The hashes of the virtual nodes, sorted, and the index of their member.
+    private final long[] points;
+
+    private final int[] owners;
+
+    public HashRing(final Collection<String> members) {
+        this(members, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param members      the ids of the agents.
+     * @param virtualNodes the number of points of each agent on the ring.
+     */
+    public HashRing(final Collection<String> members, final int virtualNodes) {
+        this.members = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(members)));
+        final int size = this.members.size() * virtualNodes;
+        final long[] hashes = new long[size];
+        final Integer[] order = new Integer[size];
+        for (int m = 0; m < this.members.size(); m++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                final int index = m * virtualNodes + v;
+                hashes[index] = hash(this.members.get(m) + '#' + v);
+                order[index] = index;
+            }
+        }
+        // Sorted by hash, the member of the smallest id first on collision so all the agents build the same ring.
+        Arrays.sort(order, (a, b) -> {
+            final int byHash = Long.compare(hashes[a], hashes[b]);
+            return byHash != 0 ? byHash : Integer.compare(a, b);
+        });
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            final int index = order[i];
+            points[i] = hashes[index];
+            owners[i] = index / virtualNodes;
+        }
+    }
+
+    /**
+     * The ids of the agents, sorted.
+     */
+    public List<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * The agent owning a key, {@code null} if the ring is empty.
+     */
+    public String ownerOf(final String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        final long hash = hash(key);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == points.length) {
+                // Past the last point, the ring wraps to the first one.
+                index = 0;
+            }
+        } else {
+            // The first of the equal points.
+            while (index > 0 && points[index - 1] == hash) {
+                index--;
+            }
+        }
+        return members.get(owners[index]);
+    }
+
+    /**
+     * 64-bit hash of a string, FNV-1a over its characters followed by the finalizer of SplitMix64, so close strings
+     * like the virtual nodes of an agent spread over the whole ring.
+     */
+    static long hash(final String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
@@ -0,0 +1,100 @@
+package com.ericjesse.conni.cluster;
+
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.config.TargetConfigurationDiff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * TargetSharding keeps only the targets owned by this agent among the targets of the configuration, and moves them
+ * when the members of the cluster change.
+ * <p>
+ * It sits between the watcher of the configuration and the engine: it receives the diffs of the whole configuration
+ * and the members up of the cluster, and gives the engine the diffs of the owned targets only. The owner of a target
+ * is found by its id on a {@link HashRing} of the members, the same on all the agents once they agree on the members,
+ * so each target is checked by one agent. While the news of a change spread, a target can be checked by two agents
+ * or by none for a few rounds of gossip.
+ */
+public class TargetSharding {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TargetSharding.class);
+
+    private final String self;
+
+    private final Consumer<TargetConfigurationDiff> delegate;
+
+    // All the targets of the configuration, and the ones owned by this agent. Guarded by this.
+    private final Map<String, Target> targets = new HashMap<>();
+
+    private Map<String, Target> owned = Collections.emptyMap();
+
+    private HashRing ring;
+
+    /**
+     * @param self     the id of this agent in the cluster.
+     * @param delegate the receiver of the diffs of the owned targets, usually the engine.
+     */
+    public TargetSharding(final String self, final Consumer<TargetConfigurationDiff> delegate) {
+        this.self = self;
+        this.delegate = delegate;
+        this.ring = new HashRing(Collections.singleton(self));
+    }
+
+    /**
+     * Apply a diff of the whole configuration.
+     */
+    public synchronized void apply(final TargetConfigurationDiff diff) {
+        diff.getRemoved().forEach(target -> targets.remove(target.getId()));
+        diff.getChanged().forEach(target -> targets.put(target.getId(), target));
+        diff.getAdded().forEach(target -> targets.put(target.getId(), target));
+        rebalance();
+    }
+
+    /**
+     * Move the targets after a change of the members up of the cluster.
+     */
+    public synchronized void setMembers(final Set<String> members) {
+        ring = new HashRing(members);
+        rebalance();
+    }
+
+    private void rebalance() {
+        final Map<String, Target> next = new HashMap<>();
+        targets.forEach((id, target) -> {
+            if (self.equals(ring.ownerOf(id))) {
+                next.put(id, target);
+            }
+        });
+        final TargetConfigurationDiff diff = TargetConfigurationDiff.between(owned, next);
+        owned = next;
+        if (!diff.isEmpty()) {
+            LOG.info("{} owns {} targets of {} with {} members", self, owned.size(), targets.size(),
+                    ring.getMembers().size());
+            delegate.accept(diff);
+        }
+    }
+
+    /**
+     * The targets owned by this agent, indexed by id.
+     */
+    public synchronized Map<String, Target> getOwnedTargets() {
+        return Collections.unmodifiableMap(new HashMap<>(owned));
+    }
+
+    public synchronized int getOwnedTargetCount() {
+        return owned.size();
+    }
+
+    /**
+     * Number of targets of the whole configuration.
+     */
+    public synchronized int getTargetCount() {
+        return targets.size();
+    }
+}
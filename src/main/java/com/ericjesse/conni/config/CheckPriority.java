@@ -0,0 +1,49 @@
+package com.ericjesse.conni.config;
+
+/**
+ * Enum representing the priority classes of the targets, from the highest to the lowest.
+ * <p>
+ * Each class has its own dispatcher and its own limits of concurrent requests, so the checks of a class do not wait
+ * behind the checks of another one.
+ */
+public enum CheckPriority {
+
+    /**
+     * Few targets telling whether the connection is up, checked on time even under load.
+     */
+    CRITICAL("critical"),
+
+    /**
+     * The default.
+     */
+    NORMAL("normal"),
+
+    /**
+     * Targets which can wait, like the large transfers, limited to a small share of the requests.
+     */
+    LOW("low");
+
+    private final String value;
+
+    CheckPriority(final String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Find the priority from its value, ignoring the case.
+     *
+     * @throws IllegalArgumentException if the value is unknown.
+     */
+    public static CheckPriority fromValue(final String value) {
+        for (CheckPriority priority : values()) {
+            if (priority.value.equalsIgnoreCase(value)) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("the priority " + value + " is unknown");
+    }
+}
@@ -0,0 +1,17 @@
+package com.ericjesse.conni.config;
+
+/**
+ * Error raised when the target configuration cannot be parsed.
+ */
+public class InvalidConfigurationException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidConfigurationException(final String message) {
+        super(message);
+    }
+
+    public InvalidConfigurationException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,328 @@
+package com.ericjesse.conni.config;
+
+import com.ericjesse.conni.http.CheckMode;
+import com.ericjesse.conni.http.HttpProtocol;
+import com.ericjesse.conni.http.HttpRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Target is one check to run periodically: the request to send, its timeout and its scheduling periods.
+ * <p>
+ * Instances are immutable and compared by value, so a new configuration can be diffed against the running one.
+ */
+public final class Target {
+
+    public static final int DEFAULT_TIMEOUT_IN_MS = 2_000;
+
+    public static final int DEFAULT_PERIOD_IN_MS = 20_000;
+
+    public static final int DEFAULT_FAILURE_PERIOD_IN_MS = 5_000;
+
+    public static final long DEFAULT_UPLOAD_SIZE_IN_BYTES = 10_000_000;
+
+    public static final int DEFAULT_BURST_SIZE = 10;
+
+    private final String id;
+
+    private final HttpRequest request;
+
+    private final int timeoutInMs;
+
+    private final int periodInMs;
+
+    private final int failurePeriodInMs;
+
+    private final HttpProtocol protocol;
+
+    private final CheckMode mode;
+
+    private final long dataBudgetPerHourInBytes;
+
+    private final long uploadSizeInBytes;
+
+    private final int burstSize;
+
+    private final List<String> referenceUrls;
+
+    private final int quorum;
+
+    private final Map<String, String> tags;
+
+    private final String rateKey;
+
+    private final CheckPriority priority;
+
+    private Target(final Builder builder) {
+        this.id = builder.id;
+        this.request = builder.request;
+        this.timeoutInMs = builder.timeoutInMs;
+        this.periodInMs = builder.periodInMs;
+        this.failurePeriodInMs = builder.failurePeriodInMs;
+        this.protocol = builder.protocol;
+        this.mode = builder.mode;
+        this.dataBudgetPerHourInBytes = builder.dataBudgetPerHourInBytes;
+        this.uploadSizeInBytes = builder.uploadSizeInBytes;
+        this.burstSize = builder.burstSize;
+        this.referenceUrls = builder.referenceUrls.isEmpty() ? Collections.emptyList() :
+                Collections.unmodifiableList(new ArrayList<>(builder.referenceUrls));
+        this.quorum = builder.quorum;
+        this.tags = builder.tags.isEmpty() ? Collections.emptyMap() :
+                Collections.unmodifiableMap(new LinkedHashMap<>(builder.tags));
+        this.rateKey = builder.rateKey;
+        this.priority = builder.priority;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    public int getTimeoutInMs() {
+        return timeoutInMs;
+    }
+
+    /**
+     * Period between two checks after a success.
+     */
+    public int getPeriodInMs() {
+        return periodInMs;
+    }
+
+    /**
+     * Period between two checks after a failure.
+     */
+    public int getFailurePeriodInMs() {
+        return failurePeriodInMs;
+    }
+
+    /**
+     * Protocol used to connect to the target.
+     */
+    public HttpProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * What the checks of the target measure.
+     */
+    public CheckMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Bytes the throughput checks can transfer per hour, {@code 0} for no limit.
+     */
+    public long getDataBudgetPerHourInBytes() {
+        return dataBudgetPerHourInBytes;
+    }
+
+    /**
+     * Size of the body sent by the upload checks.
+     */
+    public long getUploadSizeInBytes() {
+        return uploadSizeInBytes;
+    }
+
+    /**
+     * Number of requests measured by each burst check.
+     */
+    public int getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * URLs of the reference endpoints confirming the failures of the checks, empty to report the failures as they
+     * are.
+     */
+    public List<String> getReferenceUrls() {
+        return referenceUrls;
+    }
+
+    /**
+     * Number of references which have to fail to confirm a failure, by default the majority of them.
+     */
+    public int getQuorum() {
+        return quorum > 0 ? quorum : referenceUrls.size() / 2 + 1;
+    }
+
+    /**
+     * Free labels of the target, like the ISP or the region it depends on.
+     */
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Key sharing the rate limit of the checks with the other targets of the same key, {@code null} to share it with
+     * the targets of the same host.
+     */
+    public String getRateKey() {
+        return rateKey;
+    }
+
+    /**
+     * Class of the target, {@link CheckPriority#NORMAL} by default.
+     */
+    public CheckPriority getPriority() {
+        return priority;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Target target = (Target) o;
+        return timeoutInMs == target.timeoutInMs && periodInMs == target.periodInMs
+                && failurePeriodInMs == target.failurePeriodInMs && protocol == target.protocol && mode == target.mode
+                && dataBudgetPerHourInBytes == target.dataBudgetPerHourInBytes
+                && uploadSizeInBytes == target.uploadSizeInBytes && burstSize == target.burstSize
+                && quorum == target.quorum && id.equals(target.id) && request.equals(target.request)
+                && referenceUrls.equals(target.referenceUrls) && tags.equals(target.tags)
+                && Objects.equals(rateKey, target.rateKey) && priority == target.priority;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, request, timeoutInMs, periodInMs, failurePeriodInMs, protocol, mode,
+                dataBudgetPerHourInBytes, uploadSizeInBytes, burstSize, referenceUrls, quorum, tags, rateKey,
+                priority);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Target{");
+        sb.append("id='").append(id).append('\'');
+        sb.append(", url='").append(request.getUrl()).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Builder of {@link Target}, all the values except the id and the request have defaults.
+     */
+    public static final class Builder {
+
+        private final String id;
+
+        private final HttpRequest request;
+
+        private int timeoutInMs = DEFAULT_TIMEOUT_IN_MS;
+
+        private int periodInMs = DEFAULT_PERIOD_IN_MS;
+
+        private int failurePeriodInMs = DEFAULT_FAILURE_PERIOD_IN_MS;
+
+        private HttpProtocol protocol = HttpProtocol.AUTO;
+
+        private CheckMode mode = CheckMode.LATENCY;
+
+        private long dataBudgetPerHourInBytes = 0;
+
+        private long uploadSizeInBytes = DEFAULT_UPLOAD_SIZE_IN_BYTES;
+
+        private int burstSize = DEFAULT_BURST_SIZE;
+
+        private final List<String> referenceUrls = new ArrayList<>();
+
+        private int quorum;
+
+        private final Map<String, String> tags = new LinkedHashMap<>();
+
+        private String rateKey;
+
+        private CheckPriority priority = CheckPriority.NORMAL;
+
+        public Builder(final String id, final HttpRequest request) {
+            this.id = Objects.requireNonNull(id, "id");
+            this.request = Objects.requireNonNull(request, "request");
+        }
+
+        public Builder timeoutInMs(final int timeoutInMs) {
+            this.timeoutInMs = timeoutInMs;
+            return this;
+        }
+
+        public Builder periodInMs(final int periodInMs) {
+            this.periodInMs = periodInMs;
+            return this;
+        }
+
+        public Builder failurePeriodInMs(final int failurePeriodInMs) {
+            this.failurePeriodInMs = failurePeriodInMs;
+            return this;
+        }
+
+        public Builder protocol(final HttpProtocol protocol) {
+            this.protocol = Objects.requireNonNull(protocol, "protocol");
+            return this;
+        }
+
+        public Builder mode(final CheckMode mode) {
+            this.mode = Objects.requireNonNull(mode, "mode");
+            return this;
+        }
+
+        public Builder dataBudgetPerHourInBytes(final long dataBudgetPerHourInBytes) {
+            this.dataBudgetPerHourInBytes = dataBudgetPerHourInBytes;
+            return this;
+        }
+
+        public Builder uploadSizeInBytes(final long uploadSizeInBytes) {
+            this.uploadSizeInBytes = uploadSizeInBytes;
+            return this;
+        }
+
+        public Builder burstSize(final int burstSize) {
+            this.burstSize = burstSize;
+            return this;
+        }
+
+        public Builder referenceUrl(final String referenceUrl) {
+            this.referenceUrls.add(Objects.requireNonNull(referenceUrl, "referenceUrl"));
+            return this;
+        }
+
+        /**
+         * @param quorum the number of references which have to fail to confirm a failure, 0 for the majority.
+         */
+        public Builder quorum(final int quorum) {
+            this.quorum = quorum;
+            return this;
+        }
+
+        public Builder tag(final String name, final String value) {
+            this.tags.put(name, value);
+            return this;
+        }
+
+        /**
+         * @param rateKey the key sharing the rate limit of the checks, {@code null} for the host of the request.
+         */
+        public Builder rateKey(final String rateKey) {
+            this.rateKey = rateKey;
+            return this;
+        }
+
+        public Builder priority(final CheckPriority priority) {
+            this.priority = Objects.requireNonNull(priority, "priority");
+            return this;
+        }
+
+        public Target build() {
+            return new Target(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.ericjesse.conni.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between two versions of the target configuration.
+ * <p>
+ * Only the targets listed in the diff have to be touched by the engine, all the others keep running.
+ */
+public final class TargetConfigurationDiff {
+
+    private final List<Target> added;
+
+    private final List<Target> removed;
+
+    private final List<Target> changed;
+
+    private TargetConfigurationDiff(final List<Target> added, final List<Target> removed, final List<Target> changed) {
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.changed = Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * Compute the diff to go from the current targets to the next ones, in linear time.
+     *
+     * @param current the running targets, indexed by id.
+     * @param next    the newly loaded targets, indexed by id.
+     * @return the diff.
+     */
+    public static TargetConfigurationDiff between(final Map<String, Target> current, final Map<String, Target> next) {
+        final List<Target> added = new ArrayList<>();
+        final List<Target> removed = new ArrayList<>();
+        final List<Target> changed = new ArrayList<>();
+        next.forEach((id, target) -> {
+            final Target existing = current.get(id);
+            if (existing == null) {
+                added.add(target);
+            } else if (!existing.equals(target)) {
+                changed.add(target);
+            }
+        });
+        current.forEach((id, target) -> {
+            if (!next.containsKey(id)) {
+                removed.add(target);
+            }
+        });
+        return new TargetConfigurationDiff(added, removed, changed);
+    }
+
+    public List<Target> getAdded() {
+        return added;
+    }
+
+    public List<Target> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * The new versions of the targets whose id already exists but whose definition is different.
+     */
+    public List<Target> getChanged() {
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TargetConfigurationDiff{added=" + added.size() + ", removed=" + removed.size() + ", changed="
+                + changed.size() + '}';
+    }
+}
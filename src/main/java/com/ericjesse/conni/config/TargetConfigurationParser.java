@@ -0,0 +1,363 @@
+package com.ericjesse.conni.config;
+
+import com.ericjesse.conni.http.CheckMode;
+import com.ericjesse.conni.http.HttpContentType;
+import com.ericjesse.conni.http.HttpHeader;
+import com.ericjesse.conni.http.HttpMethod;
+import com.ericjesse.conni.http.HttpProtocol;
+import com.ericjesse.conni.http.HttpRequest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Streaming parser of the target configuration file.
+ * <p>
+ * The file contains one target per line, the blank lines and the lines starting with {@code #} are ignored:
+ * <pre>
+ * # &lt;id&gt; &lt;url&gt; [&lt;option&gt;=&lt;value&gt;]...
+ * internet https://ericjesse-whatsmyip.herokuapp.com/ip period=20s failure-period=5s
+ * api https://api.local/health method=POST content-type=json body="{\"ping\":true}" header.X-Token=abc tag.isp=home
+ * </pre>
+ * The supported options are {@code method}, {@code content-type} ({@code json}, {@code html} or {@code xml}),
+ * {@code body}, {@code timeout}, {@code period}, {@code failure-period}, {@code protocol} ({@code auto},
+ * {@code http/1.1}, {@code h2} or {@code h2c}), {@code mode} ({@code latency}, {@code download}, {@code upload}
+ * or {@code burst}), {@code budget} (bytes per hour of the throughput checks), {@code upload-size},
+ * {@code burst-size}, {@code references} (comma-separated URLs confirming the failures), {@code quorum} (number of
+ * references which have to fail, by default the majority), {@code rate-key} (key sharing the rate limit of the
+ * checks, by default the host), {@code priority} ({@code critical}, {@code normal} or {@code low}),
+ * {@code header.<name>} and {@code tag.<name>}. The durations are in milliseconds or suffixed with {@code ms},
+ * {@code s}, {@code m} or {@code h}, the sizes in bytes or suffixed with {@code KB}, {@code MB} or {@code GB}. A
+ * value containing spaces is written between double quotes, with {@code \"} and {@code \\} as escapes.
+ * <p>
+ * The lines are tokenized by hand and the targets are emitted one by one, so large files are loaded without
+ * building any intermediate tree.
+ */
+public class TargetConfigurationParser {
+
+    private static final String HEADER_PREFIX = "header.";
+
+    private static final String TAG_PREFIX = "tag.";
+
+    /**
+     * Parse a whole file.
+     *
+     * @param file the configuration file, encoded in UTF-8.
+     * @return the targets in the order of the file, indexed by their id.
+     */
+    public Map<String, Target> parse(final Path file) throws IOException, InvalidConfigurationException {
+        final Map<String, Target> targets = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            parse(reader, target -> targets.put(target.getId(), target));
+        }
+        return targets;
+    }
+
+    /**
+     * Parse the configuration and pass every target to the consumer as soon as its line is read.
+     *
+     * @param reader   the source of the configuration.
+     * @param consumer the receiver of the targets.
+     * @throws InvalidConfigurationException if a line is not valid or if an id is used twice.
+     */
+    public void parse(final Reader reader, final Consumer<Target> consumer)
+            throws IOException, InvalidConfigurationException {
+        final BufferedReader bufferedReader =
+                reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        final Set<String> ids = new HashSet<>();
+        final List<String> tokens = new ArrayList<>();
+        final StringBuilder token = new StringBuilder();
+        String line;
+        int lineNumber = 0;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            tokens.clear();
+            try {
+                tokenize(line, tokens, token);
+                if (tokens.isEmpty()) {
+                    continue;
+                }
+                final Target target = toTarget(tokens);
+                if (!ids.add(target.getId())) {
+                    throw new IllegalArgumentException("the id " + target.getId() + " is already used");
+                }
+                consumer.accept(target);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidConfigurationException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // Visible for tests.
+    void tokenize(final String line, final List<String> tokens, final StringBuilder token) {
+        final int length = line.length();
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '#' && tokens.isEmpty()) {
+                // Comment line.
+                return;
+            }
+            token.setLength(0);
+            boolean quoted = false;
+            while (i < length) {
+                c = line.charAt(i);
+                if (quoted) {
+                    if (c == '\\' && i + 1 < length) {
+                        token.append(line.charAt(++i));
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        token.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (Character.isWhitespace(c)) {
+                    break;
+                } else {
+                    token.append(c);
+                }
+                i++;
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("a quoted value is not closed");
+            }
+            tokens.add(token.toString());
+        }
+    }
+
+    private Target toTarget(final List<String> tokens) {
+        if (tokens.size() < 2) {
+            throw new IllegalArgumentException("the id and the URL are expected");
+        }
+        final String id = tokens.get(0);
+        final String url = tokens.get(1);
+        HttpMethod method = HttpMethod.GET;
+        HttpContentType contentType = HttpContentType.JSON;
+        String body = null;
+        final List<HttpHeader> headers = new ArrayList<>();
+        final Map<String, String> tags = new LinkedHashMap<>();
+        int timeoutInMs = Target.DEFAULT_TIMEOUT_IN_MS;
+        int periodInMs = Target.DEFAULT_PERIOD_IN_MS;
+        int failurePeriodInMs = Target.DEFAULT_FAILURE_PERIOD_IN_MS;
+        HttpProtocol protocol = HttpProtocol.AUTO;
+        CheckMode mode = CheckMode.LATENCY;
+        long dataBudgetPerHourInBytes = 0;
+        long uploadSizeInBytes = Target.DEFAULT_UPLOAD_SIZE_IN_BYTES;
+        int burstSize = Target.DEFAULT_BURST_SIZE;
+        final List<String> referenceUrls = new ArrayList<>();
+        int quorum = 0;
+        String rateKey = null;
+        CheckPriority priority = CheckPriority.NORMAL;
+
+        for (int i = 2; i < tokens.size(); i++) {
+            final String option = tokens.get(i);
+            final int separator = option.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("the option " + option + " is not formatted as name=value");
+            }
+            final String name = option.substring(0, separator);
+            final String value = option.substring(separator + 1);
+            if (name.startsWith(HEADER_PREFIX)) {
+                headers.add(new HttpHeader(name.substring(HEADER_PREFIX.length()), value));
+                continue;
+            } else if (name.startsWith(TAG_PREFIX)) {
+                tags.put(name.substring(TAG_PREFIX.length()), value);
+                continue;
+            }
+            switch (name) {
+                case "method":
+                    method = HttpMethod.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "content-type":
+                    contentType = HttpContentType.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "body":
+                    body = value;
+                    break;
+                case "timeout":
+                    timeoutInMs = parseDurationInMs(value);
+                    break;
+                case "period":
+                    periodInMs = parseDurationInMs(value);
+                    break;
+                case "failure-period":
+                    failurePeriodInMs = parseDurationInMs(value);
+                    break;
+                case "protocol":
+                    protocol = HttpProtocol.fromValue(value);
+                    break;
+                case "mode":
+                    mode = CheckMode.fromValue(value);
+                    break;
+                case "budget":
+                    dataBudgetPerHourInBytes = parseSizeInBytes(value);
+                    break;
+                case "upload-size":
+                    uploadSizeInBytes = parseSizeInBytes(value);
+                    break;
+                case "burst-size":
+                    burstSize = parseCount(value);
+                    break;
+                case "references":
+                    for (String referenceUrl : value.split(",")) {
+                        if (!referenceUrl.isEmpty()) {
+                            referenceUrls.add(referenceUrl);
+                        }
+                    }
+                    break;
+                case "quorum":
+                    quorum = parseCount(value);
+                    break;
+                case "priority":
+                    priority = CheckPriority.fromValue(value);
+                    break;
+                case "rate-key":
+                    rateKey = value.isEmpty() ? null : value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("the option " + name + " is unknown");
+            }
+        }
+
+        final HttpRequest request =
+                new HttpRequest(method, url, body, contentType, headers.toArray(new HttpHeader[headers.size()]));
+        final Target.Builder builder =
+                new Target.Builder(id, request).timeoutInMs(timeoutInMs).periodInMs(periodInMs)
+                        .failurePeriodInMs(failurePeriodInMs).protocol(protocol).mode(mode)
+                        .dataBudgetPerHourInBytes(dataBudgetPerHourInBytes).uploadSizeInBytes(uploadSizeInBytes)
+                        .burstSize(burstSize).quorum(quorum).rateKey(rateKey)
+                        .priority(priority);
+        referenceUrls.forEach(builder::referenceUrl);
+        tags.forEach(builder::tag);
+        final Target target = builder.build();
+        if (!referenceUrls.isEmpty() && target.getQuorum() > referenceUrls.size()) {
+            throw new IllegalArgumentException("the quorum " + quorum + " is larger than the number of references");
+        } else if (referenceUrls.isEmpty() && quorum > 0) {
+            throw new IllegalArgumentException("the quorum requires references");
+        }
+        if (target.getMode() == CheckMode.UPLOAD && target.getDataBudgetPerHourInBytes() > 0
+                && target.getUploadSizeInBytes() > target.getDataBudgetPerHourInBytes()) {
+            // The whole body is taken from the budget at once: the upload would never start.
+            throw new IllegalArgumentException("the upload size " + target.getUploadSizeInBytes()
+                    + " is larger than the budget " + target.getDataBudgetPerHourInBytes());
+        }
+        return target;
+    }
+
+    // Visible for tests.
+    static int parseDurationInMs(final String value) {
+        int unitIndex = value.length();
+        while (unitIndex > 0 && !Character.isDigit(value.charAt(unitIndex - 1))) {
+            unitIndex--;
+        }
+        final long amount;
+        try {
+            amount = Long.parseLong(value.substring(0, unitIndex));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("the duration " + value + " is not valid", e);
+        }
+        final long factor;
+        switch (value.substring(unitIndex)) {
+            case "":
+            case "ms":
+                factor = 1;
+                break;
+            case "s":
+                factor = 1_000;
+                break;
+            case "m":
+                factor = 60_000;
+                break;
+            case "h":
+                factor = 3_600_000;
+                break;
+            default:
+                throw new IllegalArgumentException("the unit of the duration " + value + " is unknown");
+        }
+        if (amount <= 0) {
+            // A period of 0 would check the target without pause.
+            throw new IllegalArgumentException("the duration " + value + " is not positive");
+        }
+        final long durationInMs;
+        try {
+            durationInMs = Math.multiplyExact(amount, factor);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("the duration " + value + " is too long", e);
+        }
+        if (durationInMs > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("the duration " + value + " is too long");
+        }
+        return (int) durationInMs;
+    }
+
+    // Visible for tests.
+    static int parseCount(final String value) {
+        final int count;
+        try {
+            count = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("the number " + value + " is not valid", e);
+        }
+        if (count <= 0) {
+            // The defaults are used when the option is missing: an explicit 0 is a mistake.
+            throw new IllegalArgumentException("the number " + value + " is not positive");
+        }
+        return count;
+    }
+
+    // Visible for tests.
+    static long parseSizeInBytes(final String value) {
+        int unitIndex = value.length();
+        while (unitIndex > 0 && !Character.isDigit(value.charAt(unitIndex - 1))) {
+            unitIndex--;
+        }
+        final long amount;
+        try {
+            amount = Long.parseLong(value.substring(0, unitIndex));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("the size " + value + " is not valid", e);
+        }
+        final long factor;
+        switch (value.substring(unitIndex)) {
+            case "":
+            case "B":
+                factor = 1;
+                break;
+            case "KB":
+                factor = 1_000;
+                break;
+            case "MB":
+                factor = 1_000_000;
+                break;
+            case "GB":
+                factor = 1_000_000_000;
+                break;
+            default:
+                throw new IllegalArgumentException("the unit of the size " + value + " is unknown");
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("the size " + value + " is not positive");
+        }
+        if (amount > Long.MAX_VALUE / factor) {
+            throw new IllegalArgumentException("the size " + value + " is too large");
+        }
+        return amount * factor;
+    }
+}
@@ -0,0 +1,129 @@
+package com.ericjesse.conni.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * TargetConfigurationWatcher reloads the target configuration file when it changes and passes the difference with
+ * the previous version to a listener, usually the check engine.
+ * <p>
+ * The parent folder is watched rather than the file itself, so the editors replacing the file on save are supported.
+ * An invalid file is logged and ignored: the running configuration is kept until the file is fixed.
+ */
+public class TargetConfigurationWatcher implements Runnable, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TargetConfigurationWatcher.class);
+
+    // Time to let the writer finish before reading the file, several events are often sent for one save.
+    private static final long DEBOUNCE_IN_MS = 200;
+
+    private final Path file;
+
+    private final Consumer<TargetConfigurationDiff> listener;
+
+    private final TargetConfigurationParser parser = new TargetConfigurationParser();
+
+    private Map<String, Target> currentTargets = Collections.emptyMap();
+
+    private volatile WatchService watchService;
+
+    private volatile boolean run = true;
+
+    public TargetConfigurationWatcher(final Path file, final Consumer<TargetConfigurationDiff> listener) {
+        this.file = file.toAbsolutePath();
+        this.listener = listener;
+    }
+
+    /**
+     * Read the file and apply its difference with the previously loaded version.
+     *
+     * @return the applied diff, empty if nothing changed.
+     */
+    public synchronized TargetConfigurationDiff reload() throws IOException, InvalidConfigurationException {
+        final long start = System.nanoTime();
+        final Map<String, Target> nextTargets = parser.parse(file);
+        final TargetConfigurationDiff diff = TargetConfigurationDiff.between(currentTargets, nextTargets);
+        currentTargets = nextTargets;
+        if (!diff.isEmpty()) {
+            listener.accept(diff);
+        }
+        LOG.info("{} targets loaded from {} in {} ms: {}", nextTargets.size(), file,
+                (System.nanoTime() - start) / 1_000_000, diff);
+        return diff;
+    }
+
+    public synchronized Map<String, Target> getCurrentTargets() {
+        return currentTargets;
+    }
+
+    /**
+     * Watch the file until {@link #close()} is called or the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        try (WatchService service = file.getFileSystem().newWatchService()) {
+            watchService = service;
+            file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            while (run) {
+                if (isConcerned(service.take())) {
+                    Thread.sleep(DEBOUNCE_IN_MS);
+                    // Discard the events sent while the file was written.
+                    WatchKey pendingKey;
+                    while ((pendingKey = service.poll()) != null) {
+                        pendingKey.pollEvents();
+                        pendingKey.reset();
+                    }
+                    reloadQuietly();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOG.debug("The watch of {} is closed", file);
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            LOG.debug("The watch of {} is interrupted", file);
+            // Clean up state.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isConcerned(final WatchKey key) {
+        boolean concerned = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            concerned |= event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName()
+                    .equals(event.context());
+        }
+        key.reset();
+        return concerned;
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (IOException | InvalidConfigurationException e) {
+            LOG.error("The configuration {} is not applied: {}", file, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        run = false;
+        final WatchService service = watchService;
+        if (service != null) {
+            service.close();
+        }
+    }
+}
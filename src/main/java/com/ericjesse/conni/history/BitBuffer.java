@@ -0,0 +1,82 @@
+package com.ericjesse.conni.history;
+
+import java.util.Arrays;
+
+/**
+ * Growing sequence of bits, written at the end and read from any position. The bits are packed in longs, the first
+ * bit being the most significant one of the first long.
+ */
+final class BitBuffer {
+
+    private long[] words;
+
+    private int size;
+
+    BitBuffer() {
+        this(new long[4], 0);
+    }
+
+    BitBuffer(final long[] words, final int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    /**
+     * Append the lowest bits of a value, the most significant one first.
+     *
+     * @param value the value.
+     * @param bits  the number of bits to append, from 0 to 64.
+     */
+    void write(final long value, final int bits) {
+        if (bits == 0) {
+            return;
+        }
+        final long masked = bits == 64 ? value : value & ((1L << bits) - 1);
+        final int index = size >>> 6;
+        final int free = 64 - (size & 63);
+        if (index + 1 >= words.length) {
+            words = Arrays.copyOf(words, Math.max(words.length * 2, index + 2));
+        }
+        if (bits <= free) {
+            words[index] |= masked << (free - bits);
+        } else {
+            words[index] |= masked >>> (bits - free);
+            words[index + 1] |= masked << (64 - (bits - free));
+        }
+        size += bits;
+    }
+
+    /**
+     * Read bits written before.
+     *
+     * @param position the position of the first bit.
+     * @param bits     the number of bits to read, from 1 to 64.
+     * @return the bits in the lowest bits of the value.
+     */
+    long read(final int position, final int bits) {
+        final int index = position >>> 6;
+        final int free = 64 - (position & 63);
+        final long value;
+        if (bits <= free) {
+            value = words[index] >>> (free - bits);
+        } else {
+            value = words[index] << (bits - free) | words[index + 1] >>> (64 - (bits - free));
+        }
+        return bits == 64 ? value : value & ((1L << bits) - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Release the unused capacity, once the buffer is complete.
+     */
+    void trim() {
+        words = Arrays.copyOf(words, (size + 63) >>> 6);
+    }
+
+    long[] getWords() {
+        return words;
+    }
+}
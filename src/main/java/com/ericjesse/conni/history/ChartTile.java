@@ -0,0 +1,156 @@
+package com.ericjesse.conni.history;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Immutable tile of a chart: the checks of a target during a fixed period, downsampled to {@link #WIDTH} points.
+ * <p>
+ * The tiles of a zoom level cover consecutive periods of {@link #WIDTH} pixels each, aligned on the epoch, so a chart
+ * of any period is made of the same tiles as the charts of the periods around it.
+ */
+public final class ChartTile {
+
+    /**
+     * Number of pixels of a tile, the highest number of its points.
+     */
+    public static final int WIDTH = 256;
+
+    private final String targetId;
+
+    private final int zoom;
+
+    private final long index;
+
+    private final long pixelInMs;
+
+    private final long[] times;
+
+    private final long[] durations;
+
+    private final int[] statuses;
+
+    // Whether the tile is before the last sample of the target: it cannot change anymore.
+    private final boolean complete;
+
+    // Version of the series read, for a tile which is not complete.
+    private final long version;
+
+    ChartTile(final String targetId, final int zoom, final long index, final long pixelInMs, final long[] times,
+            final long[] durations, final int[] statuses, final boolean complete, final long version) {
+        this.targetId = targetId;
+        this.zoom = zoom;
+        this.index = index;
+        this.pixelInMs = pixelInMs;
+        this.times = times;
+        this.durations = durations;
+        this.statuses = statuses;
+        this.complete = complete;
+        this.version = version;
+    }
+
+    public String getTargetId() {
+        return targetId;
+    }
+
+    /**
+     * Zoom level, 0 being the most detailed.
+     */
+    public int getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Index of the tile in its zoom level, the tile 0 starting at the epoch.
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    public long getFromInMs() {
+        return index * WIDTH * pixelInMs;
+    }
+
+    public long getToInMs() {
+        return (index + 1) * WIDTH * pixelInMs;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Index of the first point at or after a time.
+     */
+    int indexOf(final long timeInMs) {
+        final int found = Arrays.binarySearch(times, timeInMs);
+        if (found < 0) {
+            return -found - 1;
+        }
+        // The first of the points with the same time.
+        int first = found;
+        while (first > 0 && times[first - 1] == timeInMs) {
+            first--;
+        }
+        return first;
+    }
+
+    /**
+     * Write the points from an index, included, to an index, excluded, as JSON arrays of the time, the duration and
+     * the status, separated by commas.
+     */
+    void writeJson(final Writer writer, final int from, final int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                writer.write(',');
+            }
+            writer.write('[');
+            writer.write(Long.toString(times[i]));
+            writer.write(',');
+            writer.write(Long.toString(durations[i]));
+            writer.write(',');
+            writer.write(Integer.toString(statuses[i]));
+            writer.write(']');
+        }
+    }
+
+    /**
+     * Write the points from an index, included, to an index, excluded, as variable length integers: the time since the
+     * previous point, the duration and the status.
+     *
+     * @return the time of the last point written, or the given previous time if none.
+     */
+    long writeBinary(final DataOutput output, final int from, final int to, final long previousTimeInMs)
+            throws IOException {
+        long previous = previousTimeInMs;
+        for (int i = from; i < to; i++) {
+            writeVarint(output, times[i] - previous);
+            writeVarint(output, durations[i]);
+            writeVarint(output, statuses[i]);
+            previous = times[i];
+        }
+        return previous;
+    }
+
+    /**
+     * Unsigned LEB128: 7 bits per byte, the highest bit set on all the bytes but the last one.
+     */
+    static void writeVarint(final DataOutput output, final long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            output.writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        output.writeByte((int) remaining);
+    }
+}
@@ -0,0 +1,281 @@
+package com.ericjesse.conni.history;
+
+import com.ericjesse.conni.json.JsonStrings;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChartTileCache renders the charts of the checks of the targets from cached {@link ChartTile tiles}, so a chart sent
+ * to a browser has about one point per pixel whatever the number of checks of its period.
+ * <p>
+ * The zoom levels have pixels of 1 minute, then 4 times longer at each level up to about 3 days. A chart reads the
+ * tiles of the most detailed zoom level with at least one pixel of the chart per pixel of the tile. A tile is built
+ * from the samples of its period downsampled with {@link Lttb}, then kept until it is the least recently used one.
+ * The samples of a target are never added before its last sample, so only the tile containing the last sample can
+ * change: the other ones are immutable, and the last one is built again when the target has new samples.
+ */
+public class ChartTileCache {
+
+    public static final int DEFAULT_MAX_TILES = 4096;
+
+    private static final long FIRST_PIXEL_IN_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int ZOOM_FACTOR = 4;
+
+    private static final int ZOOM_LEVELS = 7;
+
+    private final TimeSeriesStore store;
+
+    // Least recently used first. Guarded by this.
+    private final Map<TileKey, ChartTile> tiles;
+
+    private long hits;
+
+    private long misses;
+
+    public ChartTileCache(final TimeSeriesStore store) {
+        this(store, DEFAULT_MAX_TILES);
+    }
+
+    public ChartTileCache(final TimeSeriesStore store, final int maxTiles) {
+        this.store = store;
+        this.tiles = new LeastRecentlyUsed(maxTiles);
+    }
+
+    /**
+     * Duration of a pixel of a zoom level.
+     */
+    public static long pixelInMs(final int zoom) {
+        long pixelInMs = FIRST_PIXEL_IN_MS;
+        for (int i = 0; i < zoom; i++) {
+            pixelInMs *= ZOOM_FACTOR;
+        }
+        return pixelInMs;
+    }
+
+    /**
+     * Zoom level of a chart: the least detailed one whose pixels are not longer than the pixels of the chart.
+     */
+    public static int zoomOf(final long fromInMs, final long toInMs, final int widthInPixels) {
+        final long chartPixelInMs = (toInMs - fromInMs) / Math.max(1, widthInPixels);
+        int zoom = 0;
+        while (zoom + 1 < ZOOM_LEVELS && pixelInMs(zoom + 1) <= chartPixelInMs) {
+            zoom++;
+        }
+        return zoom;
+    }
+
+    /**
+     * The tiles of a chart of a target, in chronological order.
+     *
+     * @param targetId      the target.
+     * @param fromInMs      the start of the chart, included, in milliseconds since the epoch.
+     * @param toInMs        the end of the chart, excluded.
+     * @param widthInPixels the width of the chart.
+     * @return the tiles covering the period, empty without history.
+     * @throws IOException if the samples cannot be read.
+     */
+    public List<ChartTile> tiles(final String targetId, final long fromInMs, final long toInMs,
+            final int widthInPixels) throws IOException {
+        final TimeSeries series = store.getSeries(targetId);
+        if (series == null || fromInMs >= toInMs) {
+            return new ArrayList<>();
+        }
+        final int zoom = zoomOf(fromInMs, toInMs, widthInPixels);
+        final long tileInMs = pixelInMs(zoom) * ChartTile.WIDTH;
+        final List<ChartTile> chart = new ArrayList<>();
+        for (long index = Math.floorDiv(fromInMs, tileInMs); index <= Math.floorDiv(toInMs - 1, tileInMs); index++) {
+            chart.add(tile(series, new TileKey(targetId, zoom, index)));
+        }
+        return chart;
+    }
+
+    private ChartTile tile(final TimeSeries series, final TileKey key) throws IOException {
+        synchronized (this) {
+            final ChartTile cached = tiles.get(key);
+            if (cached != null && (cached.isComplete() || cached.getVersion() == series.getVersion())) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        final ChartTile built = build(series, key);
+        synchronized (this) {
+            tiles.put(key, built);
+        }
+        return built;
+    }
+
+    private static ChartTile build(final TimeSeries series, final TileKey key) throws IOException {
+        final long pixelInMs = pixelInMs(key.zoom);
+        final long fromInMs = key.index * ChartTile.WIDTH * pixelInMs;
+        final long toInMs = fromInMs + ChartTile.WIDTH * pixelInMs;
+        // Read before the samples: the samples added later cannot be in a tile which ends before the last sample.
+        final long version = series.getVersion();
+        final boolean complete = toInMs <= series.getLastTimeInMs();
+
+        final Samples samples = new Samples();
+        series.scan(fromInMs, toInMs, samples);
+        final int[] kept = Lttb.downsample(samples.times, samples.durations, samples.count, ChartTile.WIDTH);
+        final long[] times = new long[kept.length];
+        final long[] durations = new long[kept.length];
+        final int[] statuses = new int[kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            times[i] = samples.times[kept[i]];
+            durations[i] = samples.durations[kept[i]];
+            statuses[i] = samples.statuses[kept[i]];
+        }
+        return new ChartTile(key.targetId, key.zoom, key.index, pixelInMs, times, durations, statuses, complete,
+                version);
+    }
+
+    /**
+     * Stream the chart of a target as JSON: its period, the duration of its pixels, and its points as arrays of the
+     * time, the duration and the status. The points are written tile by tile, without building the whole document.
+     */
+    public void writeJson(final String targetId, final long fromInMs, final long toInMs, final int widthInPixels,
+            final Writer writer) throws IOException {
+        writer.write("{\"target\":");
+        JsonStrings.quote(writer, targetId);
+        writer.write(",\"from\":" + fromInMs + ",\"to\":" + toInMs + ",\"pixel\":"
+                + pixelInMs(zoomOf(fromInMs, toInMs, widthInPixels)) + ",\"points\":[");
+        boolean first = true;
+        for (ChartTile tile : tiles(targetId, fromInMs, toInMs, widthInPixels)) {
+            final int from = tile.indexOf(fromInMs);
+            final int to = tile.indexOf(toInMs);
+            if (from < to) {
+                if (!first) {
+                    writer.write(',');
+                }
+                tile.writeJson(writer, from, to);
+                first = false;
+            }
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    /**
+     * Write the chart of a target in a compact binary form: the start of the chart and the duration of its pixels as
+     * longs, the number of points as an int, then each point as variable length integers, see
+     * {@link ChartTile#writeBinary(DataOutput, int, int, long)}. A point takes about 6 bytes instead of about 25 in
+     * JSON.
+     */
+    public void writeBinary(final String targetId, final long fromInMs, final long toInMs, final int widthInPixels,
+            final DataOutput output) throws IOException {
+        final List<ChartTile> chart = tiles(targetId, fromInMs, toInMs, widthInPixels);
+        int count = 0;
+        for (ChartTile tile : chart) {
+            count += Math.max(0, tile.indexOf(toInMs) - tile.indexOf(fromInMs));
+        }
+        output.writeLong(fromInMs);
+        output.writeLong(pixelInMs(zoomOf(fromInMs, toInMs, widthInPixels)));
+        output.writeInt(count);
+        long previousTimeInMs = fromInMs;
+        for (ChartTile tile : chart) {
+            final int from = tile.indexOf(fromInMs);
+            final int to = tile.indexOf(toInMs);
+            if (from < to) {
+                previousTimeInMs = tile.writeBinary(output, from, to, previousTimeInMs);
+            }
+        }
+    }
+
+    // Visible for tests.
+    synchronized long getHits() {
+        return hits;
+    }
+
+    // Visible for tests.
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * The samples of a tile before the downsampling.
+     */
+    private static final class Samples implements SampleConsumer {
+
+        private long[] times = new long[1024];
+
+        private long[] durations = new long[1024];
+
+        private int[] statuses = new int[1024];
+
+        private int count;
+
+        @Override
+        public void accept(final long timeInMs, final long durationInMs, final int status) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+                durations = Arrays.copyOf(durations, count * 2);
+                statuses = Arrays.copyOf(statuses, count * 2);
+            }
+            times[count] = timeInMs;
+            durations[count] = durationInMs;
+            statuses[count] = status;
+            count++;
+        }
+    }
+
+    private static final class TileKey {
+
+        private final String targetId;
+
+        private final int zoom;
+
+        private final long index;
+
+        private TileKey(final String targetId, final int zoom, final long index) {
+            this.targetId = targetId;
+            this.zoom = zoom;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final TileKey tileKey = (TileKey) o;
+            return zoom == tileKey.zoom && index == tileKey.index && Objects.equals(targetId, tileKey.targetId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(targetId, zoom, index);
+        }
+    }
+
+    /**
+     * Map of the tiles in the order of their use, the least recently used one removed when it is full.
+     */
+    private static final class LeastRecentlyUsed extends LinkedHashMap<TileKey, ChartTile> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxTiles;
+
+        private LeastRecentlyUsed(final int maxTiles) {
+            super(16, 0.75f, true);
+            this.maxTiles = maxTiles;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<TileKey, ChartTile> eldest) {
+            return size() > maxTiles;
+        }
+    }
+}
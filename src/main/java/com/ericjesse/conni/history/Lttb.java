@@ -0,0 +1,71 @@
+package com.ericjesse.conni.history;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a line chart, as described by Sveinn Steinarsson.
+ * <p>
+ * The points are split in as many buckets as the wanted points, the first and the last points being kept. In each
+ * bucket, the point kept is the one forming the largest triangle with the point kept in the previous bucket and the
+ * average of the next bucket: the peaks and the failures stand out as they would on the full chart, which a mean or a
+ * regular sampling would smooth or miss.
+ */
+final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * Select the points to keep.
+     *
+     * @param x         the abscissas, in increasing order.
+     * @param y         the ordinates.
+     * @param count     the number of points, the arrays may be longer.
+     * @param threshold the number of points to keep, at least 3.
+     * @return the indexes of the kept points in increasing order, all the points if they are not more than the
+     * threshold.
+     */
+    static int[] downsample(final long[] x, final long[] y, final int count, final int threshold) {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("At least 3 points are kept");
+        }
+        if (count <= threshold) {
+            final int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        final int[] kept = new int[threshold];
+        // The first and the last points are alone in their bucket.
+        final double bucketSize = (count - 2) / (double) (threshold - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            final int start = (int) (bucket * bucketSize) + 1;
+            final int end = (int) ((bucket + 1) * bucketSize) + 1;
+            final int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = end; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= nextEnd - end;
+            averageY /= nextEnd - end;
+
+            double largestArea = -1;
+            int selected = start;
+            for (int i = start; i < end; i++) {
+                // Twice the area, relative to the previous point to keep the precision of the large abscissas.
+                final double area = Math.abs((x[i] - x[previous]) * (averageY - y[previous])
+                        - (averageX - x[previous]) * (y[i] - y[previous]));
+                if (area > largestArea) {
+                    largestArea = area;
+                    selected = i;
+                }
+            }
+            kept[bucket + 1] = selected;
+            previous = selected;
+        }
+        kept[threshold - 1] = count - 1;
+        return kept;
+    }
+}
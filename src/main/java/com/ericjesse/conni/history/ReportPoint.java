@@ -0,0 +1,112 @@
+package com.ericjesse.conni.history;
+
+/**
+ * Aggregate of the checks of a target over a period: a point of a chart, or the summary of a whole report.
+ */
+public final class ReportPoint {
+
+    private final long fromInMs;
+
+    private final long toInMs;
+
+    private final long count;
+
+    private final long failures;
+
+    private final long meanDurationInMs;
+
+    private final long medianDurationInMs;
+
+    private final long p90DurationInMs;
+
+    private final long p99DurationInMs;
+
+    ReportPoint(final long fromInMs, final long toInMs, final Aggregate aggregate) {
+        this.fromInMs = fromInMs;
+        this.toInMs = toInMs;
+        this.count = aggregate.getCount();
+        this.failures = aggregate.getFailures();
+        this.meanDurationInMs = aggregate.getMeanDurationInMs();
+        this.medianDurationInMs = aggregate.quantile(0.5);
+        this.p90DurationInMs = aggregate.quantile(0.9);
+        this.p99DurationInMs = aggregate.quantile(0.99);
+    }
+
+    /**
+     * Start of the period, included, in milliseconds since the epoch.
+     */
+    public long getFromInMs() {
+        return fromInMs;
+    }
+
+    /**
+     * End of the period, excluded, in milliseconds since the epoch.
+     */
+    public long getToInMs() {
+        return toInMs;
+    }
+
+    /**
+     * Number of checks.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Number of checks which failed: an error or a status outside 2xx and 3xx.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Ratio of the checks which succeeded, between 0 and 1, {@code 1} without check.
+     */
+    public double getUptime() {
+        return count == 0 ? 1 : (count - failures) / (double) count;
+    }
+
+    /**
+     * Mean duration of the responses, exact, {@code -1} without response.
+     */
+    public long getMeanDurationInMs() {
+        return meanDurationInMs;
+    }
+
+    /**
+     * Median duration of the responses, with a precision of about 20%, {@code -1} without response.
+     */
+    public long getMedianDurationInMs() {
+        return medianDurationInMs;
+    }
+
+    /**
+     * 90th percentile of the durations of the responses, with a precision of about 20%, {@code -1} without response.
+     */
+    public long getP90DurationInMs() {
+        return p90DurationInMs;
+    }
+
+    /**
+     * 99th percentile of the durations of the responses, with a precision of about 20%, {@code -1} without response.
+     */
+    public long getP99DurationInMs() {
+        return p99DurationInMs;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ReportPoint{");
+        sb.append("fromInMs=").append(fromInMs);
+        sb.append(", toInMs=").append(toInMs);
+        sb.append(", count=").append(count);
+        sb.append(", failures=").append(failures);
+        sb.append(", meanDurationInMs=").append(meanDurationInMs);
+        sb.append(", medianDurationInMs=").append(medianDurationInMs);
+        sb.append(", p90DurationInMs=").append(p90DurationInMs);
+        sb.append(", p99DurationInMs=").append(p99DurationInMs);
+        sb.append('}');
+        return sb.toString();
+    }
+}
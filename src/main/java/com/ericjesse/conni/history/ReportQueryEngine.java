@@ -0,0 +1,165 @@
+package com.ericjesse.conni.history;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ReportQueryEngine answers the queries of the reports over the history of a {@link TimeSeriesStore}: the points of
+ * a chart of the durations and of the failures, and the summary of a period with its uptime.
+ * <p>
+ * A query reads the coarsest {@link Resolution} fine enough for it. The full hours and days of a period are read from
+ * their rollups, only the partial hours at the edges and the periods older than the rollups are read from the samples:
+ * a year of one target is answered by reading a few hundred aggregates instead of decoding half a million samples. The
+ * counts, the failures and the mean durations are exact, the percentiles have a precision of about 20%.
+ */
+public class ReportQueryEngine {
+
+    public static final int DEFAULT_MAX_POINTS = 500;
+
+    public static final int MAX_POINTS = 10_000;
+
+    private static final Resolution[] ROLLUPS = {Resolution.HOUR, Resolution.DAY};
+
+    private final TimeSeriesStore store;
+
+    public ReportQueryEngine(final TimeSeriesStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Points of a chart of a target, each one aggregating the checks of a step. Read from the rollups, the steps are
+     * aligned on the rollups and the first and the last points are cut to the period.
+     *
+     * @param targetId  the target.
+     * @param fromInMs  the start of the period, included, in milliseconds since the epoch.
+     * @param toInMs    the end of the period, excluded.
+     * @param maxPoints the highest number of points, the width of the chart for example, from 1 to
+     *                  {@link #MAX_POINTS}.
+     * @return the points in chronological order, empty without history.
+     * @throws IOException              if the samples cannot be read.
+     * @throws IllegalArgumentException if the number of points is out of range.
+     */
+    public List<ReportPoint> series(final String targetId, final long fromInMs, final long toInMs,
+            final int maxPoints) throws IOException {
+        checkMaxPoints(maxPoints);
+        final TimeSeries series = store.getSeries(targetId);
+        if (series == null || fromInMs >= toInMs) {
+            return Collections.emptyList();
+        }
+        final long wantedStepInMs = Math.max(1, ceilDiv(toInMs - fromInMs, maxPoints));
+        final Resolution resolution = resolutionOf(series, fromInMs, wantedStepInMs);
+        // With a rollup, the points are aligned multiples of its step, so they are made of whole rollup steps.
+        long stepInMs = ceilDiv(wantedStepInMs, resolution.getStepInMs()) * resolution.getStepInMs();
+        long firstStepInMs = resolution == Resolution.RAW ? fromInMs : Math.floorDiv(fromInMs, stepInMs) * stepInMs;
+        while (ceilDiv(toInMs - firstStepInMs, stepInMs) > maxPoints && resolution != Resolution.RAW) {
+            // The alignment added a point.
+            stepInMs += resolution.getStepInMs();
+            firstStepInMs = Math.floorDiv(fromInMs, stepInMs) * stepInMs;
+        }
+        final int points = (int) ceilDiv(toInMs - firstStepInMs, stepInMs);
+
+        final Aggregate[] aggregates = new Aggregate[points];
+        for (int i = 0; i < points; i++) {
+            aggregates[i] = new Aggregate();
+        }
+        if (resolution == Resolution.RAW) {
+            // A single scan, each sample added to its point.
+            final long rawStepInMs = stepInMs;
+            series.scan(fromInMs, toInMs, (time, duration, status) ->
+                    aggregates[(int) ((time - fromInMs) / rawStepInMs)].accept(time, duration, status));
+        }
+        final List<ReportPoint> chart = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            final long pointFromInMs = Math.max(fromInMs, firstStepInMs + i * stepInMs);
+            final long pointToInMs = Math.min(toInMs, firstStepInMs + (i + 1) * stepInMs);
+            if (resolution != Resolution.RAW) {
+                cover(series, resolution.ordinal() - 1, pointFromInMs, pointToInMs, aggregates[i]);
+            }
+            chart.add(new ReportPoint(pointFromInMs, pointToInMs, aggregates[i]));
+        }
+        return chart;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the number of points is not between 1 and {@link #MAX_POINTS}.
+     */
+    public static void checkMaxPoints(final long maxPoints) {
+        if (maxPoints < 1 || maxPoints > MAX_POINTS) {
+            throw new IllegalArgumentException("The number of points must be between 1 and " + MAX_POINTS + ": "
+                    + maxPoints);
+        }
+    }
+
+    /**
+     * Summary of the checks of a target during a period: the number of checks and of failures, the uptime and the
+     * percentiles of the durations.
+     *
+     * @param targetId the target.
+     * @param fromInMs the start of the period, included, in milliseconds since the epoch.
+     * @param toInMs   the end of the period, excluded.
+     * @return the summary, without check if the target has no history.
+     * @throws IOException if the samples cannot be read.
+     */
+    public ReportPoint summary(final String targetId, final long fromInMs, final long toInMs) throws IOException {
+        final Aggregate aggregate = new Aggregate();
+        final TimeSeries series = store.getSeries(targetId);
+        if (series != null) {
+            cover(series, ROLLUPS.length - 1, fromInMs, toInMs, aggregate);
+        }
+        return new ReportPoint(fromInMs, toInMs, aggregate);
+    }
+
+    /**
+     * Resolution of the points of a chart: the coarsest one whose step is not longer than the wanted one. When its
+     * rollups do not reach back to the start of the period, a coarser resolution keeping it is preferred to the
+     * samples, with fewer points.
+     */
+    // Visible for tests.
+    static Resolution resolutionOf(final TimeSeries series, final long fromInMs, final long wantedStepInMs) {
+        for (int level = ROLLUPS.length - 1; level >= 0; level--) {
+            if (ROLLUPS[level].getStepInMs() > wantedStepInMs) {
+                continue;
+            }
+            for (int coarser = level; coarser < ROLLUPS.length; coarser++) {
+                if (series.getOldestInMs(ROLLUPS[coarser]) <= fromInMs) {
+                    return ROLLUPS[coarser];
+                }
+            }
+            return Resolution.RAW;
+        }
+        return Resolution.RAW;
+    }
+
+    /**
+     * Aggregate the checks of a period, reading the whole steps of a rollup and the rest from the finer rollups, down
+     * to the samples.
+     */
+    private static void cover(final TimeSeries series, final int level, final long fromInMs, final long toInMs,
+            final Aggregate into) throws IOException {
+        if (fromInMs >= toInMs) {
+            return;
+        }
+        if (level < 0) {
+            series.scan(fromInMs, toInMs, into);
+            return;
+        }
+        final Resolution resolution = ROLLUPS[level];
+        final long stepInMs = resolution.getStepInMs();
+        final long rollupFromInMs =
+                Math.max(ceilDiv(fromInMs, stepInMs) * stepInMs, series.getOldestInMs(resolution));
+        final long rollupToInMs = Math.floorDiv(toInMs, stepInMs) * stepInMs;
+        if (rollupFromInMs >= rollupToInMs) {
+            cover(series, level - 1, fromInMs, toInMs, into);
+            return;
+        }
+        cover(series, level - 1, fromInMs, rollupFromInMs, into);
+        series.aggregate(resolution, rollupFromInMs, rollupToInMs, into);
+        cover(series, level - 1, rollupToInMs, toInMs, into);
+    }
+
+    private static long ceilDiv(final long dividend, final long divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+}
@@ -0,0 +1,41 @@
+package com.ericjesse.conni.history;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of the history read by a report: the samples themselves, or the aggregates of one hour or one day.
+ */
+public enum Resolution {
+
+    RAW(1, 0),
+
+    /**
+     * Hourly aggregates of the last 31 days.
+     */
+    HOUR(TimeUnit.HOURS.toMillis(1), 31 * 24),
+
+    /**
+     * Daily aggregates of the last 2 years.
+     */
+    DAY(TimeUnit.DAYS.toMillis(1), 731);
+
+    private final long stepInMs;
+
+    private final int retainedSteps;
+
+    Resolution(final long stepInMs, final int retainedSteps) {
+        this.stepInMs = stepInMs;
+        this.retainedSteps = retainedSteps;
+    }
+
+    public long getStepInMs() {
+        return stepInMs;
+    }
+
+    /**
+     * Number of steps kept by the aggregates, {@code 0} for the samples which are all kept.
+     */
+    public int getRetainedSteps() {
+        return retainedSteps;
+    }
+}
@@ -0,0 +1,231 @@
+package com.ericjesse.conni.history;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch of the results of the checks sent by an agent to the collector, and its binary format.
+ * <p>
+ * The batch starts with a version byte, the id of the agent, the sequence number of the batch, the dictionary of the
+ * target ids of the batch and the time of its first result. Each result follows as a record prefixed by its length:
+ * the index of its target in the dictionary, the difference of its time with the previous result, its duration and
+ * its status. All the numbers are varints, the differences of times are zigzag-encoded as they can be negative, so a
+ * result takes about 8 bytes instead of the tens of a line of text. The length of the records lets a collector skip
+ * the fields added by a newer agent.
+ */
+final class ResultBatch {
+
+    private static final int VERSION = 1;
+
+    private final String agentId;
+
+    private final long sequence;
+
+    private final List<String> targetIds = new ArrayList<>();
+
+    private final Map<String, Integer> targetIndexes = new HashMap<>();
+
+    private int size;
+
+    private int[] targets = new int[64];
+
+    private long[] timesInMs = new long[64];
+
+    private long[] durationsInMs = new long[64];
+
+    private int[] statuses = new int[64];
+
+    ResultBatch(final String agentId, final long sequence) {
+        this.agentId = agentId;
+        this.sequence = sequence;
+    }
+
+    String getAgentId() {
+        return agentId;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int size() {
+        return size;
+    }
+
+    List<String> getTargetIds() {
+        return targetIds;
+    }
+
+    int getTarget(final int index) {
+        return targets[index];
+    }
+
+    long getTimeInMs(final int index) {
+        return timesInMs[index];
+    }
+
+    long getDurationInMs(final int index) {
+        return durationsInMs[index];
+    }
+
+    int getStatus(final int index) {
+        return statuses[index];
+    }
+
+    void add(final String targetId, final long timeInMs, final long durationInMs, final int status) {
+        Integer target = targetIndexes.get(targetId);
+        if (target == null) {
+            target = targetIds.size();
+            targetIds.add(targetId);
+            targetIndexes.put(targetId, target);
+        }
+        add(target, timeInMs, durationInMs, status);
+    }
+
+    private void add(final int target, final long timeInMs, final long durationInMs, final int status) {
+        if (size == targets.length) {
+            targets = Arrays.copyOf(targets, size * 2);
+            timesInMs = Arrays.copyOf(timesInMs, size * 2);
+            durationsInMs = Arrays.copyOf(durationsInMs, size * 2);
+            statuses = Arrays.copyOf(statuses, size * 2);
+        }
+        targets[size] = target;
+        timesInMs[size] = timeInMs;
+        durationsInMs[size] = durationInMs;
+        statuses[size] = status;
+        size++;
+    }
+
+    byte[] encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 32 * targetIds.size() + 10 * size);
+        final DataOutputStream output = new DataOutputStream(bytes);
+        // Each record is written here first, to prefix it with its length.
+        final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(32);
+        final DataOutputStream record = new DataOutputStream(recordBytes);
+        try {
+            output.writeByte(VERSION);
+            writeString(output, agentId);
+            ChartTile.writeVarint(output, sequence);
+            ChartTile.writeVarint(output, targetIds.size());
+            for (String targetId : targetIds) {
+                writeString(output, targetId);
+            }
+            long previousTimeInMs = size == 0 ? 0 : timesInMs[0];
+            ChartTile.writeVarint(output, previousTimeInMs);
+            ChartTile.writeVarint(output, size);
+            for (int i = 0; i < size; i++) {
+                recordBytes.reset();
+                ChartTile.writeVarint(record, targets[i]);
+                final long deltaInMs = timesInMs[i] - previousTimeInMs;
+                ChartTile.writeVarint(record, (deltaInMs << 1) ^ (deltaInMs >> 63));
+                ChartTile.writeVarint(record, durationsInMs[i]);
+                ChartTile.writeVarint(record, statuses[i]);
+                previousTimeInMs = timesInMs[i];
+                ChartTile.writeVarint(output, recordBytes.size());
+                recordBytes.writeTo(output);
+            }
+        } catch (IOException e) {
+            // Written in memory.
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a batch.
+     *
+     * @throws IllegalArgumentException if the batch is truncated or not valid.
+     */
+    static ResultBatch decode(final byte[] bytes) {
+        final ByteBuffer input = ByteBuffer.wrap(bytes);
+        try {
+            final int version = input.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("The version " + version + " of the batch is not supported");
+            }
+            final ResultBatch batch = new ResultBatch(readString(input), readVarint(input));
+            final int targetCount = readCount(input);
+            for (int i = 0; i < targetCount; i++) {
+                final String targetId = readString(input);
+                batch.targetIndexes.put(targetId, batch.targetIds.size());
+                batch.targetIds.add(targetId);
+            }
+            long timeInMs = readVarint(input);
+            final int count = readCount(input);
+            for (int i = 0; i < count; i++) {
+                final int length = readCount(input);
+                final int end = input.position() + length;
+                if (end > input.limit()) {
+                    throw new BufferUnderflowException();
+                }
+                final int target = (int) readVarint(input);
+                if (target < 0 || target >= targetCount) {
+                    throw new IllegalArgumentException("The target " + target + " of a result is unknown");
+                }
+                final long zigzag = readVarint(input);
+                timeInMs += (zigzag >>> 1) ^ -(zigzag & 1);
+                final long durationInMs = readVarint(input);
+                final int status = (int) readVarint(input);
+                if (input.position() > end) {
+                    throw new IllegalArgumentException("A result is longer than its length");
+                }
+                // The fields of a newer version are skipped.
+                input.position(end);
+                batch.add(target, timeInMs, durationInMs, status);
+            }
+            return batch;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("The batch is truncated", e);
+        }
+    }
+
+    private static void writeString(final DataOutputStream output, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ChartTile.writeVarint(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer input) {
+        final int length = readCount(input);
+        if (length > input.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final String value = new String(input.array(), input.position(), length, StandardCharsets.UTF_8);
+        input.position(input.position() + length);
+        return value;
+    }
+
+    private static int readCount(final ByteBuffer input) {
+        final long count = readVarint(input);
+        if (count < 0) {
+            throw new IllegalArgumentException("The count " + count + " is negative");
+        }
+        if (count > input.remaining()) {
+            // Each element takes at least a byte.
+            throw new IllegalArgumentException("The count " + count + " is larger than the batch");
+        }
+        return (int) count;
+    }
+
+    static long readVarint(final ByteBuffer input) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = input.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("A varint is longer than 10 bytes");
+    }
+}
@@ -0,0 +1,182 @@
+package com.ericjesse.conni.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ResultCollector receives the batches of results of the agents, see {@link ResultForwarder}, and adds them to a
+ * {@link TimeSeriesStore}.
+ * <p>
+ * The results of a batch are grouped by target and added to the series of each target at once. The batch is then
+ * acknowledged with its sequence number. An agent sends its batches one at a time and sends a batch again until it is
+ * acknowledged, so a batch whose sequence number is not above the last one of its agent was already added and is only
+ * acknowledged again. The last sequence numbers are kept in memory: after a restart of the collector, a batch whose
+ * acknowledgement was lost is added twice.
+ * <p>
+ * The results of a target are sorted by time before they are added. The results older than the last one of their
+ * target, sent late by an agent or by another agent checking the same target, cannot be appended to its series: they
+ * are dropped and counted.
+ */
+public class ResultCollector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResultCollector.class);
+
+    private final TimeSeriesStore store;
+
+    private final Map<String, Agent> agents = new ConcurrentHashMap<>();
+
+    private long batches;
+
+    private long records;
+
+    private long duplicates;
+
+    private long late;
+
+    public ResultCollector(final TimeSeriesStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Decode a batch and add its results to the store, once.
+     *
+     * @return the sequence number of the batch, to acknowledge it.
+     * @throws IllegalArgumentException if the batch is not valid.
+     */
+    public long ingest(final byte[] bytes) {
+        final ResultBatch batch = ResultBatch.decode(bytes);
+        // The batches of an agent come one at a time, the lock of the agent is only contended by a retry.
+        final Agent agent = agents.computeIfAbsent(batch.getAgentId(), id -> new Agent());
+        final int dropped;
+        synchronized (agent) {
+            if (batch.getSequence() <= agent.lastSequence) {
+                LOG.debug("The batch {} of {} was already added", batch.getSequence(), batch.getAgentId());
+                synchronized (this) {
+                    duplicates++;
+                }
+                return batch.getSequence();
+            }
+            dropped = add(batch);
+            agent.lastSequence = batch.getSequence();
+        }
+        synchronized (this) {
+            batches++;
+            records += batch.size() - dropped;
+            late += dropped;
+        }
+        return batch.getSequence();
+    }
+
+    /**
+     * Add the results of a batch, sorted by target with a counting sort so each series is locked once.
+     *
+     * @return the number of results dropped because they are late.
+     */
+    private int add(final ResultBatch batch) {
+        final List<String> targetIds = batch.getTargetIds();
+        final int[] offsets = new int[targetIds.size() + 1];
+        for (int i = 0; i < batch.size(); i++) {
+            offsets[batch.getTarget(i) + 1]++;
+        }
+        for (int t = 0; t < targetIds.size(); t++) {
+            offsets[t + 1] += offsets[t];
+        }
+        final int[] next = offsets.clone();
+        final long[] timesInMs = new long[batch.size()];
+        final long[] durationsInMs = new long[batch.size()];
+        final int[] statuses = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            final int position = next[batch.getTarget(i)]++;
+            timesInMs[position] = batch.getTimeInMs(i);
+            durationsInMs[position] = batch.getDurationInMs(i);
+            statuses[position] = batch.getStatus(i);
+        }
+        int dropped = 0;
+        for (int t = 0; t < targetIds.size(); t++) {
+            final int count = offsets[t + 1] - offsets[t];
+            if (count > 0) {
+                sortByTime(timesInMs, durationsInMs, statuses, offsets[t], offsets[t + 1]);
+                dropped += store.addAll(targetIds.get(t), timesInMs, durationsInMs, statuses, offsets[t], count);
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Sort the results from an index, included, to another, excluded, by time. An agent sends its results in the order
+     * they end, so they are usually sorted already.
+     */
+    private static void sortByTime(final long[] timesInMs, final long[] durationsInMs, final int[] statuses,
+            final int from, final int to) {
+        int i = from + 1;
+        while (i < to && timesInMs[i - 1] <= timesInMs[i]) {
+            i++;
+        }
+        if (i >= to) {
+            return;
+        }
+        final Integer[] order = new Integer[to - from];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = from + k;
+        }
+        Arrays.sort(order, Comparator.comparingLong(index -> timesInMs[index]));
+        final long[] sortedTimes = new long[order.length];
+        final long[] sortedDurations = new long[order.length];
+        final int[] sortedStatuses = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            sortedTimes[k] = timesInMs[order[k]];
+            sortedDurations[k] = durationsInMs[order[k]];
+            sortedStatuses[k] = statuses[order[k]];
+        }
+        System.arraycopy(sortedTimes, 0, timesInMs, from, order.length);
+        System.arraycopy(sortedDurations, 0, durationsInMs, from, order.length);
+        System.arraycopy(sortedStatuses, 0, statuses, from, order.length);
+    }
+
+    /**
+     * Number of batches added, without the duplicates.
+     */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Number of results added, without the late ones.
+     */
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * Number of batches received again and not added.
+     */
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Number of results dropped because they were older than the last result of their target.
+     */
+    public synchronized long getLate() {
+        return late;
+    }
+
+    /**
+     * Number of agents which sent batches since the collector started.
+     */
+    public int getAgentCount() {
+        return agents.size();
+    }
+
+    private static final class Agent {
+
+        // The sequence number of the last batch added. Guarded by this.
+        private long lastSequence = Long.MIN_VALUE;
+    }
+}
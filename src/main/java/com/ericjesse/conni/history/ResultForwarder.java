@@ -0,0 +1,338 @@
+package com.ericjesse.conni.history;
+
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.SocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.Clock;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResultForwarder sends the results of the checks of an agent to a central {@link ResultCollector}.
+ * <p>
+ * The results are buffered in memory and sent every second in batches of at most {@link #MAX_BATCH_SIZE} results,
+ * encoded by {@link ResultBatch}, over a kept-alive connection to {@link #COLLECT_PATH}. The collector acknowledges a
+ * batch by answering its sequence number, and a batch is sent again until it is acknowledged, so a result is delivered
+ * at least once. While the collector cannot be reached, the attempts are spaced from one second to 30 seconds and
+ * the results are kept in the buffer: when it is full, the oldest results are dropped and counted.
+ * <p>
+ * The sequence numbers start from the wall clock, so the batches of an agent restarted are newer than the ones of its
+ * previous run.
+ */
+public class ResultForwarder implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResultForwarder.class);
+
+    public static final String COLLECT_PATH = "/api/collect";
+
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    public static final long DEFAULT_INTERVAL_IN_MS = 1_000;
+
+    private static final long MAX_BACKOFF_IN_MS = 30_000;
+
+    private static final MediaType BINARY = MediaType.parse("application/octet-stream");
+
+    private final String collectUrl;
+
+    private final String agentId;
+
+    private final long intervalInMs;
+
+    private final Clock clock;
+
+    private final OkHttpClient client;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "conni-forwarder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Circular buffer of the results not sent yet. Guarded by this.
+    private final String[] targetIds;
+
+    private final long[] timesInMs;
+
+    private final long[] durationsInMs;
+
+    private final int[] statuses;
+
+    private int head;
+
+    private int size;
+
+    private long dropped;
+
+    // Only used by the thread of the scheduler.
+    private long nextSequence;
+
+    private ResultBatch pending;
+
+    private byte[] pendingBytes;
+
+    private long backoffInMs;
+
+    private volatile long sent;
+
+    /**
+     * @param collectorUrl the base URL of the collector, like {@code http://collector:8080}.
+     * @param agentId      the id of this agent, unique among the agents of the collector.
+     */
+    public ResultForwarder(final String collectorUrl, final String agentId) {
+        this(collectorUrl, agentId, DEFAULT_CAPACITY, DEFAULT_INTERVAL_IN_MS, Clock.systemUTC());
+    }
+
+    // Visible for tests.
+    ResultForwarder(final String collectorUrl, final String agentId, final int capacity, final long intervalInMs,
+            final Clock clock) {
+        this.collectUrl = collectorUrl.replaceAll("/+$", "") + COLLECT_PATH;
+        this.agentId = agentId;
+        this.intervalInMs = intervalInMs;
+        this.clock = clock;
+        this.client = newClient();
+        this.targetIds = new String[capacity];
+        this.timesInMs = new long[capacity];
+        this.durationsInMs = new long[capacity];
+        this.statuses = new int[capacity];
+        this.nextSequence = System.currentTimeMillis();
+    }
+
+    /**
+     * The client of the collector. The end of a batch is written without waiting for the acknowledgement of its
+     * beginning: with the algorithm of Nagle, it waits for the delayed acknowledgement of the collector, about 40 ms
+     * per batch.
+     */
+    static OkHttpClient newClient() {
+        return new OkHttpClient.Builder()
+                .socketFactory(new NoDelaySocketFactory())
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Start to send the results.
+     */
+    public void start() {
+        scheduler.schedule(this::flush, intervalInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffer a result to send.
+     *
+     * @param status the status code of the response, {@link TimeSeriesStore#ERROR_STATUS} for an error.
+     */
+    public synchronized void add(final String targetId, final long timeInMs, final long durationInMs,
+            final int status) {
+        if (size == targetIds.length) {
+            // The collector is unreachable for too long, the oldest result is lost.
+            head = (head + 1) % targetIds.length;
+            size--;
+            dropped++;
+        }
+        final int index = (head + size) % targetIds.length;
+        targetIds[index] = targetId;
+        timesInMs[index] = timeInMs;
+        durationsInMs[index] = durationInMs;
+        statuses[index] = status;
+        size++;
+    }
+
+    /**
+     * An observer forwarding the results of a target.
+     */
+    public ResponseObserver observerFor(final String targetId) {
+        return new ForwarderObserver(targetId);
+    }
+
+    private void flush() {
+        long delayInMs = intervalInMs;
+        try {
+            if (send()) {
+                backoffInMs = 0;
+                synchronized (this) {
+                    if (size >= MAX_BATCH_SIZE) {
+                        // A backlog is sent without waiting.
+                        delayInMs = 0;
+                    }
+                }
+            } else {
+                backoffInMs = Math.min(MAX_BACKOFF_IN_MS, Math.max(intervalInMs, backoffInMs * 2));
+                delayInMs = backoffInMs;
+            }
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::flush, delayInMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Send the pending batch, or a new one taken from the buffer.
+     *
+     * @return false if the batch was not acknowledged and has to be sent again.
+     */
+    private boolean send() {
+        if (pending == null && !takeBatch()) {
+            return true;
+        }
+        final Request request = new Request.Builder()
+                .url(collectUrl)
+                .post(RequestBody.create(BINARY, pendingBytes))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            final String body = response.body().string().trim();
+            if (response.isSuccessful() && body.equals(Long.toString(pending.getSequence()))) {
+                sent += pending.size();
+            } else if (response.code() == 400) {
+                // Sending it again would not help.
+                LOG.error("The collector rejected the batch {}, its {} results are lost: {}",
+                        pending.getSequence(), pending.size(), body);
+                synchronized (this) {
+                    dropped += pending.size();
+                }
+            } else {
+                LOG.debug("The collector did not acknowledge the batch {}: {}", pending.getSequence(), response.code());
+                return false;
+            }
+        } catch (IOException e) {
+            LOG.debug("The collector cannot be reached: {}", e.getMessage());
+            return false;
+        }
+        pending = null;
+        pendingBytes = null;
+        return true;
+    }
+
+    private boolean takeBatch() {
+        final ResultBatch batch = new ResultBatch(agentId, nextSequence);
+        synchronized (this) {
+            if (size == 0) {
+                return false;
+            }
+            final int count = Math.min(size, MAX_BATCH_SIZE);
+            for (int i = 0; i < count; i++) {
+                batch.add(targetIds[head], timesInMs[head], durationsInMs[head], statuses[head]);
+                targetIds[head] = null;
+                head = (head + 1) % targetIds.length;
+            }
+            size -= count;
+        }
+        nextSequence++;
+        pending = batch;
+        pendingBytes = batch.encode();
+        return true;
+    }
+
+    /**
+     * Number of results waiting to be sent, without the ones of the batch being sent.
+     */
+    public synchronized int getBuffered() {
+        return size;
+    }
+
+    /**
+     * Number of results dropped because the buffer was full or the collector rejected them.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Number of results acknowledged by the collector.
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * Stop sending the results, the ones not acknowledged yet are lost.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class NoDelaySocketFactory extends SocketFactory {
+
+        private final SocketFactory delegate = SocketFactory.getDefault();
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return noDelay(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port) throws IOException {
+            return noDelay(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port, final InetAddress localHost,
+                final int localPort) throws IOException {
+            return noDelay(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return noDelay(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress,
+                final int localPort) throws IOException {
+            return noDelay(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        private static Socket noDelay(final Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+    }
+
+    private final class ForwarderObserver implements ResponseObserver {
+
+        private final String targetId;
+
+        private ForwarderObserver(final String targetId) {
+            this.targetId = targetId;
+        }
+
+        @Override
+        public ConniError processError(final ConniError error) {
+            add(targetId, clock.millis(), 0, TimeSeriesStore.ERROR_STATUS);
+            return error;
+        }
+
+        @Override
+        public HttpResponse processResponse(final HttpResponse response) {
+            add(targetId, response.getSendingRequestInstant().toEpochMilli(), response.getDuration().toMillis(),
+                    response.getStatusCode());
+            return response;
+        }
+
+        @Override
+        public int getOrder() {
+            // After the observers changing the results, like the history.
+            return 3;
+        }
+    }
+}
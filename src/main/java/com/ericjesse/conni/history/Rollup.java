@@ -0,0 +1,84 @@
+package com.ericjesse.conni.history;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates of the samples of a target per step of a {@link Resolution}, updated with each sample.
+ * <p>
+ * The steps are kept in a ring: the newest step replaces the oldest one, so the memory is fixed, about 160 bytes per
+ * step. A sample older than the ring is ignored.
+ */
+final class Rollup {
+
+    private final long stepInMs;
+
+    private final int slots;
+
+    // Step held by each slot, the slots of the steps without sample holding an older step.
+    private final long[] steps;
+
+    private final int[] counts;
+
+    private final int[] failures;
+
+    private final long[] durationSumsInMs;
+
+    private final int[] histograms;
+
+    private long newestStep = Long.MIN_VALUE;
+
+    Rollup(final Resolution resolution) {
+        this.stepInMs = resolution.getStepInMs();
+        this.slots = resolution.getRetainedSteps();
+        this.steps = new long[slots];
+        this.counts = new int[slots];
+        this.failures = new int[slots];
+        this.durationSumsInMs = new long[slots];
+        this.histograms = new int[slots * Aggregate.BUCKETS];
+        Arrays.fill(steps, Long.MIN_VALUE);
+    }
+
+    void add(final long timeInMs, final long durationInMs, final int status, final int bucket) {
+        final long step = Math.floorDiv(timeInMs, stepInMs);
+        final int slot = (int) Math.floorMod(step, (long) slots);
+        if (steps[slot] != step) {
+            if (steps[slot] > step) {
+                return;
+            }
+            steps[slot] = step;
+            counts[slot] = 0;
+            failures[slot] = 0;
+            durationSumsInMs[slot] = 0;
+            Arrays.fill(histograms, slot * Aggregate.BUCKETS, (slot + 1) * Aggregate.BUCKETS, 0);
+        }
+        newestStep = Math.max(newestStep, step);
+        counts[slot]++;
+        if (Aggregate.isFailure(status)) {
+            failures[slot]++;
+        }
+        if (status != TimeSeriesStore.ERROR_STATUS) {
+            durationSumsInMs[slot] += durationInMs;
+            histograms[slot * Aggregate.BUCKETS + bucket]++;
+        }
+    }
+
+    /**
+     * Start of the oldest step kept, {@link Long#MAX_VALUE} before the first sample.
+     */
+    long getOldestInMs() {
+        return newestStep == Long.MIN_VALUE ? Long.MAX_VALUE : (newestStep - slots + 1) * stepInMs;
+    }
+
+    /**
+     * Add the steps from the given time to the given time, both aligned on the steps, to an aggregate.
+     */
+    void aggregate(final long fromInMs, final long toInMs, final Aggregate into) {
+        for (long step = fromInMs / stepInMs; step < toInMs / stepInMs; step++) {
+            final int slot = (int) Math.floorMod(step, (long) slots);
+            if (steps[slot] == step) {
+                into.add(counts[slot], failures[slot], durationSumsInMs[slot], histograms,
+                        slot * Aggregate.BUCKETS);
+            }
+        }
+    }
+}
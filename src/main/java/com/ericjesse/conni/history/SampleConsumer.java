@@ -0,0 +1,15 @@
+package com.ericjesse.conni.history;
+
+/**
+ * Receiver of the samples of a time series, one call per sample without creating any object.
+ */
+@FunctionalInterface
+public interface SampleConsumer {
+
+    /**
+     * @param timeInMs     the time of the check, in milliseconds since the epoch.
+     * @param durationInMs the duration of the check, {@code 0} for an error.
+     * @param status       the status code of the response, {@link TimeSeriesStore#ERROR_STATUS} for an error.
+     */
+    void accept(long timeInMs, long durationInMs, int status);
+}
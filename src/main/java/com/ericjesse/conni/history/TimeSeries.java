@@ -0,0 +1,429 @@
+package com.ericjesse.conni.history;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The samples of one target: the block receiving the new samples, then the sealed blocks, kept in memory or spilled
+ * to the file of the target.
+ * <p>
+ * Each block covers at most {@link #BLOCK_DURATION_IN_MS}, so a scan decodes only the blocks overlapping its range.
+ * The file is a sequence of blocks, each one preceded by a header of {@link #HEADER_SIZE} bytes: the times of its
+ * first and last samples, its number of samples and its size in bits.
+ * <p>
+ * The series also keeps the {@link Rollup} of each {@link Resolution} above the samples, updated with each sample and
+ * rebuilt from the file when the series is loaded.
+ * <p>
+ * The expired blocks are dropped from the index at once, and from the file once they take
+ * 1/{@link #COMPACTION_RATIO} of it: the file is then copied without them and replaced.
+ */
+final class TimeSeries {
+
+    static final long BLOCK_DURATION_IN_MS = TimeUnit.HOURS.toMillis(2);
+
+    static final int HEADER_SIZE = 2 * Long.BYTES + 2 * Integer.BYTES;
+
+    static final int COMPACTION_RATIO = 8;
+
+    // Null when the samples are kept in memory only.
+    private final Path file;
+
+    // The sealed blocks, in chronological order. Guarded by this.
+    private final List<SealedBlock> sealedBlocks = new ArrayList<>();
+
+    // The rollups of the hours and of the days. Guarded by this.
+    private final Rollup[] rollups = {new Rollup(Resolution.HOUR), new Rollup(Resolution.DAY)};
+
+    // Guarded by this.
+    private TimeSeriesBlock openBlock;
+
+    // Guarded by this.
+    private long lastTimeInMs = Long.MIN_VALUE;
+
+    // Offset of the first block of the file not expired yet. Guarded by this.
+    private long liveOffset;
+
+    // Incremented with each sample, so a reader knows whether the series changed. Guarded by this.
+    private long version;
+
+    TimeSeries(final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Append a sample. A sample older than the last one, after a change of the clock, is moved to the time of the last
+     * one to keep the blocks in chronological order.
+     */
+    synchronized void add(final long timeInMs, final long durationInMs, final int status) {
+        final long time = Math.max(timeInMs, lastTimeInMs);
+        if (openBlock != null && time - openBlock.getFirstTimeInMs() >= BLOCK_DURATION_IN_MS) {
+            seal();
+        }
+        if (openBlock == null) {
+            openBlock = new TimeSeriesBlock(time);
+        }
+        openBlock.append(time, durationInMs, status);
+        lastTimeInMs = time;
+        version++;
+        addToRollups(time, durationInMs, status);
+    }
+
+    /**
+     * Append samples at once, {@code count} of them from the given offset of the arrays, in chronological order. The
+     * samples older than the last one are dropped instead of being moved to its time: they come from another agent
+     * and their time is right, but the blocks only grow forward.
+     *
+     * @return the number of samples dropped.
+     */
+    synchronized int addAll(final long[] timesInMs, final long[] durationsInMs, final int[] statuses,
+            final int offset, final int count) {
+        int dropped = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (timesInMs[i] < lastTimeInMs) {
+                dropped++;
+            } else {
+                add(timesInMs[i], durationsInMs[i], statuses[i]);
+            }
+        }
+        return dropped;
+    }
+
+    private void addToRollups(final long timeInMs, final long durationInMs, final int status) {
+        final int bucket = Aggregate.bucketOf(durationInMs);
+        for (Rollup rollup : rollups) {
+            rollup.add(timeInMs, durationInMs, status, bucket);
+        }
+    }
+
+    /**
+     * Add the steps of a rollup from the given time to the given time, both aligned on its steps, to an aggregate.
+     */
+    synchronized void aggregate(final Resolution resolution, final long fromInMs, final long toInMs,
+            final Aggregate into) {
+        rollups[resolution.ordinal() - 1].aggregate(fromInMs, toInMs, into);
+    }
+
+    /**
+     * Start of the oldest step kept by the rollup of a resolution, {@link Long#MAX_VALUE} without sample.
+     */
+    synchronized long getOldestInMs(final Resolution resolution) {
+        return rollups[resolution.ordinal() - 1].getOldestInMs();
+    }
+
+    /**
+     * Seal the block receiving the new samples, the next sample starts a new block.
+     */
+    synchronized void seal() {
+        if (openBlock != null) {
+            openBlock.seal();
+            sealedBlocks.add(new SealedBlock(openBlock));
+            openBlock = null;
+        }
+    }
+
+    /**
+     * Pass the samples from the given time, included, to the given time, excluded, to the consumer in chronological
+     * order. The spilled blocks are read back from the file, the blocks outside the range are skipped without being
+     * read nor decoded.
+     *
+     * @return the number of samples passed to the consumer.
+     */
+    long scan(final long fromInMs, final long toInMs, final SampleConsumer consumer) throws IOException {
+        final List<SealedBlock> blocks;
+        final TimeSeriesBlock block;
+        long scanned = 0;
+        FileChannel channel = null;
+        try {
+            synchronized (this) {
+                blocks = new ArrayList<>(sealedBlocks);
+                block = openBlock;
+                if (isSpilled(blocks, fromInMs, toInMs)) {
+                    // Opened with the copy of the index: a compaction replacing the file after it does not move the
+                    // blocks read from this one.
+                    channel = FileChannel.open(file, StandardOpenOption.READ);
+                }
+            }
+            for (SealedBlock sealedBlock : blocks) {
+                if (sealedBlock.lastTimeInMs < fromInMs || sealedBlock.firstTimeInMs >= toInMs) {
+                    continue;
+                }
+                TimeSeriesBlock decodedBlock = sealedBlock.block;
+                if (decodedBlock == null) {
+                    if (channel == null) {
+                        channel = FileChannel.open(file, StandardOpenOption.READ);
+                    }
+                    decodedBlock = read(channel, sealedBlock);
+                }
+                scanned += decodedBlock.scan(fromInMs, toInMs, consumer);
+            }
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        if (block != null) {
+            // The open block is still appended to.
+            synchronized (this) {
+                scanned += block.scan(fromInMs, toInMs, consumer);
+            }
+        }
+        return scanned;
+    }
+
+    private static boolean isSpilled(final List<SealedBlock> blocks, final long fromInMs, final long toInMs) {
+        for (SealedBlock sealedBlock : blocks) {
+            if (sealedBlock.offset >= 0 && sealedBlock.lastTimeInMs >= fromInMs && sealedBlock.firstTimeInMs < toInMs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop the sealed blocks whose samples are all older than the given time. The file is compacted once the dropped
+     * blocks take 1/{@link #COMPACTION_RATIO} of it.
+     *
+     * @return the number of blocks dropped.
+     */
+    synchronized int expire(final long expireBeforeInMs) throws IOException {
+        int expired = 0;
+        while (!sealedBlocks.isEmpty() && sealedBlocks.get(0).lastTimeInMs < expireBeforeInMs) {
+            final SealedBlock sealedBlock = sealedBlocks.remove(0);
+            if (sealedBlock.offset >= 0) {
+                liveOffset = sealedBlock.offset + HEADER_SIZE + (long) wordsOf(sealedBlock.sizeInBits) * Long.BYTES;
+            }
+            expired++;
+        }
+        if (liveOffset > 0 && liveOffset * COMPACTION_RATIO >= Files.size(file)) {
+            compact();
+        }
+        return expired;
+    }
+
+    /**
+     * Copy the blocks of the file not expired to a new file replacing it. The blocks get new index entries, so a scan
+     * still reading the previous file keeps the previous offsets.
+     */
+    private void compact() throws IOException {
+        final Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = source.size();
+            long position = liveOffset;
+            while (position < size) {
+                position += source.transferTo(position, size - position, target);
+            }
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (int i = 0; i < sealedBlocks.size(); i++) {
+            final SealedBlock sealedBlock = sealedBlocks.get(i);
+            if (sealedBlock.offset >= 0) {
+                sealedBlocks.set(i, new SealedBlock(sealedBlock, sealedBlock.offset - liveOffset));
+            }
+        }
+        liveOffset = 0;
+    }
+
+    /**
+     * Append the sealed blocks not written yet to the file, then release the memory of the written blocks older than
+     * the given time.
+     *
+     * @return the number of blocks written.
+     */
+    synchronized int spill(final long keepInMemoryFromInMs) throws IOException {
+        if (file == null) {
+            return 0;
+        }
+        int written = 0;
+        FileChannel channel = null;
+        try {
+            for (SealedBlock sealedBlock : sealedBlocks) {
+                if (sealedBlock.offset < 0) {
+                    if (channel == null) {
+                        Files.createDirectories(file.getParent());
+                        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    }
+                    sealedBlock.offset = channel.size();
+                    write(channel, sealedBlock);
+                    written++;
+                }
+                if (sealedBlock.lastTimeInMs < keepInMemoryFromInMs) {
+                    sealedBlock.block = null;
+                }
+            }
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        return written;
+    }
+
+    private static void write(final FileChannel channel, final SealedBlock sealedBlock) throws IOException {
+        final long[] words = sealedBlock.block.getWords();
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + words.length * Long.BYTES);
+        buffer.putLong(sealedBlock.firstTimeInMs).putLong(sealedBlock.lastTimeInMs).putInt(sealedBlock.count)
+                .putInt(sealedBlock.sizeInBits);
+        buffer.asLongBuffer().put(words);
+        buffer.rewind();
+        long position = sealedBlock.offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static TimeSeriesBlock read(final FileChannel channel, final SealedBlock sealedBlock)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(wordsOf(sealedBlock.sizeInBits) * Long.BYTES);
+        readFully(channel, buffer, sealedBlock.offset + HEADER_SIZE);
+        final long[] words = new long[buffer.capacity() / Long.BYTES];
+        buffer.asLongBuffer().get(words);
+        return new TimeSeriesBlock(sealedBlock.firstTimeInMs, sealedBlock.lastTimeInMs, sealedBlock.count, words,
+                sealedBlock.sizeInBits);
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("The block at " + position + " is truncated");
+            }
+        }
+        buffer.rewind();
+    }
+
+    private static int wordsOf(final int sizeInBits) {
+        return (sizeInBits + 63) >>> 6;
+    }
+
+    /**
+     * Read the headers of the blocks spilled to a file, keeping the blocks on disk. A block truncated by a crash while
+     * it was written is removed from the file.
+     */
+    static TimeSeries load(final Path file) throws IOException {
+        final TimeSeries series = new TimeSeries(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            long offset = 0;
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (offset + HEADER_SIZE <= size) {
+                header.clear();
+                readFully(channel, header, offset);
+                final SealedBlock sealedBlock = new SealedBlock(header.getLong(), header.getLong(), header.getInt(),
+                        header.getInt(), offset);
+                if (offset + HEADER_SIZE + (long) wordsOf(sealedBlock.sizeInBits) * Long.BYTES > size) {
+                    break;
+                }
+                series.sealedBlocks.add(sealedBlock);
+                series.lastTimeInMs = sealedBlock.lastTimeInMs;
+                offset += HEADER_SIZE + (long) wordsOf(sealedBlock.sizeInBits) * Long.BYTES;
+            }
+            if (offset < size) {
+                channel.truncate(offset);
+            }
+        }
+        if (!series.sealedBlocks.isEmpty()) {
+            // The rollups of the days cover the longest time.
+            final long retentionInMs = Resolution.DAY.getStepInMs() * Resolution.DAY.getRetainedSteps();
+            series.scan(series.lastTimeInMs - retentionInMs, Long.MAX_VALUE, series::addToRollups);
+        }
+        return series;
+    }
+
+    /**
+     * Time of the last sample, {@link Long#MIN_VALUE} without sample. The next samples are never before it.
+     */
+    synchronized long getLastTimeInMs() {
+        return lastTimeInMs;
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    synchronized long getCount() {
+        long count = openBlock == null ? 0 : openBlock.getCount();
+        for (SealedBlock sealedBlock : sealedBlocks) {
+            count += sealedBlock.count;
+        }
+        return count;
+    }
+
+    /**
+     * Size of the compressed samples, in bits, without the headers of the blocks.
+     */
+    synchronized long getSizeInBits() {
+        long size = openBlock == null ? 0 : openBlock.getSizeInBits();
+        for (SealedBlock sealedBlock : sealedBlocks) {
+            size += sealedBlock.sizeInBits;
+        }
+        return size;
+    }
+
+    /**
+     * Number of sealed blocks still in memory.
+     */
+    synchronized int getBlocksInMemory() {
+        int blocks = 0;
+        for (SealedBlock sealedBlock : sealedBlocks) {
+            if (sealedBlock.block != null) {
+                blocks++;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Index entry of a sealed block, in memory, in the file, or both.
+     */
+    private static final class SealedBlock {
+
+        private final long firstTimeInMs;
+
+        private final long lastTimeInMs;
+
+        private final int count;
+
+        private final int sizeInBits;
+
+        // Null once the block is only in the file.
+        private volatile TimeSeriesBlock block;
+
+        // Negative until the block is written to the file.
+        private volatile long offset;
+
+        private SealedBlock(final TimeSeriesBlock block) {
+            this.firstTimeInMs = block.getFirstTimeInMs();
+            this.lastTimeInMs = block.getLastTimeInMs();
+            this.count = block.getCount();
+            this.sizeInBits = block.getSizeInBits();
+            this.block = block;
+            this.offset = -1;
+        }
+
+        private SealedBlock(final long firstTimeInMs, final long lastTimeInMs, final int count, final int sizeInBits,
+                final long offset) {
+            this.firstTimeInMs = firstTimeInMs;
+            this.lastTimeInMs = lastTimeInMs;
+            this.count = count;
+            this.sizeInBits = sizeInBits;
+            this.offset = offset;
+        }
+
+        private SealedBlock(final SealedBlock sealedBlock, final long offset) {
+            this(sealedBlock.firstTimeInMs, sealedBlock.lastTimeInMs, sealedBlock.count, sealedBlock.sizeInBits,
+                    offset);
+            this.block = sealedBlock.block;
+        }
+    }
+}
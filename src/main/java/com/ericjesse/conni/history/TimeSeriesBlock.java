@@ -0,0 +1,263 @@
+package com.ericjesse.conni.history;
+
+/**
+ * Block of consecutive samples of a target, compressed like the blocks of Gorilla, the time series database of
+ * Facebook.
+ * <p>
+ * The time of the first sample is kept aside, each following one is encoded as the difference between its delta and
+ * the previous delta: the checks being periodic, it is often 0 and takes one bit, a jitter of up to 16 ms takes 7
+ * bits. The durations are encoded as the XOR with the previous duration: the durations being whole milliseconds of
+ * the same order, only the few meaningful bits of the XOR are written, reusing the window of the previous XOR when
+ * they fit. Gorilla XORs the bits of floating point values; the durations are integers, their XOR has more leading
+ * zeros, written on 6 bits instead of 5. The status takes one bit when it does not change.
+ * <p>
+ * A block is appended to until it is sealed, then it is immutable and can be read concurrently.
+ */
+final class TimeSeriesBlock {
+
+    static final int STATUS_BITS = 10;
+
+    private static final int MAX_STATUS = (1 << STATUS_BITS) - 1;
+
+    private final BitBuffer bits;
+
+    private final long firstTimeInMs;
+
+    private long lastTimeInMs;
+
+    private int count;
+
+    // State of the encoder, unused once sealed.
+    private long previousDeltaInMs;
+
+    private long previousValue;
+
+    private int previousLeadingZeros = -1;
+
+    private int previousTrailingZeros;
+
+    private int previousStatus;
+
+    private boolean sealed;
+
+    TimeSeriesBlock(final long firstTimeInMs) {
+        this.bits = new BitBuffer();
+        this.firstTimeInMs = firstTimeInMs;
+        this.lastTimeInMs = firstTimeInMs;
+    }
+
+    /**
+     * Sealed block read back from its compressed bits.
+     */
+    TimeSeriesBlock(final long firstTimeInMs, final long lastTimeInMs, final int count, final long[] words,
+            final int size) {
+        this.bits = new BitBuffer(words, size);
+        this.firstTimeInMs = firstTimeInMs;
+        this.lastTimeInMs = lastTimeInMs;
+        this.count = count;
+        this.sealed = true;
+    }
+
+    /**
+     * Append a sample.
+     *
+     * @param timeInMs     the time of the sample, not before the last one nor more than about 24 days after the
+     *                     first one.
+     * @param durationInMs the duration.
+     * @param status       the status, from 0 to 1023.
+     */
+    void append(final long timeInMs, final long durationInMs, final int status) {
+        if (sealed) {
+            throw new IllegalStateException("The block is sealed");
+        }
+        if (timeInMs < lastTimeInMs) {
+            throw new IllegalArgumentException("The samples are appended in chronological order");
+        }
+        final int boundedStatus = Math.min(Math.max(status, 0), MAX_STATUS);
+        if (count == 0) {
+            bits.write(durationInMs, 64);
+            bits.write(boundedStatus, STATUS_BITS);
+        } else {
+            final long deltaInMs = timeInMs - lastTimeInMs;
+            writeDeltaOfDelta(deltaInMs - previousDeltaInMs);
+            previousDeltaInMs = deltaInMs;
+            writeValue(durationInMs ^ previousValue);
+            writeStatus(boundedStatus);
+        }
+        lastTimeInMs = timeInMs;
+        previousValue = durationInMs;
+        previousStatus = boundedStatus;
+        count++;
+    }
+
+    private void writeDeltaOfDelta(final long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            bits.write(0b0, 1);
+        } else if (deltaOfDelta >= -16 && deltaOfDelta < 16) {
+            bits.write(0b10, 2);
+            bits.write(deltaOfDelta, 5);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta < 256) {
+            bits.write(0b110, 3);
+            bits.write(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048) {
+            bits.write(0b1110, 4);
+            bits.write(deltaOfDelta, 12);
+        } else {
+            bits.write(0b1111, 4);
+            bits.write(deltaOfDelta, 32);
+        }
+    }
+
+    private void writeValue(final long xor) {
+        if (xor == 0) {
+            bits.write(0b0, 1);
+            return;
+        }
+        final int leadingZeros = Long.numberOfLeadingZeros(xor);
+        final int trailingZeros = Long.numberOfTrailingZeros(xor);
+        if (previousLeadingZeros >= 0 && leadingZeros >= previousLeadingZeros
+                && trailingZeros >= previousTrailingZeros) {
+            bits.write(0b10, 2);
+            bits.write(xor >>> previousTrailingZeros, 64 - previousLeadingZeros - previousTrailingZeros);
+        } else {
+            final int meaningfulBits = 64 - leadingZeros - trailingZeros;
+            bits.write(0b11, 2);
+            bits.write(leadingZeros, 6);
+            bits.write(meaningfulBits - 1, 6);
+            bits.write(xor >>> trailingZeros, meaningfulBits);
+            previousLeadingZeros = leadingZeros;
+            previousTrailingZeros = trailingZeros;
+        }
+    }
+
+    private void writeStatus(final int status) {
+        if (status == previousStatus) {
+            bits.write(0b0, 1);
+        } else {
+            bits.write(0b1, 1);
+            bits.write(status, STATUS_BITS);
+        }
+    }
+
+    /**
+     * Make the block immutable and release its unused capacity.
+     */
+    void seal() {
+        sealed = true;
+        bits.trim();
+    }
+
+    /**
+     * Decode the samples of the block from the given time, included, to the given time, excluded.
+     *
+     * @return the number of samples passed to the consumer.
+     */
+    int scan(final long fromInMs, final long toInMs, final SampleConsumer consumer) {
+        if (count == 0 || lastTimeInMs < fromInMs || firstTimeInMs >= toInMs) {
+            return 0;
+        }
+        final Decoder decoder = new Decoder();
+        int scanned = 0;
+        for (int i = 0; i < count; i++) {
+            decoder.next(i == 0);
+            if (decoder.timeInMs >= toInMs) {
+                break;
+            }
+            if (decoder.timeInMs >= fromInMs) {
+                consumer.accept(decoder.timeInMs, decoder.value, decoder.status);
+                scanned++;
+            }
+        }
+        return scanned;
+    }
+
+    long getFirstTimeInMs() {
+        return firstTimeInMs;
+    }
+
+    long getLastTimeInMs() {
+        return lastTimeInMs;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Size of the compressed samples, in bits.
+     */
+    int getSizeInBits() {
+        return bits.size();
+    }
+
+    long[] getWords() {
+        return bits.getWords();
+    }
+
+    /**
+     * Reader of the samples, the mirror of the encoder.
+     */
+    private final class Decoder {
+
+        private int position;
+
+        private long timeInMs = firstTimeInMs;
+
+        private long deltaInMs;
+
+        private long value;
+
+        private int leadingZeros;
+
+        private int trailingZeros;
+
+        private int status;
+
+        private void next(final boolean first) {
+            if (first) {
+                value = read(64);
+                status = (int) read(STATUS_BITS);
+                return;
+            }
+            deltaInMs += readDeltaOfDelta();
+            timeInMs += deltaInMs;
+            if (read(1) == 1) {
+                if (read(1) == 1) {
+                    leadingZeros = (int) read(6);
+                    final int meaningfulBits = (int) read(6) + 1;
+                    trailingZeros = 64 - leadingZeros - meaningfulBits;
+                }
+                value ^= read(64 - leadingZeros - trailingZeros) << trailingZeros;
+            }
+            if (read(1) == 1) {
+                status = (int) read(STATUS_BITS);
+            }
+        }
+
+        private long readDeltaOfDelta() {
+            if (read(1) == 0) {
+                return 0;
+            }
+            if (read(1) == 0) {
+                return signed(read(5), 5);
+            }
+            if (read(1) == 0) {
+                return signed(read(9), 9);
+            }
+            if (read(1) == 0) {
+                return signed(read(12), 12);
+            }
+            return signed(read(32), 32);
+        }
+
+        private long read(final int count) {
+            final long read = bits.read(position, count);
+            position += count;
+            return read;
+        }
+    }
+
+    private static long signed(final long value, final int bits) {
+        return value << (64 - bits) >> (64 - bits);
+    }
+}
@@ -0,0 +1,264 @@
+package com.ericjesse.conni.history;
+
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TimeSeriesStore keeps the history of the checks of all the targets: the time, the duration and the status of each
+ * check, compressed in blocks to about 2 bytes per check instead of the hundreds of bytes of a {@link HttpResponse}.
+ * <p>
+ * The new samples are appended in memory. Every {@link #SPILL_PERIOD_IN_MS}, the sealed blocks are appended to a file
+ * per target in the directory of the store, and only the blocks of the last {@link #MEMORY_RETENTION_IN_MS} stay in
+ * memory: months of history take a few megabytes on disk and a few kilobytes per target in memory. The files are
+ * indexed again when the store is created, so the history survives a restart.
+ * <p>
+ * The samples are kept for {@link #RETENTION_IN_MS}, as long as the rollups of the days: the older blocks are dropped
+ * when the blocks are spilled.
+ */
+public class TimeSeriesStore implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    /**
+     * Status of a check which failed without response.
+     */
+    public static final int ERROR_STATUS = 0;
+
+    public static final long SPILL_PERIOD_IN_MS = TimeUnit.MINUTES.toMillis(10);
+
+    public static final long MEMORY_RETENTION_IN_MS = TimeUnit.HOURS.toMillis(24);
+
+    public static final long RETENTION_IN_MS = Resolution.DAY.getStepInMs() * Resolution.DAY.getRetainedSteps();
+
+    private static final String FILE_EXTENSION = ".series";
+
+    // Null when the samples are kept in memory only.
+    private final Path directory;
+
+    private final Clock clock;
+
+    private final ConcurrentMap<String, TimeSeries> series = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "conni-history");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Store keeping all the samples in memory.
+     */
+    public TimeSeriesStore() {
+        this.directory = null;
+        this.clock = Clock.systemUTC();
+    }
+
+    /**
+     * Store spilling the sealed blocks to the given directory.
+     *
+     * @throws IOException if the files of the directory cannot be read.
+     */
+    public TimeSeriesStore(final Path directory) throws IOException {
+        this(directory, Clock.systemUTC());
+    }
+
+    // Visible for tests.
+    TimeSeriesStore(final Path directory, final Clock clock) throws IOException {
+        this.directory = directory;
+        this.clock = clock;
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+                for (Path file : files) {
+                    series.put(targetIdOf(file), TimeSeries.load(file));
+                }
+            }
+        }
+    }
+
+    /**
+     * Start spilling the sealed blocks in the background.
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                spill();
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }, SPILL_PERIOD_IN_MS, SPILL_PERIOD_IN_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Append a sample to the history of a target.
+     *
+     * @param targetId     the target.
+     * @param timeInMs     the time of the check, in milliseconds since the epoch.
+     * @param durationInMs the duration of the check.
+     * @param status       the status code of the response, {@link #ERROR_STATUS} for an error.
+     */
+    public void add(final String targetId, final long timeInMs, final long durationInMs, final int status) {
+        series.computeIfAbsent(targetId, this::createSeries).add(timeInMs, durationInMs, status);
+    }
+
+    /**
+     * Append samples to the history of a target at once, {@code count} of them from the given offset of the arrays in
+     * chronological order: the series of the target is looked up and locked once instead of once per sample.
+     *
+     * @return the number of samples dropped because they are older than the last sample of the target.
+     */
+    public int addAll(final String targetId, final long[] timesInMs, final long[] durationsInMs,
+            final int[] statuses, final int offset, final int count) {
+        return series.computeIfAbsent(targetId, this::createSeries)
+                .addAll(timesInMs, durationsInMs, statuses, offset, count);
+    }
+
+    private TimeSeries createSeries(final String targetId) {
+        return new TimeSeries(directory == null ? null : directory.resolve(fileNameOf(targetId)));
+    }
+
+    /**
+     * Observer recording the checks of a target, to add to the client checking it.
+     */
+    public ResponseObserver observerFor(final String targetId) {
+        return new HistoryObserver(targetId);
+    }
+
+    /**
+     * Pass the samples of a target from the given time, included, to the given time, excluded, to the consumer in
+     * chronological order. Only the blocks overlapping the range are decoded.
+     *
+     * @return the number of samples passed to the consumer.
+     * @throws IOException if the spilled blocks cannot be read.
+     */
+    public long scan(final String targetId, final long fromInMs, final long toInMs, final SampleConsumer consumer)
+            throws IOException {
+        final TimeSeries targetSeries = series.get(targetId);
+        return targetSeries == null ? 0 : targetSeries.scan(fromInMs, toInMs, consumer);
+    }
+
+    /**
+     * The series of a target, {@code null} without history.
+     */
+    TimeSeries getSeries(final String targetId) {
+        return series.get(targetId);
+    }
+
+    /**
+     * The targets with a history, including the ones of the previous executions.
+     */
+    public Set<String> getTargetIds() {
+        return Collections.unmodifiableSet(series.keySet());
+    }
+
+    /**
+     * Number of samples of all the targets.
+     */
+    public long getSampleCount() {
+        return series.values().stream().mapToLong(TimeSeries::getCount).sum();
+    }
+
+    /**
+     * Size of the compressed samples of all the targets, in bytes.
+     */
+    public long getSizeInBytes() {
+        return (series.values().stream().mapToLong(TimeSeries::getSizeInBits).sum() + 7) / 8;
+    }
+
+    /**
+     * Drop the blocks older than the retention, write the sealed blocks to the directory and release the memory of the
+     * old ones.
+     */
+    public void spill() throws IOException {
+        final long now = clock.millis();
+        int expired = 0;
+        for (TimeSeries targetSeries : series.values()) {
+            expired += targetSeries.expire(now - RETENTION_IN_MS);
+        }
+        if (directory == null) {
+            return;
+        }
+        int written = 0;
+        for (TimeSeries targetSeries : series.values()) {
+            written += targetSeries.spill(now - MEMORY_RETENTION_IN_MS);
+        }
+        LOG.debug("{} blocks spilled, {} expired, {} samples in {} bytes", written, expired, getSampleCount(),
+                getSizeInBytes());
+    }
+
+    /**
+     * Seal the blocks receiving the new samples and spill them, so all the history is found after a restart.
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        series.values().forEach(TimeSeries::seal);
+        spill();
+    }
+
+    private static String fileNameOf(final String targetId) {
+        try {
+            return URLEncoder.encode(targetId, StandardCharsets.UTF_8.name()) + FILE_EXTENSION;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String targetIdOf(final Path file) {
+        final String fileName = file.getFileName().toString();
+        try {
+            return URLDecoder.decode(fileName.substring(0, fileName.length() - FILE_EXTENSION.length()),
+                    StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final class HistoryObserver implements ResponseObserver {
+
+        private final String targetId;
+
+        private HistoryObserver(final String targetId) {
+            this.targetId = targetId;
+        }
+
+        @Override
+        public ConniError processError(final ConniError error) {
+            add(targetId, clock.millis(), 0, ERROR_STATUS);
+            return error;
+        }
+
+        @Override
+        public HttpResponse processResponse(final HttpResponse response) {
+            add(targetId, response.getSendingRequestInstant().toEpochMilli(), response.getDuration().toMillis(),
+                    response.getStatusCode());
+            return response;
+        }
+
+        @Override
+        public int getOrder() {
+            // After the observers changing the results.
+            return 3;
+        }
+    }
+}
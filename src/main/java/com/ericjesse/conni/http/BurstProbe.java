@@ -0,0 +1,109 @@
+package com.ericjesse.conni.http;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * BurstProbe turns each check of a {@link HttpClient} into a burst of small requests sent back to back over the
+ * same kept-alive connection, to measure the jitter and the loss that a single request cannot show.
+ * <p>
+ * The requests of a burst are sent one after the other, each one as soon as the previous one is answered or failed.
+ * A first request, not measured, warms the connection up so the handshakes do not count as jitter. The observers
+ * get one event per burst with its {@link BurstStatistics}. A probe runs one burst at a time: a check started while
+ * the previous burst is still running is skipped.
+ * <p>
+ * As RFC 3550 intends, the jitter estimator runs over all the bursts of the probe: with its gain of 1/16, the few
+ * differences of a single burst would only report a fraction of the jitter. Only the round trip times of consecutive
+ * requests are compared, never across a lost request or across two bursts.
+ */
+public final class BurstProbe {
+
+    // Gain of the jitter estimator defined by RFC 3550.
+    private static final int JITTER_GAIN = 16;
+
+    private final int size;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Only used by the running burst.
+    private final long[] roundTripTimesInNs;
+
+    private int received;
+
+    private int lost;
+
+    // -1 when the next response does not follow a received response.
+    private long previousRoundTripTimeInNs;
+
+    // Kept across the bursts.
+    private double jitterInNs;
+
+    /**
+     * @param size the number of measured requests per burst, at least 2 to get a jitter.
+     */
+    public BurstProbe(final int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("A burst contains at least 2 requests");
+        }
+        this.size = size;
+        this.roundTripTimesInNs = new long[size];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Reserve the probe for a new burst.
+     *
+     * @return {@code false} if the previous burst is still running.
+     */
+    boolean tryStart() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        received = 0;
+        lost = 0;
+        previousRoundTripTimeInNs = -1;
+        return true;
+    }
+
+    /**
+     * Release the probe after the burst, whatever its result.
+     */
+    void finish() {
+        running.set(false);
+    }
+
+    void recordResponse(final long roundTripTimeInNs) {
+        roundTripTimesInNs[received++] = roundTripTimeInNs;
+        if (previousRoundTripTimeInNs >= 0) {
+            // Back to back requests: the difference of the transit times is the difference of the round trip times.
+            final long difference = Math.abs(roundTripTimeInNs - previousRoundTripTimeInNs);
+            jitterInNs += (difference - jitterInNs) / JITTER_GAIN;
+        }
+        previousRoundTripTimeInNs = roundTripTimeInNs;
+    }
+
+    void recordLoss() {
+        lost++;
+        previousRoundTripTimeInNs = -1;
+    }
+
+    boolean isComplete() {
+        return received + lost >= size;
+    }
+
+    /**
+     * Statistics of the burst, to call once it is complete.
+     */
+    BurstStatistics getStatistics() {
+        if (received == 0) {
+            return new BurstStatistics(size, 0, 0, 0, 0);
+        }
+        Arrays.sort(roundTripTimesInNs, 0, received);
+        final long median = received % 2 == 1 ? roundTripTimesInNs[received / 2] :
+                (roundTripTimesInNs[received / 2 - 1] + roundTripTimesInNs[received / 2]) / 2;
+        return new BurstStatistics(size, received, roundTripTimesInNs[0], median, Math.round(jitterInNs));
+    }
+}
@@ -0,0 +1,77 @@
+package com.ericjesse.conni.http;
+
+import java.time.Duration;
+
+/**
+ * Statistics of a burst of requests sent back to back over the same connection.
+ */
+public final class BurstStatistics {
+
+    private final int size;
+
+    private final int received;
+
+    private final long minRoundTripTimeInNs;
+
+    private final long medianRoundTripTimeInNs;
+
+    private final long jitterInNs;
+
+    BurstStatistics(final int size, final int received, final long minRoundTripTimeInNs,
+            final long medianRoundTripTimeInNs, final long jitterInNs) {
+        this.size = size;
+        this.received = received;
+        this.minRoundTripTimeInNs = minRoundTripTimeInNs;
+        this.medianRoundTripTimeInNs = medianRoundTripTimeInNs;
+        this.jitterInNs = jitterInNs;
+    }
+
+    /**
+     * Number of requests sent in the burst.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Number of responses received, whatever their status.
+     */
+    public int getReceived() {
+        return received;
+    }
+
+    /**
+     * Ratio of the requests without response, between 0 and 1.
+     */
+    public double getLossRatio() {
+        return (size - received) / (double) size;
+    }
+
+    public Duration getMinRoundTripTime() {
+        return Duration.ofNanos(minRoundTripTimeInNs);
+    }
+
+    public Duration getMedianRoundTripTime() {
+        return Duration.ofNanos(medianRoundTripTimeInNs);
+    }
+
+    /**
+     * Inter-arrival jitter as defined by RFC 3550: the mean deviation of the difference of the round trip times of
+     * two consecutive responses, smoothed with a gain of 1/16 over the successive bursts of the target.
+     */
+    public Duration getJitter() {
+        return Duration.ofNanos(jitterInNs);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BurstStatistics{");
+        sb.append("size=").append(size);
+        sb.append(", received=").append(received);
+        sb.append(", minRoundTripTime=").append(getMinRoundTripTime());
+        sb.append(", medianRoundTripTime=").append(getMedianRoundTripTime());
+        sb.append(", jitter=").append(getJitter());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package com.ericjesse.conni.http;
+
+/**
+ * Enum representing what a check measures.
+ */
+public enum CheckMode {
+
+    /**
+     * Time to get the response of a small request, the default.
+     */
+    LATENCY("latency"),
+
+    /**
+     * Throughput of the download of a large response body, streamed without being kept in memory.
+     */
+    DOWNLOAD("download"),
+
+    /**
+     * Throughput of the upload of a generated request body.
+     */
+    UPLOAD("upload"),
+
+    /**
+     * Jitter, loss and round trip times of a burst of small requests sent back to back on the same connection.
+     */
+    BURST("burst");
+
+    private final String value;
+
+    CheckMode(final String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Find the mode from its value, ignoring the case.
+     *
+     * @throws IllegalArgumentException if the value is unknown.
+     */
+    public static CheckMode fromValue(final String value) {
+        for (CheckMode mode : values()) {
+            if (mode.value.equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("the mode " + value + " is unknown");
+    }
+}
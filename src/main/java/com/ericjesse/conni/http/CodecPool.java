@@ -0,0 +1,56 @@
+package com.ericjesse.conni.http;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of native compressors and decompressors shared by the HTTP interceptors.
+ * <p>
+ * {@link Deflater} and {@link Inflater} hold native memory that is only released by {@code end()} or by the
+ * finalizer, so creating new ones for every check is both slow and wasteful. The pool keeps a bounded number of
+ * instances and resets them when they are given back.
+ */
+final class CodecPool {
+
+    // Number of instances kept per kind, enough for the dispatcher threads running concurrently.
+    private static final int MAX_POOLED_INSTANCES = 16;
+
+    // Deflaters without zlib wrapper, used to produce gzip streams.
+    private static final BlockingQueue<Deflater> RAW_DEFLATERS = new ArrayBlockingQueue<>(MAX_POOLED_INSTANCES);
+
+    // Inflaters without zlib wrapper, used to read gzip and raw deflate streams.
+    private static final BlockingQueue<Inflater> RAW_INFLATERS = new ArrayBlockingQueue<>(MAX_POOLED_INSTANCES);
+
+    // Inflaters expecting the zlib wrapper, used to read RFC 1950 deflate streams.
+    private static final BlockingQueue<Inflater> ZLIB_INFLATERS = new ArrayBlockingQueue<>(MAX_POOLED_INSTANCES);
+
+    private CodecPool() {
+    }
+
+    static Deflater borrowDeflater() {
+        final Deflater deflater = RAW_DEFLATERS.poll();
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    static void release(final Deflater deflater) {
+        deflater.reset();
+        if (!RAW_DEFLATERS.offer(deflater)) {
+            // The pool is full, free the native memory right now.
+            deflater.end();
+        }
+    }
+
+    static Inflater borrowInflater(final boolean nowrap) {
+        final Inflater inflater = (nowrap ? RAW_INFLATERS : ZLIB_INFLATERS).poll();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    static void release(final Inflater inflater, final boolean nowrap) {
+        inflater.reset();
+        if (!(nowrap ? RAW_INFLATERS : ZLIB_INFLATERS).offer(inflater)) {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.ericjesse.conni.http;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Enum representing the HTTP content codings the app can produce and read.
+ * <p>
+ * Only the codings backed by the JDK are supported, the compressors and decompressors are borrowed from the
+ * {@link CodecPool}. Other codings (br, zstd...) are left untouched.
+ */
+public enum ContentEncoding {
+
+    GZIP("gzip"), DEFLATE("deflate");
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final int GZIP_HEADER_LENGTH = 10;
+
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private static final int FHCRC = 2;
+
+    private static final int FEXTRA = 4;
+
+    private static final int FNAME = 8;
+
+    private static final int FCOMMENT = 16;
+
+    private static final byte[] GZIP_HEADER = {
+            (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private static final String IDENTITY = "identity";
+
+    // Legacy name of gzip, to be read as gzip.
+    private static final String X_GZIP = "x-gzip";
+
+    private final String value;
+
+    ContentEncoding(final String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Find the supported codings declared in a {@code Content-Encoding} header.
+     *
+     * @param headerValue the value of the header, can be {@code null}.
+     * @return the codings in the order they were applied, empty without coding, or {@code null} if one of them is not
+     * supported: the content is then left as it is rather than decoded partially.
+     */
+    public static List<ContentEncoding> fromHeader(final String headerValue) {
+        final List<ContentEncoding> encodings = new ArrayList<>(1);
+        if (headerValue == null) {
+            return encodings;
+        }
+        for (String coding : headerValue.split(",")) {
+            final String lowerCaseCoding = coding.trim().toLowerCase(Locale.ROOT);
+            if (lowerCaseCoding.isEmpty() || IDENTITY.equals(lowerCaseCoding)) {
+                continue;
+            }
+            if (GZIP.value.equals(lowerCaseCoding) || X_GZIP.equals(lowerCaseCoding)) {
+                encodings.add(GZIP);
+            } else if (DEFLATE.value.equals(lowerCaseCoding)) {
+                encodings.add(DEFLATE);
+            } else {
+                return null;
+            }
+        }
+        return encodings;
+    }
+
+    /**
+     * Decompress a content while it is read, removing its codings from the last applied to the first.
+     * <p>
+     * Some servers declare codings they did not apply, like {@code gzip,deflate} for a content only gzipped. So a
+     * layer starting with the gzip magic number is read as gzip whatever its declared coding, and with several
+     * codings, a gzip layer without it is the raw content.
+     *
+     * @param encodings the codings in the order they were applied, see {@link #fromHeader(String)}.
+     * @param content   the encoded content.
+     * @return the raw content, the reads throw an {@link IOException} if the content is not valid for the codings.
+     */
+    public static Source decode(final List<ContentEncoding> encodings, final BufferedSource content) {
+        Source decoded = content;
+        for (int i = encodings.size() - 1; i >= 0; i--) {
+            final BufferedSource layer = decoded instanceof BufferedSource ? (BufferedSource) decoded
+                    : Okio.buffer(decoded);
+            decoded = new InflatingSource(layer, encodings.get(i) == GZIP, encodings.size() > 1);
+        }
+        return decoded;
+    }
+
+    /**
+     * Compress the content in one pass.
+     *
+     * @param content the raw content.
+     * @return the encoded content.
+     */
+    public byte[] encode(final byte[] content) {
+        final Buffer output = new Buffer();
+        if (this == GZIP) {
+            output.write(GZIP_HEADER);
+        }
+        final Deflater deflater = CodecPool.borrowDeflater();
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            while (!deflater.finished()) {
+                final int length = deflater.deflate(chunk);
+                output.write(chunk, 0, length);
+            }
+        } finally {
+            CodecPool.release(deflater);
+        }
+        if (this == GZIP) {
+            final CRC32 crc = new CRC32();
+            crc.update(content);
+            output.writeIntLe((int) crc.getValue());
+            output.writeIntLe(content.length);
+        }
+        return output.readByteArray();
+    }
+
+    /**
+     * Decompress the content in one pass.
+     *
+     * @param content the encoded content.
+     * @return the raw content.
+     * @throws IOException if the content is not valid for the coding.
+     */
+    public byte[] decode(final byte[] content) throws IOException {
+        final Buffer output = new Buffer();
+        try (Source source = decode(new Buffer().write(content))) {
+            output.writeAll(source);
+        }
+        return output.readByteArray();
+    }
+
+    /**
+     * Decompress the content while it is read, without buffering it. The decompressor is borrowed from the
+     * {@link CodecPool} at the first read and given back at the end of the content or when the source is closed.
+     *
+     * @param content the encoded content.
+     * @return the raw content, the reads throw an {@link IOException} if the content is not valid for the coding.
+     */
+    public Source decode(final BufferedSource content) {
+        return new InflatingSource(content, this == GZIP, false);
+    }
+
+    /**
+     * Source inflating a gzip or deflate stream with a pooled {@link Inflater}, a chunk at a time. The trailer of a
+     * gzip stream is checked against the inflated bytes at its end.
+     */
+    private static final class InflatingSource implements Source {
+
+        private final BufferedSource source;
+
+        private final boolean declaredGzip;
+
+        // Whether the layer is one of several codings, read leniently.
+        private final boolean stacked;
+
+        private boolean started;
+
+        // Whether the layer turned out not to be encoded.
+        private boolean passThrough;
+
+        private boolean gzip;
+
+        private CRC32 crc;
+
+        private final byte[] input = new byte[CHUNK_SIZE];
+
+        private final byte[] output = new byte[CHUNK_SIZE];
+
+        private int inputLength;
+
+        private boolean nowrap;
+
+        private Inflater inflater;
+
+        private long inflatedLength;
+
+        private boolean finished;
+
+        private InflatingSource(final BufferedSource source, final boolean declaredGzip, final boolean stacked) {
+            this.source = source;
+            this.declaredGzip = declaredGzip;
+            this.stacked = stacked;
+        }
+
+        @Override
+        public long read(final Buffer sink, final long byteCount) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (!started) {
+                start();
+                started = true;
+            }
+            if (passThrough) {
+                return source.read(sink, byteCount);
+            }
+            try {
+                while (true) {
+                    if (inflater.finished()) {
+                        if (gzip) {
+                            checkGzipTrailer();
+                        }
+                        finished = true;
+                        release();
+                        return -1;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new ProtocolException("The compressed content needs a preset dictionary");
+                    }
+                    if (inflater.needsInput()) {
+                        if (!source.request(1)) {
+                            throw new EOFException("The compressed content is truncated");
+                        }
+                        inputLength = source.read(input, 0, (int) Math.min(input.length, source.getBuffer().size()));
+                        inflater.setInput(input, 0, inputLength);
+                    }
+                    final int length = inflater.inflate(output, 0, (int) Math.min(byteCount, output.length));
+                    if (length > 0) {
+                        if (gzip) {
+                            crc.update(output, 0, length);
+                        }
+                        inflatedLength += length;
+                        sink.write(output, 0, length);
+                        return length;
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ProtocolException(e.getMessage());
+            }
+        }
+
+        private void start() throws IOException {
+            final boolean magic = source.request(2)
+                    && ((source.getBuffer().getByte(0) & 0xff) | (source.getBuffer().getByte(1) & 0xff) << 8)
+                    == GZIP_MAGIC;
+            if (declaredGzip && stacked && !magic) {
+                passThrough = true;
+                return;
+            }
+            gzip = magic || declaredGzip;
+            if (gzip) {
+                crc = new CRC32();
+                skipGzipHeader();
+                nowrap = true;
+            } else {
+                // The deflate coding should be wrapped by zlib, but some servers send raw deflate streams.
+                if (source.request(2)) {
+                    final int first = source.getBuffer().getByte(0) & 0xff;
+                    final int second = source.getBuffer().getByte(1) & 0xff;
+                    nowrap = (first & 0x0f) != Deflater.DEFLATED || ((first << 8) | second) % 31 != 0;
+                } else {
+                    nowrap = true;
+                }
+            }
+            inflater = CodecPool.borrowInflater(nowrap);
+        }
+
+        private void skipGzipHeader() throws IOException {
+            if (!source.request(GZIP_HEADER_LENGTH)) {
+                throw new EOFException("The gzip header is truncated");
+            }
+            if ((source.readShortLe() & 0xffff) != GZIP_MAGIC || source.readByte() != Deflater.DEFLATED) {
+                throw new ProtocolException("The content is not a valid gzip stream");
+            }
+            final int flags = source.readByte();
+            source.skip(GZIP_HEADER_LENGTH - 4);
+            if ((flags & FEXTRA) != 0) {
+                source.require(2);
+                source.skip(source.readShortLe() & 0xffff);
+            }
+            if ((flags & FNAME) != 0) {
+                skipZeroTerminated();
+            }
+            if ((flags & FCOMMENT) != 0) {
+                skipZeroTerminated();
+            }
+            if ((flags & FHCRC) != 0) {
+                source.skip(2);
+            }
+        }
+
+        private void skipZeroTerminated() throws IOException {
+            final long index = source.indexOf((byte) 0);
+            if (index == -1) {
+                throw new EOFException("The gzip header is truncated");
+            }
+            source.skip(index + 1);
+        }
+
+        private void checkGzipTrailer() throws IOException {
+            // The trailer starts with the input left by the inflater.
+            final int remaining = inflater.getRemaining();
+            final Buffer trailer = new Buffer().write(input, inputLength - remaining, remaining);
+            while (trailer.size() < GZIP_TRAILER_LENGTH) {
+                if (source.read(trailer, GZIP_TRAILER_LENGTH - trailer.size()) == -1) {
+                    throw new EOFException("The gzip trailer is truncated");
+                }
+            }
+            if (trailer.readIntLe() != (int) crc.getValue() || trailer.readIntLe() != (int) inflatedLength) {
+                throw new ProtocolException("The gzip trailer does not match the content");
+            }
+        }
+
+        private void release() {
+            if (inflater != null) {
+                CodecPool.release(inflater, nowrap);
+                inflater = null;
+            }
+        }
+
+        @Override
+        public Timeout timeout() {
+            return source.timeout();
+        }
+
+        @Override
+        public void close() throws IOException {
+            release();
+            source.close();
+        }
+    }
+}
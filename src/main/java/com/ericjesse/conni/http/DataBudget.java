@@ -0,0 +1,87 @@
+package com.ericjesse.conni.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * DataBudget limits the bytes a target can transfer per hour, so the throughput checks do not saturate a metered
+ * link.
+ * <p>
+ * The bytes are acquired chunk by chunk while transferring, so a check stops as soon as the budget is consumed instead
+ * of exceeding it. The budget is renewed one hour after the start of the current window, measured with the monotonic
+ * clock so changing the time of the machine has no effect.
+ */
+public final class DataBudget {
+
+    private static final long WINDOW_IN_NS = TimeUnit.HOURS.toNanos(1);
+
+    private final long bytesPerHour;
+
+    private final LongSupplier nanoClock;
+
+    private long windowStartInNs;
+
+    private long usedBytes;
+
+    /**
+     * @param bytesPerHour the number of bytes allowed per hour, {@code 0} for no limit.
+     */
+    public DataBudget(final long bytesPerHour) {
+        this(bytesPerHour, System::nanoTime);
+    }
+
+    // Visible for tests.
+    DataBudget(final long bytesPerHour, final LongSupplier nanoClock) {
+        if (bytesPerHour < 0) {
+            throw new IllegalArgumentException("The budget cannot be negative");
+        }
+        this.bytesPerHour = bytesPerHour;
+        this.nanoClock = nanoClock;
+        this.windowStartInNs = nanoClock.getAsLong();
+    }
+
+    public long getBytesPerHour() {
+        return bytesPerHour;
+    }
+
+    /**
+     * Take up to {@code requested} bytes from the budget.
+     *
+     * @return the number of bytes granted, {@code 0} when the budget of the current hour is consumed.
+     */
+    public synchronized long acquire(final long requested) {
+        if (bytesPerHour == 0) {
+            return requested;
+        }
+        renewIfElapsed();
+        final long granted = Math.min(requested, bytesPerHour - usedBytes);
+        usedBytes += granted;
+        return granted;
+    }
+
+    /**
+     * Give back the bytes acquired but not transferred.
+     */
+    public synchronized void release(final long bytes) {
+        usedBytes = Math.max(0, usedBytes - bytes);
+    }
+
+    /**
+     * The bytes still available in the current hour, {@link Long#MAX_VALUE} without limit.
+     */
+    public synchronized long getRemaining() {
+        if (bytesPerHour == 0) {
+            return Long.MAX_VALUE;
+        }
+        renewIfElapsed();
+        return bytesPerHour - usedBytes;
+    }
+
+    private void renewIfElapsed() {
+        final long now = nanoClock.getAsLong();
+        if (now - windowStartInNs >= WINDOW_IN_NS) {
+            windowStartInNs = now;
+            usedBytes = 0;
+        }
+    }
+}
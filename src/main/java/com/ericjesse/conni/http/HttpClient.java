@@ -2,11 +2,13 @@ package com.ericjesse.conni.http;
 
 import com.ericjesse.conni.http.errors.ConnectionError;
 import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.http.errors.UnconfirmedError;
 import com.ericjesse.conni.http.errors.UnexpectedError;
 import com.ericjesse.conni.http.errors.UnknownHostError;
 import com.ericjesse.conni.processors.ResponseObserver;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.Headers;
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -14,21 +16,20 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
-import okio.BufferedSink;
-import okio.BufferedSource;
-import okio.GzipSink;
-import okio.GzipSource;
+import okio.Buffer;
 import okio.Okio;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.ConnectException;
+import java.net.ProtocolException;
 import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HttpClient is the default implementation of HttpConnectivityChecker to check the connectivity on the Internet.
@@ -43,6 +44,10 @@ public class HttpClient implements HttpConnectivityChecker {
 
     public static final String CONTENT_ENCODING_VALUE_GZIP = "gzip";
 
+    private static final String CONTENT_LENGTH_HEADER_NAME = "Content-Length";
+
+    private static final String TRANSFER_ENCODING_HEADER_NAME = "Transfer-Encoding";
+
     private static final Logger LOG = LoggerFactory.getLogger(HttpClient.class);
 
     private static final int DEFAULT_TIMEOUT_IN_MS = 2_000;
@@ -53,12 +58,34 @@ public class HttpClient implements HttpConnectivityChecker {
 
     private final HttpRequest requestPrototype;
 
+    private final HttpProtocol protocol;
+
     private final Request actualRequest;
 
+    // Placeholders to resolve for each check, null when the actual request can be sent as is.
+    private final RequestTemplate template;
+
+    // Throughput measured by each check, null for the other checks.
+    private final ThroughputProbe throughputProbe;
+
+    // Burst of requests sent by each check, null for the other checks.
+    private final BurstProbe burstProbe;
+
+    // Confirmation of the failures by reference endpoints, null to report the failures as they are.
+    private QuorumConfirmation quorumConfirmation;
+
+    private OkHttpClient referenceClient;
+
+    // Decision of the references on the current failure of the target, null while it is up or the decision pending.
+    private volatile ConniError failureDecision;
+
     private final List<ResponseObserver> observers = new LinkedList<>();
 
     private boolean initialized = false;
 
+    // Requests sent and not answered yet, including the ones whose callback is running.
+    private final AtomicInteger callsInFlight = new AtomicInteger();
+
     public HttpClient() throws InvalidRequestException {
         this(DEFAULT_REQUEST, DEFAULT_TIMEOUT_IN_MS);
     }
@@ -68,21 +95,52 @@ public class HttpClient implements HttpConnectivityChecker {
     }
 
     public HttpClient(final HttpRequest requestPrototype, final int timeoutInMs) throws InvalidRequestException {
+        this(new OkHttpClient.Builder(), requestPrototype, timeoutInMs, HttpProtocol.AUTO, null, null);
+    }
+
+    public HttpClient(final HttpRequest requestPrototype, final int timeoutInMs, final HttpProtocol protocol)
+            throws InvalidRequestException {
+        this(new OkHttpClient.Builder(), requestPrototype, timeoutInMs, protocol, null, null);
+    }
+
+    /**
+     * Constructor used by the {@link HttpClientFactory} to share the connection pool and the dispatcher of a base
+     * client between several targets.
+     */
+    HttpClient(final OkHttpClient.Builder clientBuilder, final HttpRequest requestPrototype, final int timeoutInMs,
+            final HttpProtocol protocol, final ThroughputProbe throughputProbe, final BurstProbe burstProbe)
+            throws InvalidRequestException {
         this.requestPrototype = requestPrototype;
-        client = new OkHttpClient.Builder().addNetworkInterceptor(new GzipRequestInterceptor())
-                .addNetworkInterceptor(new GzipResponseInterceptor()).connectTimeout(timeoutInMs, TimeUnit.MILLISECONDS)
+        this.protocol = protocol;
+        this.throughputProbe = throughputProbe;
+        this.burstProbe = burstProbe;
+        final boolean clearText = requestPrototype.getUrl().regionMatches(true, 0, "http:", 0, 5);
+        if (protocol == HttpProtocol.H2C && !clearText) {
+            throw new InvalidRequestException("HTTP/2 over clear text (h2c) requires an http URL");
+        } else if (protocol == HttpProtocol.HTTP_2 && clearText) {
+            // Without TLS, there is no negotiation of HTTP/2.
+            throw new InvalidRequestException("HTTP/2 over TLS (h2) requires an https URL, use h2c for an http URL");
+        }
+        clientBuilder.protocols(protocol.getOkHttpProtocols());
+        if (throughputProbe == null) {
+            // The throughput probes stream the bodies as they are on the wire.
+            clientBuilder.addNetworkInterceptor(new GzipRequestInterceptor())
+                    .addNetworkInterceptor(new GzipResponseInterceptor());
+        }
+        client = clientBuilder.connectTimeout(timeoutInMs, TimeUnit.MILLISECONDS)
                 .readTimeout(timeoutInMs, TimeUnit.MILLISECONDS).writeTimeout(timeoutInMs, TimeUnit.MILLISECONDS)
                 .build();
         // Convert the actualRequest.
         try {
-            this.actualRequest = convertRequest(this.requestPrototype);
+            this.template = RequestTemplate.compile(this.requestPrototype);
+            this.actualRequest = convertRequest(this.requestPrototype, this.template);
         } catch (IllegalArgumentException e) {
             throw new InvalidRequestException(e);
         }
     }
 
     // Visible for tests.
-    private Request convertRequest(final HttpRequest request) {
+    private Request convertRequest(final HttpRequest request, final RequestTemplate template) {
         Request.Builder builder = new Request.Builder();
         // Method and body.
         if (HttpMethod.GET.equals(request.getMethod())) {
@@ -91,10 +149,14 @@ public class HttpClient implements HttpConnectivityChecker {
             builder.method(request.getMethod().name(),
                     RequestBody.create(MediaType.parse(request.getContentType().getValue()), request.getBody()));
         }
-        // URL of the request.
-        builder.url(request.getUrl());
-        // Headers.
-        request.getHeaders().forEach((key, values) -> values.forEach(value -> builder.addHeader(key, value)));
+        // URL of the request, already parsed by the template if any.
+        if (template == null) {
+            builder.url(request.getUrl());
+        } else {
+            builder.url(template.getBaseUrl());
+        }
+        // Headers, copied at once from the flat array of the request.
+        builder.headers(Headers.of(request.getHttpHeaders().toNamesAndValues()));
 
         return builder.build();
     }
@@ -109,6 +171,38 @@ public class HttpClient implements HttpConnectivityChecker {
         return actualRequest;
     }
 
+    public HttpRequest getRequestPrototype() {
+        return requestPrototype;
+    }
+
+    public HttpProtocol getProtocol() {
+        return protocol;
+    }
+
+    public ThroughputProbe getThroughputProbe() {
+        return throughputProbe;
+    }
+
+    public BurstProbe getBurstProbe() {
+        return burstProbe;
+    }
+
+    public QuorumConfirmation getQuorumConfirmation() {
+        return quorumConfirmation;
+    }
+
+    /**
+     * Confirm the failures of the checks with reference endpoints before reporting them, to call before the first
+     * check. The references share the connections of the checks. Only the first failure after a success calls the
+     * references, the following ones are reported with its decision until the target answers again.
+     *
+     * @param quorumConfirmation the confirmation, {@code null} to report the failures as they are.
+     */
+    public void setQuorumConfirmation(final QuorumConfirmation quorumConfirmation) {
+        this.quorumConfirmation = quorumConfirmation;
+        this.referenceClient = quorumConfirmation == null ? null : quorumConfirmation.referenceClient(client);
+    }
+
     @Override
     public void addObserver(final ResponseObserver observer) {
         if (observer != null) {
@@ -123,40 +217,269 @@ public class HttpClient implements HttpConnectivityChecker {
             initialized = true;
         }
 
+        if (burstProbe != null) {
+            if (burstProbe.tryStart()) {
+                new Burst().next();
+            } else {
+                LOG.debug("The previous burst is still running, the check is skipped");
+            }
+            return;
+        }
+        if (throughputProbe != null && !throughputProbe.tryStart()) {
+            LOG.debug("The previous transfer is still running or the data budget is consumed, the check is skipped");
+            return;
+        }
+        final Request resolvedRequest = template == null ? actualRequest : template.resolve(actualRequest);
+        final Request request = throughputProbe == null ? resolvedRequest : throughputProbe.prepare(resolvedRequest);
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Executing request call to " + actualRequest.url().url().toExternalForm());
+            LOG.debug("Executing request call to " + request.url().url().toExternalForm());
         }
-        client.newCall(actualRequest).enqueue(new Callback() {
+        // The durations of OkHttp are measured on the wall clock, which keeps running while the computer sleeps.
+        final SuspendDetector suspendDetector = new SuspendDetector();
+        enqueue(request, new Callback() {
 
             @Override
             public void onFailure(final Call call, final IOException e) {
-                ConniError error;
-                if (e instanceof UnknownHostException) {
-                    error = new UnknownHostError(call.request().url().host());
-                } else if (e instanceof ConnectException) {
-                    error = new ConnectionError();
-                } else {
-                    error = new UnexpectedError(e);
+                final ConniError error = convertError(call, e);
+                finishThroughputProbe();
+                if (!spansSuspend(suspendDetector)) {
+                    confirmError(error);
                 }
-                observers.forEach(o -> o.processError(error));
             }
 
             @Override
             public void onResponse(final Call call, final Response response) throws IOException {
+                if (!protocol.accepts(response.protocol())) {
+                    response.close();
+                    onFailure(call, unexpectedProtocol(response));
+                    return;
+                }
                 // Convert the response.
-                final HttpResponse httpResponse = convertResponse(response);
+                final HttpResponse httpResponse;
+                try {
+                    httpResponse = convertResponse(response);
+                } catch (IOException e) {
+                    final ConniError error = new UnexpectedError(e);
+                    notifyError(error);
+                    return;
+                } finally {
+                    finishThroughputProbe();
+                }
                 // Call the observers.
-                observers.forEach(o -> o.processResponse(httpResponse));
+                if (!spansSuspend(suspendDetector)) {
+                    notifyResponse(httpResponse);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send a request, counted in {@link #getCallsInFlight()} until its callback returns.
+     */
+    private void enqueue(final Request request, final Callback callback) {
+        callsInFlight.incrementAndGet();
+        client.newCall(request).enqueue(new Callback() {
+
+            @Override
+            public void onFailure(final Call call, final IOException e) {
+                try {
+                    callback.onFailure(call, e);
+                } finally {
+                    callsInFlight.decrementAndGet();
+                }
+            }
+
+            @Override
+            public void onResponse(final Call call, final Response response) throws IOException {
+                try {
+                    callback.onResponse(call, response);
+                } finally {
+                    callsInFlight.decrementAndGet();
+                }
             }
         });
     }
 
+    /**
+     * Number of the requests of the checks sent and not answered yet. A check whose result is discarded, for example
+     * after a suspend, is not in flight anymore once its request is answered.
+     */
+    public int getCallsInFlight() {
+        return callsInFlight.get();
+    }
+
+    /**
+     * Whether the computer was suspended since the start of a check: the wall clock went on while the monotonic clock
+     * stopped. The result of such a check is discarded, its duration includes the suspend and its outcome is stale.
+     */
+    private boolean spansSuspend(final SuspendDetector suspendDetector) {
+        final long suspendedInMs = suspendDetector.getSuspendedInMs();
+        if (suspendedInMs == 0) {
+            return false;
+        }
+        LOG.info("The check of {} spans a suspend of about {} ms, its result is discarded", requestPrototype.getUrl(),
+                suspendedInMs);
+        return true;
+    }
+
+    /**
+     * Pass the response along the chain of observers, each one receiving the response returned by the previous one.
+     */
+    private void notifyResponse(final HttpResponse response) {
+        failureDecision = null;
+        HttpResponse current = response;
+        for (ResponseObserver observer : observers) {
+            final HttpResponse processed = observer.processResponse(current);
+            if (processed != null) {
+                current = processed;
+            }
+        }
+    }
+
+    /**
+     * Notify a failure to reach the target, once confirmed by the references if any.
+     */
+    private void confirmError(final ConniError error) {
+        final ConniError decision = failureDecision;
+        if (quorumConfirmation == null) {
+            notifyError(error);
+        } else if (decision == null) {
+            // The target was up.
+            quorumConfirmation.confirm(referenceClient, error, decided -> {
+                failureDecision = decided;
+                notifyError(decided);
+            });
+        } else if (decision instanceof UnconfirmedError) {
+            final UnconfirmedError unconfirmed = (UnconfirmedError) decision;
+            notifyError(new UnconfirmedError(error, unconfirmed.getAnsweredReferences(), unconfirmed.getReferences()));
+        } else {
+            notifyError(error);
+        }
+    }
+
+    /**
+     * Pass the error along the chain of observers, each one receiving the error returned by the previous one.
+     */
+    private void notifyError(final ConniError error) {
+        ConniError current = error;
+        for (ResponseObserver observer : observers) {
+            final ConniError processed = observer.processError(current);
+            if (processed != null) {
+                current = processed;
+            }
+        }
+    }
+
+    private ConniError convertError(final Call call, final IOException e) {
+        if (e instanceof UnknownHostException) {
+            return new UnknownHostError(call.request().url().host());
+        } else if (e instanceof ConnectException) {
+            return new ConnectionError();
+        }
+        return new UnexpectedError(e);
+    }
+
+    private ProtocolException unexpectedProtocol(final Response response) {
+        return new ProtocolException(
+                "The protocol " + protocol.getValue() + " was expected but " + response.protocol() + " was negotiated");
+    }
+
     private HttpResponse convertResponse(final Response response) throws IOException {
+        if (throughputProbe != null) {
+            return new HttpResponse(this.requestPrototype, response, throughputProbe.measure(response));
+        }
         return new HttpResponse(this.requestPrototype, response);
     }
 
+    private void finishThroughputProbe() {
+        if (throughputProbe != null) {
+            throughputProbe.finish();
+        }
+    }
+
+    /**
+     * Requests of one burst, each one sent from the callback of the previous one so they share the same connection.
+     */
+    private final class Burst implements Callback {
+
+        // The first request warms the connection up and is not measured.
+        private boolean warmUp = true;
+
+        private long sentAtInNs;
+
+        private HttpResponse lastResponse;
+
+        private ConniError lastError;
+
+        private void next() {
+            final Request request = template == null ? actualRequest : template.resolve(actualRequest);
+            sentAtInNs = System.nanoTime();
+            enqueue(request, this);
+        }
+
+        @Override
+        public void onFailure(final Call call, final IOException e) {
+            final ConniError error = convertError(call, e);
+            if (warmUp) {
+                // The target is not reachable, no need to measure anything.
+                burstProbe.finish();
+                confirmError(error);
+                return;
+            }
+            lastError = error;
+            burstProbe.recordLoss();
+            nextOrComplete();
+        }
+
+        @Override
+        public void onResponse(final Call call, final Response response) {
+            final HttpResponse httpResponse;
+            try {
+                if (!protocol.accepts(response.protocol())) {
+                    response.close();
+                    throw unexpectedProtocol(response);
+                }
+                httpResponse = convertResponse(response);
+            } catch (IOException e) {
+                onFailure(call, e);
+                return;
+            }
+            final long roundTripTimeInNs = System.nanoTime() - sentAtInNs;
+            if (warmUp) {
+                warmUp = false;
+            } else {
+                lastResponse = httpResponse;
+                burstProbe.recordResponse(roundTripTimeInNs);
+            }
+            nextOrComplete();
+        }
+
+        private void nextOrComplete() {
+            if (!burstProbe.isComplete()) {
+                next();
+                return;
+            }
+            final BurstStatistics statistics = burstProbe.getStatistics();
+            burstProbe.finish();
+            if (lastResponse == null) {
+                confirmError(lastError);
+            } else {
+                final HttpResponse aggregatedResponse = new HttpResponse(lastResponse, statistics);
+                notifyResponse(aggregatedResponse);
+            }
+        }
+    }
+
+    /**
+     * Interceptor compressing the request bodies with gzip.
+     * <p>
+     * The body of the prototype is the same instance for every check, so it is compressed only once and the result
+     * is cached with its known length. This also avoids the chunked transfer encoding.
+     */
     final class GzipRequestInterceptor implements Interceptor {
 
+        private volatile CompressedBody lastCompressedBody;
+
         @Override
         public Response intercept(Interceptor.Chain chain) throws IOException {
             final Request originalRequest = chain.request();
@@ -164,66 +487,71 @@ public class HttpClient implements HttpConnectivityChecker {
                 return chain.proceed(originalRequest);
             }
 
+            // The length headers were computed by OkHttp from the original body and must be replaced.
+            final RequestBody compressedBody = gzip(originalRequest.body());
             final Request compressedRequest =
                     originalRequest.newBuilder().header(CONTENT_ENCODING_HEADER_NAME, CONTENT_ENCODING_VALUE_GZIP)
-                            .method(originalRequest.method(), gzip(originalRequest.body())).build();
+                            .header(CONTENT_LENGTH_HEADER_NAME, Long.toString(compressedBody.contentLength()))
+                            .removeHeader(TRANSFER_ENCODING_HEADER_NAME)
+                            .method(originalRequest.method(), compressedBody).build();
             return chain.proceed(compressedRequest);
         }
 
-        private RequestBody gzip(final RequestBody body) {
-            return new RequestBody() {
+        // Visible for tests.
+        RequestBody gzip(final RequestBody body) throws IOException {
+            final CompressedBody cached = lastCompressedBody;
+            if (cached != null && cached.source == body) {
+                return cached.compressed;
+            }
 
-                @Override
-                public MediaType contentType() {
-                    return body.contentType();
-                }
+            final Buffer content = new Buffer();
+            body.writeTo(content);
+            final RequestBody compressed =
+                    RequestBody.create(body.contentType(), ContentEncoding.GZIP.encode(content.readByteArray()));
+            lastCompressedBody = new CompressedBody(body, compressed);
+            return compressed;
+        }
+    }
 
-                @Override
-                public long contentLength() {
-                    return -1; // We don't know the compressed length in advance!
-                }
+    /**
+     * Pair of a request body and its compressed version.
+     */
+    private static final class CompressedBody {
 
-                @Override
-                public void writeTo(BufferedSink sink) throws IOException {
-                    final BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
-                    body.writeTo(gzipSink);
-                    gzipSink.close();
-                }
-            };
+        private final RequestBody source;
+
+        private final RequestBody compressed;
+
+        private CompressedBody(final RequestBody source, final RequestBody compressed) {
+            this.source = source;
+            this.compressed = compressed;
         }
     }
 
+    /**
+     * Interceptor decompressing the response bodies encoded with the supported {@link ContentEncoding}, while they are
+     * read.
+     * <p>
+     * The headers of the original response are kept, so the observers can still see the encoding used on the wire.
+     */
     final class GzipResponseInterceptor implements Interceptor {
 
         @Override
         public Response intercept(Interceptor.Chain chain) throws IOException {
             final Response originalResponse = chain.proceed(chain.request());
-            if (originalResponse.body() == null || originalResponse.header(CONTENT_ENCODING_HEADER_NAME) == null
-                    || !originalResponse.header(CONTENT_ENCODING_HEADER_NAME).contains(CONTENT_ENCODING_VALUE_GZIP)) {
+            final List<ContentEncoding> encodings =
+                    ContentEncoding.fromHeader(originalResponse.header(CONTENT_ENCODING_HEADER_NAME));
+            if (originalResponse.body() == null || encodings == null || encodings.isEmpty()) {
                 return originalResponse;
             }
 
-            return originalResponse.newBuilder().body(gunzip(originalResponse.body())).build();
+            return originalResponse.newBuilder().body(decode(originalResponse.body(), encodings)).build();
         }
 
-        private ResponseBody gunzip(final ResponseBody body) {
-            return new ResponseBody() {
-
-                @Override
-                public MediaType contentType() {
-                    return body.contentType();
-                }
-
-                @Override
-                public long contentLength() {
-                    return -1; // We don't know the uncompressed length in advance!
-                }
-
-                @Override
-                public BufferedSource source() {
-                    return Okio.buffer(new GzipSource(body.source()));
-                }
-            };
+        private ResponseBody decode(final ResponseBody body, final List<ContentEncoding> encodings) {
+            // Streamed, the length of the decoded content is unknown.
+            return ResponseBody.create(body.contentType(), -1,
+                    Okio.buffer(ContentEncoding.decode(encodings, body.source())));
         }
     }
     // TODO Create a Logger Interceptor
@@ -0,0 +1,129 @@
+package com.ericjesse.conni.http;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HttpClientFactory creates the {@link HttpClient} of many targets on top of one shared OkHttp client.
+ * <p>
+ * All the created clients share the same connection pool and dispatcher, so the warm connections to a host are
+ * reused by every target calling it and are kept when a target is added or removed. Deriving the clients also avoids
+ * initializing the TLS context once per target.
+ */
+public class HttpClientFactory {
+
+    private final OkHttpClient baseClient;
+
+    public HttpClientFactory() {
+        this(new OkHttpClient());
+    }
+
+    /**
+     * @param idleThreadTimeoutInMs the time after which an idle thread of the dispatcher stops, a minute by default.
+     */
+    public HttpClientFactory(final long idleThreadTimeoutInMs) {
+        this(new OkHttpClient.Builder().dispatcher(new Dispatcher(new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                idleThreadTimeoutInMs, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "OkHttp Dispatcher");
+            thread.setDaemon(false);
+            return thread;
+        }))).build());
+    }
+
+    /**
+     * @param maxRequests        the highest number of requests running at once, the next ones waiting in order.
+     * @param maxRequestsPerHost the highest number of requests running at once to the same host.
+     */
+    public HttpClientFactory(final int maxRequests, final int maxRequestsPerHost) {
+        this(new OkHttpClient());
+        baseClient.dispatcher().setMaxRequests(maxRequests);
+        baseClient.dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    // Visible for tests.
+    HttpClientFactory(final OkHttpClient baseClient) {
+        this.baseClient = baseClient;
+    }
+
+    /**
+     * Create a factory sharing the connections and the threads of this one, whose requests run in their own
+     * dispatcher: they are not queued behind the requests of this factory, and the other way round.
+     *
+     * @param maxRequests        the highest number of requests running at once, the next ones waiting in order.
+     * @param maxRequestsPerHost the highest number of requests running at once to the same host.
+     */
+    public HttpClientFactory isolated(final int maxRequests, final int maxRequestsPerHost) {
+        final Dispatcher dispatcher = new Dispatcher(baseClient.dispatcher().executorService());
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return new HttpClientFactory(baseClient.newBuilder().dispatcher(dispatcher).build());
+    }
+
+    /**
+     * Number of the requests of all the created clients which are running or waiting to run.
+     */
+    public int getCallsInFlight() {
+        return baseClient.dispatcher().runningCallsCount() + baseClient.dispatcher().queuedCallsCount();
+    }
+
+    /**
+     * Create a client for the request, sharing the connections with all the other clients of the factory.
+     *
+     * @param request     the prototype of the request to send for each check.
+     * @param timeoutInMs the connection, read and write timeout.
+     * @return the new client.
+     * @throws InvalidRequestException if the request cannot be converted.
+     */
+    public HttpClient create(final HttpRequest request, final int timeoutInMs) throws InvalidRequestException {
+        return create(request, timeoutInMs, HttpProtocol.AUTO);
+    }
+
+    /**
+     * Create a client for the request using the given protocol. The HTTP/2 connections are shared as well: all the
+     * checks to the same host are multiplexed on one socket.
+     *
+     * @param request     the prototype of the request to send for each check.
+     * @param timeoutInMs the connection, read and write timeout.
+     * @param protocol    the protocol to use to connect.
+     * @return the new client.
+     * @throws InvalidRequestException if the request cannot be converted or cannot use the protocol.
+     */
+    public HttpClient create(final HttpRequest request, final int timeoutInMs, final HttpProtocol protocol)
+            throws InvalidRequestException {
+        return new HttpClient(baseClient.newBuilder(), request, timeoutInMs, protocol, null, null);
+    }
+
+    /**
+     * Create a client measuring the throughput of each check with the probe, instead of the latency only.
+     *
+     * @param request         the prototype of the request to send for each check.
+     * @param timeoutInMs     the connection, read and write timeout.
+     * @param protocol        the protocol to use to connect.
+     * @param throughputProbe the probe measuring the transfers, {@code null} to measure the latency only.
+     * @return the new client.
+     * @throws InvalidRequestException if the request cannot be converted or cannot use the protocol.
+     */
+    public HttpClient create(final HttpRequest request, final int timeoutInMs, final HttpProtocol protocol,
+            final ThroughputProbe throughputProbe) throws InvalidRequestException {
+        return new HttpClient(baseClient.newBuilder(), request, timeoutInMs, protocol, throughputProbe, null);
+    }
+
+    /**
+     * Create a client sending a burst of requests for each check, to measure the jitter and the loss.
+     *
+     * @param request     the prototype of the request to send for each check.
+     * @param timeoutInMs the connection, read and write timeout.
+     * @param protocol    the protocol to use to connect.
+     * @param burstProbe  the probe measuring the bursts.
+     * @return the new client.
+     * @throws InvalidRequestException if the request cannot be converted or cannot use the protocol.
+     */
+    public HttpClient create(final HttpRequest request, final int timeoutInMs, final HttpProtocol protocol,
+            final BurstProbe burstProbe) throws InvalidRequestException {
+        return new HttpClient(baseClient.newBuilder(), request, timeoutInMs, protocol, null, burstProbe);
+    }
+}
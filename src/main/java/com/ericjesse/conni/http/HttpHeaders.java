@@ -0,0 +1,194 @@
+package com.ericjesse.conni.http;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable and compact list of HTTP headers.
+ * <p>
+ * The names and values are stored in one flat array alternating names and values, the same layout as OkHttp uses, and
+ * the names are interned so the thousands of requests of a large configuration share them. The lookups ignore the
+ * case of the names. The default headers of each content type are a shared instance, so a request without custom
+ * headers costs no header storage at all.
+ */
+public final class HttpHeaders implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Map<HttpContentType, HttpHeaders> DEFAULTS = new EnumMap<>(HttpContentType.class);
+
+    static {
+        for (HttpContentType contentType : HttpContentType.values()) {
+            DEFAULTS.put(contentType, new HttpHeaders(
+                    new String[] { HttpRequest.USER_AGENT_KEY, HttpRequest.DEFAULT_USER_AGENT,
+                            HttpRequest.ACCEPT_ENCODING_KEY, HttpRequest.DEFAULT_ACCEPT_ENCODING,
+                            HttpRequest.CONTENT_TYPE_KEY, contentType.getValue(), HttpRequest.ACCEPT_KEY,
+                            contentType.getValue() }));
+        }
+    }
+
+    private final String[] namesAndValues;
+
+    private HttpHeaders(final String[] namesAndValues) {
+        this.namesAndValues = namesAndValues;
+    }
+
+    /**
+     * The shared default headers of a content type.
+     */
+    static HttpHeaders defaults(final HttpContentType contentType) {
+        return DEFAULTS.get(contentType);
+    }
+
+    /**
+     * Create the headers of a request: the custom headers in their order, followed by the defaults of the content
+     * type that were not overridden.
+     *
+     * @param contentType the content type of the request.
+     * @param headers     the custom headers, can be {@code null}.
+     * @return the headers, the shared defaults if there is no custom header.
+     */
+    static HttpHeaders of(final HttpContentType contentType, final HttpHeader... headers) {
+        final HttpHeaders defaults = defaults(contentType);
+        if (headers == null || headers.length == 0) {
+            return defaults;
+        }
+        int customValues = 0;
+        for (HttpHeader header : headers) {
+            customValues += header.getValues() == null ? 0 : header.getValues().length;
+        }
+        final String[] merged = new String[2 * customValues + defaults.namesAndValues.length];
+        int length = 0;
+        for (HttpHeader header : headers) {
+            if (header.getValues() != null) {
+                final String name = header.getKey().intern();
+                for (String value : header.getValues()) {
+                    merged[length++] = name;
+                    merged[length++] = value;
+                }
+            }
+        }
+        final HttpHeaders custom = new HttpHeaders(Arrays.copyOf(merged, length));
+        for (int i = 0; i < defaults.namesAndValues.length; i += 2) {
+            if (custom.indexOf(defaults.namesAndValues[i], 0) < 0) {
+                merged[length++] = defaults.namesAndValues[i];
+                merged[length++] = defaults.namesAndValues[i + 1];
+            }
+        }
+        return new HttpHeaders(length == merged.length ? merged : Arrays.copyOf(merged, length));
+    }
+
+    /**
+     * Number of name and value pairs, a header set several times counts several times.
+     */
+    public int size() {
+        return namesAndValues.length / 2;
+    }
+
+    public String name(final int index) {
+        return namesAndValues[2 * index];
+    }
+
+    public String value(final int index) {
+        return namesAndValues[2 * index + 1];
+    }
+
+    /**
+     * The first value of a header, ignoring the case of the name.
+     *
+     * @return the value, or {@code null} if the header is not set.
+     */
+    public String get(final String name) {
+        final int index = indexOf(name, 0);
+        return index < 0 ? null : namesAndValues[index + 1];
+    }
+
+    /**
+     * All the values of a header, ignoring the case of the name.
+     */
+    public List<String> values(final String name) {
+        List<String> values = null;
+        for (int index = indexOf(name, 0); index >= 0; index = indexOf(name, index + 2)) {
+            if (values == null) {
+                values = new ArrayList<>(2);
+            }
+            values.add(namesAndValues[index + 1]);
+        }
+        return values == null ? Collections.emptyList() : Collections.unmodifiableList(values);
+    }
+
+    private int indexOf(final String name, final int from) {
+        for (int i = from; i < namesAndValues.length; i += 2) {
+            // The interned names are most of the time the same instance.
+            if (namesAndValues[i] == name || namesAndValues[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy of the alternating names and values, as expected by {@code okhttp3.Headers.of(String...)}.
+     */
+    String[] toNamesAndValues() {
+        return namesAndValues.clone();
+    }
+
+    /**
+     * Case-insensitive and unmodifiable view of the headers indexed by name. It is built for each call.
+     */
+    public Map<String, List<String>> toMap() {
+        final Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            final String name = namesAndValues[i];
+            if (!map.containsKey(name)) {
+                map.put(name, values(name));
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private Object readResolve() {
+        for (HttpHeaders defaults : DEFAULTS.values()) {
+            if (defaults.equals(this)) {
+                return defaults;
+            }
+        }
+        // Intern the names again, the deserialized strings are new instances.
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            namesAndValues[i] = namesAndValues[i].intern();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return Arrays.equals(namesAndValues, ((HttpHeaders) o).namesAndValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(namesAndValues);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            sb.append(namesAndValues[i]).append(": ").append(namesAndValues[i + 1]).append('\n');
+        }
+        return sb.toString();
+    }
+}
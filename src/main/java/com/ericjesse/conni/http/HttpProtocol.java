@@ -0,0 +1,75 @@
+package com.ericjesse.conni.http;
+
+import okhttp3.Protocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Enum representing the HTTP protocols a target can be checked with.
+ * <p>
+ * With HTTP/2 all the checks of the targets calling the same host are multiplexed on one connection, instead of one
+ * connection per concurrent check with HTTP/1.1.
+ */
+public enum HttpProtocol {
+
+    /**
+     * HTTP/2 when the server accepts it during the TLS handshake (ALPN), HTTP/1.1 otherwise.
+     */
+    AUTO("auto", Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)),
+
+    /**
+     * HTTP/1.1 only, one connection per concurrent check.
+     */
+    HTTP_1_1("http/1.1", Collections.singletonList(Protocol.HTTP_1_1)),
+
+    /**
+     * HTTP/2 over TLS only, the check fails if the server does not accept it.
+     */
+    HTTP_2("h2", Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)),
+
+    /**
+     * HTTP/2 over clear text with prior knowledge, without upgrade, only for the {@code http} URLs.
+     */
+    H2C("h2c", Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+
+    private final String value;
+
+    private final List<Protocol> okHttpProtocols;
+
+    HttpProtocol(final String value, final List<Protocol> okHttpProtocols) {
+        this.value = value;
+        this.okHttpProtocols = okHttpProtocols;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    // OkHttp requires HTTP/1.1 in the list for the TLS connections, HTTP_2 is enforced on the response instead.
+    List<Protocol> getOkHttpProtocols() {
+        return okHttpProtocols;
+    }
+
+    /**
+     * Check that the protocol actually negotiated for a response is the expected one.
+     */
+    boolean accepts(final Protocol negotiated) {
+        return this != HTTP_2 || negotiated == Protocol.HTTP_2;
+    }
+
+    /**
+     * Find the protocol from its value, ignoring the case.
+     *
+     * @throws IllegalArgumentException if the value is unknown.
+     */
+    public static HttpProtocol fromValue(final String value) {
+        for (HttpProtocol protocol : values()) {
+            if (protocol.value.equalsIgnoreCase(value)) {
+                return protocol;
+            }
+        }
+        throw new IllegalArgumentException("the protocol " + value + " is unknown");
+    }
+}
@@ -1,16 +1,20 @@
 package com.ericjesse.conni.http;
 
 import java.io.Serializable;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Request to check the connectivity on the Internet.
+ * <p>
+ * Instances are immutable, so a request can be shared by the clients and the observers of a target while it is
+ * checked. The headers are stored in a compact {@link HttpHeaders}, shared between all the requests without custom
+ * headers.
  */
-public class HttpRequest implements Serializable {
+public final class HttpRequest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public static final String USER_AGENT_KEY = "User-Agent";
 
@@ -30,15 +34,15 @@ public class HttpRequest implements Serializable {
     // Package visibility for test purpose.
     static final HttpContentType DEFAULT_CONTENT = HttpContentType.JSON;
 
-    private HttpMethod method = DEFAULT_METHOD;
+    private final HttpMethod method;
 
-    private String url;
+    private final String url;
 
-    private String body = null;
+    private final String body;
 
-    private HttpContentType contentType = DEFAULT_CONTENT;
+    private final HttpContentType contentType;
 
-    private Map<String, List<String>> headers = new HashMap<>();
+    private final HttpHeaders headers;
 
     /**
      * Constructor to create a GET request using JSON contents.
@@ -66,7 +70,8 @@ public class HttpRequest implements Serializable {
      * @param url         URL to request.
      * @param body        The body of the request, as a string. It can be any marshalled object or simply {@code null}.
      * @param contentType The content type of the request and the accepted content type for the response.
-     * @param headers     Keys and values to add in the request as HTTP headers.
+     * @param headers     Keys and values to add in the request as HTTP headers. One header can be set several times,
+     *                    the default headers are only added when they are not set.
      */
     public HttpRequest(final HttpMethod method, final String url, final String body, final HttpContentType contentType,
             final HttpHeader... headers) {
@@ -74,75 +79,62 @@ public class HttpRequest implements Serializable {
         this.url = url;
         this.body = body;
         this.contentType = contentType;
-
-        if (null != headers) {
-            // One header can be set several times. Thus, a list is created for each header key.
-            for (HttpHeader header : headers) {
-                this.headers.compute(header.getKey(), (key, value) -> (value == null) ? listOfOne(header.getValues()) :
-                        addToList(value, header.getValues()));
-            }
-        }
-        // Put the default values in place.
-        addHeaderIfNotExists(USER_AGENT_KEY, DEFAULT_USER_AGENT);
-        addHeaderIfNotExists(ACCEPT_ENCODING_KEY, DEFAULT_ACCEPT_ENCODING);
-        addHeaderIfNotExists(CONTENT_TYPE_KEY, this.contentType.getValue());
-        addHeaderIfNotExists(ACCEPT_KEY, this.contentType.getValue());
-    }
-
-    private void addHeaderIfNotExists(final String key, final String value) {
-        if (!this.headers.containsKey(key)) {
-            this.headers.put(key, Arrays.asList(value));
-        }
-    }
-
-    private <T> List<T> listOfOne(final T[] values) {
-        final List<T> list = new LinkedList<>();
-        return addToList(list, values);
-    }
-
-    private <T> List<T> addToList(final List<T> list, final T[] values) {
-        if (null != values) {
-            for (T value : values) {
-                list.add(value);
-            }
-        }
-        return list;
+        this.headers = HttpHeaders.of(contentType, headers);
     }
 
     public HttpMethod getMethod() {
         return method;
     }
 
-    public void setMethod(final HttpMethod method) {
-        this.method = method;
-    }
-
     public String getUrl() {
         return url;
     }
 
-    public void setUrl(final String url) {
-        this.url = url;
-    }
-
     public String getBody() {
         return body;
     }
 
-    public void setBody(final String body) {
-        this.body = body;
-    }
-
     public HttpContentType getContentType() {
         return contentType;
     }
 
-    public void setContentType(final HttpContentType contentType) {
-        this.contentType = contentType;
+    /**
+     * The headers indexed by name, ignoring the case. The map is unmodifiable and built for each call, prefer
+     * {@link #getHttpHeaders()} or {@link #header(String)} on hot paths.
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers.toMap();
     }
 
-    public Map<String, List<String>> getHeaders() {
+    public HttpHeaders getHttpHeaders() {
         return headers;
     }
 
+    /**
+     * The first value of a header, ignoring the case of the name.
+     *
+     * @return the value, or {@code null} if the header is not set.
+     */
+    public String header(final String name) {
+        return headers.get(name);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final HttpRequest that = (HttpRequest) o;
+        return method == that.method && Objects.equals(url, that.url) && Objects.equals(body, that.body)
+                && contentType == that.contentType && headers.equals(that.headers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(method, url, body, contentType, headers);
+    }
+
 }
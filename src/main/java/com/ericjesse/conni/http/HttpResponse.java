@@ -26,21 +26,67 @@ public class HttpResponse {
 
     private int statusCode;
 
+    private String protocol;
+
     private String reasonPhrase;
 
     private String bodyContent;
 
     private Map<String, List<String>> headers = new HashMap<>();
 
+    private Throughput throughput;
+
+    private BurstStatistics burst;
+
+    private LatencyAnomaly anomaly;
+
     public HttpResponse(final HttpRequest request, final Response response) throws IOException {
+        this(request, response, response.body().string(), null);
+    }
+
+    /**
+     * Response of a throughput check, its body was already consumed by the measure and is not kept.
+     */
+    HttpResponse(final HttpRequest request, final Response response, final Throughput throughput) {
+        this(request, response, "", throughput);
+    }
+
+    /**
+     * Aggregated response of a burst: the last response received, with the median round trip time of the burst as
+     * duration.
+     */
+    HttpResponse(final HttpResponse lastResponse, final BurstStatistics burst) {
+        this(lastResponse, burst.getMedianRoundTripTime());
+        this.burst = burst;
+    }
+
+    private HttpResponse(final HttpResponse source, final Duration duration) {
+        this.request = source.request;
+        sendingRequestInstant = source.sendingRequestInstant;
+        receivedResponseInstant = source.receivedResponseInstant;
+        this.duration = duration;
+        statusCode = source.statusCode;
+        protocol = source.protocol;
+        reasonPhrase = source.reasonPhrase;
+        bodyContent = source.bodyContent;
+        headers.putAll(source.headers);
+        throughput = source.throughput;
+        burst = source.burst;
+        anomaly = source.anomaly;
+    }
+
+    private HttpResponse(final HttpRequest request, final Response response, final String bodyContent,
+            final Throughput throughput) {
         assert null != response;
         this.request = request;
+        this.throughput = throughput;
         sendingRequestInstant = Instant.ofEpochMilli(response.sentRequestAtMillis());
         receivedResponseInstant = Instant.ofEpochMilli(response.receivedResponseAtMillis());
         duration = Duration.between(sendingRequestInstant, receivedResponseInstant);
         statusCode = response.code();
+        protocol = response.protocol().toString();
         reasonPhrase = response.message();
-        bodyContent = response.body().string();
+        this.bodyContent = bodyContent;
         headers.putAll(response.headers().toMultimap());
     }
 
@@ -64,6 +110,13 @@ public class HttpResponse {
         return statusCode;
     }
 
+    /**
+     * The protocol negotiated with the server, like {@code http/1.1}, {@code h2} or {@code h2_prior_knowledge}.
+     */
+    public String getProtocol() {
+        return protocol;
+    }
+
     public String getReasonPhrase() {
         return reasonPhrase;
     }
@@ -72,6 +125,36 @@ public class HttpResponse {
         return bodyContent;
     }
 
+    /**
+     * The throughput of the transfer, {@code null} when the check only measures the latency.
+     */
+    public Throughput getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * The statistics of the burst, {@code null} when the check sends a single request.
+     */
+    public BurstStatistics getBurst() {
+        return burst;
+    }
+
+    /**
+     * The anomaly detected by an observer on the latency of this response, {@code null} when it is as usual.
+     */
+    public LatencyAnomaly getAnomaly() {
+        return anomaly;
+    }
+
+    /**
+     * Copy of this response reporting an anomaly, to pass to the next observers of the chain.
+     */
+    public HttpResponse withAnomaly(final LatencyAnomaly anomaly) {
+        final HttpResponse copy = new HttpResponse(this, duration);
+        copy.anomaly = anomaly;
+        return copy;
+    }
+
     public Map<String, List<String>> getHeaders() {
         return headers;
     }
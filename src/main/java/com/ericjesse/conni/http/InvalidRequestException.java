@@ -8,4 +8,8 @@ public class InvalidRequestException extends Exception {
     public InvalidRequestException(final Throwable cause) {
         super(cause);
     }
+
+    public InvalidRequestException(final String message) {
+        super(message);
+    }
 }
@@ -0,0 +1,61 @@
+package com.ericjesse.conni.http;
+
+import java.time.Duration;
+
+/**
+ * Latency unusually high compared with the latencies usually measured at the same hour of the week.
+ */
+public final class LatencyAnomaly {
+
+    private final int hourOfWeek;
+
+    private final Duration latency;
+
+    private final Duration usualLatency;
+
+    private final double zScore;
+
+    public LatencyAnomaly(final int hourOfWeek, final Duration latency, final Duration usualLatency,
+            final double zScore) {
+        this.hourOfWeek = hourOfWeek;
+        this.latency = latency;
+        this.usualLatency = usualLatency;
+        this.zScore = zScore;
+    }
+
+    /**
+     * Hour of the week of the measure, from 0 on Monday at 00:00 to 167 on Sunday at 23:00, in the local time.
+     */
+    public int getHourOfWeek() {
+        return hourOfWeek;
+    }
+
+    public Duration getLatency() {
+        return latency;
+    }
+
+    /**
+     * The typical latency at this hour of the week.
+     */
+    public Duration getUsualLatency() {
+        return usualLatency;
+    }
+
+    /**
+     * Number of standard deviations between the latency and the usual one, on a logarithmic scale.
+     */
+    public double getZScore() {
+        return zScore;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("LatencyAnomaly{");
+        sb.append("hourOfWeek=").append(hourOfWeek);
+        sb.append(", latency=").append(latency);
+        sb.append(", usualLatency=").append(usualLatency);
+        sb.append(", zScore=").append(zScore);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,145 @@
+package com.ericjesse.conni.http;
+
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.http.errors.UnconfirmedError;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * QuorumConfirmation confirms the failures of a {@link HttpClient} with independent reference endpoints, so the
+ * failure of the checked service alone is not reported as the connection being down.
+ * <p>
+ * As soon as a check fails after a success, all the references are called in parallel. The failure is confirmed when
+ * at least {@code quorum} of them fail within the deadline; it is reported as an {@link UnconfirmedError} as soon as
+ * enough references answered for the quorum to be out of reach. Any HTTP response of a reference counts as an answer,
+ * the connection being up whatever its status. The following failures of the client keep this decision until its next
+ * success, so the references are called once per outage and not once per check.
+ */
+public final class QuorumConfirmation {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QuorumConfirmation.class);
+
+    private final List<Request> references;
+
+    private final int quorum;
+
+    private final long deadlineInMs;
+
+    private long confirmed;
+
+    private long unconfirmed;
+
+    private long totalTimeToDetectInNs;
+
+    private long maxTimeToDetectInNs;
+
+    /**
+     * @param referenceUrls the URLs of the reference endpoints.
+     * @param quorum        the number of references which have to fail to confirm a failure.
+     * @param deadlineInMs  the time given to the references to answer, a reference not answering fails.
+     */
+    public QuorumConfirmation(final List<String> referenceUrls, final int quorum, final long deadlineInMs) {
+        if (quorum < 1 || quorum > referenceUrls.size()) {
+            throw new IllegalArgumentException(
+                    "The quorum should be between 1 and the number of references " + referenceUrls.size());
+        }
+        final List<Request> requests = new ArrayList<>(referenceUrls.size());
+        referenceUrls.forEach(url -> requests.add(new Request.Builder().url(url).build()));
+        this.references = Collections.unmodifiableList(requests);
+        this.quorum = quorum;
+        this.deadlineInMs = deadlineInMs;
+    }
+
+    public int getQuorum() {
+        return quorum;
+    }
+
+    public int getReferences() {
+        return references.size();
+    }
+
+    /**
+     * Client calling the references, derived from the client of the checks to share its connections.
+     */
+    OkHttpClient referenceClient(final OkHttpClient client) {
+        return client.newBuilder().protocols(HttpProtocol.AUTO.getOkHttpProtocols())
+                .callTimeout(deadlineInMs, TimeUnit.MILLISECONDS).build();
+    }
+
+    /**
+     * Call the references and pass the error of the check, or an {@link UnconfirmedError}, once the quorum decided.
+     */
+    void confirm(final OkHttpClient referenceClient, final ConniError error, final Consumer<ConniError> then) {
+        final long startInNs = System.nanoTime();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger answered = new AtomicInteger();
+        final AtomicBoolean decided = new AtomicBoolean();
+        final int size = references.size();
+        final Callback callback = new Callback() {
+
+            @Override
+            public void onFailure(final Call call, final IOException e) {
+                if (failed.incrementAndGet() == quorum && decided.compareAndSet(false, true)) {
+                    decide(true, startInNs, quorum);
+                    then.accept(error);
+                }
+            }
+
+            @Override
+            public void onResponse(final Call call, final Response response) {
+                response.close();
+                if (answered.incrementAndGet() == size - quorum + 1 && decided.compareAndSet(false, true)) {
+                    final int answeredReferences = answered.get();
+                    decide(false, startInNs, answeredReferences);
+                    then.accept(new UnconfirmedError(error, answeredReferences, size));
+                }
+            }
+        };
+        references.forEach(reference -> referenceClient.newCall(reference).enqueue(callback));
+    }
+
+    /**
+     * Record a decision in the statistics.
+     *
+     * @param references the number of references which failed for a confirmed failure, or which answered.
+     */
+    private void decide(final boolean down, final long startInNs, final int references) {
+        final long timeToDecideInNs = System.nanoTime() - startInNs;
+        final QuorumStatistics statistics;
+        synchronized (this) {
+            if (down) {
+                confirmed++;
+                totalTimeToDetectInNs += timeToDecideInNs;
+                maxTimeToDetectInNs = Math.max(maxTimeToDetectInNs, timeToDecideInNs);
+            } else {
+                unconfirmed++;
+            }
+            statistics = getStatistics();
+        }
+        if (down) {
+            LOG.info("Connection down confirmed by {} of {} references in {} ms: {}", references,
+                    this.references.size(), TimeUnit.NANOSECONDS.toMillis(timeToDecideInNs), statistics);
+        } else {
+            LOG.info("Check failed but {} of {} references answered in {} ms, the connection is up: {}", references,
+                    this.references.size(), TimeUnit.NANOSECONDS.toMillis(timeToDecideInNs), statistics);
+        }
+    }
+
+    public synchronized QuorumStatistics getStatistics() {
+        return new QuorumStatistics(confirmed, unconfirmed, totalTimeToDetectInNs, maxTimeToDetectInNs);
+    }
+}
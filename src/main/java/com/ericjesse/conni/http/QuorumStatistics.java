@@ -0,0 +1,71 @@
+package com.ericjesse.conni.http;
+
+import java.time.Duration;
+
+/**
+ * Statistics of the confirmations of the failures by a {@link QuorumConfirmation}.
+ */
+public final class QuorumStatistics {
+
+    private final long confirmed;
+
+    private final long unconfirmed;
+
+    private final long totalTimeToDetectInNs;
+
+    private final long maxTimeToDetectInNs;
+
+    QuorumStatistics(final long confirmed, final long unconfirmed, final long totalTimeToDetectInNs,
+            final long maxTimeToDetectInNs) {
+        this.confirmed = confirmed;
+        this.unconfirmed = unconfirmed;
+        this.totalTimeToDetectInNs = totalTimeToDetectInNs;
+        this.maxTimeToDetectInNs = maxTimeToDetectInNs;
+    }
+
+    /**
+     * Number of failures confirmed by the quorum: the connection was down.
+     */
+    public long getConfirmed() {
+        return confirmed;
+    }
+
+    /**
+     * Number of failures not confirmed by the quorum: only the checked service failed.
+     */
+    public long getUnconfirmed() {
+        return unconfirmed;
+    }
+
+    /**
+     * Ratio of the failures of the check that a single endpoint would have reported as a connection down wrongly,
+     * between 0 and 1.
+     */
+    public double getFalsePositiveRate() {
+        final long failures = confirmed + unconfirmed;
+        return failures == 0 ? 0 : unconfirmed / (double) failures;
+    }
+
+    /**
+     * Mean time between the failure of the check and its confirmation.
+     */
+    public Duration getMeanTimeToDetect() {
+        return Duration.ofNanos(confirmed == 0 ? 0 : totalTimeToDetectInNs / confirmed);
+    }
+
+    public Duration getMaxTimeToDetect() {
+        return Duration.ofNanos(maxTimeToDetectInNs);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("QuorumStatistics{");
+        sb.append("confirmed=").append(confirmed);
+        sb.append(", unconfirmed=").append(unconfirmed);
+        sb.append(", falsePositiveRate=").append(getFalsePositiveRate());
+        sb.append(", meanTimeToDetect=").append(getMeanTimeToDetect());
+        sb.append(", maxTimeToDetect=").append(getMaxTimeToDetect());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,418 @@
+package com.ericjesse.conni.http;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RequestTemplate resolves the placeholders of a {@link HttpRequest} for each check, to defeat the intermediate caches
+ * with a nonce, a timestamp or a signed token.
+ * <p>
+ * The placeholders are written {@code ${name}} in the path segments, the query parameters, the header values and the
+ * body. The supported names are:
+ * <ul>
+ * <li>{@code nonce}: 16 random hexadecimal characters,</li>
+ * <li>{@code uuid}: a random UUID,</li>
+ * <li>{@code timestamp}: the current time in milliseconds since the epoch,</li>
+ * <li>{@code epoch}: the current time in seconds since the epoch,</li>
+ * <li>{@code env:NAME}: the environment variable NAME, resolved once,</li>
+ * <li>{@code hmac-sha256:NAME}: the hexadecimal HMAC-SHA256 of {@code <timestamp>:<nonce>}, keyed with the
+ * environment variable NAME.</li>
+ * </ul>
+ * All the placeholders of one check share the same values, so a signature matches the nonce and timestamp sent along.
+ * <p>
+ * The template is compiled once: the URL is parsed with markers in place of the placeholders and every templated
+ * part is split into literal and variable segments. A check only rebuilds the templated parts from a copy of the
+ * already converted request.
+ */
+final class RequestTemplate {
+
+    private static final String PLACEHOLDER_START = "${";
+
+    private static final char PLACEHOLDER_END = '}';
+
+    // Made of unreserved characters, so the markers are left untouched when the URL is parsed.
+    private static final String MARKER_PREFIX = "__conni";
+
+    private static final String MARKER_SUFFIX = "__";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final HttpUrl baseUrl;
+
+    private final int[] templatedPathSegmentIndexes;
+
+    private final Segments[] templatedPathSegments;
+
+    // All the query parameters in order when at least one is templated, null otherwise.
+    private final String[] queryNames;
+
+    private final Segments[] queryValues;
+
+    // Names of the templated headers and all their values.
+    private final String[] headerNames;
+
+    private final Segments[][] headerValues;
+
+    private final Segments body;
+
+    private RequestTemplate(final HttpRequest request) {
+        // Replace the placeholders of the URL with markers and parse it once.
+        final List<String> urlPlaceholders = new ArrayList<>();
+        final String markedUrl = markPlaceholders(request.getUrl(), urlPlaceholders);
+        baseUrl = HttpUrl.parse(markedUrl);
+        if (baseUrl == null) {
+            throw new IllegalArgumentException("The URL " + request.getUrl() + " is not valid");
+        }
+        if (baseUrl.host().contains(MARKER_PREFIX)) {
+            throw new IllegalArgumentException("The host of " + request.getUrl() + " cannot contain placeholders");
+        }
+
+        final List<Integer> pathIndexes = new ArrayList<>();
+        final List<Segments> pathSegments = new ArrayList<>();
+        final List<String> segments = baseUrl.pathSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            final String segment = segments.get(i);
+            if (segment.contains(MARKER_PREFIX)) {
+                pathIndexes.add(i);
+                pathSegments.add(Segments.compile(unmarkPlaceholders(segment, urlPlaceholders)));
+            }
+        }
+        templatedPathSegmentIndexes = pathIndexes.stream().mapToInt(Integer::intValue).toArray();
+        templatedPathSegments = pathSegments.toArray(new Segments[pathSegments.size()]);
+
+        final String query = baseUrl.encodedQuery();
+        if (query != null && query.contains(MARKER_PREFIX)) {
+            queryNames = new String[baseUrl.querySize()];
+            queryValues = new Segments[baseUrl.querySize()];
+            for (int i = 0; i < queryNames.length; i++) {
+                queryNames[i] = unmarkPlaceholders(baseUrl.queryParameterName(i), urlPlaceholders);
+                final String value = baseUrl.queryParameterValue(i);
+                queryValues[i] = value == null ? null : Segments.compile(unmarkPlaceholders(value, urlPlaceholders));
+            }
+        } else {
+            queryNames = null;
+            queryValues = null;
+        }
+
+        final HttpHeaders headers = request.getHttpHeaders();
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < headers.size(); i++) {
+            if (headers.value(i).contains(PLACEHOLDER_START) && !names.contains(headers.name(i))) {
+                names.add(headers.name(i));
+            }
+        }
+        headerNames = names.toArray(new String[names.size()]);
+        headerValues = new Segments[headerNames.length][];
+        for (int i = 0; i < headerNames.length; i++) {
+            headerValues[i] = headers.values(headerNames[i]).stream().map(Segments::compile).toArray(Segments[]::new);
+        }
+
+        body = request.getBody() != null && request.getBody().contains(PLACEHOLDER_START) ?
+                Segments.compile(request.getBody()) : null;
+    }
+
+    /**
+     * Compile the template of a request.
+     *
+     * @return the template, or {@code null} if the request has no placeholder and can be sent as is.
+     * @throws IllegalArgumentException if a placeholder is not valid.
+     */
+    static RequestTemplate compile(final HttpRequest request) {
+        boolean hasPlaceholders = request.getUrl().contains(PLACEHOLDER_START) || (request.getBody() != null && request
+                .getBody().contains(PLACEHOLDER_START));
+        final HttpHeaders headers = request.getHttpHeaders();
+        for (int i = 0; i < headers.size() && !hasPlaceholders; i++) {
+            hasPlaceholders = headers.value(i).contains(PLACEHOLDER_START);
+        }
+        return hasPlaceholders ? new RequestTemplate(request) : null;
+    }
+
+    /**
+     * The parsed URL, with markers in place of the placeholders.
+     */
+    HttpUrl getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Resolve the placeholders for one check.
+     *
+     * @param baseRequest the request converted once with the {@link #getBaseUrl()}.
+     * @return a new request with the resolved values.
+     */
+    Request resolve(final Request baseRequest) {
+        final Context context = new Context();
+        final Request.Builder builder = baseRequest.newBuilder();
+
+        if (templatedPathSegments.length > 0 || queryNames != null) {
+            final HttpUrl.Builder urlBuilder = baseUrl.newBuilder();
+            for (int i = 0; i < templatedPathSegments.length; i++) {
+                urlBuilder.setPathSegment(templatedPathSegmentIndexes[i], templatedPathSegments[i].resolve(context));
+            }
+            if (queryNames != null) {
+                urlBuilder.query(null);
+                for (int i = 0; i < queryNames.length; i++) {
+                    urlBuilder.addQueryParameter(queryNames[i],
+                            queryValues[i] == null ? null : queryValues[i].resolve(context));
+                }
+            }
+            builder.url(urlBuilder.build());
+        }
+
+        for (int i = 0; i < headerNames.length; i++) {
+            builder.removeHeader(headerNames[i]);
+            for (Segments value : headerValues[i]) {
+                builder.addHeader(headerNames[i], value.resolve(context));
+            }
+        }
+
+        if (body != null) {
+            builder.method(baseRequest.method(),
+                    RequestBody.create(baseRequest.body().contentType(), body.resolve(context)));
+        }
+        return builder.build();
+    }
+
+    private static String markPlaceholders(final String text, final List<String> placeholders) {
+        final StringBuilder marked = new StringBuilder(text.length());
+        int from = 0;
+        int start;
+        while ((start = text.indexOf(PLACEHOLDER_START, from)) >= 0) {
+            final int end = text.indexOf(PLACEHOLDER_END, start);
+            if (end < 0) {
+                throw new IllegalArgumentException("The placeholder at " + start + " is not closed in " + text);
+            }
+            marked.append(text, from, start).append(MARKER_PREFIX).append(placeholders.size()).append(MARKER_SUFFIX);
+            placeholders.add(text.substring(start, end + 1));
+            from = end + 1;
+        }
+        return marked.append(text, from, text.length()).toString();
+    }
+
+    private static String unmarkPlaceholders(final String text, final List<String> placeholders) {
+        String unmarked = text;
+        for (int i = 0; i < placeholders.size(); i++) {
+            unmarked = unmarked.replace(MARKER_PREFIX + i + MARKER_SUFFIX, placeholders.get(i));
+        }
+        return unmarked;
+    }
+
+    /**
+     * Values shared by all the placeholders of one check, computed when first used.
+     */
+    private static final class Context {
+
+        private final long timestamp = System.currentTimeMillis();
+
+        private String nonce;
+
+        private String uuid;
+
+        private String nonce() {
+            if (nonce == null) {
+                nonce = toHex(ThreadLocalRandom.current().nextLong());
+            }
+            return nonce;
+        }
+
+        private String uuid() {
+            if (uuid == null) {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                // Version 4 and IETF variant bits, without the lock of the SecureRandom used by randomUUID().
+                uuid = new UUID((random.nextLong() & ~0xf000L) | 0x4000L,
+                        (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L).toString();
+            }
+            return uuid;
+        }
+    }
+
+    /**
+     * Text split in literal parts and variables. The literal parts are kept as is and the capacity of the result is
+     * computed once.
+     */
+    private static final class Segments {
+
+        // Either a String or a Variable.
+        private final Object[] parts;
+
+        private final int capacity;
+
+        private Segments(final Object[] parts, final int capacity) {
+            this.parts = parts;
+            this.capacity = capacity;
+        }
+
+        private static Segments compile(final String text) {
+            final List<Object> parts = new ArrayList<>();
+            int capacity = 0;
+            int from = 0;
+            int start;
+            while ((start = text.indexOf(PLACEHOLDER_START, from)) >= 0) {
+                final int end = text.indexOf(PLACEHOLDER_END, start);
+                if (end < 0) {
+                    throw new IllegalArgumentException("The placeholder at " + start + " is not closed in " + text);
+                }
+                if (start > from) {
+                    parts.add(text.substring(from, start));
+                }
+                final Variable variable = Variable.of(text.substring(start + PLACEHOLDER_START.length(), end));
+                parts.add(variable);
+                capacity += start - from + variable.expectedLength();
+                from = end + 1;
+            }
+            if (from < text.length()) {
+                parts.add(text.substring(from));
+                capacity += text.length() - from;
+            }
+            return new Segments(parts.toArray(), capacity);
+        }
+
+        private String resolve(final Context context) {
+            final StringBuilder sb = new StringBuilder(capacity);
+            for (Object part : parts) {
+                if (part instanceof String) {
+                    sb.append((String) part);
+                } else {
+                    ((Variable) part).appendTo(sb, context);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Placeholder resolved for each check.
+     */
+    private abstract static class Variable {
+
+        private static final String ENV_PREFIX = "env:";
+
+        private static final String HMAC_PREFIX = "hmac-sha256:";
+
+        private static Variable of(final String name) {
+            switch (name) {
+                case "nonce":
+                    return new Variable() {
+                        @Override
+                        void appendTo(final StringBuilder sb, final Context context) {
+                            sb.append(context.nonce());
+                        }
+                    };
+                case "uuid":
+                    return new Variable() {
+                        @Override
+                        void appendTo(final StringBuilder sb, final Context context) {
+                            sb.append(context.uuid());
+                        }
+
+                        @Override
+                        int expectedLength() {
+                            return 36;
+                        }
+                    };
+                case "timestamp":
+                    return new Variable() {
+                        @Override
+                        void appendTo(final StringBuilder sb, final Context context) {
+                            sb.append(context.timestamp);
+                        }
+                    };
+                case "epoch":
+                    return new Variable() {
+                        @Override
+                        void appendTo(final StringBuilder sb, final Context context) {
+                            sb.append(context.timestamp / 1_000);
+                        }
+                    };
+                default:
+                    if (name.startsWith(ENV_PREFIX)) {
+                        final String value = environmentVariable(name.substring(ENV_PREFIX.length()));
+                        return new Variable() {
+                            @Override
+                            void appendTo(final StringBuilder sb, final Context context) {
+                                sb.append(value);
+                            }
+
+                            @Override
+                            int expectedLength() {
+                                return value.length();
+                            }
+                        };
+                    } else if (name.startsWith(HMAC_PREFIX)) {
+                        return new HmacVariable(environmentVariable(name.substring(HMAC_PREFIX.length())));
+                    }
+                    throw new IllegalArgumentException("The placeholder ${" + name + "} is unknown");
+            }
+        }
+
+        private static String environmentVariable(final String name) {
+            final String value = System.getenv(name);
+            if (value == null) {
+                throw new IllegalArgumentException("The environment variable " + name + " is not set");
+            }
+            return value;
+        }
+
+        abstract void appendTo(StringBuilder sb, Context context);
+
+        int expectedLength() {
+            return 16;
+        }
+    }
+
+    /**
+     * Signature of the timestamp and the nonce of the check.
+     */
+    private static final class HmacVariable extends Variable {
+
+        private static final String ALGORITHM = "HmacSHA256";
+
+        // Mac instances are not thread-safe and costly to create.
+        private final ThreadLocal<Mac> mac;
+
+        private HmacVariable(final String key) {
+            final SecretKeySpec keySpec = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+            mac = ThreadLocal.withInitial(() -> {
+                try {
+                    final Mac instance = Mac.getInstance(ALGORITHM);
+                    instance.init(keySpec);
+                    return instance;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        @Override
+        void appendTo(final StringBuilder sb, final Context context) {
+            final byte[] signature = mac.get().doFinal(
+                    (context.timestamp + ":" + context.nonce()).getBytes(StandardCharsets.US_ASCII));
+            for (byte b : signature) {
+                sb.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+            }
+        }
+
+        @Override
+        int expectedLength() {
+            return 64;
+        }
+    }
+
+    private static String toHex(final long value) {
+        final char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX_DIGITS[(int) ((value >>> (4 * (15 - i))) & 0xf)];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,64 @@
+package com.ericjesse.conni.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * SuspendDetector tells whether the computer was suspended since a point in time, comparing the time elapsed on the
+ * wall clock with the time elapsed on the monotonic clock: the monotonic clock stops while the computer sleeps, the
+ * wall clock does not.
+ * <p>
+ * A detector is not thread-safe.
+ */
+public final class SuspendDetector {
+
+    /**
+     * Difference between the clocks above which the computer was suspended, large enough to ignore the small
+     * adjustments of the wall clock.
+     */
+    public static final long SUSPEND_THRESHOLD_IN_MS = 2_000;
+
+    private final LongSupplier wallClockInMs;
+
+    private final LongSupplier monotonicClockInNs;
+
+    private long startWallInMs;
+
+    private long startMonotonicInNs;
+
+    /**
+     * Detector started now, on the clocks of the system.
+     */
+    public SuspendDetector() {
+        this(System::currentTimeMillis, System::nanoTime);
+    }
+
+    /**
+     * Detector started now.
+     *
+     * @param wallClockInMs      the wall clock, in milliseconds.
+     * @param monotonicClockInNs the monotonic clock, in nanoseconds.
+     */
+    public SuspendDetector(final LongSupplier wallClockInMs, final LongSupplier monotonicClockInNs) {
+        this.wallClockInMs = wallClockInMs;
+        this.monotonicClockInNs = monotonicClockInNs;
+        restart();
+    }
+
+    /**
+     * Start again from now.
+     */
+    public void restart() {
+        startWallInMs = wallClockInMs.getAsLong();
+        startMonotonicInNs = monotonicClockInNs.getAsLong();
+    }
+
+    /**
+     * The time the computer was suspended since the start, about, {@code 0} below {@link #SUSPEND_THRESHOLD_IN_MS}.
+     */
+    public long getSuspendedInMs() {
+        final long suspendedInMs = (wallClockInMs.getAsLong() - startWallInMs)
+                - TimeUnit.NANOSECONDS.toMillis(monotonicClockInNs.getAsLong() - startMonotonicInNs);
+        return suspendedInMs < SUSPEND_THRESHOLD_IN_MS ? 0 : suspendedInMs;
+    }
+}
@@ -0,0 +1,101 @@
+package com.ericjesse.conni.http;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Result of a throughput check: the bytes transferred, the time it took and the throughput sampled during the
+ * transfer.
+ */
+public final class Throughput {
+
+    private final CheckMode mode;
+
+    private final long bytes;
+
+    private final long durationInNs;
+
+    private final boolean truncated;
+
+    private final int sampleIntervalInMs;
+
+    private final long[] samplesInBytesPerSecond;
+
+    Throughput(final CheckMode mode, final long bytes, final long durationInNs, final boolean truncated,
+            final int sampleIntervalInMs, final long[] samplesInBytesPerSecond) {
+        this.mode = mode;
+        this.bytes = bytes;
+        this.durationInNs = durationInNs;
+        this.truncated = truncated;
+        this.sampleIntervalInMs = sampleIntervalInMs;
+        this.samplesInBytesPerSecond = samplesInBytesPerSecond;
+    }
+
+    public CheckMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Number of bytes of the body transferred.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Time to transfer the body, without the time to connect and to get the first response headers.
+     */
+    public Duration getDuration() {
+        return Duration.ofNanos(durationInNs);
+    }
+
+    public long getBytesPerSecond() {
+        return durationInNs == 0 ? 0 : (long) (bytes * 1e9 / durationInNs);
+    }
+
+    /**
+     * Whether the transfer was stopped because the data budget of the hour was consumed.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public int getSampleIntervalInMs() {
+        return sampleIntervalInMs;
+    }
+
+    /**
+     * Throughput measured during each interval of {@link #getSampleIntervalInMs()}, to see how it evolved during
+     * the transfer.
+     */
+    public long[] getSamplesInBytesPerSecond() {
+        return samplesInBytesPerSecond.clone();
+    }
+
+    /**
+     * Human readable throughput in bits per second, like {@code 12.3 Mbit/s}.
+     */
+    public String format() {
+        final double bitsPerSecond = getBytesPerSecond() * 8d;
+        if (bitsPerSecond >= 1e9) {
+            return String.format(Locale.ROOT, "%.1f Gbit/s", bitsPerSecond / 1e9);
+        } else if (bitsPerSecond >= 1e6) {
+            return String.format(Locale.ROOT, "%.1f Mbit/s", bitsPerSecond / 1e6);
+        }
+        return String.format(Locale.ROOT, "%.1f kbit/s", bitsPerSecond / 1e3);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Throughput{");
+        sb.append("mode=").append(mode);
+        sb.append(", bytes=").append(bytes);
+        sb.append(", duration=").append(getDuration());
+        sb.append(", throughput=").append(format());
+        sb.append(", truncated=").append(truncated);
+        sb.append(", samples=").append(Arrays.toString(samplesInBytesPerSecond));
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.ericjesse.conni.http;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Byte counter sampling the throughput of one transfer at a time.
+ * <p>
+ * The meter is reused by all the checks of a target, so counting the bytes does not allocate anything until the
+ * result is built.
+ */
+final class ThroughputMeter {
+
+    static final int SAMPLE_INTERVAL_IN_MS = 250;
+
+    private static final long SAMPLE_INTERVAL_IN_NS = TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_IN_MS);
+
+    private long[] samples = new long[16];
+
+    private int sampleCount;
+
+    private long startInNs;
+
+    private long sampleStartInNs;
+
+    private long sampleBytes;
+
+    private long bytes;
+
+    void start(final long nowInNs) {
+        startInNs = nowInNs;
+        sampleStartInNs = nowInNs;
+        sampleBytes = 0;
+        bytes = 0;
+        sampleCount = 0;
+    }
+
+    void add(final long count, final long nowInNs) {
+        bytes += count;
+        sampleBytes += count;
+        final long elapsedInNs = nowInNs - sampleStartInNs;
+        if (elapsedInNs >= SAMPLE_INTERVAL_IN_NS) {
+            if (sampleCount == samples.length) {
+                samples = Arrays.copyOf(samples, 2 * sampleCount);
+            }
+            samples[sampleCount++] = (long) (sampleBytes * 1e9 / elapsedInNs);
+            sampleStartInNs = nowInNs;
+            sampleBytes = 0;
+        }
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    Throughput finish(final CheckMode mode, final long nowInNs, final boolean truncated) {
+        return new Throughput(mode, bytes, nowInNs - startInNs, truncated, SAMPLE_INTERVAL_IN_MS,
+                Arrays.copyOf(samples, sampleCount));
+    }
+}
@@ -0,0 +1,214 @@
+package com.ericjesse.conni.http;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ThroughputProbe turns the checks of a {@link HttpClient} into throughput measurements.
+ * <p>
+ * For a download, the response body is streamed through one reusable buffer into a byte counter and is never kept,
+ * so a payload of hundreds of megabytes costs no more memory than a latency check. For an upload, the request body
+ * is generated by writing the same pre-filled direct buffer again and again to the connection. A probe measures one
+ * transfer at a time: a check started while the previous transfer is still running is skipped, as well as a check
+ * once the data budget of the hour is consumed.
+ */
+public final class ThroughputProbe {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String ACCEPT_ENCODING_HEADER_NAME = "Accept-Encoding";
+
+    private static final String IDENTITY_ENCODING = "identity";
+
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    // Random content, so a compressing proxy on the way cannot reduce the bytes to transfer.
+    private static final ByteBuffer PAYLOAD;
+
+    static {
+        final byte[] content = new byte[BUFFER_SIZE];
+        new Random().nextBytes(content);
+        final ByteBuffer payload = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        payload.put(content).flip();
+        PAYLOAD = payload.asReadOnlyBuffer();
+    }
+
+    private final CheckMode mode;
+
+    private final DataBudget budget;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Only used by the running transfer.
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private final ThroughputMeter meter = new ThroughputMeter();
+
+    // Body of the uploads, null for the downloads.
+    private final GeneratedRequestBody uploadBody;
+
+    private ThroughputProbe(final CheckMode mode, final DataBudget budget, final long uploadSizeInBytes) {
+        this.mode = mode;
+        this.budget = budget;
+        this.uploadBody = mode == CheckMode.UPLOAD ? new GeneratedRequestBody(uploadSizeInBytes) : null;
+    }
+
+    /**
+     * Create a probe measuring the download of the response bodies.
+     *
+     * @param budget the bytes allowed per hour.
+     */
+    public static ThroughputProbe download(final DataBudget budget) {
+        return new ThroughputProbe(CheckMode.DOWNLOAD, budget, 0);
+    }
+
+    /**
+     * Create a probe measuring the upload of a generated request body.
+     *
+     * @param sizeInBytes the size of the body to send for each check.
+     * @param budget      the bytes allowed per hour.
+     */
+    public static ThroughputProbe upload(final long sizeInBytes, final DataBudget budget) {
+        if (sizeInBytes <= 0) {
+            throw new IllegalArgumentException("The size of the upload must be positive");
+        }
+        if (budget.getBytesPerHour() > 0 && sizeInBytes > budget.getBytesPerHour()) {
+            throw new IllegalArgumentException("The size of the upload is larger than the budget");
+        }
+        return new ThroughputProbe(CheckMode.UPLOAD, budget, sizeInBytes);
+    }
+
+    public CheckMode getMode() {
+        return mode;
+    }
+
+    public DataBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Reserve the probe for a new transfer.
+     *
+     * @return {@code false} if the previous transfer is still running or the budget is consumed.
+     */
+    boolean tryStart() {
+        if (budget.getRemaining() <= 0 || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        if (uploadBody != null) {
+            // The length of the upload is announced, the whole body is taken from the budget at once.
+            final long granted = budget.acquire(uploadBody.contentLength());
+            if (granted < uploadBody.contentLength()) {
+                budget.release(granted);
+                running.set(false);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Release the probe after the transfer, whatever its result.
+     */
+    void finish() {
+        running.set(false);
+    }
+
+    /**
+     * Adapt the request to the probe: a download asks the body uncompressed, so the bytes counted are the bytes on the
+     * wire, an upload sends the generated body with the method of the request, POST for a GET.
+     */
+    Request prepare(final Request request) {
+        final Request.Builder builder = request.newBuilder().header(ACCEPT_ENCODING_HEADER_NAME, IDENTITY_ENCODING);
+        if (uploadBody != null) {
+            builder.method("GET".equals(request.method()) ? "POST" : request.method(), uploadBody);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Measure the transfer once the response is received. The response body is closed.
+     * <p>
+     * A download streams the body into the counter until its end or until the budget is consumed. An upload is
+     * measured from its first byte written to the reception of the response, as the server answers once it read the
+     * whole body.
+     */
+    Throughput measure(final Response response) throws IOException {
+        if (uploadBody != null) {
+            response.close();
+            return meter.finish(mode, System.nanoTime(), false);
+        }
+        boolean truncated = false;
+        meter.start(System.nanoTime());
+        try (ResponseBody body = response.body()) {
+            final BufferedSource source = body.source();
+            while (true) {
+                final int granted = (int) budget.acquire(buffer.length);
+                if (granted == 0) {
+                    truncated = true;
+                    break;
+                }
+                final int read = source.read(buffer, 0, granted);
+                if (read < granted) {
+                    budget.release(read < 0 ? granted : granted - read);
+                }
+                if (read < 0) {
+                    break;
+                }
+                meter.add(read, System.nanoTime());
+            }
+        }
+        return meter.finish(mode, System.nanoTime(), truncated);
+    }
+
+    /**
+     * Request body of the given length, written from the shared payload without allocating any buffer.
+     */
+    private final class GeneratedRequestBody extends RequestBody {
+
+        private final long length;
+
+        // View of the shared payload, only used by the running transfer.
+        private final ByteBuffer payload = PAYLOAD.duplicate();
+
+        private GeneratedRequestBody(final long length) {
+            this.length = length;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(final BufferedSink sink) throws IOException {
+            // Restarted when OkHttp retries the request on a new connection.
+            meter.start(System.nanoTime());
+            long remaining = length;
+            while (remaining > 0) {
+                payload.clear();
+                if (remaining < payload.capacity()) {
+                    payload.limit((int) remaining);
+                }
+                final int written = sink.write(payload);
+                remaining -= written;
+                meter.add(written, System.nanoTime());
+            }
+        }
+    }
+}
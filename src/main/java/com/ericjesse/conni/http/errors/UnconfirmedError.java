@@ -0,0 +1,35 @@
+package com.ericjesse.conni.http.errors;
+
+/**
+ * Error of a check not confirmed by the reference endpoints: the checked service failed, but enough references
+ * answered to tell that the connection is up.
+ */
+public class UnconfirmedError implements ConniError {
+
+    private final ConniError error;
+
+    private final int answeredReferences;
+
+    private final int references;
+
+    public UnconfirmedError(final ConniError error, final int answeredReferences, final int references) {
+        this.error = error;
+        this.answeredReferences = answeredReferences;
+        this.references = references;
+    }
+
+    /**
+     * The error of the check itself.
+     */
+    public ConniError getError() {
+        return error;
+    }
+
+    public int getAnsweredReferences() {
+        return answeredReferences;
+    }
+
+    public int getReferences() {
+        return references;
+    }
+}
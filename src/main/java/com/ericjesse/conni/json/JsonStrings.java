@@ -0,0 +1,60 @@
+package com.ericjesse.conni.json;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * JsonStrings writes the strings of the JSON documents built by hand, escaping the quotes, the backslashes and the
+ * control characters.
+ */
+public final class JsonStrings {
+
+    private JsonStrings() {
+    }
+
+    /**
+     * The value as a JSON string, {@code null} as the JSON null.
+     */
+    public static String quote(final String value) {
+        if (value == null) {
+            return "null";
+        }
+        final StringBuilder sb = new StringBuilder(value.length() + 2);
+        quote(sb, value);
+        return sb.toString();
+    }
+
+    /**
+     * Append the value as a JSON string.
+     */
+    public static void quote(final StringBuilder sb, final String value) {
+        try {
+            append(sb, value);
+        } catch (IOException e) {
+            // A StringBuilder does not throw.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the value as a JSON string.
+     */
+    public static void quote(final Writer writer, final String value) throws IOException {
+        append(writer, value);
+    }
+
+    private static void append(final Appendable out, final String value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,137 @@
+package com.ericjesse.conni.processors;
+
+import java.io.Serializable;
+import java.time.Duration;
+
+/**
+ * Streaming baseline of the latencies of a target, weighting the recent latencies more than the old ones.
+ * <p>
+ * The latencies are counted in buckets on a logarithmic scale, each bucket 10% wider than the previous one, from
+ * 1 ms to about 2 minutes. The weight of a latency decreases exponentially with its age, with a mean lifetime of 72
+ * hours by default, so the baseline follows the last days without keeping any sample. The decay is applied forward:
+ * a new latency weighs more than the previous ones instead of decaying all the buckets, and the weights are scaled
+ * down only when they become too large.
+ * <p>
+ * The buckets store the cumulated weights, so the rank of a latency in the baseline is read in constant time. The
+ * whole baseline takes about 1 KB and is serializable to survive a restart.
+ */
+public final class LatencyBaseline implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final Duration DEFAULT_MEAN_LIFETIME = Duration.ofHours(72);
+
+    private static final double GAMMA = 1.1;
+
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private static final long MAX_LATENCY_IN_MS = 120_000;
+
+    private static final int BUCKETS = bucketOf(MAX_LATENCY_IN_MS) + 1;
+
+    // The weights are scaled down before the new ones become too large to be added precisely.
+    private static final double MAX_WEIGHT = 1e100;
+
+    private final double meanLifetimeInMs;
+
+    // Weight of all the latencies up to each bucket, relative to the landmark time.
+    private final double[] cumulatedWeights = new double[BUCKETS];
+
+    private long landmarkInMs = -1;
+
+    public LatencyBaseline() {
+        this(DEFAULT_MEAN_LIFETIME);
+    }
+
+    public LatencyBaseline(final Duration meanLifetime) {
+        this.meanLifetimeInMs = meanLifetime.toMillis();
+    }
+
+    private static int bucketOf(final long latencyInMs) {
+        if (latencyInMs <= 1) {
+            return 0;
+        }
+        return (int) Math.ceil(Math.log(Math.min(latencyInMs, MAX_LATENCY_IN_MS)) / LOG_GAMMA);
+    }
+
+    /**
+     * Add a latency to the baseline.
+     *
+     * @param latencyInMs the latency.
+     * @param timeInMs    the time of the measure, in milliseconds since the epoch.
+     */
+    public synchronized void add(final long latencyInMs, final long timeInMs) {
+        if (landmarkInMs < 0) {
+            landmarkInMs = timeInMs;
+        }
+        double weight = weightAt(timeInMs);
+        if (weight > MAX_WEIGHT) {
+            rescale(timeInMs);
+            weight = 1;
+        }
+        for (int i = bucketOf(latencyInMs); i < BUCKETS; i++) {
+            cumulatedWeights[i] += weight;
+        }
+    }
+
+    private double weightAt(final long timeInMs) {
+        return Math.exp((timeInMs - landmarkInMs) / meanLifetimeInMs);
+    }
+
+    private void rescale(final long timeInMs) {
+        final double factor = 1 / weightAt(timeInMs);
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulatedWeights[i] *= factor;
+        }
+        landmarkInMs = timeInMs;
+    }
+
+    /**
+     * Rank of a latency in the baseline: 0 when it is faster than all the latencies of the baseline, 1 when it is
+     * slower than all of them, 0.5 when the baseline is empty.
+     */
+    public synchronized double rank(final long latencyInMs) {
+        final double total = cumulatedWeights[BUCKETS - 1];
+        if (total == 0) {
+            return 0.5;
+        }
+        final int bucket = bucketOf(latencyInMs);
+        final double below = bucket == 0 ? 0 : cumulatedWeights[bucket - 1];
+        // The latencies of the same bucket count for half, as they are as fast as the given one.
+        return (below + (cumulatedWeights[bucket] - below) / 2) / total;
+    }
+
+    /**
+     * Latency below which the given fraction of the baseline is, with a precision of 10%.
+     *
+     * @param quantile the fraction, between 0 and 1.
+     * @return the latency, or {@code -1} if the baseline is empty.
+     */
+    public synchronized long quantile(final double quantile) {
+        final double total = cumulatedWeights[BUCKETS - 1];
+        if (total == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = BUCKETS - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (cumulatedWeights[middle] < quantile * total) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return Math.round(Math.pow(GAMMA, low));
+    }
+
+    /**
+     * Number of latencies of the baseline, each one weighted by its age at the given time.
+     */
+    public synchronized double getWeight(final long timeInMs) {
+        if (landmarkInMs < 0) {
+            return 0;
+        }
+        return cumulatedWeights[BUCKETS - 1] / weightAt(timeInMs);
+    }
+}
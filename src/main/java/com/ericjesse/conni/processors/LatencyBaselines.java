@@ -0,0 +1,88 @@
+package com.ericjesse.conni.processors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link LatencyBaseline} and the {@link SeasonalLatencyBaseline} of each target, indexed by the id of the
+ * target.
+ * <p>
+ * Only strings and the baselines are saved, so the file stays readable when the classes of the requests change, and
+ * after a restart the targets find their baseline again as long as their id did not change. The baselines of the
+ * targets removed from the configuration are removed with them.
+ */
+public final class LatencyBaselines implements Serializable {
+
+    private static final long serialVersionUID = 3L;
+
+    private final ConcurrentMap<String, LatencyBaseline> baselines = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, SeasonalLatencyBaseline> seasonalBaselines = new ConcurrentHashMap<>();
+
+    /**
+     * The baseline of a target, created empty the first time.
+     */
+    public LatencyBaseline forTarget(final String targetId) {
+        return baselines.computeIfAbsent(targetId, id -> new LatencyBaseline());
+    }
+
+    /**
+     * The seasonal baseline of a target, created empty the first time.
+     */
+    public SeasonalLatencyBaseline seasonalForTarget(final String targetId) {
+        return seasonalBaselines.computeIfAbsent(targetId, id -> new SeasonalLatencyBaseline());
+    }
+
+    /**
+     * Forget the baselines of a target no longer checked.
+     */
+    public void remove(final String targetId) {
+        baselines.remove(targetId);
+        seasonalBaselines.remove(targetId);
+    }
+
+    public int size() {
+        return baselines.size();
+    }
+
+    /**
+     * Write the baselines to a file, replaced at once so a crash while saving does not lose the previous version.
+     */
+    public void save(final Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporaryFile);
+             ObjectOutputStream objectOut = new ObjectOutputStream(out)) {
+            objectOut.writeObject(this);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the baselines saved in a file.
+     *
+     * @return the baselines, empty if the file does not exist.
+     * @throws IOException if the file cannot be read or does not contain baselines.
+     */
+    public static LatencyBaselines load(final Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new LatencyBaselines();
+        }
+        try (InputStream in = Files.newInputStream(file); ObjectInputStream objectIn = new ObjectInputStream(in)) {
+            return (LatencyBaselines) objectIn.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("The file " + file + " does not contain latency baselines", e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.ericjesse.conni.processors;
+
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoField;
+
+/**
+ * Baseline of the latencies of a target for each hour of the week, so a link slow every Monday at 9:00 is compared
+ * with the previous Mondays at 9:00 and not with the whole week.
+ * <p>
+ * Each of the 168 hours keeps an exponentially weighted mean and variance of the logarithm of the latencies, the
+ * latencies being closer to a log-normal distribution than to a normal one. The weight of a latency depends on the
+ * time elapsed since the previous one of the same hour, so the baseline does not depend on the period of the
+ * checks: the measures of an hour lose two thirds of their weight after 3 hours of measures in the same hour, that
+ * is about 3 weeks. An update takes constant time and the whole baseline takes about 4 KB.
+ */
+public final class SeasonalLatencyBaseline implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int HOURS_PER_WEEK = 168;
+
+    private static final double TIME_CONSTANT_IN_MS = 3 * 3_600_000d;
+
+    // A gap longer than this one (a week between two hours, a computer asleep) counts as a single period.
+    private static final long MAX_GAP_IN_MS = 5 * 60_000;
+
+    private final double[] means = new double[HOURS_PER_WEEK];
+
+    private final double[] variances = new double[HOURS_PER_WEEK];
+
+    private final int[] counts = new int[HOURS_PER_WEEK];
+
+    private final long[] lastTimesInMs = new long[HOURS_PER_WEEK];
+
+    /**
+     * Hour of the week of a time, from 0 on Monday at 00:00 to 167 on Sunday at 23:00.
+     */
+    public static int hourOfWeek(final long timeInMs, final ZoneId zone) {
+        final ZonedDateTime time = Instant.ofEpochMilli(timeInMs).atZone(zone);
+        return (time.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue()) * 24 + time.get(ChronoField.HOUR_OF_DAY);
+    }
+
+    /**
+     * Add a latency to the baseline of its hour of the week.
+     *
+     * @param hourOfWeek  the hour of the week of the measure.
+     * @param latencyInMs the latency.
+     * @param timeInMs    the time of the measure, in milliseconds since the epoch.
+     */
+    public synchronized void add(final int hourOfWeek, final long latencyInMs, final long timeInMs) {
+        final double value = Math.log(Math.max(1, latencyInMs));
+        final int count = counts[hourOfWeek];
+        double alpha;
+        if (count == 0) {
+            alpha = 1;
+        } else {
+            final long gapInMs = Math.max(0, Math.min(timeInMs - lastTimesInMs[hourOfWeek], MAX_GAP_IN_MS));
+            alpha = 1 - Math.exp(-gapInMs / TIME_CONSTANT_IN_MS);
+            // The first measures are averaged with the same weight, so the mean does not start from the first one.
+            alpha = Math.max(alpha, 1d / (count + 1));
+        }
+        final double difference = value - means[hourOfWeek];
+        final double increment = alpha * difference;
+        means[hourOfWeek] += increment;
+        variances[hourOfWeek] = (1 - alpha) * (variances[hourOfWeek] + difference * increment);
+        if (count < Integer.MAX_VALUE) {
+            counts[hourOfWeek] = count + 1;
+        }
+        lastTimesInMs[hourOfWeek] = timeInMs;
+    }
+
+    /**
+     * Number of latencies added to an hour of the week.
+     */
+    public synchronized int getCount(final int hourOfWeek) {
+        return counts[hourOfWeek];
+    }
+
+    /**
+     * Typical latency of an hour of the week: the geometric mean of its latencies.
+     *
+     * @return the latency, or {@code -1} when the hour has no latency.
+     */
+    public synchronized long usualLatency(final int hourOfWeek) {
+        return counts[hourOfWeek] == 0 ? -1 : Math.round(Math.exp(means[hourOfWeek]));
+    }
+
+    /**
+     * Number of standard deviations between a latency and the mean of its hour of the week, on a logarithmic scale.
+     *
+     * @param minStandardDeviation the lowest standard deviation considered, so a very stable link does not report
+     *                             a millisecond more as an anomaly.
+     * @return the score, or {@code 0} when the hour has no latency.
+     */
+    public synchronized double zScore(final int hourOfWeek, final long latencyInMs,
+            final double minStandardDeviation) {
+        if (counts[hourOfWeek] == 0) {
+            return 0;
+        }
+        final double standardDeviation = Math.max(Math.sqrt(variances[hourOfWeek]), minStandardDeviation);
+        return (Math.log(Math.max(1, latencyInMs)) - means[hourOfWeek]) / standardDeviation;
+    }
+}
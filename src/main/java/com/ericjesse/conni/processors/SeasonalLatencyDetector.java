@@ -0,0 +1,80 @@
+package com.ericjesse.conni.processors;
+
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.LatencyAnomaly;
+import com.ericjesse.conni.http.errors.ConniError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.ZoneId;
+
+/**
+ * SeasonalLatencyDetector reports the latencies unusually high for their hour of the week.
+ * <p>
+ * The latency of each response is compared with the {@link SeasonalLatencyBaseline} of the target before being
+ * added to it. When it is more than {@link #DEFAULT_THRESHOLD} standard deviations above the usual latency of the
+ * hour, the response passed to the next observers of the chain carries a {@link LatencyAnomaly}. An hour reports
+ * no anomaly until it got {@link #WARM_UP_COUNT} latencies.
+ * <p>
+ * The throughput checks are ignored: their duration depends on the size of the transfer.
+ */
+public class SeasonalLatencyDetector implements ResponseObserver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SeasonalLatencyDetector.class);
+
+    public static final double DEFAULT_THRESHOLD = 3;
+
+    public static final int WARM_UP_COUNT = 30;
+
+    // About 10%: below, the deviations are not noticeable.
+    private static final double MIN_STANDARD_DEVIATION = 0.1;
+
+    private final SeasonalLatencyBaseline baseline;
+
+    private final ZoneId zone;
+
+    private final double threshold;
+
+    public SeasonalLatencyDetector(final SeasonalLatencyBaseline baseline) {
+        this(baseline, ZoneId.systemDefault(), DEFAULT_THRESHOLD);
+    }
+
+    public SeasonalLatencyDetector(final SeasonalLatencyBaseline baseline, final ZoneId zone,
+            final double threshold) {
+        this.baseline = baseline;
+        this.zone = zone;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public ConniError processError(final ConniError error) {
+        return error;
+    }
+
+    @Override
+    public HttpResponse processResponse(final HttpResponse response) {
+        if (response.getThroughput() != null) {
+            return response;
+        }
+        final long timeInMs = response.getReceivedResponseInstant().toEpochMilli();
+        final long latencyInMs = response.getDuration().toMillis();
+        final int hourOfWeek = SeasonalLatencyBaseline.hourOfWeek(timeInMs, zone);
+
+        LatencyAnomaly anomaly = null;
+        if (baseline.getCount(hourOfWeek) >= WARM_UP_COUNT) {
+            final double zScore = baseline.zScore(hourOfWeek, latencyInMs, MIN_STANDARD_DEVIATION);
+            if (zScore > threshold) {
+                anomaly = new LatencyAnomaly(hourOfWeek, response.getDuration(),
+                        Duration.ofMillis(baseline.usualLatency(hourOfWeek)), zScore);
+            }
+        }
+        baseline.add(hourOfWeek, latencyInMs, timeInMs);
+
+        if (anomaly == null) {
+            return response;
+        }
+        LOG.warn("Anomalous latency for {}: {}", response.getRequest().getUrl(), anomaly);
+        return response.withAnomaly(anomaly);
+    }
+}
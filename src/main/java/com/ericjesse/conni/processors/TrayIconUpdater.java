@@ -1,7 +1,14 @@
 package com.ericjesse.conni.processors;
 
+import com.ericjesse.conni.alerts.Alert;
+import com.ericjesse.conni.alerts.AlertKind;
+import com.ericjesse.conni.alerts.AlertSink;
+import com.ericjesse.conni.http.BurstStatistics;
 import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.LatencyAnomaly;
+import com.ericjesse.conni.http.Throughput;
 import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.http.errors.UnconfirmedError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,14 +20,22 @@ import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Semaphore;
 
 /**
  * TrayIconUpdater is an observer to update the tray icon and reflect the connection status.
+ * <p>
+ * With several targets, each one reports to the updater through its own observer, see {@link #observerFor(String)},
+ * and the icon shows the worst state of all the targets: a target down, then a target failing while its references
+ * answer, then the slowest target compared with its baseline.
  */
-public class TrayIconUpdater implements ResponseObserver {
+public class TrayIconUpdater implements ResponseObserver, AlertSink {
 
     public static final String TRAY_TOOLTIP = "Conni\n\nConnection is %s";
 
@@ -32,6 +47,18 @@ public class TrayIconUpdater implements ResponseObserver {
 
     public static final String STATUS_UP = "up (%d ms)";
 
+    public static final String STATUS_UP_WITH_THROUGHPUT = "up (%d ms, %s %s)";
+
+    public static final String STATUS_UP_WITH_BURST = "up (%d ms, jitter %d ms, loss %d%%)";
+
+    public static final String STATUS_ANOMALY = "%s, usually %d ms at this hour";
+
+    public static final String STATUS_UNCONFIRMED = "up, but the check fails (%d of %d references answered)";
+
+    public static final String STATUS_OUTAGE = "down: all the targets tagged %s fail";
+
+    public static final String STATUS_OF_TARGET = "%s for %s";
+
     private static final Logger LOG = LoggerFactory.getLogger(TrayIconUpdater.class);
 
     private static final String IMAGE_PATH = "images/028-connection.png";
@@ -42,6 +69,32 @@ public class TrayIconUpdater implements ResponseObserver {
 
     private static final Color UNKOWN_COLOR = new Color(64, 107, 255);
 
+    private static final Color SLOW_COLOR = new Color(255, 165, 0);
+
+    // Shades from OK_COLOR to SLOW_COLOR, picked by the rank of the latency in the baseline of the target.
+    private static final Color[] SPEED_SHADES = new Color[16];
+
+    static {
+        final float[] ok = OK_COLOR.getRGBColorComponents(null);
+        final float[] slow = SLOW_COLOR.getRGBColorComponents(null);
+        for (int i = 0; i < SPEED_SHADES.length; i++) {
+            final float ratio = i / (float) (SPEED_SHADES.length - 1);
+            SPEED_SHADES[i] = new Color(ok[0] + ratio * (slow[0] - ok[0]), ok[1] + ratio * (slow[1] - ok[1]),
+                    ok[2] + ratio * (slow[2] - ok[2]));
+        }
+    }
+
+    // Severities of the states worse than the slowest shade.
+    private static final int UNCONFIRMED_SEVERITY = SPEED_SHADES.length;
+
+    private static final int DOWN_SEVERITY = SPEED_SHADES.length + 1;
+
+    // Key of the state when the updater observes a single client directly.
+    private static final String DEFAULT_TARGET = "";
+
+    // Weight of the baseline needed before comparing the latencies with it.
+    private static final double MIN_BASELINE_WEIGHT = 10;
+
     private final URL imageUrl;
 
     private final List<Pixel> transparentPixels;
@@ -56,7 +109,27 @@ public class TrayIconUpdater implements ResponseObserver {
 
     private boolean isSystemTraySupported;
 
+    private final LatencyBaselines baselines;
+
+    // The groups of targets in outage, shown instead of the results of the checks.
+    private final Set<String> outages = new ConcurrentSkipListSet<>();
+
+    // The last state of each target. Guarded by this.
+    private final Map<String, TargetState> states = new HashMap<>();
+
+    // The status shown, also without system tray.
+    private volatile String status = STATUS_UNKNOWN;
+
     public TrayIconUpdater() throws IOException {
+        this(new LatencyBaselines());
+    }
+
+    /**
+     * @param baselines the baselines of the targets, to shade the icon from green to orange when a target is slower
+     *                  than usual.
+     */
+    public TrayIconUpdater(final LatencyBaselines baselines) throws IOException {
+        this.baselines = baselines;
         isSystemTraySupported = SystemTray.isSupported();
 
         if (isSystemTraySupported) {
@@ -128,30 +201,110 @@ public class TrayIconUpdater implements ResponseObserver {
 
     @Override
     public ConniError processError(final ConniError error) {
-        if (isSystemTraySupported) {
-            updateTrayIconWithColorAndRefresBufferedImage(ERROR_COLOR);
-            try {
-                trayIconRefreshSemaphore.acquire();
-                trayIcon.setToolTip(String.format(TRAY_TOOLTIP, STATUS_DOWN));
-            } catch (InterruptedException e) {
-                LOG.error(e.getMessage(), e);
-                // Clean up state.
-                Thread.currentThread().interrupt();
-            } finally {
-                trayIconRefreshSemaphore.release();
-            }
+        return processError(DEFAULT_TARGET, error);
+    }
+
+    @Override
+    public HttpResponse processResponse(final HttpResponse response) {
+        return processResponse(DEFAULT_TARGET, response);
+    }
+
+    /**
+     * An observer reporting the results of a target to this updater.
+     */
+    public ResponseObserver observerFor(final String targetId) {
+        return new TargetObserver(targetId);
+    }
+
+    /**
+     * Forget the state of a target no longer checked.
+     */
+    public synchronized void remove(final String targetId) {
+        if (states.remove(targetId) != null) {
+            refreshWorst();
         }
+    }
+
+    private ConniError processError(final String targetId, final ConniError error) {
+        final TargetState state;
+        if (error instanceof UnconfirmedError) {
+            // Only the checked service fails, the connection itself is up.
+            final UnconfirmedError unconfirmed = (UnconfirmedError) error;
+            state = new TargetState(UNCONFIRMED_SEVERITY, SLOW_COLOR, String.format(STATUS_UNCONFIRMED,
+                    unconfirmed.getAnsweredReferences(), unconfirmed.getReferences()));
+        } else {
+            state = new TargetState(DOWN_SEVERITY, ERROR_COLOR, STATUS_DOWN);
+        }
+        update(targetId, state);
         return error;
     }
 
+    private HttpResponse processResponse(final String targetId, final HttpResponse response) {
+        final int shade = speedShade(baselines.forTarget(targetId), response);
+        update(targetId, new TargetState(shade, SPEED_SHADES[shade], formatStatusUp(response)));
+        return response;
+    }
+
+    private synchronized void update(final String targetId, final TargetState state) {
+        states.put(targetId, state);
+        refreshWorst();
+    }
+
+    /**
+     * Show the worst state of the targets, unless a group of targets is in outage.
+     */
+    private synchronized void refreshWorst() {
+        if (!outages.isEmpty()) {
+            return;
+        }
+        Map.Entry<String, TargetState> worst = null;
+        for (Map.Entry<String, TargetState> entry : states.entrySet()) {
+            if (worst == null || entry.getValue().severity > worst.getValue().severity) {
+                worst = entry;
+            }
+        }
+        if (worst == null) {
+            refresh(UNKOWN_COLOR, STATUS_UNKNOWN);
+        } else if (states.size() == 1) {
+            refresh(worst.getValue().color, worst.getValue().status);
+        } else {
+            refresh(worst.getValue().color, String.format(STATUS_OF_TARGET, worst.getValue().status, worst.getKey()));
+        }
+    }
+
+    // Visible for tests.
+    String getStatus() {
+        return status;
+    }
+
+    /**
+     * Show the outages of the groups of targets: while a group is in outage, it is the root cause shown by the icon
+     * and the results of the single checks are not.
+     */
     @Override
-    public HttpResponse processResponse(final HttpResponse response) {
+    public void send(final Alert alert) {
+        if (alert.getKind() == AlertKind.OUTAGE) {
+            outages.add(alert.getTargetId());
+        } else if (alert.getKind() == AlertKind.OUTAGE_OVER) {
+            outages.remove(alert.getTargetId());
+        } else {
+            return;
+        }
+        if (outages.isEmpty()) {
+            // Back to the states of the targets.
+            refreshWorst();
+        } else {
+            refresh(ERROR_COLOR, String.format(STATUS_OUTAGE, String.join(", ", outages)));
+        }
+    }
+
+    private void refresh(final Color color, final String status) {
+        this.status = status;
         if (isSystemTraySupported) {
-            updateTrayIconWithColorAndRefresBufferedImage(OK_COLOR);
+            updateTrayIconWithColorAndRefresBufferedImage(color);
             try {
                 trayIconRefreshSemaphore.acquire();
-                trayIcon.setToolTip(
-                        String.format(TRAY_TOOLTIP, String.format(STATUS_UP, response.getDuration().toMillis())));
+                trayIcon.setToolTip(String.format(TRAY_TOOLTIP, status));
             } catch (InterruptedException e) {
                 LOG.error(e.getMessage(), e);
                 // Clean up state.
@@ -160,7 +313,52 @@ public class TrayIconUpdater implements ResponseObserver {
                 trayIconRefreshSemaphore.release();
             }
         }
-        return response;
+    }
+
+    /**
+     * Compare the latency with the baseline of the target and add it to the baseline.
+     *
+     * @return the index of the shade between green and orange matching the rank of the latency in the baseline,
+     * green while the baseline is too small.
+     */
+    private static int speedShade(final LatencyBaseline baseline, final HttpResponse response) {
+        final long latencyInMs = response.getDuration().toMillis();
+        final long timeInMs = response.getReceivedResponseInstant().toEpochMilli();
+        final int shade = baseline.getWeight(timeInMs) < MIN_BASELINE_WEIGHT ? 0 :
+                speedShadeIndex(baseline.rank(latencyInMs));
+        baseline.add(latencyInMs, timeInMs);
+        return shade;
+    }
+
+    // Visible for tests.
+    static Color speedShade(final double rank) {
+        return SPEED_SHADES[speedShadeIndex(rank)];
+    }
+
+    private static int speedShadeIndex(final double rank) {
+        return (int) Math.round(rank * (SPEED_SHADES.length - 1));
+    }
+
+    // Visible for tests.
+    static String formatStatusUp(final HttpResponse response) {
+        final LatencyAnomaly anomaly = response.getAnomaly();
+        if (anomaly != null) {
+            return String.format(STATUS_ANOMALY, formatMeasures(response), anomaly.getUsualLatency().toMillis());
+        }
+        return formatMeasures(response);
+    }
+
+    private static String formatMeasures(final HttpResponse response) {
+        final Throughput throughput = response.getThroughput();
+        final BurstStatistics burst = response.getBurst();
+        if (throughput != null) {
+            return String.format(STATUS_UP_WITH_THROUGHPUT, response.getDuration().toMillis(),
+                    throughput.getMode().getValue(), throughput.format());
+        } else if (burst != null) {
+            return String.format(STATUS_UP_WITH_BURST, response.getDuration().toMillis(),
+                    burst.getJitter().toMillis(), Math.round(100 * burst.getLossRatio()));
+        }
+        return String.format(STATUS_UP, response.getDuration().toMillis());
     }
 
     /**
@@ -205,6 +403,48 @@ public class TrayIconUpdater implements ResponseObserver {
                         .getRGB()));
     }
 
+    /**
+     * Last result of a target, the highest severity being the worst.
+     */
+    private static final class TargetState {
+
+        private final int severity;
+
+        private final Color color;
+
+        private final String status;
+
+        private TargetState(final int severity, final Color color, final String status) {
+            this.severity = severity;
+            this.color = color;
+            this.status = status;
+        }
+    }
+
+    private final class TargetObserver implements ResponseObserver {
+
+        private final String targetId;
+
+        private TargetObserver(final String targetId) {
+            this.targetId = targetId;
+        }
+
+        @Override
+        public ConniError processError(final ConniError error) {
+            return TrayIconUpdater.this.processError(targetId, error);
+        }
+
+        @Override
+        public HttpResponse processResponse(final HttpResponse response) {
+            return TrayIconUpdater.this.processResponse(targetId, response);
+        }
+
+        @Override
+        public int getOrder() {
+            return TrayIconUpdater.this.getOrder();
+        }
+    }
+
     // Visible for test.
     static class Pixel {
 
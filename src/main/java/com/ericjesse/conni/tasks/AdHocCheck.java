@@ -0,0 +1,164 @@
+package com.ericjesse.conni.tasks;
+
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.http.errors.UnexpectedError;
+import com.ericjesse.conni.json.JsonStrings;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Check of a target asked once, outside of the schedule of the configured targets, and its result.
+ */
+public final class AdHocCheck {
+
+    /**
+     * States of an ad-hoc check.
+     */
+    public enum State {
+        QUEUED, RUNNING, DONE, EXPIRED
+    }
+
+    private final long id;
+
+    private final Target target;
+
+    private final long submittedAtInNs = System.nanoTime();
+
+    private final CountDownLatch completion = new CountDownLatch(1);
+
+    private volatile State state = State.QUEUED;
+
+    private volatile long startedAtInNs;
+
+    private volatile long completedAtInNs;
+
+    private volatile HttpResponse response;
+
+    private volatile ConniError error;
+
+    AdHocCheck(final long id, final Target target) {
+        this.id = id;
+        this.target = target;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Target getTarget() {
+        return target;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * The response of the target, {@code null} until the check is done or if it failed.
+     */
+    public HttpResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * The failure of the check, {@code null} until the check is done or if the target answered.
+     */
+    public ConniError getError() {
+        return error;
+    }
+
+    /**
+     * Time spent in the queue before the request was sent, in milliseconds.
+     */
+    public long getQueueTimeInMs() {
+        final long endInNs = startedAtInNs == 0 ? System.nanoTime() : startedAtInNs;
+        return TimeUnit.NANOSECONDS.toMillis(endInNs - submittedAtInNs);
+    }
+
+    /**
+     * Time from the submission to the result, in milliseconds, or until now while the check is not done.
+     */
+    public long getLatencyInMs() {
+        final long endInNs = completedAtInNs == 0 ? System.nanoTime() : completedAtInNs;
+        return TimeUnit.NANOSECONDS.toMillis(endInNs - submittedAtInNs);
+    }
+
+    /**
+     * Whether the check is done or expired, its callers not waiting anymore.
+     */
+    public boolean isDone() {
+        return completion.getCount() == 0;
+    }
+
+    /**
+     * Wait for the result of the check.
+     *
+     * @return whether the check is done or expired.
+     */
+    public boolean await(final long timeoutInMs) throws InterruptedException {
+        return completion.await(timeoutInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The check as a JSON object: its id, target, URL, state, times, and the status and the duration of the response
+     * or the error.
+     */
+    public String toJson() {
+        final StringBuilder sb = new StringBuilder(160);
+        sb.append("{\"id\":").append(id).append(",\"target\":");
+        JsonStrings.quote(sb, target.getId());
+        sb.append(",\"url\":");
+        JsonStrings.quote(sb, target.getRequest().getUrl());
+        sb.append(",\"state\":\"").append(state.name().toLowerCase(Locale.ROOT)).append('"');
+        sb.append(",\"queuedInMs\":").append(getQueueTimeInMs());
+        sb.append(",\"latencyInMs\":").append(getLatencyInMs());
+        final HttpResponse currentResponse = response;
+        if (currentResponse != null) {
+            sb.append(",\"status\":").append(currentResponse.getStatusCode());
+            sb.append(",\"durationInMs\":").append(currentResponse.getDuration().toMillis());
+        }
+        final ConniError currentError = error;
+        if (currentError != null) {
+            sb.append(",\"error\":");
+            JsonStrings.quote(sb, describe(currentError));
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Short description of an error.
+     */
+    static String describe(final ConniError error) {
+        return error instanceof UnexpectedError ? String.valueOf(((UnexpectedError) error).getException())
+                : error.getClass().getSimpleName();
+    }
+
+    void start() {
+        startedAtInNs = System.nanoTime();
+        state = State.RUNNING;
+    }
+
+    /**
+     * Record the result of the check, once. The waiting threads are released by {@link #release()}.
+     *
+     * @return false if the check was already completed.
+     */
+    synchronized boolean complete(final State finalState, final HttpResponse response, final ConniError error) {
+        if (completedAtInNs != 0) {
+            return false;
+        }
+        completedAtInNs = System.nanoTime();
+        this.response = response;
+        this.error = error;
+        state = finalState;
+        return true;
+    }
+
+    void release() {
+        completion.countDown();
+    }
+}
@@ -0,0 +1,339 @@
+package com.ericjesse.conni.tasks;
+
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.http.HttpClient;
+import com.ericjesse.conni.http.HttpClientFactory;
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.InvalidRequestException;
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AdHocCheckQueue runs the checks asked on demand, for example by the incident tooling through the web server.
+ * <p>
+ * The ad-hoc checks have their own lane: their clients are created from their own {@link HttpClientFactory}, so they
+ * are not queued behind the scheduled checks in the dispatcher, and at most {@link #DEFAULT_CONCURRENCY} of them run
+ * at once, the next ones waiting in order. The queue is bounded: a submission which does not fit is rejected at once
+ * instead of waiting, so the callers can back off. The results pass through the usual chain of observers of an
+ * {@link HttpClient}, the queue adding its own at the end.
+ * <p>
+ * A check without result after a minute expires: its callers stop waiting, but it keeps its place among the running
+ * checks until its request is answered, so a target which never answers does not let more requests run at once.
+ */
+public class AdHocCheckQueue implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdHocCheckQueue.class);
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    // The results of a check spanning a suspend are discarded by its client, it expires after this time.
+    private static final long DEFAULT_EXPIRY_IN_MS = TimeUnit.MINUTES.toMillis(1);
+
+    // Period of the checks of whether the request of an expired check is answered.
+    private static final long IN_FLIGHT_POLL_IN_MS = TimeUnit.SECONDS.toMillis(1);
+
+    // Number of the last checks kept to be read again, and of the last latencies kept for their quantiles.
+    private static final int HISTORY_SIZE = 1024;
+
+    private final HttpClientFactory clientFactory;
+
+    private final int capacity;
+
+    private final int concurrency;
+
+    private final long expiryInMs;
+
+    private final ScheduledThreadPoolExecutor expiry = new ScheduledThreadPoolExecutor(1, runnable -> {
+        final Thread thread = new Thread(runnable, "conni-adhoc");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this.
+    private final Queue<Pending> queued = new ArrayDeque<>();
+
+    // The last checks by id, guarded by this.
+    private final Map<Long, AdHocCheck> checks = new LastChecks();
+
+    // Ring of the latencies of the last checks, from the submission to the result. Guarded by this.
+    private final long[] latenciesInMs = new long[HISTORY_SIZE];
+
+    private int running;
+
+    // Places taken by the submissions whose clients are being created.
+    private int reserved;
+
+    private long nextId = 1;
+
+    private long completed;
+
+    private long rejected;
+
+    public AdHocCheckQueue() {
+        this(new HttpClientFactory(), DEFAULT_CAPACITY, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param clientFactory the factory of the clients, not shared with the scheduled checks.
+     * @param capacity      the highest number of checks queued or running.
+     * @param concurrency   the highest number of checks running at once.
+     */
+    public AdHocCheckQueue(final HttpClientFactory clientFactory, final int capacity, final int concurrency) {
+        this(clientFactory, capacity, concurrency, DEFAULT_EXPIRY_IN_MS);
+    }
+
+    // Visible for tests.
+    AdHocCheckQueue(final HttpClientFactory clientFactory, final int capacity, final int concurrency,
+            final long expiryInMs) {
+        this.clientFactory = clientFactory;
+        this.capacity = capacity;
+        this.concurrency = concurrency;
+        this.expiryInMs = expiryInMs;
+        expiry.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Submit the checks of targets, all of them or none.
+     *
+     * @return the checks in the order of the targets, queued or already running.
+     * @throws RejectedExecutionException if the queue has no room for all the targets.
+     * @throws InvalidRequestException    if the request of a target is not valid.
+     */
+    public List<AdHocCheck> submit(final Collection<Target> targets) throws InvalidRequestException {
+        synchronized (this) {
+            // Checked before the clients are created, so a full queue rejects at once.
+            if (running + queued.size() + reserved + targets.size() > capacity) {
+                rejected += targets.size();
+                throw new RejectedExecutionException("The queue of the ad-hoc checks is full: " + queued.size()
+                        + " queued and " + running + " running");
+            }
+            reserved += targets.size();
+        }
+        final List<Pending> pendings = new ArrayList<>(targets.size());
+        try {
+            for (Target target : targets) {
+                pendings.add(new Pending(target, CheckEngine.createHttpClient(clientFactory, target)));
+            }
+        } catch (InvalidRequestException | RuntimeException e) {
+            synchronized (this) {
+                reserved -= targets.size();
+            }
+            throw e;
+        }
+        final List<AdHocCheck> submitted = new ArrayList<>(targets.size());
+        final List<Pending> started = new ArrayList<>();
+        synchronized (this) {
+            reserved -= targets.size();
+            for (Pending pending : pendings) {
+                pending.check = new AdHocCheck(nextId++, pending.target);
+                checks.put(pending.check.getId(), pending.check);
+                submitted.add(pending.check);
+                if (running < concurrency) {
+                    running++;
+                    started.add(pending);
+                } else {
+                    queued.add(pending);
+                }
+            }
+        }
+        started.forEach(this::start);
+        return submitted;
+    }
+
+    private void start(final Pending pending) {
+        pending.check.start();
+        pending.httpClient.addObserver(new ResultObserver(pending));
+        pending.expiry = expiry.schedule(() -> expire(pending), expiryInMs, TimeUnit.MILLISECONDS);
+        LOG.debug("Ad-hoc check {} of {}", pending.check.getId(), pending.target.getRequest().getUrl());
+        pending.httpClient.check();
+    }
+
+    /**
+     * Record the result of a check, once, then release its callers.
+     */
+    private void complete(final Pending pending, final AdHocCheck.State state, final HttpResponse response,
+            final ConniError error) {
+        if (!pending.check.complete(state, response, error)) {
+            return;
+        }
+        if (pending.expiry != null) {
+            pending.expiry.cancel(false);
+        }
+        synchronized (this) {
+            latenciesInMs[(int) (completed % HISTORY_SIZE)] = pending.check.getLatencyInMs();
+            completed++;
+        }
+        if (state == AdHocCheck.State.DONE) {
+            // Freed before the callers are released, so they see the check out of the running ones.
+            free(pending);
+        }
+        pending.check.release();
+    }
+
+    /**
+     * Give up waiting for the result of a check, and free its place once its request is answered.
+     */
+    private void expire(final Pending pending) {
+        complete(pending, AdHocCheck.State.EXPIRED, null, null);
+        if (pending.httpClient.getCallsInFlight() == 0) {
+            free(pending);
+        } else {
+            pending.expiry = expiry.schedule(() -> expire(pending), IN_FLIGHT_POLL_IN_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Free the place of a finished check, once, for the next queued check.
+     */
+    private void free(final Pending pending) {
+        final Pending next;
+        synchronized (this) {
+            if (pending.freed) {
+                return;
+            }
+            pending.freed = true;
+            next = queued.poll();
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    /**
+     * One of the last checks, {@code null} if unknown.
+     */
+    public synchronized AdHocCheck get(final long id) {
+        return checks.get(id);
+    }
+
+    /**
+     * Number of checks waiting to be sent.
+     */
+    public synchronized int getQueueDepth() {
+        return queued.size();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Number of checks rejected because the queue was full.
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Quantile of the times from the submission to the result of the last checks, in milliseconds, 0 without check.
+     */
+    public synchronized long getLatencyQuantileInMs(final double quantile) {
+        final int count = (int) Math.min(completed, HISTORY_SIZE);
+        if (count == 0) {
+            return 0;
+        }
+        final long[] sorted = Arrays.copyOf(latenciesInMs, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, (int) (quantile * count))];
+    }
+
+    @Override
+    public void close() {
+        expiry.shutdownNow();
+    }
+
+    /**
+     * A check and its client, before it is started.
+     */
+    private static final class Pending {
+
+        private final Target target;
+
+        private final HttpClient httpClient;
+
+        private AdHocCheck check;
+
+        private volatile ScheduledFuture<?> expiry;
+
+        // Whether the place of the check was given to the next one. Guarded by the queue.
+        private boolean freed;
+
+        private Pending(final Target target, final HttpClient httpClient) {
+            this.target = target;
+            this.httpClient = httpClient;
+        }
+    }
+
+    /**
+     * Map of the last {@link #HISTORY_SIZE} checks, in the order of their submission.
+     */
+    private static final class LastChecks extends LinkedHashMap<Long, AdHocCheck> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, AdHocCheck> eldest) {
+            return size() > HISTORY_SIZE;
+        }
+    }
+
+    private final class ResultObserver implements ResponseObserver {
+
+        private final Pending pending;
+
+        private ResultObserver(final Pending pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public ConniError processError(final ConniError error) {
+            complete(pending, AdHocCheck.State.DONE, null, error);
+            // Answered after the expiry of the check.
+            free(pending);
+            return error;
+        }
+
+        @Override
+        public HttpResponse processResponse(final HttpResponse response) {
+            complete(pending, AdHocCheck.State.DONE, response, null);
+            // Answered after the expiry of the check.
+            free(pending);
+            return response;
+        }
+
+        @Override
+        public int getOrder() {
+            // After all the other observers.
+            return Integer.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.ericjesse.conni.tasks;
+
+import com.ericjesse.conni.config.InvalidConfigurationException;
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.config.TargetConfigurationParser;
+import com.ericjesse.conni.http.HttpClient;
+import com.ericjesse.conni.http.HttpClientFactory;
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.InvalidRequestException;
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.processors.ResponseObserver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BatchCheck checks a list of targets once, as fast as possible, for example in a deploy pipeline, without the tray
+ * icon and the schedule of the checks.
+ * <p>
+ * All the checks are sent at once to the dispatcher of their {@link HttpClientFactory}, which runs at most
+ * {@code concurrency} of them, and at most {@code concurrencyPerHost} to the same host, the next ones waiting in order.
+ * Each result is printed as soon as it is known, as a line of a table or as a JSON object per line, followed by a
+ * summary with the total time and the number of checks per second.
+ */
+public class BatchCheck {
+
+    public static final int DEFAULT_CONCURRENCY = 128;
+
+    public static final int DEFAULT_CONCURRENCY_PER_HOST = 6;
+
+    /**
+     * Exit code when all the targets answered with a status lower than 400.
+     */
+    public static final int EXIT_SUCCESS = 0;
+
+    /**
+     * Exit code when at least one of the targets failed or answered with an error status.
+     */
+    public static final int EXIT_FAILURE = 1;
+
+    /**
+     * Exit code when the arguments or the list of the targets are not valid.
+     */
+    public static final int EXIT_INVALID = 2;
+
+    private static final String USAGE = "Usage: check <file> [--concurrency=" + DEFAULT_CONCURRENCY
+            + "] [--per-host=" + DEFAULT_CONCURRENCY_PER_HOST + "] [--format=table|json]";
+
+    // Period to verify that the dispatcher still has checks to run while some results are missing.
+    private static final long IDLE_POLL_IN_MS = 1_000;
+
+    private final HttpClientFactory clientFactory;
+
+    private final boolean json;
+
+    private final PrintStream out;
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * @param concurrency        the highest number of checks running at once.
+     * @param concurrencyPerHost the highest number of checks running at once to the same host.
+     * @param json               whether the results are printed as JSON objects, one per line, instead of a table.
+     * @param out                the destination of the results.
+     */
+    public BatchCheck(final int concurrency, final int concurrencyPerHost, final boolean json, final PrintStream out) {
+        this.clientFactory = new HttpClientFactory(concurrency, concurrencyPerHost);
+        this.json = json;
+        this.out = out;
+    }
+
+    /**
+     * Run the command {@code check} with its arguments, following the name of the command.
+     *
+     * @return the exit code of the command.
+     */
+    public static int run(final String[] args, final PrintStream out, final PrintStream err) {
+        String file = null;
+        int concurrency = DEFAULT_CONCURRENCY;
+        int concurrencyPerHost = DEFAULT_CONCURRENCY_PER_HOST;
+        boolean json = false;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--concurrency=")) {
+                    concurrency = parsePositive(arg.substring("--concurrency=".length()));
+                } else if (arg.startsWith("--per-host=")) {
+                    concurrencyPerHost = parsePositive(arg.substring("--per-host=".length()));
+                } else if (arg.equals("--format=json") || arg.equals("--format=table")) {
+                    json = arg.endsWith("json");
+                } else if (arg.startsWith("-") || file != null) {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                } else {
+                    file = arg;
+                }
+            }
+            if (file == null) {
+                throw new IllegalArgumentException("The file of the targets is expected");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_INVALID;
+        }
+
+        final List<Target> targets;
+        try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            targets = readTargets(reader);
+        } catch (IOException | InvalidConfigurationException e) {
+            err.println(file + ": " + e.getMessage());
+            return EXIT_INVALID;
+        }
+        try {
+            return new BatchCheck(concurrency, concurrencyPerHost, json, out).check(targets);
+        } catch (InvalidRequestException e) {
+            err.println(e.getMessage());
+            return EXIT_INVALID;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILURE;
+        }
+    }
+
+    private static int parsePositive(final String value) {
+        try {
+            final int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("The number " + value + " is not valid");
+    }
+
+    /**
+     * Read the targets written like the lines of the target configuration file, or as a URL alone whose id is the URL.
+     *
+     * @throws InvalidConfigurationException if a line is not valid or if a target is listed twice.
+     */
+    public static List<Target> readTargets(final Reader reader) throws IOException, InvalidConfigurationException {
+        final BufferedReader bufferedReader =
+                reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        final StringBuilder configuration = new StringBuilder();
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            final String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#") && trimmed.indexOf(' ') < 0
+                    && trimmed.indexOf('\t') < 0 && trimmed.indexOf('"') < 0) {
+                // A URL alone is its own id.
+                configuration.append(trimmed).append(' ');
+            }
+            configuration.append(line).append('\n');
+        }
+        final List<Target> targets = new ArrayList<>();
+        new TargetConfigurationParser().parse(new StringReader(configuration.toString()), targets::add);
+        return targets;
+    }
+
+    /**
+     * Check all the targets and print their results as soon as they are known, then the summary.
+     *
+     * @return {@link #EXIT_SUCCESS} if all the targets answered with a status lower than 400, else
+     * {@link #EXIT_FAILURE}.
+     * @throws InvalidRequestException if the request of a target is not valid, before any check is sent.
+     */
+    public int check(final List<Target> targets) throws InvalidRequestException, InterruptedException {
+        final List<HttpClient> httpClients = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            httpClients.add(CheckEngine.createHttpClient(clientFactory, target));
+        }
+        if (!json) {
+            out.println(String.format("%-6s %9s  %s", "STATUS", "TIME", "TARGET"));
+        }
+
+        final CountDownLatch remaining = new CountDownLatch(targets.size());
+        final List<AdHocCheck> checks = new ArrayList<>(targets.size());
+        final long startInNs = System.nanoTime();
+        for (int i = 0; i < targets.size(); i++) {
+            final AdHocCheck check = new AdHocCheck(i + 1, targets.get(i));
+            checks.add(check);
+            httpClients.get(i).addObserver(new ResultObserver(check, remaining));
+            check.start();
+            httpClients.get(i).check();
+        }
+
+        // The results of the checks spanning a suspend are discarded: once the dispatcher has nothing left to run, the
+        // missing results will not come.
+        boolean idle = false;
+        while (!remaining.await(IDLE_POLL_IN_MS, TimeUnit.MILLISECONDS)) {
+            final boolean wasIdle = idle;
+            idle = clientFactory.getCallsInFlight() == 0;
+            if (idle && wasIdle) {
+                for (AdHocCheck check : checks) {
+                    complete(check, AdHocCheck.State.EXPIRED, null, null);
+                }
+                break;
+            }
+        }
+        final long elapsedInNs = System.nanoTime() - startInNs;
+
+        final double elapsedInS = elapsedInNs / 1e9;
+        final double checksPerS = elapsedInS > 0 ? targets.size() / elapsedInS : 0;
+        synchronized (out) {
+            if (json) {
+                out.println(String.format(Locale.ROOT,
+                        "{\"checks\":%d,\"failures\":%d,\"timeInMs\":%d,\"checksPerS\":%.1f}", targets.size(),
+                        failures.get(), TimeUnit.NANOSECONDS.toMillis(elapsedInNs), checksPerS));
+            } else {
+                out.println(String.format(Locale.ROOT, "%d checks, %d failed, in %.3f s: %.1f checks/s",
+                        targets.size(), failures.get(), elapsedInS, checksPerS));
+            }
+            out.flush();
+        }
+        return failures.get() == 0 ? EXIT_SUCCESS : EXIT_FAILURE;
+    }
+
+    /**
+     * Record and print the result of a check, once.
+     *
+     * @return false if the check was already completed.
+     */
+    private boolean complete(final AdHocCheck check, final AdHocCheck.State state, final HttpResponse response,
+            final ConniError error) {
+        if (!check.complete(state, response, error)) {
+            return false;
+        }
+        final boolean failed = response == null || response.getStatusCode() < 200 || response.getStatusCode() >= 400;
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        final String line;
+        if (json) {
+            line = check.toJson();
+        } else {
+            final String status = response != null ? String.valueOf(response.getStatusCode())
+                    : error != null ? "ERROR" : state.name();
+            final Target target = check.getTarget();
+            final String url = target.getRequest().getUrl();
+            final long timeInMs = response != null ? response.getDuration().toMillis() : check.getLatencyInMs();
+            line = String.format("%-6s %6d ms  %s%s%s", status, timeInMs, url,
+                    target.getId().equals(url) ? "" : " (" + target.getId() + ")",
+                    error != null ? ": " + AdHocCheck.describe(error) : "");
+        }
+        synchronized (out) {
+            out.println(line);
+        }
+        return true;
+    }
+
+    private final class ResultObserver implements ResponseObserver {
+
+        private final AdHocCheck check;
+
+        private final CountDownLatch remaining;
+
+        private ResultObserver(final AdHocCheck check, final CountDownLatch remaining) {
+            this.check = check;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public ConniError processError(final ConniError error) {
+            if (complete(check, AdHocCheck.State.DONE, null, error)) {
+                remaining.countDown();
+            }
+            return error;
+        }
+
+        @Override
+        public HttpResponse processResponse(final HttpResponse response) {
+            if (complete(check, AdHocCheck.State.DONE, response, null)) {
+                remaining.countDown();
+            }
+            return response;
+        }
+
+        @Override
+        public int getOrder() {
+            // After all the other observers.
+            return Integer.MAX_VALUE;
+        }
+    }
+}
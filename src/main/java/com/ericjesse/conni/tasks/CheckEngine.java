@@ -0,0 +1,441 @@
+package com.ericjesse.conni.tasks;
+
+import com.ericjesse.conni.config.CheckPriority;
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.config.TargetConfigurationDiff;
+import com.ericjesse.conni.http.BurstProbe;
+import com.ericjesse.conni.http.DataBudget;
+import com.ericjesse.conni.http.HttpClient;
+import com.ericjesse.conni.http.HttpClientFactory;
+import com.ericjesse.conni.http.InvalidRequestException;
+import com.ericjesse.conni.http.QuorumConfirmation;
+import com.ericjesse.conni.http.ThroughputProbe;
+import com.ericjesse.conni.processors.ResponseObserver;
+import okhttp3.HttpUrl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * CheckEngine runs the checks of many targets and applies the changes of the configuration while running.
+ * <p>
+ * Each target has its own {@link HttpClient} and {@link CheckTask}, all created from one {@link HttpClientFactory}
+ * so the connections are shared. A diff only touches the targets it lists: the others keep their schedule, their
+ * warm connections and the state of their observers.
+ * <p>
+ * With the low-power profile, the deadlines of the checks are delayed to the end of shared slots as long as the
+ * slack, so the checks of all the targets due in the same slot are sent together and the machine wakes up once per
+ * slot whatever the number of targets. The idle threads of the dispatcher time out sooner as well. The wakeups of the
+ * scheduler are counted in both profiles, see {@link #getWakeupsPerMinute()}.
+ * <p>
+ * Each {@link CheckPriority} has its own dispatcher: the critical targets have requests reserved for them, so a burst
+ * of slow checks does not delay them, and the low-priority targets only get a small share of the requests. The
+ * critical checks are never delayed by the low-power profile, and the checks due in the same slot are sent from the
+ * highest priority to the lowest.
+ * <p>
+ * With a {@link HostRateLimiter}, each check takes a token of the bucket of its host, or of the rate key of its
+ * target, right before it is sent. A check finding the bucket empty waits for its token in the scheduler instead, so
+ * the targets sharing a gateway are spread over time instead of reaching it together.
+ */
+public class CheckEngine implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckEngine.class);
+
+    // The first checks of new targets are spread, so loading a large configuration does not send all the requests
+    // at once.
+    private static final int SPREAD_IN_MS_PER_TARGET = 10;
+
+    // Idle time after which the threads of the dispatcher stop with the low-power profile, instead of a minute.
+    private static final long LOW_POWER_IDLE_THREAD_TIMEOUT_IN_MS = 5_000;
+
+    // Requests reserved for the critical targets, and allowed to the low-priority ones.
+    private static final int CRITICAL_MAX_REQUESTS = 16;
+
+    private static final int CRITICAL_MAX_REQUESTS_PER_HOST = 4;
+
+    private static final int LOW_MAX_REQUESTS = 8;
+
+    private static final int LOW_MAX_REQUESTS_PER_HOST = 2;
+
+    private final Map<CheckPriority, HttpClientFactory> clientFactories = new EnumMap<>(CheckPriority.class);
+
+    private final ScheduledExecutorService scheduler;
+
+    private final List<ResponseObserver> observers = new CopyOnWriteArrayList<>();
+
+    private final List<Function<Target, ResponseObserver>> observerFactories = new CopyOnWriteArrayList<>();
+
+    private final Map<String, ScheduledCheck> checks = new ConcurrentHashMap<>();
+
+    private final WakeupCounter wakeups = new WakeupCounter();
+
+    // Null without the low-power profile.
+    private final TimerCoalescer coalescer;
+
+    // Null without rate limit.
+    private volatile HostRateLimiter rateLimiter;
+
+    public CheckEngine() {
+        this(0);
+    }
+
+    /**
+     * @param coalescingSlackInMs the longest delay of a check with the low-power profile, {@code 0} to check each
+     *                            target on time.
+     */
+    public CheckEngine(final long coalescingSlackInMs) {
+        this(coalescingSlackInMs > 0 ? new HttpClientFactory(LOW_POWER_IDLE_THREAD_TIMEOUT_IN_MS) :
+                new HttpClientFactory(), Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "conni-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }), coalescingSlackInMs);
+    }
+
+    public CheckEngine(final HttpClientFactory clientFactory, final ScheduledExecutorService scheduler) {
+        this(clientFactory, scheduler, 0);
+    }
+
+    /**
+     * @param clientFactory       the factory of the clients of the targets with the normal priority, the other classes
+     *                            sharing its connections in their own dispatcher.
+     * @param scheduler           the scheduler of the checks.
+     * @param coalescingSlackInMs the longest delay of a check with the low-power profile, {@code 0} to check each
+     *                            target on time.
+     */
+    public CheckEngine(final HttpClientFactory clientFactory, final ScheduledExecutorService scheduler,
+            final long coalescingSlackInMs) {
+        clientFactories.put(CheckPriority.CRITICAL,
+                clientFactory.isolated(CRITICAL_MAX_REQUESTS, CRITICAL_MAX_REQUESTS_PER_HOST));
+        clientFactories.put(CheckPriority.NORMAL, clientFactory);
+        clientFactories.put(CheckPriority.LOW, clientFactory.isolated(LOW_MAX_REQUESTS, LOW_MAX_REQUESTS_PER_HOST));
+        this.scheduler = scheduler;
+        this.coalescer = coalescingSlackInMs > 0 ? new TimerCoalescer(scheduler, coalescingSlackInMs, wakeups) : null;
+    }
+
+    /**
+     * Limit the rate of the checks sent to the same host, or to the same rate key, {@code null} to send them without
+     * limit.
+     */
+    public void setRateLimiter(final HostRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * The limiter of the rate of the checks, {@code null} if none.
+     */
+    public HostRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Add an observer shared by all the targets created after this call.
+     */
+    public void addObserver(final ResponseObserver observer) {
+        if (observer != null) {
+            observers.add(observer);
+        }
+    }
+
+    /**
+     * Add a factory of observers, called once for each target created after this call. The factory can return
+     * {@code null} when the target does not need an observer.
+     */
+    public void addObserverFactory(final Function<Target, ResponseObserver> factory) {
+        if (factory != null) {
+            observerFactories.add(factory);
+        }
+    }
+
+    /**
+     * Apply the changes of the configuration, the targets not listed in the diff are not touched.
+     */
+    public synchronized void apply(final TargetConfigurationDiff diff) {
+        diff.getRemoved().forEach(target -> remove(target.getId()));
+        diff.getChanged().forEach(target -> {
+            remove(target.getId());
+            add(target, diff.getChanged().size());
+        });
+        diff.getAdded().forEach(target -> add(target, diff.getAdded().size()));
+        LOG.info("Configuration applied, {} targets are running: {}", checks.size(), diff);
+    }
+
+    /**
+     * Start checking a new target.
+     */
+    public synchronized void add(final Target target) {
+        add(target, 1);
+    }
+
+    private void add(final Target target, final int targetsAddedTogether) {
+        final HttpClient httpClient;
+        try {
+            httpClient = createHttpClient(clientFactories.get(target.getPriority()), target);
+        } catch (InvalidRequestException | IllegalArgumentException e) {
+            LOG.error("The target {} is ignored, its request is not valid: {}", target.getId(), e.getMessage());
+            return;
+        }
+        observers.forEach(httpClient::addObserver);
+        observerFactories.forEach(factory -> httpClient.addObserver(factory.apply(target)));
+        final CheckTask task = new CheckTask(httpClient, target.getPeriodInMs(), target.getFailurePeriodInMs());
+
+        final ScheduledCheck check = new ScheduledCheck(target, httpClient, task);
+        final ScheduledCheck previous = checks.put(target.getId(), check);
+        if (previous != null) {
+            previous.cancel();
+        }
+        final long spreadInMs =
+                Math.min(target.getPeriodInMs(), (long) targetsAddedTogether * SPREAD_IN_MS_PER_TARGET);
+        check.start(spreadInMs > 0 ? ThreadLocalRandom.current().nextLong(spreadInMs) : 0);
+    }
+
+    /**
+     * Create the client of a target with the probe of its mode and the confirmation of its references.
+     */
+    static HttpClient createHttpClient(final HttpClientFactory clientFactory, final Target target)
+            throws InvalidRequestException {
+        final HttpClient httpClient = createModeHttpClient(clientFactory, target);
+        if (!target.getReferenceUrls().isEmpty()) {
+            httpClient.setQuorumConfirmation(new QuorumConfirmation(target.getReferenceUrls(),
+                    target.getQuorum(), target.getTimeoutInMs()));
+        }
+        return httpClient;
+    }
+
+    private static HttpClient createModeHttpClient(final HttpClientFactory clientFactory, final Target target)
+            throws InvalidRequestException {
+        switch (target.getMode()) {
+            case DOWNLOAD:
+                return clientFactory.create(target.getRequest(), target.getTimeoutInMs(), target.getProtocol(),
+                        ThroughputProbe.download(new DataBudget(target.getDataBudgetPerHourInBytes())));
+            case UPLOAD:
+                return clientFactory.create(target.getRequest(), target.getTimeoutInMs(), target.getProtocol(),
+                        ThroughputProbe.upload(target.getUploadSizeInBytes(),
+                                new DataBudget(target.getDataBudgetPerHourInBytes())));
+            case BURST:
+                return clientFactory.create(target.getRequest(), target.getTimeoutInMs(), target.getProtocol(),
+                        new BurstProbe(target.getBurstSize()));
+            default:
+                return clientFactory.create(target.getRequest(), target.getTimeoutInMs(), target.getProtocol());
+        }
+    }
+
+    /**
+     * Stop checking a target.
+     */
+    public synchronized void remove(final String targetId) {
+        final ScheduledCheck check = checks.remove(targetId);
+        if (check != null) {
+            check.cancel();
+        }
+    }
+
+    /**
+     * Check all the targets again at once, when their last results are stale after a change of the network. The
+     * checks are spread like the ones of new targets, then they go on with their own period.
+     */
+    public void checkAllNow() {
+        final int targets = checks.size();
+        checks.values().forEach(check -> {
+            final long spreadInMs = Math.min(check.target.getPeriodInMs(), (long) targets * SPREAD_IN_MS_PER_TARGET);
+            check.checkNow(spreadInMs > 0 ? ThreadLocalRandom.current().nextLong(spreadInMs) : 0);
+        });
+    }
+
+    /**
+     * The running targets indexed by id.
+     */
+    public Map<String, Target> getTargets() {
+        final Map<String, Target> targets = new LinkedHashMap<>();
+        checks.forEach((id, check) -> targets.put(id, check.target));
+        return Collections.unmodifiableMap(targets);
+    }
+
+    /**
+     * Number of times the scheduler woke up to run checks during the last minute. With the low-power profile, it
+     * stays at one per slot whatever the number of targets.
+     */
+    public int getWakeupsPerMinute() {
+        return wakeups.getPerMinute();
+    }
+
+    // Visible for tests.
+    long getWakeups() {
+        return wakeups.getTotal();
+    }
+
+    // Visible for tests.
+    HttpClient getHttpClient(final String targetId) {
+        final ScheduledCheck check = checks.get(targetId);
+        return check == null ? null : check.httpClient;
+    }
+
+    /**
+     * The key of the rate limit of a target: its rate key if any, else the host of its request.
+     */
+    static String rateKeyOf(final Target target) {
+        if (target.getRateKey() != null) {
+            return target.getRateKey();
+        }
+        final HttpUrl url = HttpUrl.parse(target.getRequest().getUrl());
+        return url == null ? target.getRequest().getUrl() : url.host();
+    }
+
+    @Override
+    public synchronized void close() {
+        checks.values().forEach(ScheduledCheck::cancel);
+        checks.clear();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Periodic check of one target, rescheduled after each call with the waiting time of its {@link CheckTask}.
+     */
+    private final class ScheduledCheck {
+
+        private final Target target;
+
+        private final HttpClient httpClient;
+
+        private final CheckTask task;
+
+        private final String rateKey;
+
+        // Incremented each time the check is scheduled, so a replaced check does not run. Guarded by this.
+        private long generation;
+
+        // The pending check when it is not coalesced. Guarded by this.
+        private ScheduledFuture<?> future;
+
+        private boolean running = false;
+
+        private boolean checkNowRequested = false;
+
+        private volatile boolean cancelled = false;
+
+        private ScheduledCheck(final Target target, final HttpClient httpClient, final CheckTask task) {
+            this.target = target;
+            this.httpClient = httpClient;
+            this.task = task;
+            this.rateKey = rateKeyOf(target);
+        }
+
+        /**
+         * @param admitted whether the check already has its token of the rate limiter.
+         */
+        private void run(final long scheduledGeneration, final boolean admitted) {
+            synchronized (this) {
+                if (cancelled || scheduledGeneration != generation) {
+                    return;
+                }
+                final HostRateLimiter currentRateLimiter = rateLimiter;
+                if (!admitted && currentRateLimiter != null) {
+                    final long delayInMs = currentRateLimiter.reserve(rateKey);
+                    if (delayInMs > 0) {
+                        LOG.debug("The check of {} is delayed by {} ms by the rate limit of {}", target.getId(),
+                                delayInMs, rateKey);
+                        scheduleAdmitted(scheduledGeneration, delayInMs);
+                        return;
+                    }
+                }
+                running = true;
+            }
+            try {
+                httpClient.check();
+            } catch (RuntimeException e) {
+                LOG.error("The check of " + target.getId() + " failed", e);
+            }
+            synchronized (this) {
+                running = false;
+                // A check requested while this one was running: this one may have started before the change.
+                final boolean now = checkNowRequested;
+                checkNowRequested = false;
+                schedule(now ? 0 : task.getWaitingTimeInMs(), !now);
+            }
+        }
+
+        private synchronized void start(final long delayInMs) {
+            schedule(delayInMs, true);
+        }
+
+        /**
+         * Replace the pending check with one after the delay, not coalesced so it is not delayed any longer.
+         */
+        private synchronized void checkNow(final long delayInMs) {
+            if (running) {
+                // The check reschedules itself.
+                checkNowRequested = true;
+            } else {
+                cancelFuture();
+                schedule(delayInMs, false);
+            }
+        }
+
+        /**
+         * Schedule the next check, replacing the pending one if any. Called with the lock of this.
+         *
+         * @param coalesce whether the check may be delayed to the end of its slot with the low-power profile.
+         */
+        private void schedule(final long delayInMs, final boolean coalesce) {
+            if (cancelled) {
+                return;
+            }
+            final long scheduledGeneration = ++generation;
+            try {
+                if (coalesce && coalescer != null && target.getPriority() != CheckPriority.CRITICAL) {
+                    coalescer.schedule(() -> run(scheduledGeneration, false), delayInMs,
+                            target.getPriority().ordinal());
+                } else {
+                    future = scheduler.schedule(() -> {
+                        wakeups.record();
+                        run(scheduledGeneration, false);
+                    }, delayInMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (RejectedExecutionException e) {
+                LOG.debug("The engine is closed, {} is not rescheduled", target.getId());
+            }
+        }
+
+        /**
+         * Schedule the check waiting for its token, not coalesced so it is not delayed any longer. Called with the
+         * lock of this.
+         */
+        private void scheduleAdmitted(final long scheduledGeneration, final long delayInMs) {
+            try {
+                future = scheduler.schedule(() -> {
+                    wakeups.record();
+                    run(scheduledGeneration, true);
+                }, delayInMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("The engine is closed, {} is not rescheduled", target.getId());
+            }
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            cancelFuture();
+        }
+
+        private void cancelFuture() {
+            if (future != null) {
+                future.cancel(false);
+                future = null;
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.ericjesse.conni.processors.ResponseObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -20,17 +21,36 @@ public class CheckTask implements ResponseObserver, Runnable {
 
     private boolean run = true;
 
-    private int nextCallAfterSuccessInMs = 20_000;
+    private final int nextCallAfterSuccessInMs;
 
-    private int nextCallAfterFailureInMs = 5_000;
+    private final int nextCallAfterFailureInMs;
 
-    private AtomicInteger waitingTimeInMs = new AtomicInteger(nextCallAfterSuccessInMs);
+    private final AtomicInteger waitingTimeInMs;
+
+    private final Object wakeUp = new Object();
+
+    private boolean checkNowRequested = false;
 
     public CheckTask(final HttpClient httpClient) {
+        this(httpClient, 20_000, 5_000);
+    }
+
+    public CheckTask(final HttpClient httpClient, final int nextCallAfterSuccessInMs,
+            final int nextCallAfterFailureInMs) {
         this.httpClient = httpClient;
+        this.nextCallAfterSuccessInMs = nextCallAfterSuccessInMs;
+        this.nextCallAfterFailureInMs = nextCallAfterFailureInMs;
+        this.waitingTimeInMs = new AtomicInteger(nextCallAfterSuccessInMs);
         this.httpClient.addObserver(this);
     }
 
+    /**
+     * Time to wait before the next call, depending on the result of the last one.
+     */
+    public int getWaitingTimeInMs() {
+        return waitingTimeInMs.get();
+    }
+
     @Override
     public ConniError processError(final ConniError error) {
         // Put a shorter time to check the connection.
@@ -53,12 +73,22 @@ public class CheckTask implements ResponseObserver, Runnable {
         return Integer.MAX_VALUE;
     }
 
+    /**
+     * Stop waiting and check again at once, when the last result is stale after a change of the network.
+     */
+    public void checkNow() {
+        synchronized (wakeUp) {
+            checkNowRequested = true;
+            wakeUp.notifyAll();
+        }
+    }
+
     @Override
     public void run() {
         while (run) {
             httpClient.check();
             try {
-                Thread.sleep(waitingTimeInMs.get());
+                waitForNextCheck();
             } catch (InterruptedException e) {
                 run = false;
                 LOG.error(e.getMessage(), e);
@@ -67,4 +97,19 @@ public class CheckTask implements ResponseObserver, Runnable {
             }
         }
     }
+
+    /**
+     * Wait for the waiting time on the monotonic clock, or until {@link #checkNow()} is called.
+     */
+    private void waitForNextCheck() throws InterruptedException {
+        final long deadlineInNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitingTimeInMs.get());
+        synchronized (wakeUp) {
+            long remainingInNs = deadlineInNs - System.nanoTime();
+            while (!checkNowRequested && remainingInNs > 0) {
+                TimeUnit.NANOSECONDS.timedWait(wakeUp, remainingInNs);
+                remainingInNs = deadlineInNs - System.nanoTime();
+            }
+            checkNowRequested = false;
+        }
+    }
 }
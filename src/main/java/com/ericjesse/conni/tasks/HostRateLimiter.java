@@ -0,0 +1,136 @@
+package com.ericjesse.conni.tasks;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * HostRateLimiter spreads the checks sent to the same host, or to the same configured key, so the many targets of one
+ * gateway do not reach it as a burst at each slot of the scheduler.
+ * <p>
+ * Each key has a token bucket refilled with {@code ratePerSecond} tokens per second and holding at most {@code burst}
+ * tokens. The bucket is kept as the single time when it will be full again, updated with a compare-and-set: taking a
+ * token moves this time one interval later, so the checks never lock each other. A check finding the bucket empty is
+ * not dropped: it gets the delay after which its token is available, and is counted as throttled.
+ */
+public class HostRateLimiter {
+
+    private final long intervalInNs;
+
+    // Time a full bucket has to be ahead of now.
+    private final long burstInNs;
+
+    private final LongSupplier nanoClock;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param ratePerSecond the number of checks per second sent to the same key in the long run.
+     * @param burst         the number of checks sent at once to a key idle for long enough.
+     */
+    public HostRateLimiter(final double ratePerSecond, final int burst) {
+        this(ratePerSecond, burst, System::nanoTime);
+    }
+
+    // Visible for tests.
+    HostRateLimiter(final double ratePerSecond, final int burst, final LongSupplier nanoClock) {
+        if (!Double.isFinite(ratePerSecond) || ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate and the burst have to be positive and finite");
+        }
+        this.intervalInNs = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.burstInNs = (burst - 1) * intervalInNs;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Take a token of the bucket of a key, the check has to be sent after the returned delay.
+     *
+     * @return the delay in milliseconds before the token is available, 0 if the check can be sent now.
+     */
+    public long reserve(final String key) {
+        final Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        final long nowInNs = nanoClock.getAsLong();
+        long fullAtInNs;
+        long startInNs;
+        do {
+            fullAtInNs = bucket.fullAtInNs.get();
+            // A bucket full since a while does not keep more than its burst.
+            startInNs = Math.max(fullAtInNs, nowInNs);
+        } while (!bucket.fullAtInNs.compareAndSet(fullAtInNs, startInNs + intervalInNs));
+
+        final long delayInNs = startInNs - burstInNs - nowInNs;
+        if (delayInNs <= 0) {
+            bucket.admitted.incrementAndGet();
+            return 0;
+        }
+        final long delayInMs = TimeUnit.NANOSECONDS.toMillis(delayInNs + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+        bucket.throttled.incrementAndGet();
+        bucket.delayInMs.addAndGet(delayInMs);
+        return delayInMs;
+    }
+
+    /**
+     * The counters of the keys, sorted by key.
+     */
+    public Map<String, Counters> getCounters() {
+        final Map<String, Counters> counters = new TreeMap<>();
+        buckets.forEach((key, bucket) ->
+                counters.put(key, new Counters(bucket.admitted.get(), bucket.throttled.get(), bucket.delayInMs.get())));
+        return Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * Snapshot of the checks of a key.
+     */
+    public static final class Counters {
+
+        private final long admitted;
+
+        private final long throttled;
+
+        private final long delayInMs;
+
+        private Counters(final long admitted, final long throttled, final long delayInMs) {
+            this.admitted = admitted;
+            this.throttled = throttled;
+            this.delayInMs = delayInMs;
+        }
+
+        /**
+         * Number of checks sent without delay.
+         */
+        public long getAdmitted() {
+            return admitted;
+        }
+
+        /**
+         * Number of checks delayed because the bucket was empty.
+         */
+        public long getThrottled() {
+            return throttled;
+        }
+
+        /**
+         * Sum of the delays of the throttled checks, in milliseconds.
+         */
+        public long getDelayInMs() {
+            return delayInMs;
+        }
+    }
+
+    private static final class Bucket {
+
+        // Time when the bucket is full again, in the past if it is already full.
+        private final AtomicLong fullAtInNs = new AtomicLong(Long.MIN_VALUE / 2);
+
+        private final AtomicLong admitted = new AtomicLong();
+
+        private final AtomicLong throttled = new AtomicLong();
+
+        private final AtomicLong delayInMs = new AtomicLong();
+    }
+}
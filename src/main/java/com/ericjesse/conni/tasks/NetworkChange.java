@@ -0,0 +1,17 @@
+package com.ericjesse.conni.tasks;
+
+/**
+ * Change of the environment making the last results of the checks stale.
+ */
+public enum NetworkChange {
+
+    /**
+     * The addresses of the network interfaces changed: a cable was plugged, the Wi-Fi changed or a VPN started.
+     */
+    ADDRESSES_CHANGED,
+
+    /**
+     * The computer woke up from sleep.
+     */
+    RESUMED
+}
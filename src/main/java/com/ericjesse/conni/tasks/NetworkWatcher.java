@@ -0,0 +1,139 @@
+package com.ericjesse.conni.tasks;
+
+import com.ericjesse.conni.http.SuspendDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * NetworkWatcher detects the changes making the results of the checks stale, so they can be checked again at once
+ * instead of at the end of their period.
+ * <p>
+ * Every second by default, the addresses of the network interfaces are compared with the previous ones, and a
+ * {@link SuspendDetector} tells whether the computer slept since the previous poll. With the low-power profile, the
+ * watcher polls once per slot of the coalesced checks instead.
+ */
+public class NetworkWatcher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NetworkWatcher.class);
+
+    public static final long POLL_PERIOD_IN_MS = 1_000;
+
+    private final Supplier<Set<String>> addresses;
+
+    private final SuspendDetector suspendDetector;
+
+    private final Consumer<NetworkChange> listener;
+
+    private final long pollPeriodInMs;
+
+    private final ScheduledExecutorService scheduler;
+
+    private Set<String> lastAddresses;
+
+    public NetworkWatcher(final Consumer<NetworkChange> listener) {
+        this(listener, POLL_PERIOD_IN_MS);
+    }
+
+    /**
+     * @param pollPeriodInMs the period of the polls, the coalescing slack of the low-power profile so the watcher
+     *                       does not wake the computer up more often than the checks.
+     */
+    public NetworkWatcher(final Consumer<NetworkChange> listener, final long pollPeriodInMs) {
+        this(NetworkWatcher::listAddresses, System::currentTimeMillis, System::nanoTime, listener, pollPeriodInMs);
+    }
+
+    // Visible for tests.
+    NetworkWatcher(final Supplier<Set<String>> addresses, final LongSupplier wallClockInMs,
+            final LongSupplier monotonicClockInNs, final Consumer<NetworkChange> listener, final long pollPeriodInMs) {
+        if (pollPeriodInMs <= 0) {
+            throw new IllegalArgumentException("The period of the polls must be positive");
+        }
+        this.addresses = addresses;
+        this.suspendDetector = new SuspendDetector(wallClockInMs, monotonicClockInNs);
+        this.listener = listener;
+        this.pollPeriodInMs = pollPeriodInMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "conni-network-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastAddresses = addresses.get();
+    }
+
+    /**
+     * Start watching in the background.
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::poll, pollPeriodInMs, pollPeriodInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compare the environment with the previous poll and notify the listener of the change, if any.
+     */
+    // Visible for tests.
+    synchronized void poll() {
+        try {
+            final long suspendedInMs = suspendDetector.getSuspendedInMs();
+            suspendDetector.restart();
+            final Set<String> currentAddresses = addresses.get();
+            final boolean addressesChanged = !currentAddresses.equals(lastAddresses);
+            lastAddresses = currentAddresses;
+
+            if (suspendedInMs > 0) {
+                LOG.info("Resumed after a suspend of about {} s", TimeUnit.MILLISECONDS.toSeconds(suspendedInMs));
+                listener.accept(NetworkChange.RESUMED);
+            } else if (addressesChanged) {
+                LOG.info("The network addresses changed: {}", currentAddresses);
+                listener.accept(NetworkChange.ADDRESSES_CHANGED);
+            }
+        } catch (RuntimeException e) {
+            // The watcher keeps running whatever the listener does.
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The addresses of the network interfaces which are up, except the loopback ones.
+     */
+    private static Set<String> listAddresses() {
+        final Set<String> addresses = new HashSet<>();
+        try {
+            final Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            if (interfaces == null) {
+                return Collections.emptySet();
+            }
+            for (NetworkInterface networkInterface : Collections.list(interfaces)) {
+                if (!networkInterface.isUp() || networkInterface.isLoopback()) {
+                    continue;
+                }
+                for (InterfaceAddress address : networkInterface.getInterfaceAddresses()) {
+                    addresses.add(networkInterface.getName() + "/" + address.getAddress().getHostAddress() + "/"
+                            + address.getNetworkPrefixLength());
+                }
+            }
+        } catch (SocketException e) {
+            LOG.debug("The network interfaces cannot be listed: {}", e.getMessage());
+        }
+        return addresses;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
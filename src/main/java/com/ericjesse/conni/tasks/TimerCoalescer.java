@@ -0,0 +1,107 @@
+package com.ericjesse.conni.tasks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * TimerCoalescer delays the tasks to the end of shared slots, so the tasks due close to each other run together with
+ * a single wakeup of the scheduler.
+ * <p>
+ * The slots are as long as the slack: a task runs at most one slack after its deadline and never before. All the
+ * tasks of a slot run one after the other in the scheduler thread, from the highest priority to the lowest, they are
+ * expected to be short.
+ */
+final class TimerCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimerCoalescer.class);
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long slackInMs;
+
+    private final LongSupplier clockInMs;
+
+    private final WakeupCounter wakeups;
+
+    // Tasks of the pending slots, indexed by the end of the slot. Guarded by this.
+    private final Map<Long, List<SlotTask>> slots = new HashMap<>();
+
+    TimerCoalescer(final ScheduledExecutorService scheduler, final long slackInMs, final WakeupCounter wakeups) {
+        this(scheduler, slackInMs, () -> System.nanoTime() / 1_000_000, wakeups);
+    }
+
+    // Visible for tests.
+    TimerCoalescer(final ScheduledExecutorService scheduler, final long slackInMs, final LongSupplier clockInMs,
+            final WakeupCounter wakeups) {
+        if (slackInMs <= 0) {
+            throw new IllegalArgumentException("The slack must be positive");
+        }
+        this.scheduler = scheduler;
+        this.slackInMs = slackInMs;
+        this.clockInMs = clockInMs;
+        this.wakeups = wakeups;
+    }
+
+    long getSlackInMs() {
+        return slackInMs;
+    }
+
+    /**
+     * Run the task at the end of the slot containing its deadline.
+     *
+     * @param priority the order of the task in its slot, the lowest first.
+     * @throws java.util.concurrent.RejectedExecutionException if the scheduler is shut down.
+     */
+    void schedule(final Runnable task, final long delayInMs, final int priority) {
+        final long nowInMs = clockInMs.getAsLong();
+        final long slot = -Math.floorDiv(-(nowInMs + delayInMs), slackInMs) * slackInMs;
+        synchronized (this) {
+            List<SlotTask> tasks = slots.get(slot);
+            if (tasks == null) {
+                scheduler.schedule(() -> run(slot), slot - nowInMs, TimeUnit.MILLISECONDS);
+                tasks = new ArrayList<>();
+                slots.put(slot, tasks);
+            }
+            tasks.add(new SlotTask(task, priority));
+        }
+    }
+
+    private void run(final long slot) {
+        final List<SlotTask> tasks;
+        synchronized (this) {
+            tasks = slots.remove(slot);
+        }
+        // Stable: the tasks of the same priority keep the order of their deadlines.
+        tasks.sort(Comparator.comparingInt(task -> task.priority));
+        wakeups.record();
+        LOG.debug("{} tasks run together, {} wakeups in the last minute", tasks.size(), wakeups.getPerMinute());
+        for (final SlotTask task : tasks) {
+            try {
+                task.runnable.run();
+            } catch (RuntimeException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final class SlotTask {
+
+        private final Runnable runnable;
+
+        private final int priority;
+
+        private SlotTask(final Runnable runnable, final int priority) {
+            this.runnable = runnable;
+            this.priority = priority;
+        }
+    }
+}
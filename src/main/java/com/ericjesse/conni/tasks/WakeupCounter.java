@@ -0,0 +1,60 @@
+package com.ericjesse.conni.tasks;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Count of the wakeups of a scheduler over the last minute, in buckets of one second.
+ */
+final class WakeupCounter {
+
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    private final LongSupplier clockInMs;
+
+    private final int[] counts = new int[SECONDS_PER_MINUTE];
+
+    // Second counted by each bucket, the buckets of the older seconds being reused.
+    private final long[] seconds = new long[SECONDS_PER_MINUTE];
+
+    private long total;
+
+    WakeupCounter() {
+        this(() -> System.nanoTime() / 1_000_000);
+    }
+
+    // Visible for tests.
+    WakeupCounter(final LongSupplier clockInMs) {
+        this.clockInMs = clockInMs;
+        Arrays.fill(seconds, Long.MIN_VALUE);
+    }
+
+    synchronized void record() {
+        final long second = Math.floorDiv(clockInMs.getAsLong(), 1000);
+        final int bucket = (int) Math.floorMod(second, SECONDS_PER_MINUTE);
+        if (seconds[bucket] != second) {
+            seconds[bucket] = second;
+            counts[bucket] = 0;
+        }
+        counts[bucket]++;
+        total++;
+    }
+
+    /**
+     * Number of wakeups during the last 60 seconds.
+     */
+    synchronized int getPerMinute() {
+        final long second = Math.floorDiv(clockInMs.getAsLong(), 1000);
+        int count = 0;
+        for (int i = 0; i < SECONDS_PER_MINUTE; i++) {
+            if (seconds[i] > second - SECONDS_PER_MINUTE) {
+                count += counts[i];
+            }
+        }
+        return count;
+    }
+
+    synchronized long getTotal() {
+        return total;
+    }
+}
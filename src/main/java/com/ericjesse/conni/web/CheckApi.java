@@ -0,0 +1,136 @@
+package com.ericjesse.conni.web;
+
+import com.ericjesse.conni.config.InvalidConfigurationException;
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.config.TargetConfigurationParser;
+import com.ericjesse.conni.http.HttpRequest;
+import com.ericjesse.conni.http.InvalidRequestException;
+import com.ericjesse.conni.tasks.AdHocCheck;
+import com.ericjesse.conni.tasks.AdHocCheckQueue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes of the {@link WebServer} running checks on demand with an {@link AdHocCheckQueue}, answered in JSON:
+ * <ul>
+ * <li>{@code POST /api/checks?wait=}: check the targets of the body, written like the lines of the target
+ * configuration file, or the URL given by the parameter {@code url}. The checks are answered at once with the status
+ * 202, their results being polled by their id. With {@code wait}, the results are answered with the status 200 once all
+ * the checks are done, or with the status 202 and the checks still running after {@code wait} milliseconds, 10 seconds
+ * at most. Only {@link #MAX_WAITING} requests wait at once, so the workers of the server stay available: the next ones
+ * are answered at once. A full queue is answered with the status 429 and a {@code Retry-After} header.</li>
+ * <li>{@code GET /api/checks?id=}: the state or the result of one of the last checks.</li>
+ * <li>{@code GET /api/checks/stats}: the depth of the queue and the latencies of the last checks.</li>
+ * </ul>
+ */
+public class CheckApi {
+
+    private static final long MAX_WAIT_IN_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final int MAX_WAITING = 2;
+
+    private static final String RETRY_AFTER_IN_SECONDS = "1";
+
+    private final AdHocCheckQueue queue;
+
+    private final Semaphore waiting = new Semaphore(MAX_WAITING);
+
+    public CheckApi(final AdHocCheckQueue queue) {
+        this.queue = queue;
+    }
+
+    public void registerOn(final WebServer server) {
+        server.route("POST", "/api/checks", this::submit)
+                .route("GET", "/api/checks", this::result)
+                .route("GET", "/api/checks/stats", this::stats);
+    }
+
+    private void submit(final WebRequest request, final WebResponse response) throws IOException {
+        final List<Target> targets = parseTargets(request);
+        final long waitInMs = Math.min(MAX_WAIT_IN_MS, request.getLongParameter("wait", 0));
+        final List<AdHocCheck> checks;
+        try {
+            checks = queue.submit(targets);
+        } catch (InvalidRequestException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        } catch (RejectedExecutionException e) {
+            response.setHeader("Retry-After", RETRY_AFTER_IN_SECONDS);
+            throw new WebException(429, e.getMessage());
+        }
+
+        final boolean done = waitInMs > 0 && waiting.tryAcquire() ? await(checks, waitInMs) : areDone(checks);
+        final StringBuilder sb = new StringBuilder("[");
+        for (AdHocCheck check : checks) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(check.toJson());
+        }
+        response.send(done ? 200 : 202, WebResponse.JSON, sb.append(']').toString());
+    }
+
+    // Called with a permit of waiting.
+    private boolean await(final List<AdHocCheck> checks, final long waitInMs) throws InterruptedIOException {
+        final long deadlineInNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitInMs);
+        boolean done = true;
+        try {
+            for (AdHocCheck check : checks) {
+                done &= check.await(Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineInNs - System.nanoTime())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the checks");
+        } finally {
+            waiting.release();
+        }
+        return done;
+    }
+
+    private static boolean areDone(final List<AdHocCheck> checks) {
+        return checks.stream().allMatch(AdHocCheck::isDone);
+    }
+
+    private List<Target> parseTargets(final WebRequest request) {
+        final String url = request.getParameter("url");
+        if (url != null && !url.isEmpty()) {
+            return Collections.singletonList(new Target.Builder("ad-hoc", new HttpRequest(url)).build());
+        }
+        final List<Target> targets = new ArrayList<>();
+        try {
+            new TargetConfigurationParser().parse(
+                    new StringReader(new String(request.getBody(), StandardCharsets.UTF_8)), targets::add);
+        } catch (InvalidConfigurationException | IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("No target to check: give a url or targets in the body");
+        }
+        return targets;
+    }
+
+    private void result(final WebRequest request, final WebResponse response) throws IOException {
+        final AdHocCheck check = queue.get(request.getLongParameter("id", 0));
+        if (check == null) {
+            throw new WebException(404, "Unknown check " + request.getParameter("id"));
+        }
+        response.send(200, WebResponse.JSON, check.toJson());
+    }
+
+    private void stats(final WebRequest request, final WebResponse response) throws IOException {
+        response.send(200, WebResponse.JSON, "{\"queued\":" + queue.getQueueDepth()
+                + ",\"running\":" + queue.getRunning() + ",\"capacity\":" + queue.getCapacity()
+                + ",\"completed\":" + queue.getCompleted() + ",\"rejected\":" + queue.getRejected()
+                + ",\"latency\":{\"p50\":" + queue.getLatencyQuantileInMs(0.5)
+                + ",\"p90\":" + queue.getLatencyQuantileInMs(0.9)
+                + ",\"p99\":" + queue.getLatencyQuantileInMs(0.99) + "}}");
+    }
+}
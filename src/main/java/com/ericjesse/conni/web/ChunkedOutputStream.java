@@ -0,0 +1,110 @@
+package com.ericjesse.conni.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stream writing the body of a response in chunks as it is produced, so a long export never lies in memory. The
+ * bytes are buffered to write chunks of {@link #BUFFER_SIZE} bytes, the headers of the response are written with the
+ * first chunk.
+ * <p>
+ * For an HTTP/1.0 client, the body is written without chunks and its end is the end of the connection.
+ */
+final class ChunkedOutputStream extends OutputStream {
+
+    static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private static final byte[] CRLF_AND_LAST_CHUNK = {'\r', '\n', '0', '\r', '\n', '\r', '\n'};
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final WebConnection connection;
+
+    private final boolean chunked;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int count;
+
+    // Headers of the response, until they are written.
+    private byte[] head;
+
+    private boolean closed;
+
+    ChunkedOutputStream(final WebConnection connection, final byte[] head, final boolean chunked) {
+        this.connection = connection;
+        this.head = head;
+        this.chunked = chunked;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            writeChunk(buffer, 0, count, false);
+            count = 0;
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+        if (len > buffer.length - count) {
+            writeChunk(buffer, 0, count, false);
+            count = 0;
+        }
+        if (len >= buffer.length) {
+            writeChunk(b, off, len, false);
+        } else {
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!closed && (count > 0 || head != null)) {
+            writeChunk(buffer, 0, count, false);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            writeChunk(buffer, 0, count, true);
+            count = 0;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The response is closed");
+        }
+    }
+
+    private void writeChunk(final byte[] b, final int off, final int len, final boolean last) throws IOException {
+        final ByteBuffer headBuffer = ByteBuffer.wrap(head == null ? EMPTY : head);
+        head = null;
+        if (!chunked) {
+            connection.write(headBuffer, ByteBuffer.wrap(b, off, len));
+            return;
+        }
+        final ByteBuffer data = ByteBuffer.wrap(b, off, len);
+        if (len == 0) {
+            connection.write(headBuffer, ByteBuffer.wrap(last ? LAST_CHUNK : EMPTY));
+        } else {
+            final byte[] size = (Integer.toHexString(len) + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            connection.write(headBuffer, ByteBuffer.wrap(size), data,
+                    ByteBuffer.wrap(last ? CRLF_AND_LAST_CHUNK : CRLF));
+        }
+    }
+}
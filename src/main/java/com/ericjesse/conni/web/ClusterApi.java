@@ -0,0 +1,58 @@
+package com.ericjesse.conni.web;
+
+import com.ericjesse.conni.cluster.GossipMembership;
+import com.ericjesse.conni.cluster.TargetSharding;
+import com.ericjesse.conni.json.JsonStrings;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Routes of the {@link WebServer} of an agent of a cluster:
+ * <ul>
+ * <li>{@code POST /api/cluster/gossip}: a round of gossip, the body and the response being the tables of the members
+ * of the two agents, see {@link GossipMembership}.</li>
+ * <li>{@code GET /api/cluster}: the members known by this agent and the number of targets it owns, in JSON.</li>
+ * </ul>
+ */
+public class ClusterApi {
+
+    private final GossipMembership membership;
+
+    private final TargetSharding sharding;
+
+    public ClusterApi(final GossipMembership membership, final TargetSharding sharding) {
+        this.membership = membership;
+        this.sharding = sharding;
+    }
+
+    public void registerOn(final WebServer server) {
+        server.route("POST", GossipMembership.GOSSIP_PATH, this::gossip)
+                .route("GET", "/api/cluster", this::status);
+    }
+
+    private void gossip(final WebRequest request, final WebResponse response) throws IOException {
+        response.send(200, WebResponse.TEXT,
+                membership.receive(new String(request.getBody(), StandardCharsets.UTF_8)));
+    }
+
+    private void status(final WebRequest request, final WebResponse response) throws IOException {
+        final StringBuilder sb = new StringBuilder("{\"self\":");
+        JsonStrings.quote(sb, membership.getSelf());
+        sb.append(",\"members\":{");
+        boolean first = true;
+        for (Map.Entry<String, GossipMembership.State> entry : membership.getMembers().entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            JsonStrings.quote(sb, entry.getKey());
+            sb.append(":\"").append(entry.getValue().name().toLowerCase(Locale.ROOT)).append('"');
+        }
+        sb.append("},\"ownedTargets\":").append(sharding.getOwnedTargetCount())
+                .append(",\"targets\":").append(sharding.getTargetCount()).append('}');
+        response.send(200, WebResponse.JSON, sb.toString());
+    }
+}
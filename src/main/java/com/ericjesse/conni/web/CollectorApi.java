@@ -0,0 +1,41 @@
+package com.ericjesse.conni.web;
+
+import com.ericjesse.conni.history.ResultCollector;
+import com.ericjesse.conni.history.ResultForwarder;
+
+import java.io.IOException;
+
+/**
+ * Routes of the {@link WebServer} of a collector:
+ * <ul>
+ * <li>{@code POST /api/collect}: a batch of results of an agent, see {@link ResultForwarder}, answered with its
+ * sequence number once added to the history.</li>
+ * <li>{@code GET /api/collect/stats}: the number of agents, of batches and of results received, in JSON, with the
+ * batches received twice and the results dropped because they came late.</li>
+ * </ul>
+ */
+public class CollectorApi {
+
+    private final ResultCollector collector;
+
+    public CollectorApi(final ResultCollector collector) {
+        this.collector = collector;
+    }
+
+    public void registerOn(final WebServer server) {
+        server.route("POST", ResultForwarder.COLLECT_PATH, this::collect)
+                .route("GET", "/api/collect/stats", this::stats);
+    }
+
+    private void collect(final WebRequest request, final WebResponse response) throws IOException {
+        response.send(200, WebResponse.TEXT, Long.toString(collector.ingest(request.getBody())));
+    }
+
+    private void stats(final WebRequest request, final WebResponse response) throws IOException {
+        response.send(200, WebResponse.JSON, "{\"agents\":" + collector.getAgentCount()
+                + ",\"batches\":" + collector.getBatches()
+                + ",\"records\":" + collector.getRecords()
+                + ",\"duplicates\":" + collector.getDuplicates()
+                + ",\"late\":" + collector.getLate() + '}');
+    }
+}
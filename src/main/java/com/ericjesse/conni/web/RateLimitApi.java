@@ -0,0 +1,41 @@
+package com.ericjesse.conni.web;
+
+import com.ericjesse.conni.json.JsonStrings;
+import com.ericjesse.conni.tasks.HostRateLimiter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Route of the {@link WebServer} answering the counters of a {@link HostRateLimiter} in JSON:
+ * <ul>
+ * <li>{@code GET /api/throttles}: for each host or rate key, the checks sent without delay, the checks delayed
+ * because its bucket was empty and the sum of their delays.</li>
+ * </ul>
+ */
+public class RateLimitApi {
+
+    private final HostRateLimiter rateLimiter;
+
+    public RateLimitApi(final HostRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public void registerOn(final WebServer server) {
+        server.route("GET", "/api/throttles", this::throttles);
+    }
+
+    private void throttles(final WebRequest request, final WebResponse response) throws IOException {
+        final StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<String, HostRateLimiter.Counters> entry : rateLimiter.getCounters().entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            JsonStrings.quote(sb, entry.getKey());
+            sb.append(":{\"admitted\":").append(entry.getValue().getAdmitted())
+                    .append(",\"throttled\":").append(entry.getValue().getThrottled())
+                    .append(",\"delayInMs\":").append(entry.getValue().getDelayInMs()).append('}');
+        }
+        response.send(200, WebResponse.JSON, sb.append('}').toString());
+    }
+}
@@ -0,0 +1,172 @@
+package com.ericjesse.conni.web;
+
+import com.ericjesse.conni.history.ChartTileCache;
+import com.ericjesse.conni.history.ReportPoint;
+import com.ericjesse.conni.history.ReportQueryEngine;
+import com.ericjesse.conni.history.TimeSeriesStore;
+import com.ericjesse.conni.json.JsonStrings;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes of the {@link WebServer} answering the reports from the history of the checks, in JSON unless stated:
+ * <ul>
+ * <li>{@code GET /api/targets}: the targets with a history.</li>
+ * <li>{@code GET /api/status}: the number of checks of the history and their size.</li>
+ * <li>{@code GET /api/summary?target=&from=&to=}: the uptime and the durations of a period.</li>
+ * <li>{@code GET /api/series?target=&from=&to=&points=}: the points of a chart, from the rollups.</li>
+ * <li>{@code GET /api/chart?target=&from=&to=&width=&format=json|binary}: the downsampled checks of a chart.</li>
+ * <li>{@code GET /api/export?target=&from=&to=&format=csv|json}: all the checks of a period, streamed.</li>
+ * </ul>
+ * The periods are given in milliseconds since the epoch, the last day by default.
+ */
+public class ReportApi {
+
+    private static final long DEFAULT_PERIOD_IN_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static final int DEFAULT_CHART_WIDTH = 1000;
+
+    private final TimeSeriesStore store;
+
+    private final ReportQueryEngine queries;
+
+    private final ChartTileCache charts;
+
+    public ReportApi(final TimeSeriesStore store) {
+        this.store = store;
+        this.queries = new ReportQueryEngine(store);
+        this.charts = new ChartTileCache(store);
+    }
+
+    public void registerOn(final WebServer server) {
+        server.route("GET", "/api/targets", this::targets)
+                .route("GET", "/api/status", this::status)
+                .route("GET", "/api/summary", this::summary)
+                .route("GET", "/api/series", this::series)
+                .route("GET", "/api/chart", this::chart)
+                .route("GET", "/api/export", this::export);
+    }
+
+    private void targets(final WebRequest request, final WebResponse response) throws IOException {
+        final List<String> ids = new ArrayList<>(store.getTargetIds());
+        Collections.sort(ids);
+        final StringBuilder sb = new StringBuilder("[");
+        for (String id : ids) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            JsonStrings.quote(sb, id);
+        }
+        response.send(200, WebResponse.JSON, sb.append(']').toString());
+    }
+
+    private void status(final WebRequest request, final WebResponse response) throws IOException {
+        response.send(200, WebResponse.JSON, "{\"targets\":" + store.getTargetIds().size() + ",\"checks\":"
+                + store.getSampleCount() + ",\"bytes\":" + store.getSizeInBytes() + "}");
+    }
+
+    private void summary(final WebRequest request, final WebResponse response) throws IOException {
+        final Period period = new Period(request);
+        final ReportPoint summary = queries.summary(period.targetId, period.fromInMs, period.toInMs);
+        response.send(200, WebResponse.JSON, toJson(summary));
+    }
+
+    private void series(final WebRequest request, final WebResponse response) throws IOException {
+        final Period period = new Period(request);
+        final long points = request.getLongParameter("points", ReportQueryEngine.DEFAULT_MAX_POINTS);
+        // Checked before the cast, so a huge number is not truncated to a valid one.
+        ReportQueryEngine.checkMaxPoints(points);
+        final List<ReportPoint> series = queries.series(period.targetId, period.fromInMs, period.toInMs,
+                (int) points);
+        final Writer writer = response.streamText(200, WebResponse.JSON);
+        writer.write('[');
+        for (int i = 0; i < series.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(toJson(series.get(i)));
+        }
+        writer.write(']');
+    }
+
+    private void chart(final WebRequest request, final WebResponse response) throws IOException {
+        final Period period = new Period(request);
+        final int width = (int) request.getLongParameter("width", DEFAULT_CHART_WIDTH);
+        if ("binary".equals(request.getParameter("format"))) {
+            charts.writeBinary(period.targetId, period.fromInMs, period.toInMs, width,
+                    new DataOutputStream(response.stream(200, WebResponse.BINARY)));
+        } else {
+            charts.writeJson(period.targetId, period.fromInMs, period.toInMs, width,
+                    response.streamText(200, WebResponse.JSON));
+        }
+    }
+
+    private void export(final WebRequest request, final WebResponse response) throws IOException {
+        final Period period = new Period(request);
+        final boolean csv = !"json".equals(request.getParameter("format"));
+        final Writer writer = response.streamText(200, csv ? WebResponse.CSV : WebResponse.JSON);
+        writer.write(csv ? "time,duration,status\n" : "[");
+        final boolean[] first = {true};
+        try {
+            store.scan(period.targetId, period.fromInMs, period.toInMs, (timeInMs, durationInMs, status) -> {
+                try {
+                    if (csv) {
+                        writer.write(timeInMs + "," + durationInMs + "," + status + "\n");
+                    } else {
+                        writer.write((first[0] ? "[" : ",[") + timeInMs + "," + durationInMs + "," + status + "]");
+                    }
+                    first[0] = false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!csv) {
+            writer.write(']');
+        }
+    }
+
+    private static String toJson(final ReportPoint point) {
+        return "{\"from\":" + point.getFromInMs() + ",\"to\":" + point.getToInMs()
+                + ",\"count\":" + point.getCount() + ",\"failures\":" + point.getFailures()
+                + ",\"uptime\":" + point.getUptime() + ",\"mean\":" + point.getMeanDurationInMs()
+                + ",\"p50\":" + point.getMedianDurationInMs() + ",\"p90\":" + point.getP90DurationInMs()
+                + ",\"p99\":" + point.getP99DurationInMs() + "}";
+    }
+
+    /**
+     * Target and period of a query.
+     */
+    private final class Period {
+
+        private final String targetId;
+
+        private final long fromInMs;
+
+        private final long toInMs;
+
+        private Period(final WebRequest request) {
+            targetId = request.getParameter("target");
+            if (targetId == null || targetId.isEmpty()) {
+                throw new IllegalArgumentException("The parameter target is missing");
+            }
+            if (!store.getTargetIds().contains(targetId)) {
+                throw new WebException(404, "No history for the target " + targetId);
+            }
+            toInMs = request.getLongParameter("to", System.currentTimeMillis());
+            fromInMs = request.getLongParameter("from", toInMs - DEFAULT_PERIOD_IN_MS);
+            if (fromInMs >= toInMs) {
+                throw new IllegalArgumentException("The period ends before it starts");
+            }
+        }
+    }
+}
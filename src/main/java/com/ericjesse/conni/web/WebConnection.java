@@ -0,0 +1,279 @@
+package com.ericjesse.conni.web;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection of a client of the {@link WebServer}.
+ * <p>
+ * The selector thread reads the requests, a worker thread writes the response. While a connection waits for its next
+ * request, it only holds its buffer: no thread. The response is written on the non-blocking channel, the worker waits
+ * for the selector to tell that the channel is writable when the client reads slower than the response is written.
+ */
+final class WebConnection {
+
+    static final int HEADERS_MAX_SIZE = 16 * 1024;
+
+    static final int BODY_MAX_SIZE = 1024 * 1024;
+
+    private final WebServer server;
+
+    private final SocketChannel channel;
+
+    private final Semaphore writable = new Semaphore(0);
+
+    private SelectionKey key;
+
+    // In write mode, the bytes from the start of the next request. Used by the selector thread only.
+    private ByteBuffer input = ByteBuffer.allocate(HEADERS_MAX_SIZE);
+
+    // Length of the request line and the headers of the next request, -1 while they are incomplete.
+    private int headersLength = -1;
+
+    private int contentLength;
+
+    private String method;
+
+    private String target;
+
+    private String version;
+
+    private Map<String, String> headers;
+
+    // Whether a worker is answering a request.
+    private volatile boolean handling;
+
+    private volatile long lastActivityInMs = System.currentTimeMillis();
+
+    WebConnection(final WebServer server, final SocketChannel channel) {
+        this.server = server;
+        this.channel = channel;
+    }
+
+    void register(final Selector selector) throws ClosedChannelException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Read the available bytes and answer the request if it is complete. Called by the selector thread.
+     */
+    void onReadable() {
+        final int read;
+        try {
+            read = channel.read(input);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+        lastActivityInMs = System.currentTimeMillis();
+        processInput();
+    }
+
+    /**
+     * Called by the selector thread when a worker waits to write the response.
+     */
+    void onWritable() {
+        key.interestOps(0);
+        writable.release();
+    }
+
+    /**
+     * Wait for the next request, which may already be read. Called by the selector thread once a response is written.
+     */
+    void resume() {
+        handling = false;
+        lastActivityInMs = System.currentTimeMillis();
+        processInput();
+    }
+
+    private void processInput() {
+        final WebRequest request;
+        try {
+            request = parse();
+        } catch (WebException e) {
+            rejectAndClose(e);
+            return;
+        } catch (IllegalArgumentException e) {
+            // An invalid escape in the target.
+            rejectAndClose(new WebException(400, e.getMessage()));
+            return;
+        }
+        if (request == null) {
+            key.interestOps(SelectionKey.OP_READ);
+        } else {
+            key.interestOps(0);
+            handling = true;
+            server.dispatch(this, request);
+        }
+    }
+
+    // The request at the start of the input, null while it is incomplete.
+    private WebRequest parse() {
+        final byte[] bytes = input.array();
+        final int length = input.position();
+        if (headersLength < 0) {
+            final int end = indexOfHeadersEnd(bytes, length);
+            if (end < 0) {
+                // Not only a full buffer: one kept enlarged for pipelined bytes must not receive larger headers.
+                if (length >= HEADERS_MAX_SIZE) {
+                    throw new WebException(431, "Request header fields too large");
+                }
+                return null;
+            }
+            parseHeaders(new String(bytes, 0, end, StandardCharsets.ISO_8859_1));
+            headersLength = end + 4;
+            if (headersLength + contentLength > input.capacity()) {
+                final ByteBuffer larger = ByteBuffer.allocate(headersLength + contentLength);
+                input.flip();
+                input = larger.put(input);
+            }
+        }
+        if (input.position() < headersLength + contentLength) {
+            return null;
+        }
+        final byte[] body = Arrays.copyOfRange(input.array(), headersLength, headersLength + contentLength);
+        final WebRequest request = new WebRequest(method, target, version, headers, body);
+
+        // Keep the bytes of the next requests sent without waiting for the response.
+        input.flip();
+        input.position(headersLength + contentLength);
+        if (input.capacity() > HEADERS_MAX_SIZE && input.remaining() <= HEADERS_MAX_SIZE) {
+            input = ByteBuffer.allocate(HEADERS_MAX_SIZE).put(input);
+        } else {
+            input.compact();
+        }
+        headersLength = -1;
+        headers = null;
+        return request;
+    }
+
+    private void parseHeaders(final String head) {
+        final String[] lines = head.split("\r\n");
+        final String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new WebException(400, "Invalid request line: " + lines[0]);
+        }
+        method = requestLine[0];
+        target = requestLine[1];
+        version = requestLine[2];
+        headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            final int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new WebException(400, "Invalid header: " + lines[i]);
+            }
+            headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                    lines[i].substring(colon + 1).trim());
+        }
+        if (headers.containsKey("transfer-encoding")) {
+            throw new WebException(411, "The body of a request needs a Content-Length");
+        }
+        try {
+            contentLength = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+        } catch (NumberFormatException e) {
+            throw new WebException(400, "Invalid Content-Length: " + headers.get("content-length"));
+        }
+        if (contentLength < 0 || contentLength > BODY_MAX_SIZE) {
+            throw new WebException(413, "Payload too large");
+        }
+    }
+
+    private static int indexOfHeadersEnd(final byte[] bytes, final int length) {
+        for (int i = 0; i + 3 < length; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Best effort answer to an invalid request, before the connection is closed.
+    private void rejectAndClose(final WebException e) {
+        final byte[] message = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+        final String head = "HTTP/1.1 " + e.getStatus() + " " + WebResponse.reasonOf(e.getStatus())
+                + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: " + message.length
+                + "\r\nConnection: close\r\n\r\n";
+        try {
+            channel.write(new ByteBuffer[]{ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1)),
+                    ByteBuffer.wrap(message)});
+        } catch (IOException ignored) {
+            // The connection is closed anyway.
+        }
+        close();
+    }
+
+    /**
+     * Write all the bytes of the buffers, waiting for the client to read them if needed. Called by a worker.
+     *
+     * @throws IOException if the connection is closed or the client does not read for
+     *                     {@link WebServer#WRITE_TIMEOUT_IN_MS}.
+     */
+    void write(final ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            final long written = channel.write(buffers);
+            remaining -= written;
+            if (written == 0) {
+                awaitWritable();
+            }
+        }
+        lastActivityInMs = System.currentTimeMillis();
+    }
+
+    private void awaitWritable() throws IOException {
+        server.runOnSelector(() -> {
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                writable.release();
+            }
+        });
+        try {
+            if (!writable.tryAcquire(WebServer.WRITE_TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("The client does not read the response");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the response");
+        }
+        if (!channel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    boolean isIdleSince(final long timeInMs) {
+        return !handling && lastActivityInMs < timeInMs;
+    }
+
+    void close() {
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing more to do.
+        }
+        // A worker waiting to write fails at once.
+        writable.release();
+    }
+}
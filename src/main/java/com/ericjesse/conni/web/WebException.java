@@ -0,0 +1,21 @@
+package com.ericjesse.conni.web;
+
+/**
+ * Exception thrown by a {@link WebHandler} to answer with an error status and its message, if the response is not
+ * started yet.
+ */
+public class WebException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    public WebException(final int status, final String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,16 @@
+package com.ericjesse.conni.web;
+
+import java.io.IOException;
+
+/**
+ * Handler of the requests of a path of the {@link WebServer}.
+ * <p>
+ * A handler runs on a worker thread and may block while it writes a long response: the client reads it as it is
+ * written. An {@link IllegalArgumentException} is answered with the status 400 and its message, if the response is not
+ * started yet.
+ */
+@FunctionalInterface
+public interface WebHandler {
+
+    void handle(WebRequest request, WebResponse response) throws IOException;
+}
@@ -0,0 +1,119 @@
+package com.ericjesse.conni.web;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Request received by the {@link WebServer}: its method, path, parameters of the query, headers and body.
+ */
+public final class WebRequest {
+
+    private final String method;
+
+    private final String path;
+
+    private final Map<String, String> parameters;
+
+    // Names in lower case.
+    private final Map<String, String> headers;
+
+    private final byte[] body;
+
+    private final boolean http10;
+
+    private final boolean keepAlive;
+
+    WebRequest(final String method, final String target, final String version, final Map<String, String> headers,
+            final byte[] body) {
+        this.method = method;
+        final int query = target.indexOf('?');
+        this.path = decode(query < 0 ? target : target.substring(0, query));
+        this.parameters = query < 0 ? Collections.emptyMap() : parseQuery(target.substring(query + 1));
+        this.headers = headers;
+        this.body = body;
+        final String connection = headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT);
+        this.http10 = "HTTP/1.0".equals(version);
+        this.keepAlive = http10 ? connection.contains("keep-alive") : !connection.contains("close");
+    }
+
+    private static Map<String, String> parseQuery(final String query) {
+        final Map<String, String> parameters = new HashMap<>();
+        for (String pair : query.split("&")) {
+            if (!pair.isEmpty()) {
+                final int equal = pair.indexOf('=');
+                parameters.putIfAbsent(decode(equal < 0 ? pair : pair.substring(0, equal)),
+                        equal < 0 ? "" : decode(pair.substring(equal + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid encoding: " + value, e);
+        }
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Decoded path, without the query.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Decoded value of a parameter of the query, the first one if repeated.
+     *
+     * @return the value, empty for a parameter without value, null if absent.
+     */
+    public String getParameter(final String name) {
+        return parameters.get(name);
+    }
+
+    /**
+     * Value of a parameter of the query as a long.
+     *
+     * @throws IllegalArgumentException if the value is not a number, answered with the status 400.
+     */
+    public long getLongParameter(final String name, final long defaultValue) {
+        final String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The parameter " + name + " is not a number: " + value, e);
+        }
+    }
+
+    /**
+     * Value of a header, the name being case insensitive.
+     */
+    public String getHeader(final String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    boolean isHttp10() {
+        return http10;
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+}
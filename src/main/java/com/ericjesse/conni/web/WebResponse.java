@@ -0,0 +1,178 @@
+package com.ericjesse.conni.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Response to a {@link WebRequest}: either a complete body sent at once, or a body streamed in chunks while it is
+ * produced.
+ */
+public final class WebResponse {
+
+    public static final String JSON = "application/json; charset=utf-8";
+
+    public static final String TEXT = "text/plain; charset=utf-8";
+
+    public static final String CSV = "text/csv; charset=utf-8";
+
+    public static final String BINARY = "application/octet-stream";
+
+    private final WebConnection connection;
+
+    private final boolean http10;
+
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    private boolean keepAlive;
+
+    private int status;
+
+    private ChunkedOutputStream body;
+
+    private Writer text;
+
+    WebResponse(final WebConnection connection, final WebRequest request) {
+        this.connection = connection;
+        this.http10 = request.isHttp10();
+        this.keepAlive = request.isKeepAlive();
+    }
+
+    /**
+     * Set a header of the response, before it is started.
+     */
+    public WebResponse setHeader(final String name, final String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Send a complete response.
+     */
+    public void send(final int status, final String contentType, final byte[] content) throws IOException {
+        final byte[] head = head(status, contentType, "Content-Length: " + content.length);
+        connection.write(ByteBuffer.wrap(head), ByteBuffer.wrap(content));
+    }
+
+    public void send(final int status, final String contentType, final String content) throws IOException {
+        send(status, contentType, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Start a response whose body is written as it is produced. The stream is closed once the handler returns: a
+     * handler failing while it writes must not close it, so the client sees that the body is truncated.
+     */
+    public OutputStream stream(final int status, final String contentType) throws IOException {
+        final byte[] head;
+        if (http10) {
+            keepAlive = false;
+            head = head(status, contentType, null);
+        } else {
+            head = head(status, contentType, "Transfer-Encoding: chunked");
+        }
+        body = new ChunkedOutputStream(connection, head, !http10);
+        return body;
+    }
+
+    /**
+     * Start a response whose text is written as it is produced, in UTF-8. Like the stream, the writer is closed once
+     * the handler returns.
+     */
+    public Writer streamText(final int status, final String contentType) throws IOException {
+        text = new OutputStreamWriter(stream(status, contentType), StandardCharsets.UTF_8);
+        return text;
+    }
+
+    private byte[] head(final int status, final String contentType, final String framing) throws IOException {
+        if (isCommitted()) {
+            throw new IOException("The response is already started");
+        }
+        this.status = status;
+        final StringBuilder sb = new StringBuilder(128);
+        sb.append("HTTP/1.1 ").append(status).append(' ').append(reasonOf(status)).append("\r\n");
+        sb.append("Content-Type: ").append(contentType).append("\r\n");
+        if (framing != null) {
+            sb.append(framing).append("\r\n");
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (!keepAlive) {
+            sb.append("Connection: close\r\n");
+        } else if (http10) {
+            sb.append("Connection: keep-alive\r\n");
+        }
+        return sb.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Whether the status is already sent: an error cannot be answered anymore.
+     */
+    public boolean isCommitted() {
+        return status != 0;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * End the response once the handler returns: close its stream, or answer without content if nothing was sent.
+     */
+    void finish() throws IOException {
+        if (text != null) {
+            text.close();
+        } else if (body != null) {
+            body.close();
+        } else if (!isCommitted()) {
+            send(204, TEXT, new byte[0]);
+        }
+    }
+
+    /**
+     * Give up the response: the connection is closed, so the client sees that a streamed body is truncated.
+     */
+    void abort() {
+        keepAlive = false;
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    static String reasonOf(final int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 202:
+                return "Accepted";
+            case 204:
+                return "No Content";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 411:
+                return "Length Required";
+            case 413:
+                return "Payload Too Large";
+            case 429:
+                return "Too Many Requests";
+            case 431:
+                return "Request Header Fields Too Large";
+            case 500:
+                return "Internal Server Error";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status " + status;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.ericjesse.conni.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal embedded HTTP/1.1 server for the reports and the administration of Conni, without servlet container.
+ * <p>
+ * One selector thread accepts the connections and reads the requests, so the idle keep-alive connections of the
+ * dashboards hold no thread. A request is answered by a handler on a small pool of workers, which writes the response
+ * directly on the connection: a long export is streamed in chunks while it is read from the history, without
+ * buffering the whole result. The requests sent without waiting for the responses are answered in order.
+ * <p>
+ * The server binds to the loopback address by default: it has no authentication.
+ */
+public class WebServer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WebServer.class);
+
+    public static final int DEFAULT_WORKERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    static final long WRITE_TIMEOUT_IN_MS = TimeUnit.SECONDS.toMillis(30);
+
+    static final long IDLE_TIMEOUT_IN_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final long SWEEP_PERIOD_IN_MS = TimeUnit.SECONDS.toMillis(1);
+
+    private final InetSocketAddress address;
+
+    // Handlers per path, then per method.
+    private final Map<String, Map<String, WebHandler>> routes = new ConcurrentHashMap<>();
+
+    // Changes of the selection keys asked by the workers, run by the selector thread.
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    private final ExecutorService workers;
+
+    private Selector selector;
+
+    private ServerSocketChannel serverChannel;
+
+    private Thread selectorThread;
+
+    private volatile boolean running;
+
+    /**
+     * Server listening on a port of the loopback address, 0 for any free port.
+     */
+    public WebServer(final int port) {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), DEFAULT_WORKERS);
+    }
+
+    public WebServer(final InetSocketAddress address, final int workers) {
+        this.address = address;
+        final AtomicInteger threads = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "conni-web-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.workers = executor;
+    }
+
+    /**
+     * Answer the requests of a method and a path, the path being compared without its query.
+     */
+    public WebServer route(final String method, final String path, final WebHandler handler) {
+        routes.computeIfAbsent(path, p -> new ConcurrentHashMap<>()).put(method, handler);
+        return this;
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(this::select, "conni-web-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        LOG.info("The web server listens on http://{}:{}", address.getHostString(), getPort());
+    }
+
+    /**
+     * The port listened to, useful when started on any free port.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void select() {
+        long nextSweepInMs = System.currentTimeMillis() + SWEEP_PERIOD_IN_MS;
+        while (running) {
+            try {
+                selector.select(SWEEP_PERIOD_IN_MS);
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (CancelledKeyException e) {
+                        // The connection was closed meanwhile.
+                    }
+                }
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                        } else if (key.isValid() && key.isWritable()) {
+                            ((WebConnection) key.attachment()).onWritable();
+                        } else if (key.isValid() && key.isReadable()) {
+                            ((WebConnection) key.attachment()).onReadable();
+                        }
+                    } catch (CancelledKeyException e) {
+                        // The connection was closed meanwhile.
+                    } catch (RuntimeException e) {
+                        // Only the connection failing is lost, not the selector thread.
+                        LOG.error(e.getMessage(), e);
+                        if (key.attachment() instanceof WebConnection) {
+                            ((WebConnection) key.attachment()).close();
+                        }
+                    }
+                }
+                final long nowInMs = System.currentTimeMillis();
+                if (nowInMs >= nextSweepInMs) {
+                    closeIdleConnections(nowInMs - IDLE_TIMEOUT_IN_MS);
+                    nextSweepInMs = nowInMs + SWEEP_PERIOD_IN_MS;
+                }
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            new WebConnection(this, channel).register(selector);
+        }
+    }
+
+    private void closeIdleConnections(final long idleSinceInMs) {
+        for (SelectionKey key : selector.keys()) {
+            final Object attachment = key.attachment();
+            if (attachment instanceof WebConnection && ((WebConnection) attachment).isIdleSince(idleSinceInMs)) {
+                ((WebConnection) attachment).close();
+            }
+        }
+    }
+
+    /**
+     * Run a task on the selector thread, the only one changing the selection keys.
+     */
+    void runOnSelector(final Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Answer a request on a worker. Called by the selector thread.
+     */
+    void dispatch(final WebConnection connection, final WebRequest request) {
+        try {
+            workers.execute(() -> answer(connection, request));
+        } catch (RejectedExecutionException e) {
+            // Stopped.
+            connection.close();
+        }
+    }
+
+    private void answer(final WebConnection connection, final WebRequest request) {
+        final WebResponse response = new WebResponse(connection, request);
+        try {
+            handlerOf(request, response).handle(request, response);
+            response.finish();
+        } catch (WebException e) {
+            fail(response, e.getStatus(), e.getMessage());
+        } catch (IllegalArgumentException e) {
+            fail(response, 400, e.getMessage());
+        } catch (IOException e) {
+            LOG.debug("The response to {} {} failed: {}", request.getMethod(), request.getPath(), e.getMessage());
+            response.abort();
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+            fail(response, 500, "Internal server error");
+        }
+        if (response.isKeepAlive()) {
+            runOnSelector(connection::resume);
+        } else {
+            connection.close();
+        }
+    }
+
+    private WebHandler handlerOf(final WebRequest request, final WebResponse response) {
+        final Map<String, WebHandler> handlers = routes.get(request.getPath());
+        if (handlers == null) {
+            throw new WebException(404, "Not found: " + request.getPath());
+        }
+        final WebHandler handler = handlers.get(request.getMethod());
+        if (handler == null) {
+            response.setHeader("Allow", String.join(", ", handlers.keySet()));
+            throw new WebException(405, "Method not allowed: " + request.getMethod());
+        }
+        return handler;
+    }
+
+    private static void fail(final WebResponse response, final int status, final String message) {
+        if (response.isCommitted()) {
+            response.abort();
+            return;
+        }
+        try {
+            response.send(status, WebResponse.TEXT, String.valueOf(message));
+        } catch (IOException e) {
+            response.abort();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof WebConnection) {
+                ((WebConnection) key.attachment()).close();
+            }
+        }
+        workers.shutdownNow();
+        serverChannel.close();
+        selector.close();
+    }
+}
@@ -0,0 +1,158 @@
+package com.ericjesse.conni.alerts;
+
+import com.ericjesse.conni.http.HttpRequest;
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.errors.ConnectionError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the state machine of the alerts, their deduplication and the flap detection.
+ */
+public class AlertEngineTest {
+
+    private static final Instant NOW = Instant.parse("2017-06-01T10:00:00Z");
+
+    private final List<Alert> alerts = new ArrayList<>();
+
+    private AlertEngine engine;
+
+    private ResponseObserver observer;
+
+    @Before
+    public void setUp() {
+        engine = new AlertEngine(Runnable::run, Clock.fixed(NOW, ZoneOffset.UTC));
+        engine.addSink(alerts::add);
+        observer = engine.observerFor("api");
+    }
+
+    @Test
+    public void downOnlyAfterConsecutiveFailures() throws IOException {
+        fail(2);
+        assertEquals(AlertState.SUSPECT, engine.getState("api"));
+        succeed(1);
+        assertEquals(AlertState.UP, engine.getState("api"));
+        assertTrue("A suspect target is not notified", alerts.isEmpty());
+
+        fail(3);
+        assertEquals(AlertState.DOWN, engine.getState("api"));
+        assertEquals(1, alerts.size());
+        assertEquals(AlertKind.DOWN, alerts.get(0).getKind());
+        assertEquals("api", alerts.get(0).getTargetId());
+        assertEquals(NOW, alerts.get(0).getInstant());
+        assertEquals("ConnectionError", alerts.get(0).getCause());
+
+        // Still down, not notified again.
+        fail(5);
+        succeed(1);
+        assertEquals(AlertState.RECOVERING, engine.getState("api"));
+        fail(1);
+        assertEquals(AlertState.DOWN, engine.getState("api"));
+        assertEquals(1, alerts.size());
+
+        succeed(2);
+        assertEquals(AlertState.UP, engine.getState("api"));
+        assertEquals(2, alerts.size());
+        assertEquals(AlertKind.UP, alerts.get(1).getKind());
+        assertEquals("HTTP 200 OK", alerts.get(1).getCause());
+    }
+
+    @Test
+    public void errorStatusIsAFailure() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            observer.processResponse(response(503, "Service Unavailable"));
+        }
+        assertEquals(AlertState.DOWN, engine.getState("api"));
+        assertEquals("HTTP 503 Service Unavailable", alerts.get(0).getCause());
+    }
+
+    @Test
+    public void flappingTargetIsNotifiedOnce() throws IOException {
+        // Down and up again every 5 checks: a change every 2.5 checks.
+        for (int i = 0; i < 20; i++) {
+            fail(3);
+            succeed(2);
+        }
+        assertTrue(engine.isFlapping("api"));
+        final long downs = alerts.stream().filter(alert -> alert.getKind() == AlertKind.DOWN).count();
+        assertTrue("The changes stop being notified once flapping, not " + downs, downs <= 7);
+        assertEquals(1, alerts.stream().filter(alert -> alert.getKind() == AlertKind.FLAPPING).count());
+        final int before = alerts.size();
+
+        succeed(64);
+        assertFalse(engine.isFlapping("api"));
+        assertEquals(AlertKind.STABLE, alerts.get(before).getKind());
+        assertEquals(AlertState.UP, alerts.get(before).getState());
+        // The last state notified before the flapping was up: nothing else to notify.
+        assertEquals(AlertKind.UP, alerts.get(before - 2).getKind());
+        assertEquals(before + 1, alerts.size());
+    }
+
+    @Test
+    public void changeRatioOfTheLastOutcomes() {
+        OutcomeHistory history = new OutcomeHistory(8);
+        assertEquals(0, history.changeRatio(), 0);
+        for (int i = 0; i < 8; i++) {
+            history.add(i % 2 == 0);
+        }
+        assertTrue(history.isFull());
+        assertEquals(1, history.changeRatio(), 0);
+        // Outcomes older than the window are ignored: 4 successes and 4 failures in a row.
+        for (int i = 0; i < 8; i++) {
+            history.add(i >= 4);
+        }
+        assertEquals(1 / 7d, history.changeRatio(), 1e-9);
+
+        OutcomeHistory full = new OutcomeHistory(64);
+        for (int i = 0; i < 100; i++) {
+            full.add(i % 2 == 0);
+        }
+        assertEquals(1, full.changeRatio(), 0);
+    }
+
+    @Test
+    public void sinkFormats() {
+        Alert alert = new Alert("api \"eu\"", AlertKind.DOWN, AlertState.DOWN, NOW, "line\nbreak");
+        assertEquals("{\"target\":\"api \\\"eu\\\"\",\"kind\":\"DOWN\",\"state\":\"DOWN\","
+                        + "\"instant\":\"2017-06-01T10:00:00Z\",\"cause\":\"line\\u000abreak\"}",
+                WebhookAlertSink.toJson(alert));
+        assertEquals("2017-06-01T10:00:00Z\tapi \"eu\"\tDOWN\tDOWN\tline break", FileAlertSink.format(alert));
+    }
+
+    private void fail(final int times) {
+        for (int i = 0; i < times; i++) {
+            observer.processError(new ConnectionError());
+        }
+    }
+
+    private void succeed(final int times) throws IOException {
+        for (int i = 0; i < times; i++) {
+            observer.processResponse(response(200, "OK"));
+        }
+    }
+
+    static HttpResponse response(final int code, final String message) throws IOException {
+        final HttpRequest request = new HttpRequest("http://localhost/ping");
+        return new HttpResponse(request, new Response.Builder()
+                .request(new Request.Builder().url(request.getUrl()).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(message)
+                .body(ResponseBody.create(null, ""))
+                .build());
+    }
+}
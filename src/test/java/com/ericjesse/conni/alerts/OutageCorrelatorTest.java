@@ -0,0 +1,113 @@
+package com.ericjesse.conni.alerts;
+
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.http.HttpRequest;
+import com.ericjesse.conni.http.errors.ConnectionError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the correlation of the failures of the targets sharing a tag.
+ */
+public class OutageCorrelatorTest {
+
+    private final List<Alert> alerts = new ArrayList<>();
+
+    private AlertEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new AlertEngine(Runnable::run, Clock.fixed(Instant.parse("2017-06-01T10:00:00Z"), ZoneOffset.UTC));
+        engine.addSink(alerts::add);
+    }
+
+    @Test
+    public void wholeGroupFailingIsASingleOutage() {
+        List<ResponseObserver> home = Arrays.asList(observer("a", "home"), observer("b", "home"),
+                observer("c", "home"));
+        ResponseObserver office = observer("d", "office");
+
+        for (int i = 0; i < 5; i++) {
+            home.forEach(observer -> observer.processError(new ConnectionError()));
+        }
+        assertEquals(Collections.singletonList("isp=home"), engine.getOutages());
+        assertEquals(1, alerts.size());
+        assertEquals(AlertKind.OUTAGE, alerts.get(0).getKind());
+        assertEquals("isp=home", alerts.get(0).getTargetId());
+        assertEquals("All the 3 targets tagged isp=home fail", alerts.get(0).getCause());
+        assertEquals("The targets are down but not notified", AlertState.DOWN, engine.getState("a"));
+
+        // A single target of another group is notified on its own.
+        for (int i = 0; i < 3; i++) {
+            office.processError(new ConnectionError());
+        }
+        assertEquals(2, alerts.size());
+        assertEquals(AlertKind.DOWN, alerts.get(1).getKind());
+        assertEquals("d", alerts.get(1).getTargetId());
+    }
+
+    @Test
+    public void targetStillDownAfterTheOutageIsNotified() throws IOException {
+        ResponseObserver a = observer("a", "home");
+        ResponseObserver b = observer("b", "home");
+        for (int i = 0; i < 3; i++) {
+            a.processError(new ConnectionError());
+            b.processError(new ConnectionError());
+        }
+        assertEquals(Collections.singletonList(AlertKind.OUTAGE), kinds());
+
+        // b is back: the outage is over, a is still down and notified at its next failure.
+        b.processResponse(AlertEngineTest.response(200, "OK"));
+        assertTrue(engine.getOutages().isEmpty());
+        assertEquals(Arrays.asList(AlertKind.OUTAGE, AlertKind.OUTAGE_OVER), kinds());
+        a.processError(new ConnectionError());
+        assertEquals(Arrays.asList(AlertKind.OUTAGE, AlertKind.OUTAGE_OVER, AlertKind.DOWN), kinds());
+        assertEquals("a", alerts.get(2).getTargetId());
+    }
+
+    @Test
+    public void groupsFollowTheTargets() {
+        ResponseObserver a = observer("a", "home");
+        observer("b", "home");
+        a.processError(new ConnectionError());
+        assertTrue(engine.getOutages().isEmpty());
+
+        // Without b, a would be alone: a group of one target is never an outage.
+        engine.remove("b");
+        assertTrue(engine.getOutages().isEmpty());
+        ResponseObserver c = observer("c", "home");
+        c.processError(new ConnectionError());
+        assertEquals(Collections.singletonList("isp=home"), engine.getOutages());
+
+        // A new member which does not fail yet ends the outage.
+        observer("d", "home");
+        assertTrue(engine.getOutages().isEmpty());
+        // A target moved to another group leaves its previous group.
+        ResponseObserver d = observer("d", "office");
+        assertEquals(Collections.singletonList("isp=home"), engine.getOutages());
+        d.processError(new ConnectionError());
+        assertEquals(Collections.singletonList("isp=home"), engine.getOutages());
+    }
+
+    private ResponseObserver observer(final String id, final String isp) {
+        return engine.observerFor(new Target.Builder(id, new HttpRequest("http://" + id + ".local/ping"))
+                .tag("isp", isp).build());
+    }
+
+    private List<AlertKind> kinds() {
+        return alerts.stream().map(Alert::getKind).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,72 @@
+package com.ericjesse.conni.cluster;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the merge of the tables of the members and their expiry.
+ */
+public class GossipMembershipTest {
+
+    private static final long INTERVAL_IN_MS = 1_000;
+
+    private final AtomicLong clockInNs = new AtomicLong();
+
+    private final GossipMembership membership =
+            new GossipMembership("a:1", Collections.emptyList(), INTERVAL_IN_MS, clockInNs::get);
+
+    @After
+    public void tearDown() {
+        membership.close();
+    }
+
+    @Test
+    public void invalidTableIsNotMergedAtAll() {
+        try {
+            membership.receive("b:1 10 up\nc:1 x up\n");
+            fail("An invalid heartbeat should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            membership.receive("b:1 10 up\nc:1 10 gone\n");
+            fail("An invalid state should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        assertEquals(Collections.singleton("a:1"), membership.getMembers().keySet());
+    }
+
+    @Test
+    public void membersDownOrLeftAreRemovedAfterTheGracePeriod() {
+        membership.receive("b:1 10 up\nc:1 10 left\n");
+        assertEquals(GossipMembership.State.UP, membership.getMembers().get("b:1"));
+        assertEquals(GossipMembership.State.LEFT, membership.getMembers().get("c:1"));
+
+        elapseRounds(10);
+        membership.expire();
+        assertEquals(GossipMembership.State.DOWN, membership.getMembers().get("b:1"));
+        assertEquals(GossipMembership.State.LEFT, membership.getMembers().get("c:1"));
+
+        elapseRounds(GossipMembership.REMOVAL_ROUNDS - 10);
+        membership.expire();
+        assertEquals(Collections.singleton("a:1"), membership.getMembers().keySet());
+        assertFalse("The members removed are not gossiped", membership.receive("").contains("b:1"));
+
+        // The old entries still gossiped by the other agents do not bring them back, a newer heartbeat does.
+        membership.receive("b:1 10 up\nc:1 10 left\n");
+        assertEquals(Collections.singleton("a:1"), membership.getMembers().keySet());
+        membership.receive("b:1 11 up\n");
+        assertEquals(GossipMembership.State.UP, membership.getMembers().get("b:1"));
+    }
+
+    private void elapseRounds(final int rounds) {
+        clockInNs.addAndGet(TimeUnit.MILLISECONDS.toNanos(rounds * INTERVAL_IN_MS));
+    }
+}
@@ -0,0 +1,66 @@
+package com.ericjesse.conni.cluster;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the consistent hashing of the targets over the agents.
+ */
+public class HashRingTest {
+
+    private static final int KEYS = 100_000;
+
+    @Test
+    public void keysAreSpreadEvenly() {
+        HashRing ring = new HashRing(Arrays.asList("10.0.0.1:7070", "10.0.0.2:7070", "10.0.0.3:7070"));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.ownerOf("target" + i), 1, Integer::sum);
+        }
+
+        assertEquals(ring.getMembers(), Arrays.asList("10.0.0.1:7070", "10.0.0.2:7070", "10.0.0.3:7070"));
+        for (int count : counts.values()) {
+            assertTrue("Count: " + count, Math.abs(count - KEYS / 3) < KEYS / 3 / 5);
+        }
+    }
+
+    @Test
+    public void joiningMemberOnlyTakesItsShare() {
+        HashRing before = new HashRing(Arrays.asList("a:1", "b:1", "c:1"));
+        HashRing after = new HashRing(Arrays.asList("d:1", "c:1", "b:1", "a:1"));
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "target" + i;
+            String owner = after.ownerOf(key);
+            if (!owner.equals(before.ownerOf(key))) {
+                assertEquals("Keys only move to the new member", "d:1", owner);
+                moved++;
+            }
+        }
+        assertTrue("Moved: " + moved, Math.abs(moved - KEYS / 4) < KEYS / 4 / 5);
+    }
+
+    @Test
+    public void ringDoesNotDependOnTheOrderOfTheMembers() {
+        HashRing ring = new HashRing(Arrays.asList("a:1", "b:1", "c:1"));
+        HashRing other = new HashRing(Arrays.asList("c:1", "a:1", "b:1"));
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(ring.ownerOf("target" + i), other.ownerOf("target" + i));
+        }
+    }
+
+    @Test
+    public void emptyRingHasNoOwner() {
+        assertNull(new HashRing(Collections.emptyList()).ownerOf("target"));
+        assertEquals("a:1", new HashRing(Collections.singleton("a:1")).ownerOf("target"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.ericjesse.conni.config;
+
+import com.ericjesse.conni.http.HttpRequest;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the computation of the {@link TargetConfigurationDiff}.
+ */
+public class TargetConfigurationDiffTest {
+
+    @Test
+    public void addedRemovedAndChanged() {
+        Map<String, Target> current = targets(target("kept", "http://kept", 20_000),
+                target("removed", "http://removed", 20_000), target("changed", "http://changed", 20_000));
+        Target newChanged = target("changed", "http://changed", 60_000);
+        Target added = target("added", "http://added", 20_000);
+        Map<String, Target> next = targets(target("kept", "http://kept", 20_000), newChanged, added);
+
+        TargetConfigurationDiff diff = TargetConfigurationDiff.between(current, next);
+
+        assertFalse(diff.isEmpty());
+        assertThat(diff.getAdded(), contains(added));
+        assertThat(diff.getChanged(), contains(newChanged));
+        assertThat(diff.getRemoved(), contains(current.get("removed")));
+    }
+
+    @Test
+    public void sameConfiguration() {
+        TargetConfigurationDiff diff =
+                TargetConfigurationDiff.between(targets(target("a", "http://a", 1_000)),
+                        targets(target("a", "http://a", 1_000)));
+
+        assertTrue(diff.isEmpty());
+    }
+
+    private Target target(final String id, final String url, final int periodInMs) {
+        return new Target.Builder(id, new HttpRequest(url)).periodInMs(periodInMs).build();
+    }
+
+    private Map<String, Target> targets(final Target... targets) {
+        Map<String, Target> map = new LinkedHashMap<>();
+        for (Target target : targets) {
+            map.put(target.getId(), target);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,216 @@
+package com.ericjesse.conni.config;
+
+import com.ericjesse.conni.http.CheckMode;
+import com.ericjesse.conni.http.HttpContentType;
+import com.ericjesse.conni.http.HttpMethod;
+import com.ericjesse.conni.http.HttpProtocol;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the parsing of the target configuration.
+ */
+public class TargetConfigurationParserTest {
+
+    private final TargetConfigurationParser parser = new TargetConfigurationParser();
+
+    @Test
+    public void parseDefaultsAndOptions() throws Exception {
+        List<Target> targets = parse("# Comment line\n" + "\n"
+                + "internet https://ericjesse-whatsmyip.herokuapp.com/ip\n"
+                + "  api  http://api.local/health method=post content-type=xml body=\"<ping value=\\\"1\\\"/>\""
+                + " timeout=500ms period=1m failure-period=10s header.X-Token=abc header.X-Token=def tag.isp=home\n");
+
+        assertEquals(2, targets.size());
+
+        Target internet = targets.get(0);
+        assertEquals("internet", internet.getId());
+        assertEquals("https://ericjesse-whatsmyip.herokuapp.com/ip", internet.getRequest().getUrl());
+        assertEquals(HttpMethod.GET, internet.getRequest().getMethod());
+        assertEquals(Target.DEFAULT_TIMEOUT_IN_MS, internet.getTimeoutInMs());
+        assertEquals(Target.DEFAULT_PERIOD_IN_MS, internet.getPeriodInMs());
+        assertEquals(Target.DEFAULT_FAILURE_PERIOD_IN_MS, internet.getFailurePeriodInMs());
+        assertTrue(internet.getTags().isEmpty());
+
+        Target api = targets.get(1);
+        assertEquals("api", api.getId());
+        assertEquals(HttpMethod.POST, api.getRequest().getMethod());
+        assertEquals(HttpContentType.XML, api.getRequest().getContentType());
+        assertEquals("<ping value=\"1\"/>", api.getRequest().getBody());
+        assertEquals(500, api.getTimeoutInMs());
+        assertEquals(60_000, api.getPeriodInMs());
+        assertEquals(10_000, api.getFailurePeriodInMs());
+        assertThat(api.getRequest().getHeaders().get("X-Token"), contains("abc", "def"));
+        assertThat(api.getTags(), hasEntry("isp", "home"));
+    }
+
+    @Test
+    public void sameDefinitionsAreEqual() throws Exception {
+        String line = "api http://api.local/health method=PUT body=x header.A=b tag.region=eu\n";
+
+        assertEquals(parse(line).get(0), parse(line).get(0));
+        assertNotEquals(parse(line).get(0), parse(line.replace("body=x", "body=y")).get(0));
+    }
+
+    @Test
+    public void parseProtocols() throws Exception {
+        List<Target> targets = parse("a http://a\nb http://b protocol=h2c\nc https://c protocol=HTTP/1.1\n");
+
+        assertEquals(HttpProtocol.AUTO, targets.get(0).getProtocol());
+        assertEquals(HttpProtocol.H2C, targets.get(1).getProtocol());
+        assertEquals(HttpProtocol.HTTP_1_1, targets.get(2).getProtocol());
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void rejectUnknownProtocols() throws Exception {
+        parse("a http://a protocol=spdy\n");
+    }
+
+    @Test
+    public void parseThroughputChecks() throws Exception {
+        Target target = parse("speed http://speed.local/100MB.bin mode=download budget=500MB period=15m\n").get(0);
+
+        assertEquals(CheckMode.DOWNLOAD, target.getMode());
+        assertEquals(500_000_000L, target.getDataBudgetPerHourInBytes());
+        assertEquals(CheckMode.LATENCY, parse("a http://a\n").get(0).getMode());
+
+        Target burst = parse("voip http://sip.local/ping mode=burst burst-size=50\n").get(0);
+        assertEquals(CheckMode.BURST, burst.getMode());
+        assertEquals(50, burst.getBurstSize());
+    }
+
+    @Test
+    public void parseReferences() throws Exception {
+        List<Target> targets = parse("a http://a references=http://r1,http://r2,http://r3\n"
+                + "b http://b references=http://r1,http://r2 quorum=1\nc http://c\n");
+
+        assertEquals(Arrays.asList("http://r1", "http://r2", "http://r3"), targets.get(0).getReferenceUrls());
+        assertEquals("The majority by default", 2, targets.get(0).getQuorum());
+        assertEquals(1, targets.get(1).getQuorum());
+        assertTrue(targets.get(2).getReferenceUrls().isEmpty());
+    }
+
+    @Test
+    public void parseRateKey() throws Exception {
+        List<Target> targets = parse("a http://gateway/a rate-key=gateway\nb http://gateway/b\n");
+
+        assertEquals("gateway", targets.get(0).getRateKey());
+        assertNull("The host by default", targets.get(1).getRateKey());
+        assertNotEquals(targets.get(0), new Target.Builder("a", targets.get(0).getRequest()).build());
+    }
+
+    @Test
+    public void parsePriority() throws Exception {
+        List<Target> targets = parse("a http://a priority=critical\nb http://b priority=LOW\nc http://c\n");
+
+        assertEquals(CheckPriority.CRITICAL, targets.get(0).getPriority());
+        assertEquals(CheckPriority.LOW, targets.get(1).getPriority());
+        assertEquals(CheckPriority.NORMAL, targets.get(2).getPriority());
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void rejectUnknownPriority() throws Exception {
+        parse("a http://a priority=urgent\n");
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void rejectQuorumLargerThanTheReferences() throws Exception {
+        parse("a http://a references=http://r1,http://r2 quorum=3\n");
+    }
+
+    @Test
+    public void parseSizes() {
+        assertEquals(512, TargetConfigurationParser.parseSizeInBytes("512"));
+        assertEquals(64_000, TargetConfigurationParser.parseSizeInBytes("64KB"));
+        assertEquals(2_000_000_000L, TargetConfigurationParser.parseSizeInBytes("2GB"));
+    }
+
+    @Test
+    public void parseDurations() {
+        assertEquals(250, TargetConfigurationParser.parseDurationInMs("250"));
+        assertEquals(250, TargetConfigurationParser.parseDurationInMs("250ms"));
+        assertEquals(3_000, TargetConfigurationParser.parseDurationInMs("3s"));
+        assertEquals(7_200_000, TargetConfigurationParser.parseDurationInMs("2h"));
+    }
+
+    @Test
+    public void rejectInvalidDurations() {
+        for (String value : new String[]{"0", "0s", "-5s", "-1", "1000h", "9223372036854775807h", "5d", "s"}) {
+            try {
+                TargetConfigurationParser.parseDurationInMs(value);
+                fail("The duration " + value + " should be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void rejectNonPositiveSizesAndCounts() throws Exception {
+        for (String value : new String[]{"0", "0KB", "-5MB", "-1"}) {
+            try {
+                TargetConfigurationParser.parseSizeInBytes(value);
+                fail("The size " + value + " should be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+        for (String value : new String[]{"0", "-3"}) {
+            try {
+                TargetConfigurationParser.parseCount(value);
+                fail("The number " + value + " should be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+        try {
+            parse("a http://a\nspeed http://s mode=upload upload-size=-5MB\n");
+            fail("A negative upload size should be rejected");
+        } catch (InvalidConfigurationException e) {
+            assertThat(e.getMessage(), startsWith("Line 2:"));
+        }
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void rejectUploadLargerThanTheBudget() throws Exception {
+        parse("speed http://s mode=upload upload-size=25MB budget=10MB\n");
+    }
+
+    @Test
+    public void rejectDuplicatedIds() throws Exception {
+        try {
+            parse("a http://a\nb http://b\na http://c\n");
+            fail("A duplicated id should be rejected");
+        } catch (InvalidConfigurationException e) {
+            assertThat(e.getMessage(), startsWith("Line 3:"));
+        }
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void rejectUnknownOptions() throws Exception {
+        parse("a http://a frequency=1s\n");
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void rejectMissingUrl() throws Exception {
+        parse("a\n");
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void rejectUnclosedQuotes() throws Exception {
+        parse("a http://a body=\"unclosed\n");
+    }
+
+    private List<Target> parse(final String configuration) throws Exception {
+        List<Target> targets = new ArrayList<>();
+        parser.parse(new StringReader(configuration), targets::add);
+        return targets;
+    }
+}
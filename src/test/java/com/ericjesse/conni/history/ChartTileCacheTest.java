@@ -0,0 +1,146 @@
+package com.ericjesse.conni.history;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the downsampling of the charts and the cache of their tiles.
+ */
+public class ChartTileCacheTest {
+
+    private static final long START = 1_500_249_600_000L;
+
+    private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final TimeSeriesStore store = new TimeSeriesStore();
+
+    private final ChartTileCache cache = new ChartTileCache(store);
+
+    @Before
+    public void setUp() {
+        // 2 days, a check every 10 seconds, a spike every 1000 checks and a failure every 1500.
+        for (int i = 0; i < 2 * 8640; i++) {
+            boolean failure = i % 1500 == 750;
+            store.add("a", START + i * 10 * SECOND, failure ? 0 : i % 1000 == 500 ? 2_000 : 40 + i % 7,
+                    failure ? TimeSeriesStore.ERROR_STATUS : 200);
+        }
+    }
+
+    @Test
+    public void lttbKeepsTheEndsAndThePeaks() {
+        long[] x = new long[1000];
+        long[] y = new long[1000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = START + i * 1_000L;
+            y[i] = i == 437 ? 900 : 50 + i % 3;
+        }
+
+        int[] kept = Lttb.downsample(x, y, x.length, 20);
+
+        assertEquals(20, kept.length);
+        assertEquals(0, kept[0]);
+        assertEquals(999, kept[19]);
+        assertTrue("The peak should be kept", Arrays.stream(kept).anyMatch(i -> i == 437));
+        for (int i = 1; i < kept.length; i++) {
+            assertTrue(kept[i] > kept[i - 1]);
+        }
+        assertEquals(5, Lttb.downsample(x, y, 5, 20).length);
+    }
+
+    @Test
+    public void tilesAreReusedAndOnlyTheLastOneIsRebuilt() throws IOException {
+        long end = START + 2 * DAY;
+        List<ChartTile> tiles = cache.tiles("a", START, end, 500);
+
+        // 345 s per pixel of the chart: tiles of 4 minutes per pixel.
+        assertEquals(240_000, ChartTileCache.pixelInMs(tiles.get(0).getZoom()));
+        assertEquals(tiles.size(), cache.getMisses());
+        for (ChartTile tile : tiles) {
+            assertTrue(tile.size() <= ChartTile.WIDTH);
+        }
+        long failures = 0;
+        for (ChartTile tile : tiles) {
+            failures += countStatus(tile, TimeSeriesStore.ERROR_STATUS);
+        }
+        assertEquals("The failures stand out and are kept", 12, failures);
+
+        cache.tiles("a", START, end, 500);
+        assertEquals(tiles.size(), cache.getHits());
+        assertEquals(tiles.size(), cache.getMisses());
+
+        store.add("a", end, 45, 200);
+        cache.tiles("a", START, end, 500);
+        assertEquals(2 * tiles.size() - 1, cache.getHits());
+        assertEquals(tiles.size() + 1, cache.getMisses());
+    }
+
+    @Test
+    public void jsonAndBinaryHaveTheSamePoints() throws IOException {
+        long from = START + DAY / 3;
+        long to = START + DAY;
+        StringWriter json = new StringWriter();
+        cache.writeJson("a", from, to, 200, json);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        cache.writeBinary("a", from, to, 200, new DataOutputStream(binary));
+
+        assertTrue(json.toString(), json.toString().startsWith("{\"target\":\"a\",\"from\":" + from + ",\"to\":" + to
+                + ",\"pixel\":240000,\"points\":[["));
+        Matcher points = Pattern.compile("\\[(\\d+),(\\d+),(\\d+)]").matcher(json.toString());
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(binary.toByteArray()));
+        assertEquals(from, input.readLong());
+        assertEquals(240_000, input.readLong());
+        int count = input.readInt();
+        long time = from;
+        for (int i = 0; i < count; i++) {
+            assertTrue(points.find());
+            time += readVarint(input);
+            assertEquals(Long.parseLong(points.group(1)), time);
+            assertTrue(time >= from && time < to);
+            assertEquals(Long.parseLong(points.group(2)), readVarint(input));
+            assertEquals(Long.parseLong(points.group(3)), readVarint(input));
+        }
+        assertFalse(points.find());
+        assertEquals(-1, input.read());
+        assertTrue("Bytes per point: " + binary.size() / (double) count, binary.size() < 7 * count + 20);
+        assertTrue(binary.size() * 3 < json.toString().length());
+    }
+
+    private static long countStatus(final ChartTile tile, final int status) throws IOException {
+        StringWriter writer = new StringWriter();
+        tile.writeJson(writer, 0, tile.size());
+        Matcher matcher = Pattern.compile("," + status + "]").matcher(writer.toString());
+        long count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static long readVarint(final DataInputStream input) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,108 @@
+package com.ericjesse.conni.history;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the queries of the reports against the samples they aggregate.
+ */
+public class ReportQueryEngineTest {
+
+    // A Monday at 00:00 UTC.
+    private static final long START = 1_500_249_600_000L;
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final TimeSeriesStore store = new TimeSeriesStore();
+
+    private final ReportQueryEngine engine = new ReportQueryEngine(store);
+
+    @Before
+    public void setUp() {
+        // 60 days, a check every 5 minutes: longer than the hourly rollups.
+        Random random = new Random(7);
+        for (long time = START; time < START + 60 * DAY; time += 5 * MINUTE) {
+            int draw = random.nextInt(100);
+            int status = draw < 2 ? TimeSeriesStore.ERROR_STATUS : draw < 4 ? 503 : 200;
+            store.add("a", time + random.nextInt(1_000), status == TimeSeriesStore.ERROR_STATUS ? 0 :
+                    20 + random.nextInt(200), status);
+        }
+    }
+
+    @Test
+    public void summaryIsExactOverRollupsAndSamples() throws IOException {
+        // Unaligned on the hours, and starting before the hourly rollups.
+        long from = START + 3 * DAY + 17 * MINUTE;
+        long to = START + 58 * DAY + 5 * HOUR + 42 * MINUTE;
+
+        ReportPoint summary = engine.summary("a", from, to);
+
+        long[] expected = new long[4];
+        store.scan("a", from, to, (time, duration, status) -> {
+            expected[0]++;
+            if (status < 200 || status >= 400) {
+                expected[1]++;
+            }
+            if (status != TimeSeriesStore.ERROR_STATUS) {
+                expected[2]++;
+                expected[3] += duration;
+            }
+        });
+        assertEquals(expected[0], summary.getCount());
+        assertEquals(expected[1], summary.getFailures());
+        assertEquals(Math.round(expected[3] / (double) expected[2]), summary.getMeanDurationInMs());
+        assertEquals(1 - expected[1] / (double) expected[0], summary.getUptime(), 1e-12);
+        // Uniform between 20 and 220 ms.
+        assertEquals(120, summary.getMedianDurationInMs(), 24);
+        assertEquals(200, summary.getP90DurationInMs(), 40);
+    }
+
+    @Test
+    public void resolutionDependsOnTheWindow() throws IOException {
+        TimeSeries series = store.getSeries("a");
+        long end = START + 60 * DAY;
+
+        assertEquals(Resolution.RAW, ReportQueryEngine.resolutionOf(series, end - DAY, DAY / 500));
+        assertEquals(Resolution.HOUR, ReportQueryEngine.resolutionOf(series, end - 30 * DAY, 30 * DAY / 500));
+        assertEquals("The hourly rollups do not reach back 50 days", Resolution.DAY,
+                ReportQueryEngine.resolutionOf(series, end - 50 * DAY, 50 * DAY / 500));
+
+        List<ReportPoint> chart = engine.series("a", end - 30 * DAY, end, 500);
+        assertEquals(360, chart.size());
+        assertEquals(2 * HOUR, chart.get(0).getToInMs() - chart.get(0).getFromInMs());
+        long count = chart.stream().mapToLong(ReportPoint::getCount).sum();
+        assertEquals(engine.summary("a", end - 30 * DAY, end).getCount(), count);
+
+        chart = engine.series("a", end - DAY + 10 * MINUTE, end, 100);
+        assertEquals(100, chart.size());
+        assertEquals(end - DAY + 10 * MINUTE, chart.get(0).getFromInMs());
+        assertEquals(end, chart.get(99).getToInMs());
+        assertEquals(engine.summary("a", end - DAY + 10 * MINUTE, end).getCount(),
+                chart.stream().mapToLong(ReportPoint::getCount).sum());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void seriesWithoutPointIsRejected() throws IOException {
+        engine.series("a", START, START + DAY, 0);
+    }
+
+    @Test
+    public void unknownTargetHasNoCheck() throws IOException {
+        assertTrue(engine.series("unknown", START, START + DAY, 100).isEmpty());
+        ReportPoint summary = engine.summary("unknown", START, START + DAY);
+        assertEquals(0, summary.getCount());
+        assertEquals(1, summary.getUptime(), 0);
+        assertEquals(-1, summary.getMedianDurationInMs());
+    }
+}
@@ -0,0 +1,115 @@
+package com.ericjesse.conni.history;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the binary batches of results and their ingestion by the collector.
+ */
+public class ResultCollectorTest {
+
+    private static final long START = 1_500_000_000_000L;
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void batchIsDecodedAsEncoded() {
+        ResultBatch batch = new ResultBatch("agent-1", 42);
+        batch.add("api/health", START, 120, 200);
+        batch.add("é/ü", START + MINUTE, 0, TimeSeriesStore.ERROR_STATUS);
+        // The results of a batch are not always in chronological order.
+        batch.add("api/health", START - 3 * MINUTE, 70_000, 503);
+
+        byte[] bytes = batch.encode();
+        ResultBatch decoded = ResultBatch.decode(bytes);
+        assertEquals("agent-1", decoded.getAgentId());
+        assertEquals(42, decoded.getSequence());
+        assertEquals(Arrays.asList("api/health", "é/ü"), decoded.getTargetIds());
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(batch.getTarget(i), decoded.getTarget(i));
+            assertEquals(batch.getTimeInMs(i), decoded.getTimeInMs(i));
+            assertEquals(batch.getDurationInMs(i), decoded.getDurationInMs(i));
+            assertEquals(batch.getStatus(i), decoded.getStatus(i));
+        }
+        assertEquals(0, ResultBatch.decode(new ResultBatch("agent-1", 43).encode()).size());
+    }
+
+    @Test
+    public void invalidBatchIsRejected() {
+        ResultBatch batch = new ResultBatch("agent-1", 1);
+        batch.add("api/health", START, 120, 200);
+        byte[] bytes = batch.encode();
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                ResultBatch.decode(Arrays.copyOf(bytes, length));
+                fail("A batch truncated to " + length + " bytes is accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+        try {
+            // The length of the agent id is a negative varint.
+            ResultBatch.decode(new byte[]{1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1});
+            fail("A negative length is accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("negative"));
+        }
+        bytes[0] = 2;
+        try {
+            ResultBatch.decode(bytes);
+            fail("An unknown version is accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
+    @Test
+    public void batchesAreAddedOnce() throws IOException {
+        TimeSeriesStore store = new TimeSeriesStore();
+        ResultCollector collector = new ResultCollector(store);
+        ResultBatch first = new ResultBatch("agent-1", 10);
+        for (int i = 0; i < 100; i++) {
+            first.add(i % 2 == 0 ? "a" : "b", START + i * MINUTE, i, 200);
+        }
+        ResultBatch second = new ResultBatch("agent-1", 11);
+        // Out of order within the batch: sorted before being added.
+        second.add("a", START + 101 * MINUTE, 101, 200);
+        second.add("a", START + 100 * MINUTE, 100, 200);
+        ResultBatch other = new ResultBatch("agent-2", 1);
+        // Older than the last result of the target: dropped.
+        other.add("a", START, 5, 500);
+
+        assertEquals(10, collector.ingest(first.encode()));
+        // The acknowledgement was lost, the agent sends the batch again.
+        assertEquals(10, collector.ingest(first.encode()));
+        assertEquals(11, collector.ingest(second.encode()));
+        assertEquals(1, collector.ingest(other.encode()));
+
+        assertEquals(3, collector.getBatches());
+        assertEquals(102, collector.getRecords());
+        assertEquals(1, collector.getLate());
+        assertEquals(1, collector.getDuplicates());
+        assertEquals(2, collector.getAgentCount());
+        List<long[]> samples = new ArrayList<>();
+        store.scan("b", START, Long.MAX_VALUE, (time, duration, status) -> samples.add(new long[]{time, duration}));
+        assertEquals(50, samples.size());
+        assertEquals(START + MINUTE, samples.get(0)[0]);
+        assertEquals(99, samples.get(49)[1]);
+        samples.clear();
+        store.scan("a", START + 99 * MINUTE, Long.MAX_VALUE, (time, duration, status) -> samples.add(new long[]{time,
+                duration}));
+        assertEquals(2, samples.size());
+        assertEquals(START + 101 * MINUTE, samples.get(1)[0]);
+        assertEquals(101, samples.get(1)[1]);
+        assertEquals(102, store.getSampleCount());
+        store.close();
+    }
+}
@@ -0,0 +1,104 @@
+package com.ericjesse.conni.history;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate that the results are buffered while the collector is unreachable, then delivered.
+ */
+public class ResultForwarderTest {
+
+    private static final long START = 1_500_000_000_000L;
+
+    private final MockWebServer server = new MockWebServer();
+
+    private final TimeSeriesStore store = new TimeSeriesStore();
+
+    private final ResultCollector collector = new ResultCollector(store);
+
+    private volatile boolean collectorUp;
+
+    private ResultForwarder forwarder;
+
+    @After
+    public void tearDown() throws IOException {
+        if (forwarder != null) {
+            forwarder.close();
+        }
+        server.shutdown();
+        store.close();
+    }
+
+    @Test
+    public void resultsAreDeliveredOnceTheCollectorIsBack() throws Exception {
+        startCollector();
+        forwarder = new ResultForwarder(server.url("/").toString(), "agent-1", 1_000, 50, Clock.systemUTC());
+        forwarder.start();
+        for (int i = 0; i < 30; i++) {
+            forwarder.add("a", START + i, i, 200);
+        }
+        Thread.sleep(300);
+        assertEquals(0, forwarder.getSent());
+        assertEquals(0, store.getSampleCount());
+
+        collectorUp = true;
+        waitFor(() -> store.getSampleCount() == 30);
+        assertEquals(30, forwarder.getSent());
+        assertEquals(0, forwarder.getBuffered());
+        assertEquals(0, forwarder.getDropped());
+        assertEquals(1, collector.getBatches());
+    }
+
+    @Test
+    public void oldestResultsAreDroppedWhenTheBufferIsFull() throws Exception {
+        startCollector();
+        forwarder = new ResultForwarder(server.url("/").toString(), "agent-1", 10, 50, Clock.systemUTC());
+        for (int i = 0; i < 25; i++) {
+            forwarder.add("a", START + i, i, 200);
+        }
+        assertEquals(10, forwarder.getBuffered());
+        assertEquals(15, forwarder.getDropped());
+
+        collectorUp = true;
+        forwarder.start();
+        waitFor(() -> store.getSampleCount() == 10);
+        long[] first = new long[1];
+        store.scan("a", START, Long.MAX_VALUE, (time, duration, status) -> {
+            if (first[0] == 0) {
+                first[0] = time;
+            }
+        });
+        assertEquals(START + 15, first[0]);
+    }
+
+    private void startCollector() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                if (!collectorUp) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return new MockResponse().setBody(Long.toString(collector.ingest(request.getBody().readByteArray())));
+            }
+        });
+        server.start();
+    }
+
+    private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
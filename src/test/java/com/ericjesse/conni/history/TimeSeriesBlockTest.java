@@ -0,0 +1,90 @@
+package com.ericjesse.conni.history;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the compression of the samples in blocks.
+ */
+public class TimeSeriesBlockTest {
+
+    private static final long START = 1_500_000_000_000L;
+
+    @Test
+    public void samplesAreDecodedAsEncoded() {
+        long[][] samples = {
+                {START, 31, 200},
+                {START + 60_000, 31, 200},
+                {START + 120_000, 0, TimeSeriesStore.ERROR_STATUS},
+                {START + 180_003, 120_000, 503},
+                // Irregular deltas, each bucket of the delta of delta.
+                {START + 180_003, 7, 503},
+                {START + 180_050, 8, 200},
+                {START + 180_300, Long.MAX_VALUE >> 11, 1023},
+                {START + 182_000, 1, 200},
+                {START + 7_000_000, 0, 2000},
+        };
+        TimeSeriesBlock block = new TimeSeriesBlock(START);
+        for (long[] sample : samples) {
+            block.append(sample[0], sample[1], (int) sample[2]);
+        }
+        block.seal();
+
+        List<long[]> decoded = scan(block, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(samples.length, decoded.size());
+        for (int i = 0; i < samples.length - 1; i++) {
+            assertArrayEquals("Sample " + i, samples[i], decoded.get(i));
+        }
+        assertArrayEquals("The status is bounded", new long[]{START + 7_000_000, 0, 1023},
+                decoded.get(samples.length - 1));
+    }
+
+    @Test
+    public void scanIsLimitedToTheRange() {
+        TimeSeriesBlock block = new TimeSeriesBlock(START);
+        for (int i = 0; i < 10; i++) {
+            block.append(START + i * 1_000, i, 200);
+        }
+
+        List<long[]> decoded = scan(block, START + 3_000, START + 6_000);
+        assertEquals(3, decoded.size());
+        assertEquals(START + 3_000, decoded.get(0)[0]);
+        assertEquals(5, decoded.get(2)[1]);
+        assertTrue(scan(block, START + 10_000, START + 20_000).isEmpty());
+    }
+
+    @Test
+    public void periodicChecksTakeAboutTwoBytes() {
+        // A check per minute for 2 hours, with a few milliseconds of jitter, latencies around 40 ms and a few errors.
+        Random random = new Random(42);
+        TimeSeriesBlock block = new TimeSeriesBlock(START);
+        for (int i = 0; i < 120; i++) {
+            long time = START + i * 60_000L + random.nextInt(5);
+            boolean error = random.nextInt(50) == 0;
+            block.append(time, error ? 0 : 30 + random.nextInt(20), error ? TimeSeriesStore.ERROR_STATUS : 200);
+        }
+        block.seal();
+
+        double bytesPerSample = block.getSizeInBits() / 8.0 / block.getCount();
+        assertTrue("Bytes per sample: " + bytesPerSample, bytesPerSample <= 2.1);
+        assertEquals(120, scan(block, Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void samplesAreAppendedInOrder() {
+        TimeSeriesBlock block = new TimeSeriesBlock(START);
+        block.append(START + 1_000, 10, 200);
+        block.append(START, 10, 200);
+    }
+
+    private static List<long[]> scan(final TimeSeriesBlock block, final long fromInMs, final long toInMs) {
+        List<long[]> samples = new ArrayList<>();
+        block.scan(fromInMs, toInMs, (time, duration, status) -> samples.add(new long[]{time, duration, status}));
+        return samples;
+    }
+}
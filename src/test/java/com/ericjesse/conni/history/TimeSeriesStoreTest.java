@@ -0,0 +1,161 @@
+package com.ericjesse.conni.history;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the history of the targets, in memory and spilled to disk.
+ */
+public class TimeSeriesStoreTest {
+
+    private static final long START = 1_500_000_000_000L;
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochMilli(START + TimeUnit.DAYS.toMillis(2)),
+            ZoneOffset.UTC);
+
+    private final List<Path> directories = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (Path directory : directories) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void scanCoversTheOpenAndSealedBlocks() throws IOException {
+        TimeSeriesStore store = new TimeSeriesStore();
+        // 5 hours: 2 sealed blocks and the open one.
+        for (int i = 0; i < 300; i++) {
+            store.add("a", START + i * MINUTE, i, 200);
+        }
+        store.add("b", START, 10, 200);
+
+        List<long[]> samples = scan(store, "a", START + 100 * MINUTE, START + 250 * MINUTE);
+        assertEquals(150, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals(START + (100 + i) * MINUTE, samples.get(i)[0]);
+            assertEquals(100 + i, samples.get(i)[1]);
+        }
+        assertEquals(301, store.getSampleCount());
+        assertEquals(0, store.scan("unknown", START, START + MINUTE, (time, duration, status) -> fail()));
+        store.close();
+    }
+
+    @Test
+    public void spilledBlocksAreReadBackAndReloaded() throws IOException {
+        Path directory = createDirectory();
+        TimeSeriesStore store = new TimeSeriesStore(directory, CLOCK);
+        for (int i = 0; i < 300; i++) {
+            store.add("api/health", START + i * MINUTE, i % 7, i % 10 == 0 ? TimeSeriesStore.ERROR_STATUS : 200);
+        }
+        store.spill();
+
+        // The blocks are older than the memory retention: only the open one stays in memory.
+        List<long[]> samples = scan(store, "api/health", START, START + 300 * MINUTE);
+        assertEquals(300, samples.size());
+        assertEquals(TimeSeriesStore.ERROR_STATUS, samples.get(10)[2]);
+        assertEquals(200, samples.get(11)[2]);
+        store.close();
+
+        TimeSeriesStore reloaded = new TimeSeriesStore(directory, CLOCK);
+        assertTrue(reloaded.getTargetIds().contains("api/health"));
+        assertEquals(300, reloaded.getSampleCount());
+        samples = scan(reloaded, "api/health", START + 299 * MINUTE, START + 301 * MINUTE);
+        assertEquals(1, samples.size());
+        assertEquals(299 % 7, samples.get(0)[1]);
+
+        // The new samples go to a new block after the reloaded ones.
+        reloaded.add("api/health", START + 300 * MINUTE, 5, 200);
+        assertEquals(301, scan(reloaded, "api/health", START, Long.MAX_VALUE).size());
+        reloaded.close();
+    }
+
+    @Test
+    public void truncatedBlockIsDropped() throws IOException {
+        Path directory = createDirectory();
+        TimeSeriesStore store = new TimeSeriesStore(directory, CLOCK);
+        for (int i = 0; i < 200; i++) {
+            store.add("a", START + i * MINUTE, 20, 200);
+        }
+        store.close();
+        Path file = directory.resolve("a.series");
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        TimeSeriesStore reloaded = new TimeSeriesStore(directory, CLOCK);
+        assertEquals("Only the first block of 2 hours is complete", 120, reloaded.getSampleCount());
+        assertEquals(120, scan(reloaded, "a", START, Long.MAX_VALUE).size());
+        reloaded.close();
+    }
+
+    @Test
+    public void oldBlocksAreExpiredAndCompacted() throws IOException {
+        Path directory = createDirectory();
+        TimeSeriesStore store = new TimeSeriesStore(directory, CLOCK);
+        for (int i = 0; i < 300; i++) {
+            store.add("a", START + i * MINUTE, 20, 200);
+        }
+        store.close();
+
+        // 10 days after the retention of the first samples.
+        long now = START + TimeSeriesStore.RETENTION_IN_MS + TimeUnit.DAYS.toMillis(10);
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(now), ZoneOffset.UTC);
+        TimeSeriesStore reloaded = new TimeSeriesStore(directory, clock);
+        assertEquals(300, reloaded.getSampleCount());
+        for (int i = 0; i < 300; i++) {
+            reloaded.add("a", now - TimeUnit.DAYS.toMillis(1) + i * MINUTE, 30, 200);
+        }
+        reloaded.spill();
+
+        assertEquals(300, reloaded.getSampleCount());
+        assertEquals(0, reloaded.scan("a", START, START + 300 * MINUTE, (time, duration, status) -> fail()));
+        assertEquals(300, scan(reloaded, "a", now - TimeUnit.DAYS.toMillis(1), now).size());
+        reloaded.close();
+
+        // The file was copied without the expired blocks.
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        TimeSeriesStore compacted = new TimeSeriesStore(directory, clock);
+        assertEquals(300, compacted.getSampleCount());
+        assertEquals(300, scan(compacted, "a", START, Long.MAX_VALUE).size());
+        compacted.close();
+    }
+
+    private Path createDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("conni-history");
+        directories.add(directory);
+        return directory;
+    }
+
+    private static List<long[]> scan(final TimeSeriesStore store, final String targetId, final long fromInMs,
+            final long toInMs) throws IOException {
+        List<long[]> samples = new ArrayList<>();
+        store.scan(targetId, fromInMs, toInMs, (time, duration, status) -> samples.add(new long[]{time, duration,
+                status}));
+        return samples;
+    }
+}
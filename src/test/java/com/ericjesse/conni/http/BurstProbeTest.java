@@ -0,0 +1,124 @@
+package com.ericjesse.conni.http;
+
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the burst checks and their statistics.
+ */
+public class BurstProbeTest {
+
+    private final MockWebServer webServer = new MockWebServer();
+
+    @Before
+    public void setUp() throws IOException {
+        webServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        webServer.shutdown();
+    }
+
+    @Test
+    public void statisticsOfTheRoundTripTimes() {
+        BurstProbe probe = new BurstProbe(5);
+        assertTrue(probe.tryStart());
+        assertFalse("A burst is already running", probe.tryStart());
+
+        probe.recordResponse(ms(10));
+        probe.recordResponse(ms(26));
+        probe.recordLoss();
+        probe.recordResponse(ms(10));
+        assertFalse(probe.isComplete());
+        probe.recordResponse(ms(12));
+        assertTrue(probe.isComplete());
+
+        BurstStatistics statistics = probe.getStatistics();
+        assertEquals(4, statistics.getReceived());
+        assertEquals(0.2, statistics.getLossRatio(), 1e-9);
+        assertEquals(Duration.ofMillis(10), statistics.getMinRoundTripTime());
+        assertEquals(Duration.ofMillis(11), statistics.getMedianRoundTripTime());
+        // The responses around the loss are not consecutive: J1 = 16/16 = 1, J2 = 1 + (2 - 1)/16 = 1.0625
+        assertEquals(1_062_500, statistics.getJitter().toNanos());
+
+        probe.finish();
+        assertTrue(probe.tryStart());
+        assertFalse(probe.isComplete());
+    }
+
+    @Test
+    public void jitterConvergesOverTheBursts() {
+        BurstProbe probe = new BurstProbe(5);
+        long previousJitterInNs = 0;
+        for (int burst = 0; burst < 20; burst++) {
+            assertTrue(probe.tryStart());
+            for (int i = 0; i < 5; i++) {
+                probe.recordResponse(ms(i % 2 == 0 ? 10 : 14));
+            }
+            long jitterInNs = probe.getStatistics().getJitter().toNanos();
+            assertTrue("The estimator is not restarted by a burst", jitterInNs > previousJitterInNs);
+            previousJitterInNs = jitterInNs;
+            probe.finish();
+        }
+        // 80 differences of 4 ms: 4 * (1 - (15/16)^80) = 3.977 ms.
+        assertEquals(ms(4), previousJitterInNs, ms(4) / 100);
+    }
+
+    @Test(timeout = 5000)
+    public void burstIsReportedOnceOverOneConnection() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            webServer.enqueue(new MockResponse().setBody("pong"));
+        }
+        BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        HttpClient httpClient = new HttpClientFactory()
+                .create(new HttpRequest(webServer.url("/ping").toString()), 2_000, HttpProtocol.AUTO,
+                        new BurstProbe(5));
+        httpClient.addObserver(new ResponseObserver() {
+
+            @Override
+            public ConniError processError(final ConniError error) {
+                results.add(error);
+                return error;
+            }
+
+            @Override
+            public HttpResponse processResponse(final HttpResponse response) {
+                results.add(response);
+                return response;
+            }
+        });
+
+        httpClient.check();
+        HttpResponse response = (HttpResponse) results.take();
+
+        BurstStatistics burst = response.getBurst();
+        assertEquals(5, burst.getReceived());
+        assertEquals(0, burst.getLossRatio(), 0);
+        assertEquals(burst.getMedianRoundTripTime(), response.getDuration());
+        assertEquals("pong", response.getBodyContent());
+        assertNull("A single event is expected per burst", results.poll(200, TimeUnit.MILLISECONDS));
+        // The warm-up request and the burst share the same connection.
+        assertEquals(6, webServer.getRequestCount());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, webServer.takeRequest().getSequenceNumber());
+        }
+    }
+
+    private static long ms(final long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,148 @@
+package com.ericjesse.conni.http;
+
+import okio.Buffer;
+import okio.Source;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the {@link ContentEncoding} codecs.
+ */
+public class ContentEncodingTest {
+
+    private static final byte[] CONTENT =
+            "Herman Melville - Moby-Dick; or, The Whale. Call me Ishmael.".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void gzipIsReadableByTheJdk() throws IOException {
+        byte[] encoded = ContentEncoding.GZIP.encode(CONTENT);
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(encoded))) {
+            assertArrayEquals(CONTENT, readFully(in));
+        }
+    }
+
+    @Test
+    public void gzipRoundTripWithReusedCodecs() throws IOException {
+        // Several rounds to go through the pooled instances.
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(CONTENT, ContentEncoding.GZIP.decode(ContentEncoding.GZIP.encode(CONTENT)));
+        }
+    }
+
+    @Test
+    public void gunzipJdkContentWithFileName() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bos)) {
+            out.write(CONTENT);
+        }
+        byte[] encoded = bos.toByteArray();
+        // Add a file name to the header to validate the optional fields are skipped.
+        byte[] fileName = "moby.txt\0".getBytes(StandardCharsets.US_ASCII);
+        byte[] withFileName = new byte[encoded.length + fileName.length];
+        System.arraycopy(encoded, 0, withFileName, 0, 10);
+        withFileName[3] = 8;
+        System.arraycopy(fileName, 0, withFileName, 10, fileName.length);
+        System.arraycopy(encoded, 10, withFileName, 10 + fileName.length, encoded.length - 10);
+
+        assertArrayEquals(CONTENT, ContentEncoding.GZIP.decode(withFileName));
+    }
+
+    @Test
+    public void inflateZlibAndRawDeflate() throws IOException {
+        ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(zlib)) {
+            out.write(CONTENT);
+        }
+        assertArrayEquals(CONTENT, ContentEncoding.DEFLATE.decode(zlib.toByteArray()));
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(raw, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            out.write(CONTENT);
+        }
+        assertArrayEquals(CONTENT, ContentEncoding.DEFLATE.decode(raw.toByteArray()));
+    }
+
+    @Test
+    public void largeGzipIsInflatedWhileRead() throws IOException {
+        byte[] large = new byte[200_000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = CONTENT[i % CONTENT.length];
+        }
+        Source source = ContentEncoding.GZIP.decode(new Buffer().write(ContentEncoding.GZIP.encode(large)));
+        Buffer inflated = new Buffer();
+        // Read in small steps, as a slow network would.
+        while (source.read(inflated, 1_000) != -1) {
+            assertTrue(inflated.size() <= large.length);
+        }
+        source.close();
+        assertArrayEquals(large, inflated.readByteArray());
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedGzip() throws IOException {
+        byte[] encoded = ContentEncoding.GZIP.encode(CONTENT);
+        ContentEncoding.GZIP.decode(Arrays.copyOf(encoded, encoded.length / 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedGzipTrailer() throws IOException {
+        byte[] encoded = ContentEncoding.GZIP.encode(CONTENT);
+        encoded[encoded.length - 1]++;
+        ContentEncoding.GZIP.decode(encoded);
+    }
+
+    @Test
+    public void fromHeader() {
+        assertEquals(Collections.singletonList(ContentEncoding.GZIP), ContentEncoding.fromHeader("gzip"));
+        assertEquals(Collections.singletonList(ContentEncoding.GZIP), ContentEncoding.fromHeader("x-gzip"));
+        assertEquals(Collections.singletonList(ContentEncoding.DEFLATE), ContentEncoding.fromHeader("Deflate"));
+        assertEquals(Collections.singletonList(ContentEncoding.GZIP), ContentEncoding.fromHeader("identity, gzip"));
+        assertEquals(Arrays.asList(ContentEncoding.DEFLATE, ContentEncoding.GZIP),
+                ContentEncoding.fromHeader("deflate, gzip"));
+        // A coding without codec leaves the content as it is.
+        assertNull(ContentEncoding.fromHeader("gzip, br"));
+        assertNull(ContentEncoding.fromHeader("br"));
+        assertTrue(ContentEncoding.fromHeader(null).isEmpty());
+    }
+
+    @Test
+    public void stackedCodingsAreAllDecoded() throws IOException {
+        byte[] stacked = ContentEncoding.GZIP.encode(ContentEncoding.DEFLATE.encode(CONTENT));
+        assertArrayEquals(CONTENT, decode("deflate, gzip", stacked));
+        // Declared but not applied: only gzipped.
+        assertArrayEquals(CONTENT, decode("gzip,deflate", ContentEncoding.GZIP.encode(CONTENT)));
+    }
+
+    private static byte[] decode(final String header, final byte[] content) throws IOException {
+        Buffer decoded = new Buffer();
+        try (Source source = ContentEncoding.decode(ContentEncoding.fromHeader(header), new Buffer().write(content))) {
+            decoded.writeAll(source);
+        }
+        return decoded.readByteArray();
+    }
+
+    private byte[] readFully(final InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bos.write(buffer, 0, read);
+        }
+        return bos.toByteArray();
+    }
+}
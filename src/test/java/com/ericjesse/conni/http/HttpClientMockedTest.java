@@ -3,8 +3,10 @@ package com.ericjesse.conni.http;
 import com.ericjesse.conni.http.errors.ConnectionError;
 import com.ericjesse.conni.http.errors.ConniError;
 import com.ericjesse.conni.http.errors.UnknownHostError;
+import okhttp3.Protocol;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import okhttp3.mockwebserver.SocketPolicy;
 import okio.Buffer;
 import org.apache.http.client.utils.URIBuilder;
@@ -21,6 +23,7 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.net.URI;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Semaphore;
@@ -449,6 +452,74 @@ public class HttpClientMockedTest {
         assertEquals(1, webServer.getRequestCount());
     }
 
+    @Test(timeout = TEST_TIMEOUT)
+    public void postWithCompressedBody() throws Exception {
+        URI uri = new URIBuilder().setScheme("http").setHost(webServer.getHostName()).setPort(webServer.getPort())
+                .setPath("/post").build();
+        webServer.enqueue(new MockResponse().setResponseCode(204));
+        webServer.enqueue(new MockResponse().setResponseCode(204));
+
+        HttpRequest request =
+                new HttpRequest(HttpMethod.POST, uri.toASCIIString(), "{\"book\":\"Moby-Dick\"}", HttpContentType.JSON);
+        HttpClient httpClient = new HttpClient(request);
+        WaitingObserver wo = new WaitingObserver(2);
+        httpClient.addObserver(wo);
+
+        // Run the actual HTTP call twice.
+        httpClient.check();
+        httpClient.check();
+        wo.waitGroup(ACQUIRE_TIMEOUT);
+
+        for (int i = 0; i < 2; i++) {
+            RecordedRequest recordedRequest = webServer.takeRequest();
+            assertEquals("gzip", recordedRequest.getHeader("Content-Encoding"));
+            // The compressed length is known, the body should not be chunked.
+            assertNull(recordedRequest.getHeader("Transfer-Encoding"));
+            assertEquals(Long.toString(recordedRequest.getBodySize()), recordedRequest.getHeader("Content-Length"));
+            assertEquals("{\"book\":\"Moby-Dick\"}",
+                    new Buffer().write(ContentEncoding.GZIP.decode(recordedRequest.getBody().readByteArray()))
+                            .readUtf8());
+        }
+    }
+
+    @Test(timeout = TEST_TIMEOUT)
+    public void getWithHttp2PriorKnowledge() throws Exception {
+        webServer.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody("Moby-Dick"));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody("Moby-Dick"));
+        URI uri = new URIBuilder().setScheme("http").setHost(webServer.getHostName()).setPort(webServer.getPort())
+                .setPath("/h2c").build();
+
+        HttpClient httpClient = new HttpClient(new HttpRequest(uri.toASCIIString()), 2_000, HttpProtocol.H2C);
+        CaptorObserver obs = new CaptorObserver();
+        httpClient.addObserver(obs);
+        WaitingObserver wo = new WaitingObserver(2);
+        httpClient.addObserver(wo);
+
+        // Run the actual HTTP calls concurrently.
+        httpClient.check();
+        httpClient.check();
+        wo.waitGroup(ACQUIRE_TIMEOUT);
+        obs.assertProcessedErrors(0);
+        obs.assertProcessedResponses(2);
+        obs.assertNext(hasProperty("protocol", is("h2_prior_knowledge")));
+
+        // Both calls are multiplexed on the same connection.
+        assertEquals(0, webServer.takeRequest().getSequenceNumber());
+        assertEquals(1, webServer.takeRequest().getSequenceNumber());
+        assertEquals(1, httpClient.getClient().connectionPool().connectionCount());
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void getWithHttp2PriorKnowledgeOverTls() throws Exception {
+        new HttpClient(new HttpRequest("https://localhost/h2c"), 2_000, HttpProtocol.H2C);
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void getWithHttp2OverClearText() throws Exception {
+        new HttpClient(new HttpRequest("http://localhost/h2"), 2_000, HttpProtocol.HTTP_2);
+    }
+
     /**
      * CaptorObserver is an observer to capture objects emitted by the HTTP client.
      */
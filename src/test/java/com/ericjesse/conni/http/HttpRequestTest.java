@@ -3,6 +3,7 @@ package com.ericjesse.conni.http;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -148,4 +149,41 @@ public class HttpRequestTest {
         ));
         //@formatter:on
     }
+
+    @Test
+    public void caseInsensitiveHeaders() {
+        HttpRequest request = new HttpRequest("myUrl", new HttpHeader("user-agent", "myUser-Agent"),
+                new HttpHeader("X-Token", "a", "b"));
+
+        assertEquals("myUser-Agent", request.header("User-Agent"));
+        assertEquals("a", request.header("x-token"));
+        assertThat(request.getHttpHeaders().values("X-TOKEN"), contains("a", "b"));
+        assertThat(request.getHeaders().get("X-TOKEN"), contains("a", "b"));
+        // The overridden default header should not be duplicated.
+        assertThat(request.getHttpHeaders().values("User-Agent"), contains("myUser-Agent"));
+        assertEquals(6, request.getHttpHeaders().size());
+    }
+
+    @Test
+    public void defaultHeadersAreShared() {
+        HttpRequest first = new HttpRequest("firstUrl");
+        HttpRequest second = new HttpRequest("secondUrl");
+
+        assertSame(first.getHttpHeaders(), second.getHttpHeaders());
+        assertNotSame(first.getHttpHeaders(),
+                new HttpRequest(HttpMethod.GET, "thirdUrl", null, HttpContentType.XML).getHttpHeaders());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void headersAreImmutable() {
+        new HttpRequest("myUrl").getHeaders().put("User-Agent", Collections.singletonList("other"));
+    }
+
+    @Test
+    public void headerNamesAreInterned() {
+        HttpRequest first = new HttpRequest("firstUrl", new HttpHeader(new String("X-Check"), "1"));
+        HttpRequest second = new HttpRequest("secondUrl", new HttpHeader(new String("X-Check"), "2"));
+
+        assertSame(first.getHttpHeaders().name(0), second.getHttpHeaders().name(0));
+    }
 }
@@ -0,0 +1,158 @@
+package com.ericjesse.conni.http;
+
+import com.ericjesse.conni.http.errors.ConnectionError;
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.http.errors.UnconfirmedError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the confirmation of the failures by a quorum of reference endpoints.
+ */
+public class QuorumConfirmationTest {
+
+    private final MockWebServer reference1 = new MockWebServer();
+
+    private final MockWebServer reference2 = new MockWebServer();
+
+    private String closedUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        reference1.start();
+        reference2.start();
+        final MockWebServer closed = new MockWebServer();
+        closed.start();
+        closedUrl = closed.url("/ping").toString();
+        closed.shutdown();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reference1.shutdown();
+        reference2.shutdown();
+    }
+
+    @Test(timeout = 5000)
+    public void failureOfTheServiceAloneIsNotConfirmed() throws Exception {
+        reference1.enqueue(new MockResponse().setResponseCode(204));
+        reference2.enqueue(new MockResponse().setResponseCode(503));
+        QuorumConfirmation quorum = new QuorumConfirmation(
+                Arrays.asList(reference1.url("/").toString(), reference2.url("/").toString(), closedUrl), 2, 1_000);
+
+        ConniError error = check(quorum);
+
+        assertThat(error, instanceOf(UnconfirmedError.class));
+        UnconfirmedError unconfirmed = (UnconfirmedError) error;
+        assertThat(unconfirmed.getError(), instanceOf(ConnectionError.class));
+        assertEquals(2, unconfirmed.getAnsweredReferences());
+        assertEquals(3, unconfirmed.getReferences());
+        assertEquals(1, quorum.getStatistics().getUnconfirmed());
+        assertEquals(1, quorum.getStatistics().getFalsePositiveRate(), 0);
+    }
+
+    @Test(timeout = 5000)
+    public void failureOfTheQuorumIsConfirmed() throws Exception {
+        reference1.enqueue(new MockResponse().setResponseCode(204));
+        QuorumConfirmation quorum = new QuorumConfirmation(
+                Arrays.asList(reference1.url("/").toString(), closedUrl, closedUrl), 2, 1_000);
+
+        assertThat(check(quorum), instanceOf(ConnectionError.class));
+        QuorumStatistics statistics = quorum.getStatistics();
+        assertEquals(1, statistics.getConfirmed());
+        assertEquals(0, statistics.getFalsePositiveRate(), 0);
+        assertTrue(statistics.getMaxTimeToDetect().toNanos() > 0);
+    }
+
+    @Test(timeout = 5000)
+    public void referencesTooSlowFailAtTheDeadline() throws Exception {
+        reference1.enqueue(new MockResponse().setHeadersDelay(2, TimeUnit.SECONDS));
+        reference2.enqueue(new MockResponse().setHeadersDelay(2, TimeUnit.SECONDS));
+        QuorumConfirmation quorum = new QuorumConfirmation(
+                Arrays.asList(reference1.url("/").toString(), reference2.url("/").toString()), 2, 300);
+
+        final long start = System.nanoTime();
+        assertThat(check(quorum), instanceOf(ConnectionError.class));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_500);
+    }
+
+    @Test(timeout = 10000)
+    public void onlyTheFirstFailureAfterASuccessIsConfirmed() throws Exception {
+        reference1.enqueue(new MockResponse().setResponseCode(204));
+        reference1.enqueue(new MockResponse().setResponseCode(204));
+        QuorumConfirmation quorum =
+                new QuorumConfirmation(Arrays.asList(reference1.url("/").toString(), closedUrl), 2, 1_000);
+        HttpClient httpClient = new HttpClient(new HttpRequest(closedUrl), 1_000);
+        httpClient.setQuorumConfirmation(quorum);
+        BlockingQueue<Object> results = observe(httpClient);
+
+        httpClient.check();
+        assertThat(results.take(), instanceOf(UnconfirmedError.class));
+        httpClient.check();
+        ConniError error = (ConniError) results.take();
+        assertThat("The decision is kept while the target fails", error, instanceOf(UnconfirmedError.class));
+        assertThat(((UnconfirmedError) error).getError(), instanceOf(ConnectionError.class));
+        assertEquals(1, reference1.getRequestCount());
+        assertEquals(1, quorum.getStatistics().getUnconfirmed());
+
+        // The target answers again, then fails: the references are called again.
+        MockWebServer target = new MockWebServer();
+        target.enqueue(new MockResponse().setBody("pong"));
+        target.start(HttpUrl.parse(closedUrl).port());
+        httpClient.check();
+        assertThat(results.take(), instanceOf(HttpResponse.class));
+        target.shutdown();
+        httpClient.check();
+        assertThat(results.take(), instanceOf(UnconfirmedError.class));
+        assertEquals(2, reference1.getRequestCount());
+        assertEquals(2, quorum.getStatistics().getUnconfirmed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectQuorumLargerThanTheReferences() {
+        new QuorumConfirmation(Arrays.asList("http://r1", "http://r2"), 3, 1_000);
+    }
+
+    private ConniError check(final QuorumConfirmation quorum) throws Exception {
+        HttpClient httpClient = new HttpClient(new HttpRequest(closedUrl), 1_000);
+        httpClient.setQuorumConfirmation(quorum);
+        BlockingQueue<Object> results = observe(httpClient);
+        httpClient.check();
+        final Object result = results.take();
+        assertNull("A single event is expected per check", results.poll(100, TimeUnit.MILLISECONDS));
+        return (ConniError) result;
+    }
+
+    private static BlockingQueue<Object> observe(final HttpClient httpClient) {
+        BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        httpClient.addObserver(new ResponseObserver() {
+
+            @Override
+            public ConniError processError(final ConniError error) {
+                results.add(error);
+                return error;
+            }
+
+            @Override
+            public HttpResponse processResponse(final HttpResponse response) {
+                results.add(response);
+                return response;
+            }
+        });
+        return results;
+    }
+}
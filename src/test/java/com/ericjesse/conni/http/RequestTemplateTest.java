@@ -0,0 +1,80 @@
+package com.ericjesse.conni.http;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okio.Buffer;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the resolution of the placeholders by the {@link RequestTemplate}.
+ */
+public class RequestTemplateTest {
+
+    @Test
+    public void requestWithoutPlaceholder() throws InvalidRequestException {
+        assertNull(RequestTemplate.compile(new HttpRequest("http://myUrl/path?foo=bar")));
+    }
+
+    @Test
+    public void resolvePathQueryHeaderAndBody() throws Exception {
+        HttpRequest request = new HttpRequest(HttpMethod.POST,
+                "http://myUrl/ping/${nonce}/status?foo=bar&cb=${nonce}&ts=${timestamp}", "{\"nonce\":\"${nonce}\"}",
+                HttpContentType.JSON, new HttpHeader("X-Nonce", "n-${nonce}"), new HttpHeader("X-Static", "static"));
+        HttpClient client = new HttpClient(request, 0);
+        RequestTemplate template = RequestTemplate.compile(request);
+
+        long before = System.currentTimeMillis();
+        Request first = template.resolve(client.getActualRequest());
+        Request second = template.resolve(client.getActualRequest());
+
+        HttpUrl url = first.url();
+        String nonce = url.queryParameter("cb");
+        assertTrue(nonce.matches("[0-9a-f]{16}"));
+        assertEquals("All the placeholders of a check should share the nonce", nonce, url.pathSegments().get(1));
+        assertEquals("ping", url.pathSegments().get(0));
+        assertEquals("status", url.pathSegments().get(2));
+        assertEquals("bar", url.queryParameter("foo"));
+        assertThat(Long.parseLong(url.queryParameter("ts")), greaterThanOrEqualTo(before));
+        assertEquals("n-" + nonce, first.header("X-Nonce"));
+        assertThat(first.headers("X-Nonce"), hasSize(1));
+        assertEquals("static", first.header("X-Static"));
+        assertEquals("{\"nonce\":\"" + nonce + "\"}", bodyOf(first));
+
+        assertNotEquals("Each check should get a new nonce", nonce, second.url().queryParameter("cb"));
+    }
+
+    @Test
+    public void resolveUuid() throws Exception {
+        RequestTemplate template = RequestTemplate.compile(new HttpRequest("http://myUrl/?id=${uuid}"));
+        HttpClient client = new HttpClient(new HttpRequest("http://myUrl/?id=${uuid}"), 0);
+
+        assertTrue(template.resolve(client.getActualRequest()).url().queryParameter("id")
+                .matches("[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}"));
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void unknownPlaceholder() throws Exception {
+        new HttpClient(new HttpRequest("http://myUrl/?id=${unknown}"), 0);
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void placeholderInHost() throws Exception {
+        new HttpClient(new HttpRequest("http://host-${nonce}/"), 0);
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void unclosedPlaceholder() throws Exception {
+        new HttpClient(new HttpRequest("http://myUrl/", new HttpHeader("X-Nonce", "${nonce")), 0);
+    }
+
+    private String bodyOf(final Request request) throws IOException {
+        Buffer buffer = new Buffer();
+        request.body().writeTo(buffer);
+        return buffer.readUtf8();
+    }
+}
@@ -0,0 +1,150 @@
+package com.ericjesse.conni.http;
+
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the throughput checks and their data budget.
+ */
+public class ThroughputProbeTest {
+
+    private static final int PAYLOAD_SIZE = 1_000_000;
+
+    private final MockWebServer webServer = new MockWebServer();
+
+    private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws IOException {
+        webServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        webServer.shutdown();
+    }
+
+    @Test(timeout = 5000)
+    public void downloadIsCountedWithoutKeepingTheBody() throws Exception {
+        webServer.enqueue(new MockResponse().setBody(payload()));
+        HttpClient httpClient = client(ThroughputProbe.download(new DataBudget(0)));
+
+        httpClient.check();
+        HttpResponse response = (HttpResponse) results.take();
+
+        assertEquals("", response.getBodyContent());
+        Throughput throughput = response.getThroughput();
+        assertEquals(CheckMode.DOWNLOAD, throughput.getMode());
+        assertEquals(PAYLOAD_SIZE, throughput.getBytes());
+        assertFalse(throughput.isTruncated());
+        assertTrue(throughput.getBytesPerSecond() > 0);
+        assertEquals("identity", webServer.takeRequest().getHeader("Accept-Encoding"));
+    }
+
+    @Test(timeout = 5000)
+    public void downloadStopsWhenTheBudgetIsConsumed() throws Exception {
+        webServer.enqueue(new MockResponse().setBody(payload()));
+        webServer.enqueue(new MockResponse().setBody(payload()));
+        DataBudget budget = new DataBudget(100_000);
+        HttpClient httpClient = client(ThroughputProbe.download(budget));
+
+        httpClient.check();
+        Throughput throughput = ((HttpResponse) results.take()).getThroughput();
+        assertEquals(100_000, throughput.getBytes());
+        assertTrue(throughput.isTruncated());
+        assertEquals(0, budget.getRemaining());
+
+        // The budget is consumed, the next check is not sent.
+        httpClient.check();
+        assertNull(results.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, webServer.getRequestCount());
+    }
+
+    @Test(timeout = 5000)
+    public void uploadSendsTheGeneratedBodyUncompressed() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(204));
+        HttpClient httpClient = client(ThroughputProbe.upload(PAYLOAD_SIZE, new DataBudget(0)));
+
+        httpClient.check();
+        Throughput throughput = ((HttpResponse) results.take()).getThroughput();
+
+        assertEquals(CheckMode.UPLOAD, throughput.getMode());
+        assertEquals(PAYLOAD_SIZE, throughput.getBytes());
+        RecordedRequest request = webServer.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals(PAYLOAD_SIZE, request.getBodySize());
+        assertEquals("application/octet-stream", request.getHeader("Content-Type"));
+        assertNull(request.getHeader("Content-Encoding"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void uploadLargerThanTheBudgetIsRejected() {
+        ThroughputProbe.upload(PAYLOAD_SIZE, new DataBudget(PAYLOAD_SIZE - 1));
+    }
+
+    @Test
+    public void uploadLargerThanTheRemainingBudgetIsSkipped() {
+        DataBudget budget = new DataBudget(PAYLOAD_SIZE);
+        ThroughputProbe probe = ThroughputProbe.upload(PAYLOAD_SIZE, budget);
+        assertEquals(1, budget.acquire(1));
+
+        assertFalse(probe.tryStart());
+        assertEquals(PAYLOAD_SIZE - 1, budget.getRemaining());
+    }
+
+    @Test
+    public void budgetIsRenewedEveryHour() {
+        AtomicLong clock = new AtomicLong();
+        DataBudget budget = new DataBudget(1_000, clock::get);
+
+        assertEquals(600, budget.acquire(600));
+        assertEquals(400, budget.acquire(600));
+        assertEquals(0, budget.acquire(600));
+        budget.release(100);
+        assertEquals(100, budget.getRemaining());
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(59));
+        assertEquals(100, budget.getRemaining());
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertEquals(1_000, budget.getRemaining());
+    }
+
+    private HttpClient client(final ThroughputProbe probe) throws InvalidRequestException {
+        HttpClient httpClient = new HttpClientFactory()
+                .create(new HttpRequest(webServer.url("/payload").toString()), 2_000, HttpProtocol.AUTO, probe);
+        httpClient.addObserver(new ResponseObserver() {
+
+            @Override
+            public ConniError processError(final ConniError error) {
+                results.add(error);
+                return error;
+            }
+
+            @Override
+            public HttpResponse processResponse(final HttpResponse response) {
+                results.add(response);
+                return response;
+            }
+        });
+        return httpClient;
+    }
+
+    private Buffer payload() {
+        return new Buffer().write(new byte[PAYLOAD_SIZE]);
+    }
+}
@@ -0,0 +1,33 @@
+package com.ericjesse.conni.json;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class to validate the escaping of the JSON strings.
+ */
+public class JsonStringsTest {
+
+    @Test
+    public void specialCharactersAreEscaped() throws IOException {
+        final String value = "a \"b\" \\c\n\u0001é";
+        final String expected = "\"a \\\"b\\\" \\\\c\\u000a\\u0001é\"";
+
+        assertEquals(expected, JsonStrings.quote(value));
+        final StringBuilder sb = new StringBuilder("[");
+        JsonStrings.quote(sb, value);
+        assertEquals("[" + expected, sb.toString());
+        final StringWriter writer = new StringWriter();
+        JsonStrings.quote(writer, value);
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void nullIsTheJsonNull() {
+        assertEquals("null", JsonStrings.quote(null));
+    }
+}
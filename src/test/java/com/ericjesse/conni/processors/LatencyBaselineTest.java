@@ -0,0 +1,136 @@
+package com.ericjesse.conni.processors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the streaming baseline of the latencies.
+ */
+public class LatencyBaselineTest {
+
+    private static final long NOW = 1_500_000_000_000L;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("conni");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void rankAndQuantilesOfUniformLatencies() {
+        LatencyBaseline baseline = new LatencyBaseline();
+        assertEquals(0.5, baseline.rank(100), 0);
+        assertEquals(-1, baseline.quantile(0.5));
+
+        for (int latency = 1; latency <= 100; latency++) {
+            baseline.add(latency, NOW);
+        }
+
+        assertEquals(0.5, baseline.rank(50), 0.06);
+        assertEquals(0.05, baseline.rank(5), 0.06);
+        assertEquals(1, baseline.rank(1_000), 0);
+        assertEquals(90, baseline.quantile(0.9), 9);
+        assertEquals(100, baseline.getWeight(NOW), 1e-9);
+    }
+
+    @Test
+    public void oldLatenciesFadeOut() {
+        LatencyBaseline baseline = new LatencyBaseline();
+        for (int i = 0; i < 1_000; i++) {
+            baseline.add(100, NOW);
+        }
+        long aWeekLater = NOW + TimeUnit.DAYS.toMillis(7);
+        for (int i = 0; i < 100; i++) {
+            baseline.add(10, aWeekLater);
+        }
+
+        // After 168 hours, the 1000 old latencies weigh e^(-168/72) * 1000, about 97.
+        assertEquals(197, baseline.getWeight(aWeekLater), 1);
+        assertEquals(10, baseline.quantile(0.5), 1);
+    }
+
+    @Test
+    public void weightsAreRescaledAfterAVeryLongTime() {
+        LatencyBaseline baseline = new LatencyBaseline();
+        baseline.add(100, NOW);
+        long twoYearsLater = NOW + TimeUnit.DAYS.toMillis(730);
+        baseline.add(10, twoYearsLater);
+
+        assertEquals(1, baseline.getWeight(twoYearsLater), 1e-9);
+        assertEquals(1, baseline.rank(100), 0);
+    }
+
+    @Test
+    public void baselinesSurviveASerialization() throws Exception {
+        LatencyBaselines baselines = new LatencyBaselines();
+        LatencyBaseline baseline = baselines.forTarget("a");
+        for (int latency = 1; latency <= 1_000; latency++) {
+            baseline.add(latency, NOW);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(baseline);
+        }
+        assertTrue("A baseline should take less than 2 KB, not " + bytes.size(), bytes.size() < 2_048);
+        LatencyBaseline copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (LatencyBaseline) in.readObject();
+        }
+        assertEquals(baseline.rank(200), copy.rank(200), 0);
+
+        Path file = directory.resolve("baselines.bin");
+        baselines.save(file);
+        LatencyBaselines loaded = LatencyBaselines.load(file);
+        assertEquals(1, loaded.size());
+        assertEquals(baseline.rank(200), loaded.forTarget("a").rank(200), 0);
+
+        // The baselines of a removed target are not saved any more.
+        loaded.remove("a");
+        loaded.save(file);
+        assertEquals(0, LatencyBaselines.load(file).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void loadRejectsOtherFiles() throws Exception {
+        Path file = directory.resolve("other.bin");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file))) {
+            out.writeObject("not a baseline");
+        }
+        LatencyBaselines.load(file);
+    }
+
+    @Test
+    public void shadesGoFromGreenToOrange() {
+        Color fast = TrayIconUpdater.speedShade(0);
+        Color slow = TrayIconUpdater.speedShade(1);
+
+        assertEquals(new Color(102, 255, 79), fast);
+        assertEquals(new Color(255, 165, 0), slow);
+        Color usual = TrayIconUpdater.speedShade(0.5);
+        assertTrue(usual.getRed() > fast.getRed() && usual.getRed() < slow.getRed());
+    }
+}
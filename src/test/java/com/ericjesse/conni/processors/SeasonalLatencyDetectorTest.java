@@ -0,0 +1,109 @@
+package com.ericjesse.conni.processors;
+
+import com.ericjesse.conni.http.HttpRequest;
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.LatencyAnomaly;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the detection of the latencies unusual for their hour of the week.
+ */
+public class SeasonalLatencyDetectorTest {
+
+    private static final ZoneId ZONE = ZoneOffset.ofHours(2);
+
+    // Monday 6 March 2017 at 9:00 in the zone.
+    private static final long MONDAY_9_AM =
+            LocalDateTime.of(2017, 3, 6, 9, 0).atZone(ZONE).toInstant().toEpochMilli();
+
+    private static final long WEEK_IN_MS = TimeUnit.DAYS.toMillis(7);
+
+    private static final long MINUTE_IN_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final HttpRequest REQUEST = new HttpRequest("http://localhost/ping");
+
+    @Test
+    public void hourOfWeekStartsOnMonday() {
+        assertEquals(9, SeasonalLatencyBaseline.hourOfWeek(MONDAY_9_AM, ZONE));
+        assertEquals(0, SeasonalLatencyBaseline.hourOfWeek(MONDAY_9_AM - 9 * 60 * MINUTE_IN_MS, ZONE));
+        assertEquals(167, SeasonalLatencyBaseline.hourOfWeek(MONDAY_9_AM - 10 * 60 * MINUTE_IN_MS, ZONE));
+        assertEquals(7, SeasonalLatencyBaseline.hourOfWeek(MONDAY_9_AM, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void slowHourOfTheWeekIsNotAnAnomaly() throws IOException {
+        SeasonalLatencyBaseline baseline = new SeasonalLatencyBaseline();
+        SeasonalLatencyDetector detector = new SeasonalLatencyDetector(baseline, ZONE, 3);
+
+        // Three weeks: slow on Monday at 9:00, fast on Monday at 10:00.
+        for (int week = 0; week < 3; week++) {
+            for (int minute = 0; minute < 60; minute++) {
+                final long time = MONDAY_9_AM + week * WEEK_IN_MS + minute * MINUTE_IN_MS;
+                assertNull(detector.processResponse(response(200 + minute % 10, time)).getAnomaly());
+                assertNull(detector.processResponse(response(20 + minute % 3, time + 60 * MINUTE_IN_MS))
+                        .getAnomaly());
+            }
+        }
+        assertEquals(180, baseline.getCount(9));
+        assertEquals(204, baseline.usualLatency(9), 3);
+        assertEquals(21, baseline.usualLatency(10), 1);
+
+        // The usual slowness of Monday at 9:00 is not reported, the same latency one hour later is.
+        final long nextWeek = MONDAY_9_AM + 3 * WEEK_IN_MS;
+        assertNull(detector.processResponse(response(210, nextWeek)).getAnomaly());
+        LatencyAnomaly anomaly = detector.processResponse(response(210, nextWeek + 60 * MINUTE_IN_MS)).getAnomaly();
+        assertNotNull(anomaly);
+        assertEquals(10, anomaly.getHourOfWeek());
+        assertEquals(Duration.ofMillis(210), anomaly.getLatency());
+        assertEquals(21, anomaly.getUsualLatency().toMillis(), 1);
+        assertTrue(anomaly.getZScore() > 3);
+    }
+
+    @Test
+    public void noAnomalyBeforeTheWarmUp() throws IOException {
+        SeasonalLatencyBaseline baseline = new SeasonalLatencyBaseline();
+        SeasonalLatencyDetector detector = new SeasonalLatencyDetector(baseline, ZONE, 3);
+        for (int i = 1; i < SeasonalLatencyDetector.WARM_UP_COUNT; i++) {
+            detector.processResponse(response(20, MONDAY_9_AM + i * 1_000));
+        }
+        assertNull(detector.processResponse(response(2_000, MONDAY_9_AM + 60_000)).getAnomaly());
+        assertNotNull(detector.processResponse(response(2_000, MONDAY_9_AM + 61_000)).getAnomaly());
+    }
+
+    @Test
+    public void stableLatencyDoesNotReportSmallDeviations() throws IOException {
+        SeasonalLatencyBaseline baseline = new SeasonalLatencyBaseline();
+        SeasonalLatencyDetector detector = new SeasonalLatencyDetector(baseline, ZONE, 3);
+        for (int i = 0; i < 100; i++) {
+            detector.processResponse(response(50, MONDAY_9_AM + i * 1_000));
+        }
+        // The standard deviation is 0 but considered as 10%: 50 ms to 60 ms is about 1.8 deviations.
+        assertNull(detector.processResponse(response(60, MONDAY_9_AM + 101_000)).getAnomaly());
+        assertNotNull(detector.processResponse(response(80, MONDAY_9_AM + 102_000)).getAnomaly());
+    }
+
+    private static HttpResponse response(final long latencyInMs, final long receivedAtInMs) throws IOException {
+        return new HttpResponse(REQUEST, new Response.Builder()
+                .request(new Request.Builder().url(REQUEST.getUrl()).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(null, "pong"))
+                .sentRequestAtMillis(receivedAtInMs - latencyInMs)
+                .receivedResponseAtMillis(receivedAtInMs)
+                .build());
+    }
+}
@@ -1,5 +1,12 @@
 package com.ericjesse.conni.processors;
 
+import com.ericjesse.conni.http.HttpRequest;
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.errors.ConnectionError;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.junit.Test;
 
 import javax.imageio.ImageIO;
@@ -13,6 +20,8 @@ import static org.junit.Assert.*;
 
 public class TrayIconUpdaterTest {
 
+    private static final HttpRequest REQUEST = new HttpRequest("http://localhost/ping");
+
     Color transparent = new Color(0, 0, 0, 0);
 
     @Test
@@ -142,4 +151,36 @@ public class TrayIconUpdaterTest {
         }
     }
 
+    @Test
+    public void iconShowsTheWorstTarget() throws IOException {
+        TrayIconUpdater updater = new TrayIconUpdater();
+        ResponseObserver api = updater.observerFor("api");
+        ResponseObserver web = updater.observerFor("web");
+
+        api.processResponse(response(120));
+        web.processError(new ConnectionError());
+        assertEquals("down for web", updater.getStatus());
+        // A target up afterwards does not hide the one down.
+        api.processResponse(response(80));
+        assertEquals("down for web", updater.getStatus());
+
+        web.processResponse(response(40));
+        assertTrue(updater.getStatus(), updater.getStatus().startsWith("up ("));
+        api.processError(new ConnectionError());
+        updater.remove("api");
+        assertEquals("up (40 ms)", updater.getStatus());
+    }
+
+    private static HttpResponse response(final long latencyInMs) throws IOException {
+        long receivedAtInMs = System.currentTimeMillis();
+        return new HttpResponse(REQUEST, new Response.Builder()
+                .request(new Request.Builder().url(REQUEST.getUrl()).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(null, "pong"))
+                .sentRequestAtMillis(receivedAtInMs - latencyInMs)
+                .receivedResponseAtMillis(receivedAtInMs)
+                .build());
+    }
 }
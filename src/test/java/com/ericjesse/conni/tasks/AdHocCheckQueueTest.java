@@ -0,0 +1,141 @@
+package com.ericjesse.conni.tasks;
+
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.http.HttpClientFactory;
+import com.ericjesse.conni.http.HttpRequest;
+import com.ericjesse.conni.http.InvalidRequestException;
+import com.ericjesse.conni.http.errors.ConnectionError;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the bounded queue of the ad-hoc checks.
+ */
+public class AdHocCheckQueueTest {
+
+    private static final long DELAY_IN_MS = 300;
+
+    private final MockWebServer server = new MockWebServer();
+
+    private final AdHocCheckQueue queue = new AdHocCheckQueue(new HttpClientFactory(), 3, 1);
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setBody("OK " + i).setBodyDelay(DELAY_IN_MS, TimeUnit.MILLISECONDS));
+        }
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.close();
+        server.shutdown();
+    }
+
+    @Test(timeout = 10_000)
+    public void checksRunInOrderAndTheFullQueueRejects() throws Exception {
+        AdHocCheck first = queue.submit(Collections.singletonList(target("first"))).get(0);
+        List<AdHocCheck> next = queue.submit(Arrays.asList(target("second"), target("third")));
+
+        assertEquals(1, queue.getRunning());
+        assertEquals(2, queue.getQueueDepth());
+        assertEquals(AdHocCheck.State.RUNNING, first.getState());
+        assertEquals(AdHocCheck.State.QUEUED, next.get(1).getState());
+        try {
+            queue.submit(Collections.singletonList(target("fourth")));
+            fail("The queue is full");
+        } catch (RejectedExecutionException e) {
+            assertEquals(1, queue.getRejected());
+        }
+
+        for (AdHocCheck check : next) {
+            assertTrue(check.await(5_000));
+        }
+        assertTrue(first.await(0));
+        for (AdHocCheck check : Arrays.asList(first, next.get(0), next.get(1))) {
+            assertEquals(AdHocCheck.State.DONE, check.getState());
+            assertEquals(200, check.getResponse().getStatusCode());
+        }
+        assertEquals("OK 0", first.getResponse().getBodyContent());
+        assertEquals("OK 2", next.get(1).getResponse().getBodyContent());
+        // One at a time: the third waited for the two first ones.
+        assertTrue("Queued: " + next.get(1).getQueueTimeInMs(), next.get(1).getQueueTimeInMs() >= 2 * DELAY_IN_MS);
+        assertTrue(next.get(1).getLatencyInMs() >= 3 * DELAY_IN_MS);
+        assertEquals(3, queue.getCompleted());
+        assertEquals(0, queue.getQueueDepth());
+        assertEquals(0, queue.getRunning());
+        assertEquals(next.get(0).getLatencyInMs(), queue.getLatencyQuantileInMs(0.5));
+        assertSame(first, queue.get(first.getId()));
+
+        // The room is back.
+        assertTrue(queue.submit(Collections.singletonList(target("fourth"))).get(0).await(5_000));
+    }
+
+    @Test(timeout = 10_000)
+    public void failuresAreResults() throws Exception {
+        AdHocCheck check = queue.submit(Collections.singletonList(
+                new Target.Builder("closed", new HttpRequest("http://localhost:1/")).build())).get(0);
+
+        assertTrue(check.await(5_000));
+        assertEquals(AdHocCheck.State.DONE, check.getState());
+        assertNull(check.getResponse());
+        assertThat(check.getError(), instanceOf(ConnectionError.class));
+        assertEquals(0, queue.getRunning());
+    }
+
+    @Test(timeout = 10_000)
+    public void expiredCheckKeepsItsPlaceUntilAnswered() throws Exception {
+        try (AdHocCheckQueue expiring = new AdHocCheckQueue(new HttpClientFactory(), 2, 1, 50)) {
+            AdHocCheck first = expiring.submit(Collections.singletonList(target("first"))).get(0);
+            AdHocCheck second = expiring.submit(Collections.singletonList(target("second"))).get(0);
+
+            assertTrue(first.await(5_000));
+            assertEquals(AdHocCheck.State.EXPIRED, first.getState());
+            assertNull(first.getResponse());
+            // The request of the first check is still waiting for its response.
+            assertEquals(AdHocCheck.State.QUEUED, second.getState());
+            assertEquals(1, expiring.getRunning());
+
+            assertTrue(second.await(5_000));
+            assertTrue("Queued: " + second.getQueueTimeInMs(), second.getQueueTimeInMs() >= DELAY_IN_MS);
+        }
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void invalidRequestIsRejected() throws InvalidRequestException {
+        queue.submit(Collections.singletonList(
+                new Target.Builder("invalid", new HttpRequest("httm_hostname")).build()));
+    }
+
+    @Test(timeout = 10_000)
+    public void invalidRequestKeepsNoPlace() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            try {
+                queue.submit(Arrays.asList(target("valid"),
+                        new Target.Builder("invalid", new HttpRequest("httm_hostname")).build()));
+                fail("The request is not valid");
+            } catch (InvalidRequestException e) {
+                assertEquals(0, queue.getRejected());
+            }
+        }
+        assertEquals(3, queue.submit(Arrays.asList(target("first"), target("second"), target("third"))).size());
+    }
+
+    private Target target(final String id) {
+        return new Target.Builder(id, new HttpRequest(server.url("/" + id).toString())).build();
+    }
+}
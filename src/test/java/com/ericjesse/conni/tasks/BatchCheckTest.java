@@ -0,0 +1,123 @@
+package com.ericjesse.conni.tasks;
+
+import com.ericjesse.conni.config.InvalidConfigurationException;
+import com.ericjesse.conni.config.Target;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the checks of a list of targets at once.
+ */
+public class BatchCheckTest {
+
+    private final MockWebServer server = new MockWebServer();
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Before
+    public void setUp() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return new MockResponse().setResponseCode(request.getPath().startsWith("/fail") ? 500 : 200);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test(timeout = 10_000)
+    public void allTargetsAreCheckedWithinTheLimitPerHost() throws Exception {
+        final StringBuilder configuration = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            configuration.append(server.url("/ok/" + i)).append('\n');
+        }
+        final List<Target> targets = BatchCheck.readTargets(new StringReader(configuration.toString()));
+
+        assertEquals(BatchCheck.EXIT_SUCCESS, new BatchCheck(10, 2, false, out()).check(targets));
+
+        final String[] lines = output().split("\n");
+        assertEquals(22, lines.length);
+        assertThat(lines[0], startsWith("STATUS"));
+        assertThat(lines[1], startsWith("200 "));
+        assertThat(lines[1], containsString(" ms  " + server.url("/ok/")));
+        assertThat(lines[21], startsWith("20 checks, 0 failed, in "));
+        assertThat(lines[21], containsString(" checks/s"));
+        assertEquals(20, server.getRequestCount());
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void failuresAreReportedByTheExitCode() throws Exception {
+        final List<Target> targets = BatchCheck.readTargets(new StringReader("# Comment\n"
+                + server.url("/ok") + "\n"
+                + "failing " + server.url("/fail") + " timeout=5s\n"
+                + "\n"
+                + "closed http://localhost:1/\n"));
+        assertEquals(3, targets.size());
+        assertEquals(server.url("/ok").toString(), targets.get(0).getId());
+        assertEquals("failing", targets.get(1).getId());
+
+        assertEquals(BatchCheck.EXIT_FAILURE, new BatchCheck(10, 10, true, out()).check(targets));
+
+        final String result = output();
+        assertThat(result, containsString("\"target\":\"failing\",\"url\":\"" + server.url("/fail")
+                + "\",\"state\":\"done\""));
+        assertThat(result, containsString("\"status\":500"));
+        assertThat(result, containsString("\"target\":\"closed\""));
+        assertThat(result, containsString("\"error\":\"ConnectionError\""));
+        assertThat(result, containsString("{\"checks\":3,\"failures\":2,\"timeInMs\":"));
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void duplicateTargetIsInvalid() throws Exception {
+        BatchCheck.readTargets(new StringReader("http://localhost/\nhttp://localhost/\n"));
+    }
+
+    @Test
+    public void invalidArgumentsAreReported() {
+        assertEquals(BatchCheck.EXIT_INVALID,
+                BatchCheck.run(new String[]{"--concurrency=0", "urls.txt"}, out(), out()));
+        assertThat(output(), startsWith("The number 0 is not valid\nUsage: check <file>"));
+    }
+
+    private PrintStream out() {
+        return new PrintStream(output, true);
+    }
+
+    private String output() {
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
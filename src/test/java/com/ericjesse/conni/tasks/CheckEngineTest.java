@@ -0,0 +1,172 @@
+package com.ericjesse.conni.tasks;
+
+import com.ericjesse.conni.config.CheckPriority;
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.config.TargetConfigurationDiff;
+import com.ericjesse.conni.http.HttpClient;
+import com.ericjesse.conni.http.HttpClientFactory;
+import com.ericjesse.conni.http.HttpRequest;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the application of the configuration changes by the {@link CheckEngine}.
+ */
+public class CheckEngineTest {
+
+    private final CheckEngine engine =
+            new CheckEngine(new HttpClientFactory(), Executors.newSingleThreadScheduledExecutor());
+
+    @After
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    public void untouchedTargetsAreKept() {
+        Map<String, Target> first = targets(target("kept", 60_000), target("changed", 60_000),
+                target("removed", 60_000));
+        engine.apply(TargetConfigurationDiff.between(Collections.emptyMap(), first));
+        HttpClient keptClient = engine.getHttpClient("kept");
+        HttpClient changedClient = engine.getHttpClient("changed");
+        assertEquals(first, engine.getTargets());
+
+        Map<String, Target> second = targets(target("kept", 60_000), target("changed", 120_000),
+                target("added", 60_000));
+        engine.apply(TargetConfigurationDiff.between(first, second));
+
+        assertEquals(second.keySet(), engine.getTargets().keySet());
+        assertSame("The untouched target should keep its client", keptClient, engine.getHttpClient("kept"));
+        assertNotSame("The changed target should get a new client", changedClient, engine.getHttpClient("changed"));
+        assertEquals(120_000, engine.getTargets().get("changed").getPeriodInMs());
+        assertNull(engine.getHttpClient("removed"));
+        assertNotNull(engine.getHttpClient("added"));
+    }
+
+    @Test
+    public void invalidTargetIsIgnored() {
+        engine.add(new Target.Builder("invalid", new HttpRequest("httm_hostname")).build());
+
+        assertTrue(engine.getTargets().isEmpty());
+    }
+
+    @Test(timeout = 10_000)
+    public void lowPowerProfileWakesUpOncePerSlot() throws InterruptedException {
+        CheckEngine lowPowerEngine = new CheckEngine(new HttpClientFactory(1_000),
+                Executors.newSingleThreadScheduledExecutor(), 250);
+        try {
+            Map<String, Target> targets = new LinkedHashMap<>();
+            for (int i = 0; i < 50; i++) {
+                // Various periods, so the deadlines of the targets do not meet by themselves.
+                int periodInMs = 100 + 7 * i;
+                Target target = new Target.Builder("target" + i, new HttpRequest("http://localhost:1/" + i))
+                        .periodInMs(periodInMs).failurePeriodInMs(periodInMs).build();
+                targets.put(target.getId(), target);
+            }
+            engine.apply(TargetConfigurationDiff.between(Collections.emptyMap(), targets));
+            lowPowerEngine.apply(TargetConfigurationDiff.between(Collections.emptyMap(), targets));
+
+            Thread.sleep(2_000);
+
+            // At most one wakeup per slot of 250 ms, plus the slot started before the sleep.
+            assertTrue("Wakeups: " + lowPowerEngine.getWakeups(), lowPowerEngine.getWakeups() <= 9);
+            assertTrue("Wakeups: " + engine.getWakeups(), engine.getWakeups() > 200);
+            assertEquals(lowPowerEngine.getWakeups(), lowPowerEngine.getWakeupsPerMinute());
+        } finally {
+            lowPowerEngine.close();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void rateLimitSpreadsTheChecksOfAHost() throws InterruptedException {
+        HostRateLimiter rateLimiter = new HostRateLimiter(20, 2);
+        engine.setRateLimiter(rateLimiter);
+        Map<String, Target> targets = new LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            Target target = target("target" + i, 60_000);
+            targets.put(target.getId(), target);
+        }
+        targets.put("other", new Target.Builder("other", new HttpRequest("http://127.0.0.1:1/"))
+                .periodInMs(60_000).build());
+        targets.put("keyed", new Target.Builder("keyed", new HttpRequest("http://localhost:1/keyed"))
+                .periodInMs(60_000).rateKey("gateway").build());
+        engine.apply(TargetConfigurationDiff.between(Collections.emptyMap(), targets));
+
+        Thread.sleep(1_000);
+
+        Map<String, HostRateLimiter.Counters> counters = rateLimiter.getCounters();
+        assertEquals(Arrays.asList("127.0.0.1", "gateway", "localhost"), new ArrayList<>(counters.keySet()));
+        HostRateLimiter.Counters localhost = counters.get("localhost");
+        assertEquals(10, localhost.getAdmitted() + localhost.getThrottled());
+        // The 10 checks are spread over about 100 ms, the bucket receives 2 more tokens meanwhile at most.
+        assertTrue("Throttled: " + localhost.getThrottled(), localhost.getThrottled() >= 6);
+        assertTrue(localhost.getDelayInMs() > 0);
+        assertEquals(1, counters.get("127.0.0.1").getAdmitted());
+        assertEquals(1, counters.get("gateway").getAdmitted());
+        assertEquals(12, engine.getWakeups() - localhost.getThrottled());
+    }
+
+    @Test(timeout = 10_000)
+    public void criticalTargetIsNotQueuedBehindTheOthers() throws Exception {
+        final CountDownLatch criticalChecked = new CountDownLatch(1);
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+                if (request.getPath().equals("/critical")) {
+                    criticalChecked.countDown();
+                } else {
+                    Thread.sleep(2_000);
+                }
+                return new MockResponse();
+            }
+        });
+        server.start();
+        // One request at once for the targets of the normal priority.
+        CheckEngine limitedEngine = new CheckEngine(new HttpClientFactory(1, 1),
+                Executors.newSingleThreadScheduledExecutor());
+        try {
+            for (int i = 0; i < 5; i++) {
+                limitedEngine.add(new Target.Builder("slow" + i, new HttpRequest(server.url("/slow").toString()))
+                        .timeoutInMs(5_000).periodInMs(60_000).build());
+            }
+            Thread.sleep(200);
+            limitedEngine.add(new Target.Builder("critical", new HttpRequest(server.url("/critical").toString()))
+                    .periodInMs(60_000).priority(CheckPriority.CRITICAL).build());
+
+            assertTrue("The critical check waited for the slow ones", criticalChecked.await(1, TimeUnit.SECONDS));
+        } finally {
+            limitedEngine.close();
+            server.shutdown();
+        }
+    }
+
+    private Target target(final String id, final int periodInMs) {
+        // Closed port, the checks fail immediately without leaving the machine.
+        return new Target.Builder(id, new HttpRequest("http://localhost:1/" + id)).periodInMs(periodInMs).build();
+    }
+
+    private Map<String, Target> targets(final Target... targets) {
+        Map<String, Target> map = new LinkedHashMap<>();
+        for (Target target : targets) {
+            map.put(target.getId(), target);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,97 @@
+package com.ericjesse.conni.tasks;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the token buckets of the {@link HostRateLimiter}.
+ */
+public class HostRateLimiterTest {
+
+    private final AtomicLong nowInNs = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    // 10 checks per second, 3 at once.
+    private final HostRateLimiter rateLimiter = new HostRateLimiter(10, 3, nowInNs::get);
+
+    @Test
+    public void burstIsAdmittedThenTheChecksAreSpread() {
+        assertEquals(0, rateLimiter.reserve("gateway"));
+        assertEquals(0, rateLimiter.reserve("gateway"));
+        assertEquals(0, rateLimiter.reserve("gateway"));
+        assertEquals(100, rateLimiter.reserve("gateway"));
+        assertEquals(200, rateLimiter.reserve("gateway"));
+        assertEquals("Each key has its bucket", 0, rateLimiter.reserve("other"));
+
+        advanceInMs(150);
+        assertEquals(150, rateLimiter.reserve("gateway"));
+
+        HostRateLimiter.Counters counters = rateLimiter.getCounters().get("gateway");
+        assertEquals(3, counters.getAdmitted());
+        assertEquals(3, counters.getThrottled());
+        assertEquals(450, counters.getDelayInMs());
+    }
+
+    @Test
+    public void idleBucketRefillsUpToTheBurst() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.reserve("gateway"));
+        }
+        advanceInMs(100);
+        assertEquals(0, rateLimiter.reserve("gateway"));
+        assertEquals(100, rateLimiter.reserve("gateway"));
+
+        advanceInMs(60_000);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.reserve("gateway"));
+        }
+        assertEquals("The idle time does not raise the burst", 100, rateLimiter.reserve("gateway"));
+    }
+
+    @Test
+    public void concurrentChecksGetDistinctTokens() throws InterruptedException {
+        final List<Long> delays = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 250; i++) {
+                    delays.add(rateLimiter.reserve("gateway"));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // The clock does not move: 3 checks admitted, then one every 100 ms.
+        Collections.sort(delays);
+        for (int i = 0; i < delays.size(); i++) {
+            assertEquals(Math.max(0, i - 2) * 100L, (long) delays.get(i));
+        }
+        assertEquals(997, rateLimiter.getCounters().get("gateway").getThrottled());
+    }
+
+    @Test
+    public void nonFiniteRateIsRejected() {
+        for (double rate : new double[]{Double.NaN, Double.POSITIVE_INFINITY, 0, -1}) {
+            try {
+                new HostRateLimiter(rate, 3);
+                fail("The rate " + rate + " is not valid");
+            } catch (IllegalArgumentException e) {
+                assertEquals("The rate and the burst have to be positive and finite", e.getMessage());
+            }
+        }
+    }
+
+    private void advanceInMs(final long ms) {
+        nowInNs.addAndGet(TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+}
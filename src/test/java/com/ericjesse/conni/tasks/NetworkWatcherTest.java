@@ -0,0 +1,126 @@
+package com.ericjesse.conni.tasks;
+
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.http.HttpClient;
+import com.ericjesse.conni.http.HttpRequest;
+import com.ericjesse.conni.http.HttpResponse;
+import com.ericjesse.conni.http.errors.ConniError;
+import com.ericjesse.conni.processors.ResponseObserver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the detection of the network changes and of the suspends, and the immediate checks.
+ */
+public class NetworkWatcherTest {
+
+    private final AtomicLong wallInMs = new AtomicLong(1_500_000_000_000L);
+
+    private final AtomicLong monotonicInNs = new AtomicLong(42);
+
+    private final Set<String> addresses = new HashSet<>(Arrays.asList("wlan0/192.168.1.10/24"));
+
+    private final List<NetworkChange> changes = new ArrayList<>();
+
+    private final NetworkWatcher watcher = new NetworkWatcher(() -> new HashSet<>(addresses), wallInMs::get,
+            monotonicInNs::get, changes::add, NetworkWatcher.POLL_PERIOD_IN_MS);
+
+    @Test
+    public void detectChangesOfAddresses() {
+        elapse(1_000, 1_000);
+        watcher.poll();
+        assertTrue(changes.isEmpty());
+
+        addresses.clear();
+        addresses.add("wlan0/10.0.0.7/8");
+        elapse(1_000, 1_000);
+        watcher.poll();
+        assertEquals(Arrays.asList(NetworkChange.ADDRESSES_CHANGED), changes);
+
+        elapse(1_000, 1_000);
+        watcher.poll();
+        assertEquals("Each change is notified once", 1, changes.size());
+    }
+
+    @Test
+    public void detectSuspends() {
+        // A small adjustment of the wall clock is not a suspend.
+        elapse(1_500, 1_000);
+        watcher.poll();
+        assertTrue(changes.isEmpty());
+
+        // Asleep for one hour: the monotonic clock stopped.
+        elapse(3_601_000, 1_000);
+        addresses.add("eth0/192.168.1.11/24");
+        watcher.poll();
+        assertEquals("A wake up is notified once, even with new addresses", Arrays.asList(NetworkChange.RESUMED),
+                changes);
+    }
+
+    @Test(timeout = 5000)
+    public void checkNowStopsTheWait() throws Exception {
+        HttpClient httpClient = new HttpClient(new HttpRequest("http://localhost:1/ping"));
+        Semaphore checks = countChecks(httpClient);
+        CheckTask task = new CheckTask(httpClient, 60_000, 60_000);
+        Thread thread = new Thread(task);
+        thread.start();
+        checks.acquire();
+
+        task.checkNow();
+        assertTrue("The task should check again at once", checks.tryAcquire(2, TimeUnit.SECONDS));
+        thread.interrupt();
+        thread.join();
+    }
+
+    @Test(timeout = 5000)
+    public void checkAllNowPreemptsTheSchedule() throws Exception {
+        try (CheckEngine engine = new CheckEngine()) {
+            Semaphore checks = new Semaphore(0);
+            engine.addObserver(countChecks(checks));
+            engine.add(new Target.Builder("local", new HttpRequest("http://localhost:1/ping")).periodInMs(60_000)
+                    .failurePeriodInMs(60_000).build());
+            checks.acquire();
+
+            engine.checkAllNow();
+            assertTrue("The target should be checked again at once", checks.tryAcquire(2, TimeUnit.SECONDS));
+        }
+    }
+
+    private static Semaphore countChecks(final HttpClient httpClient) {
+        final Semaphore checks = new Semaphore(0);
+        httpClient.addObserver(countChecks(checks));
+        return checks;
+    }
+
+    private static ResponseObserver countChecks(final Semaphore checks) {
+        return new ResponseObserver() {
+
+            @Override
+            public ConniError processError(final ConniError error) {
+                checks.release();
+                return error;
+            }
+
+            @Override
+            public HttpResponse processResponse(final HttpResponse response) {
+                checks.release();
+                return response;
+            }
+        };
+    }
+
+    private void elapse(final long wallMs, final long monotonicMs) {
+        wallInMs.addAndGet(wallMs);
+        monotonicInNs.addAndGet(TimeUnit.MILLISECONDS.toNanos(monotonicMs));
+    }
+}
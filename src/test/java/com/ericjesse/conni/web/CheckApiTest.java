@@ -0,0 +1,116 @@
+package com.ericjesse.conni.web;
+
+import com.ericjesse.conni.http.HttpClientFactory;
+import com.ericjesse.conni.tasks.AdHocCheckQueue;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the routes of the ad-hoc checks.
+ */
+public class CheckApiTest {
+
+    private final MockWebServer target = new MockWebServer();
+
+    private final AdHocCheckQueue queue = new AdHocCheckQueue(new HttpClientFactory(), 1, 1);
+
+    private final OkHttpClient client = new OkHttpClient.Builder().readTimeout(10, TimeUnit.SECONDS).build();
+
+    private WebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        target.start();
+        server = new WebServer(0);
+        new CheckApi(queue).registerOn(server);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        queue.close();
+        target.shutdown();
+    }
+
+    @Test(timeout = 10_000)
+    public void checkIsAnsweredWithItsResult() throws IOException {
+        target.enqueue(new MockResponse().setResponseCode(503));
+        target.enqueue(new MockResponse());
+
+        try (Response response = post("/api/checks?wait=5000&url=" + target.url("/health"), "")) {
+            assertEquals(200, response.code());
+            final String body = response.body().string();
+            assertThat(body, startsWith("[{\"id\":1,\"target\":\"ad-hoc\",\"url\":\"" + target.url("/health")
+                    + "\",\"state\":\"done\",\"queuedInMs\":"));
+            assertThat(body, containsString(",\"status\":503,"));
+        }
+        try (Response response = post("/api/checks?wait=5000",
+                "api " + target.url("/api") + " method=POST content-type=json body={} timeout=5s")) {
+            assertEquals(200, response.code());
+            assertThat(response.body().string(), containsString("\"target\":\"api\""));
+        }
+        assertThat(get("/api/checks?id=1", 200), containsString("\"status\":503"));
+        assertThat(get("/api/checks/stats", 200),
+                startsWith("{\"queued\":0,\"running\":0,\"capacity\":1,\"completed\":2,\"rejected\":0,"));
+        assertEquals("Unknown check 9", get("/api/checks?id=9", 404));
+        try (Response response = post("/api/checks", "invalid")) {
+            assertEquals(400, response.code());
+            assertThat(response.body().string(), startsWith("Line 1: "));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void fullQueueIsAnsweredWithTooManyRequests() throws Exception {
+        target.enqueue(new MockResponse().setBody("slow").setBodyDelay(1, TimeUnit.SECONDS));
+        target.enqueue(new MockResponse());
+
+        // Answered at once by default.
+        try (Response response = post("/api/checks?url=" + target.url("/slow"), "")) {
+            assertEquals(202, response.code());
+            assertThat(response.body().string(), containsString("\"state\":\"running\""));
+        }
+        try (Response response = post("/api/checks?url=" + target.url("/other"), "")) {
+            assertEquals(429, response.code());
+            assertEquals("1", response.header("Retry-After"));
+        }
+        assertThat(get("/api/checks/stats", 200),
+                startsWith("{\"queued\":0,\"running\":1,\"capacity\":1,\"completed\":0,\"rejected\":1,"));
+
+        String result = get("/api/checks?id=1", 200);
+        while (result.contains("\"state\":\"running\"")) {
+            Thread.sleep(50);
+            result = get("/api/checks?id=1", 200);
+        }
+        assertThat(result, containsString("\"state\":\"done\""));
+        assertThat(result, containsString("\"status\":200"));
+    }
+
+    private Response post(final String path, final String body) throws IOException {
+        return client.newCall(new Request.Builder().url("http://localhost:" + server.getPort() + path)
+                .post(RequestBody.create(MediaType.parse("text/plain"), body)).build()).execute();
+    }
+
+    private String get(final String path, final int expectedStatus) throws IOException {
+        try (Response response = client.newCall(new Request.Builder()
+                .url("http://localhost:" + server.getPort() + path).build()).execute()) {
+            assertEquals(path, expectedStatus, response.code());
+            return response.body().string();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.ericjesse.conni.web;
+
+import com.ericjesse.conni.cluster.GossipMembership;
+import com.ericjesse.conni.cluster.TargetSharding;
+import com.ericjesse.conni.config.Target;
+import com.ericjesse.conni.config.TargetConfigurationDiff;
+import com.ericjesse.conni.http.HttpRequest;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate a cluster of agents running on loopback ports.
+ */
+public class ClusterApiTest {
+
+    private static final long INTERVAL_IN_MS = 100;
+
+    private static final int TARGETS = 300;
+
+    private final List<Agent> agents = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (Agent agent : agents) {
+            agent.close();
+        }
+    }
+
+    @Test(timeout = 20_000)
+    public void targetsAreShardedAndMovedWhenAnAgentLeaves() throws Exception {
+        final Map<String, Target> targets = new LinkedHashMap<>();
+        for (int i = 0; i < TARGETS; i++) {
+            targets.put("target" + i, new Target.Builder("target" + i, new HttpRequest("http://localhost:1/" + i))
+                    .build());
+        }
+        final TargetConfigurationDiff diff = TargetConfigurationDiff.between(Collections.emptyMap(), targets);
+        for (int i = 0; i < 3; i++) {
+            final Agent agent = new Agent(agents.isEmpty() ? null : agents.get(0).address);
+            agent.sharding.apply(diff);
+            agents.add(agent);
+        }
+
+        awaitMembers(agents, 3);
+        assertPartition(agents);
+        for (Agent agent : agents) {
+            assertTrue("Owned: " + agent.owned.size(), agent.owned.size() > TARGETS / 3 / 2);
+        }
+        try (Response response = new OkHttpClient().newCall(new Request.Builder()
+                .url("http://" + agents.get(1).address + "/api/cluster").build()).execute()) {
+            final String body = response.body().string();
+            assertThat(body, startsWith("{\"self\":\"" + agents.get(1).address + "\",\"members\":{"));
+            assertThat(body, containsString("\"" + agents.get(0).address + "\":\"up\""));
+            assertThat(body, containsString(",\"ownedTargets\":" + agents.get(1).owned.size() + ",\"targets\":300}"));
+        }
+
+        final Agent leaving = agents.remove(2);
+        leaving.close();
+        // The agent told it left, the others do not wait for the failure timeout.
+        final long startInMs = System.currentTimeMillis();
+        awaitMembers(agents, 2);
+        assertTrue(System.currentTimeMillis() - startInMs < 2_000);
+        assertPartition(agents);
+        assertEquals(GossipMembership.State.LEFT, agents.get(0).membership.getMembers().get(leaving.address));
+    }
+
+    private static void awaitMembers(final List<Agent> agents, final int count) throws InterruptedException {
+        for (Agent agent : agents) {
+            while (agent.membership.getUpMembers().size() != count) {
+                Thread.sleep(INTERVAL_IN_MS);
+            }
+        }
+        // The last news reach the agents which were already up to date.
+        Thread.sleep(5 * INTERVAL_IN_MS);
+    }
+
+    private static void assertPartition(final List<Agent> agents) {
+        final Set<String> all = new HashSet<>();
+        int total = 0;
+        for (Agent agent : agents) {
+            all.addAll(agent.owned.keySet());
+            total += agent.owned.size();
+        }
+        assertEquals("Each target is owned by one agent", TARGETS, total);
+        assertEquals(TARGETS, all.size());
+    }
+
+    /**
+     * An agent of the cluster, its engine recording the owned targets.
+     */
+    private static final class Agent {
+
+        private final WebServer server = new WebServer(0);
+
+        private final String address;
+
+        private final GossipMembership membership;
+
+        private final TargetSharding sharding;
+
+        private final Map<String, Target> owned = new ConcurrentHashMap<>();
+
+        private Agent(final String peer) throws IOException {
+            server.start();
+            address = "127.0.0.1:" + server.getPort();
+            membership = new GossipMembership(address,
+                    peer == null ? Collections.emptyList() : Collections.singletonList(peer), INTERVAL_IN_MS);
+            sharding = new TargetSharding(address, diff -> {
+                diff.getRemoved().forEach(target -> owned.remove(target.getId()));
+                diff.getChanged().forEach(target -> owned.put(target.getId(), target));
+                diff.getAdded().forEach(target -> owned.put(target.getId(), target));
+            });
+            new ClusterApi(membership, sharding).registerOn(server);
+            membership.addListener(sharding::setMembers);
+            membership.start();
+        }
+
+        private void close() throws IOException {
+            membership.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.ericjesse.conni.web;
+
+import com.ericjesse.conni.history.TimeSeriesStore;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to validate the embedded web server and the routes of the reports.
+ */
+public class WebServerTest {
+
+    private static final long START = 1_500_249_600_000L;
+
+    private static final int SAMPLES = 200_000;
+
+    private final TimeSeriesStore store = new TimeSeriesStore();
+
+    private final OkHttpClient client = new OkHttpClient.Builder().connectionPool(new ConnectionPool()).build();
+
+    private WebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < SAMPLES; i++) {
+            store.add("a", START + i * 1_000L, 40 + i % 13, i % 1000 == 0 ? TimeSeriesStore.ERROR_STATUS : 200);
+        }
+        store.add("b c", START, 50, 200);
+        server = new WebServer(0);
+        new ReportApi(store).registerOn(server);
+        server.route("POST", "/echo", (request, response) -> response.send(200, WebResponse.TEXT,
+                new String(request.getBody(), StandardCharsets.UTF_8)));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void routesAnswerOnTheSameConnection() throws IOException {
+        assertEquals("[\"a\",\"b c\"]", get("/api/targets", 200));
+        assertEquals("{\"targets\":2,\"checks\":" + (SAMPLES + 1) + ",\"bytes\":" + store.getSizeInBytes() + "}",
+                get("/api/status", 200));
+        assertThat(get("/api/summary?target=b+c&from=" + START + "&to=" + (START + 1), 200),
+                startsWith("{\"from\":" + START + ",\"to\":" + (START + 1) + ",\"count\":1,\"failures\":0,"));
+        assertThat(get("/api/series?target=a&from=" + START + "&to=" + (START + 200_000_000L) + "&points=10", 200),
+                startsWith("[{\"from\":"));
+        assertThat(get("/api/chart?target=a&from=" + START + "&to=" + (START + 200_000_000L) + "&width=100", 200),
+                startsWith("{\"target\":\"a\",\"from\":" + START));
+        assertEquals("Not found: /nothing", get("/nothing", 404));
+        assertEquals("The parameter target is missing", get("/api/summary", 400));
+        assertEquals("No history for the target z", get("/api/summary?target=z", 404));
+        assertEquals("The parameter from is not a number: x", get("/api/summary?target=a&from=x", 400));
+        assertEquals("The number of points must be between 1 and 10000: 0", get("/api/series?target=a&points=0", 400));
+        assertEquals("The number of points must be between 1 and 10000: 4294967297",
+                get("/api/series?target=a&points=4294967297", 400));
+
+        try (Response response = client.newCall(new Request.Builder().url(url("/echo"))
+                .post(RequestBody.create(MediaType.parse("text/plain"), "Hello")).build()).execute()) {
+            assertEquals("Hello", response.body().string());
+        }
+        try (Response response = client.newCall(new Request.Builder().url(url("/api/targets"))
+                .post(RequestBody.create(MediaType.parse("text/plain"), "")).build()).execute()) {
+            assertEquals(405, response.code());
+            assertEquals("GET", response.header("Allow"));
+        }
+        assertEquals("All the requests use one keep-alive connection", 1, client.connectionPool().connectionCount());
+    }
+
+    @Test
+    public void exportsAreStreamedInChunksWhileTheOtherRequestsAreAnswered() throws Exception {
+        try (Socket socket = new Socket()) {
+            // The export fills the buffers of the socket while it is not read.
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+            send(socket, "GET /api/export?target=a&from=0&to=" + (START + SAMPLES * 1_000L) + " HTTP/1.1\r\n"
+                    + "Host: localhost\r\n\r\n");
+            // Leave the time to the export to wait for the client.
+            Thread.sleep(1_000);
+            assertEquals("{\"targets\":2,\"checks\":" + (SAMPLES + 1) + ",\"bytes\":" + store.getSizeInBytes() + "}",
+                    get("/api/status", 200));
+
+            final InputStream input = socket.getInputStream();
+            final String head = readHead(input);
+            assertThat(head, startsWith("HTTP/1.1 200 OK\r\n"));
+            assertThat(head, containsString("Content-Type: text/csv; charset=utf-8\r\n"));
+            assertThat(head, containsString("Transfer-Encoding: chunked\r\n"));
+            final BufferedReader lines = new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(readChunks(input)), StandardCharsets.UTF_8));
+            assertEquals("time,duration,status", lines.readLine());
+            assertEquals(START + ",40,0", lines.readLine());
+            assertEquals((START + 1_000) + ",41,200", lines.readLine());
+            long count = 2;
+            String last = null;
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                last = line;
+                count++;
+            }
+            assertEquals(SAMPLES, count);
+            assertEquals((START + (SAMPLES - 1) * 1_000L) + "," + (40 + (SAMPLES - 1) % 13) + ",200", last);
+        }
+
+        final String json = get("/api/export?target=a&from=" + START + "&to=" + (START + 3_000) + "&format=json", 200);
+        assertEquals("[[" + START + ",40,0],[" + (START + 1_000) + ",41,200],[" + (START + 2_000) + ",42,200]]",
+                json);
+    }
+
+    @Test
+    public void pipelinedRequestsAreAnsweredInOrder() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            send(socket, "GET /api/targets HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nHello"
+                    + "GET /nothing HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            final String responses = new String(readAll(socket.getInputStream()), StandardCharsets.UTF_8);
+            final int targets = responses.indexOf("[\"a\",\"b c\"]");
+            final int echo = responses.indexOf("\r\n\r\nHello");
+            final int notFound = responses.indexOf("HTTP/1.1 404 Not Found\r\n");
+            assertTrue(responses, targets > 0 && echo > targets && notFound > echo);
+            assertThat(responses, containsString("Connection: close\r\n"));
+        }
+    }
+
+    @Test
+    public void invalidRequestsAreRejected() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            send(socket, "HELLO\r\n\r\n");
+            assertThat(new String(readAll(socket.getInputStream()), StandardCharsets.UTF_8),
+                    startsWith("HTTP/1.1 400 Bad Request\r\n"));
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            send(socket, "POST /echo HTTP/1.1\r\nContent-Length: 100000000\r\n\r\n");
+            assertThat(new String(readAll(socket.getInputStream()), StandardCharsets.UTF_8),
+                    startsWith("HTTP/1.1 413 Payload Too Large\r\n"));
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            send(socket, "GET /%zz HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            assertThat(new String(readAll(socket.getInputStream()), StandardCharsets.UTF_8),
+                    startsWith("HTTP/1.1 400 Bad Request\r\n"));
+        }
+        assertEquals("The server still answers", "[\"a\",\"b c\"]", get("/api/targets", 200));
+    }
+
+    private String get(final String path, final int expectedStatus) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(url(path)).build()).execute()) {
+            assertEquals(path, expectedStatus, response.code());
+            return response.body().string();
+        }
+    }
+
+    private String url(final String path) {
+        return "http://localhost:" + server.getPort() + path;
+    }
+
+    private static void send(final Socket socket, final String request) throws IOException {
+        final OutputStream output = socket.getOutputStream();
+        output.write(request.getBytes(StandardCharsets.ISO_8859_1));
+        output.flush();
+    }
+
+    private static String readHead(final InputStream input) throws IOException {
+        final StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            head.append((char) input.read());
+        }
+        return head.toString();
+    }
+
+    private static byte[] readChunks(final InputStream input) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            final StringBuilder size = new StringBuilder();
+            for (int b = input.read(); b != '\r'; b = input.read()) {
+                size.append((char) b);
+            }
+            assertEquals('\n', input.read());
+            final int length = Integer.parseInt(size.toString(), 16);
+            if (length == 0) {
+                assertEquals('\r', input.read());
+                assertEquals('\n', input.read());
+                return body.toByteArray();
+            }
+            final byte[] chunk = new byte[length];
+            int read = 0;
+            while (read < length) {
+                read += input.read(chunk, read, length - read);
+            }
+            body.write(chunk);
+            assertEquals('\r', input.read());
+            assertEquals('\n', input.read());
+        }
+    }
+
+    private static byte[] readAll(final InputStream input) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}